@@ -59,6 +59,8 @@ abstract class SpoolDirSourceConnectorConfig extends AbstractConfig {
   public static final String HALT_ON_ERROR_CONF = "halt.on.error";
   public static final String FILE_MINIMUM_AGE_MS_CONF = "file.minimum.age.ms";
   public static final String PROCESSING_FILE_EXTENSION_CONF = "processing.file.extension";
+  public static final String FILE_QUEUE_DEPTH_CONF = "file.queue.depth";
+  public static final String FILE_READ_BUFFER_BYTES_CONF = "file.read.buffer.bytes";
   //RecordProcessorConfig
   public static final String BATCH_SIZE_CONF = "batch.size";
   public static final String PROCESSING_FILE_EXTENSION_DEFAULT = ".PROCESSING";
@@ -96,6 +98,9 @@ abstract class SpoolDirSourceConnectorConfig extends AbstractConfig {
   static final String HALT_ON_ERROR_DOC = "Should the task halt when it encounters an error or continue to the next file.";
   static final String FILE_MINIMUM_AGE_MS_DOC = "The amount of time in milliseconds after the file was last written to before the file can be processed.";
   static final String PROCESSING_FILE_EXTENSION_DOC = "Before a file is processed, it is renamed to indicate that it is currently being processed. This setting is appended to the end of the file.";
+  static final String FILE_QUEUE_DEPTH_DOC = "The number of files listed ahead and waiting to be read by the tasks of the input directory.";
+  static final String FILE_READ_BUFFER_BYTES_DOC = "The size of the buffer used to read the files. Files compressed with gzip or zstd " +
+      "are detected from their first bytes and decompressed on the fly.";
   static final String PARSER_TIMESTAMP_DATE_FORMATS_DOC = "The date formats that are expected in the file. This is a list " +
       "of strings that will be used to parse the date fields in order. The most accurate date format should be the first " +
       "in the list. Take a look at the Java documentation for more info. " +
@@ -126,6 +131,8 @@ abstract class SpoolDirSourceConnectorConfig extends AbstractConfig {
   public final TimeZone parserTimestampTimezone;
   public final long emptyPollWaitMs;
   public final String processingFileExtension;
+  public final int fileQueueDepth;
+  public final int fileReadBufferBytes;
   public final TimestampMode timestampMode;
   public final String timestampField;
   public final List<String> keyFields;
@@ -147,6 +154,8 @@ abstract class SpoolDirSourceConnectorConfig extends AbstractConfig {
     this.topic = this.getString(TOPIC_CONF);
     this.emptyPollWaitMs = this.getLong(EMPTY_POLL_WAIT_MS_CONF);
     this.processingFileExtension = this.getString(PROCESSING_FILE_EXTENSION_CONF);
+    this.fileQueueDepth = this.getInt(FILE_QUEUE_DEPTH_CONF);
+    this.fileReadBufferBytes = this.getInt(FILE_READ_BUFFER_BYTES_CONF);
     this.keyFields = this.getList(SCHEMA_GENERATION_KEY_FIELDS_CONF);
     this.schemaGenerationEnabled = this.getBoolean(SCHEMA_GENERATION_ENABLED_CONF);
     this.schemaGenerationKeyName = this.getString(SCHEMA_GENERATION_KEY_NAME_CONF);
@@ -292,6 +301,8 @@ abstract class SpoolDirSourceConnectorConfig extends AbstractConfig {
         .define(HALT_ON_ERROR_CONF, ConfigDef.Type.BOOLEAN, true, ConfigDef.Importance.HIGH, HALT_ON_ERROR_DOC)
         .define(FILE_MINIMUM_AGE_MS_CONF, ConfigDef.Type.LONG, 0L, ConfigDef.Range.between(0L, Long.MAX_VALUE), ConfigDef.Importance.LOW, FILE_MINIMUM_AGE_MS_DOC)
         .define(PROCESSING_FILE_EXTENSION_CONF, ConfigDef.Type.STRING, PROCESSING_FILE_EXTENSION_DEFAULT, ValidPattern.of("^.*\\..+$"), ConfigDef.Importance.LOW, PROCESSING_FILE_EXTENSION_DOC)
+        .define(FILE_QUEUE_DEPTH_CONF, ConfigDef.Type.INT, 1024, ConfigDef.Range.atLeast(1), ConfigDef.Importance.LOW, FILE_QUEUE_DEPTH_DOC)
+        .define(FILE_READ_BUFFER_BYTES_CONF, ConfigDef.Type.INT, 262144, ConfigDef.Range.atLeast(1024), ConfigDef.Importance.LOW, FILE_READ_BUFFER_BYTES_DOC)
 
         .define(BATCH_SIZE_CONF, ConfigDef.Type.INT, BATCH_SIZE_DEFAULT, ConfigDef.Importance.LOW, BATCH_SIZE_DOC)
         .define(TOPIC_CONF, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, TOPIC_DOC)
@@ -24,7 +24,7 @@ import com.github.jcustenborder.kafka.connect.utils.data.type.TypeParser;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.io.Files;
+import com.github.luben.zstd.ZstdInputStream;
 import com.hurence.logisland.utils.SynchronizedFileLister;
 import org.apache.kafka.connect.data.Date;
 import org.apache.kafka.connect.data.Schema;
@@ -37,15 +37,19 @@ import org.apache.kafka.connect.source.SourceTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 public abstract class SpoolDirSourceTask<CONF extends SpoolDirSourceConnectorConfig> extends SourceTask {
     static final Logger log = LoggerFactory.getLogger(SpoolDirSourceTask.class);
@@ -130,12 +134,15 @@ public abstract class SpoolDirSourceTask<CONF extends SpoolDirSourceConnectorCon
     @Override
     public void start(Map<String, String> settings) {
         this.config = config(settings);
-        this.fileLister = SynchronizedFileLister.getInstance(config.inputPath, config.inputFilenameFilter, config.minimumFileAgeMS, config.processingFileExtension);
 
         checkDirectory(SpoolDirSourceConnectorConfig.INPUT_PATH_CONFIG, this.config.inputPath);
         checkDirectory(SpoolDirSourceConnectorConfig.FINISHED_PATH_CONFIG, this.config.finishedPath);
         checkDirectory(SpoolDirSourceConnectorConfig.ERROR_PATH_CONFIG, this.config.errorPath);
 
+        this.fileLister = SynchronizedFileLister.getInstance(config.inputPath,
+                config.getString(SpoolDirSourceConnectorConfig.INPUT_FILE_PATTERN_CONF),
+                config.minimumFileAgeMS, config.processingFileExtension, config.fileQueueDepth);
+
         this.parser = new Parser();
         Map<Schema, TypeParser> dateTypeParsers = ImmutableMap.of(
                 Timestamp.SCHEMA, new TimestampTypeParser(this.config.parserTimestampTimezone, this.config.parserTimestampDateFormats),
@@ -150,7 +157,10 @@ public abstract class SpoolDirSourceTask<CONF extends SpoolDirSourceConnectorCon
 
     @Override
     public void stop() {
-
+        if (fileLister != null) {
+            fileLister.release();
+            fileLister = null;
+        }
     }
 
     @Override
@@ -197,7 +207,7 @@ public abstract class SpoolDirSourceTask<CONF extends SpoolDirSourceConnectorCon
                         Number number = (Number) offset.get("offset");
                         lastOffset = number.longValue();
                     }
-                    this.inputStream = new FileInputStream(this.inputFile);
+                    this.inputStream = open(this.inputFile);
                     configure(this.inputStream, this.metadata, lastOffset);
                 } catch (Exception ex) {
                     throw new ConnectException(ex);
@@ -214,7 +224,7 @@ public abstract class SpoolDirSourceTask<CONF extends SpoolDirSourceConnectorCon
             try {
                 fileLister.closeAndMoveToFinished(this.inputStream, this.inputFile, this.config.inputPath, this.config.errorPath, false);
                 this.inputStream = null;
-            } catch (IOException | InterruptedException ex0) {
+            } catch (IOException ex0) {
                 log.error("Exception thrown while moving {} to {}", this.inputFile, this.config.errorPath, ex0);
             }
             if (this.config.haltOnError) {
@@ -225,6 +235,41 @@ public abstract class SpoolDirSourceTask<CONF extends SpoolDirSourceConnectorCon
         }
     }
 
+    InputStream open(File file) throws IOException {
+        return open(file, this.config.fileReadBufferBytes);
+    }
+
+    /**
+     * Opens a file through a large buffered channel, decompressing it when it starts with a gzip or zstd magic number.
+     */
+    static InputStream open(File file, int bufferSize) throws IOException {
+        final InputStream raw = new BufferedInputStream(
+                Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ)), bufferSize);
+        final byte[] magic = new byte[4];
+        raw.mark(magic.length);
+        int length = 0;
+        int read;
+        while (length < magic.length && (read = raw.read(magic, length, magic.length - length)) > 0) {
+            length += read;
+        }
+        raw.reset();
+
+        try {
+            if (length >= 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+                log.debug("Reading {} as gzip", file);
+                return new BufferedInputStream(new GZIPInputStream(raw, bufferSize), bufferSize);
+            }
+            if (length == 4 && magic[0] == (byte) 0x28 && magic[1] == (byte) 0xb5 && magic[2] == (byte) 0x2f && magic[3] == (byte) 0xfd) {
+                log.debug("Reading {} as zstd", file);
+                return new BufferedInputStream(new ZstdInputStream(raw), bufferSize);
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+        return raw;
+    }
+
     protected void addRecord(List<SourceRecord> records, Struct keyStruct, Struct valueStruct) {
         Map<String, ?> sourceOffset = ImmutableMap.of(
                 "offset",
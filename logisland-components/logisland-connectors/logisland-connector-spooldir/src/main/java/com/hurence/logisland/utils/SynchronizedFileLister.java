@@ -1,7 +1,7 @@
 package com.hurence.logisland.utils;
 
 import com.google.common.io.Files;
-import com.hurence.logisland.connect.spooldir.SpoolDirSourceConnector;
+import com.google.common.io.PatternFilenameFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,178 +9,301 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+
+/**
+ * Lists the files to ingest from an input directory and hands each of them to a single task.
+ * <p>
+ * There is one lister per input directory and settings, shared by the tasks reading it in this JVM and closed when
+ * the last of them releases it. The directory tree is walked
+ * once when the lister is created; after that a {@link WatchService} reports the created or modified files, which are
+ * kept in an index of candidates until they are old enough to be queued. The tree is walked again only when the watch
+ * service overflows or is not available.
+ * <p>
+ * A file is claimed by atomically creating its processing file, so that two tasks, even in different JVMs, never read
+ * the same file. Claiming and moving files does not hold any lock, so tasks read their files concurrently.
+ */
 public class SynchronizedFileLister {
 
-    private int capacity = Integer.MAX_VALUE;
-
-    /**
-     * Current number of elements
-     */
-    private final AtomicInteger count = new AtomicInteger(0);
-
-    /**
-     * Lock held by take, poll, etc
-     */
-    private final ReentrantLock updateLock = new ReentrantLock();
+    private static final int MAX_DEPTH = 10;
 
     /**
-     * Wait queue for waiting takes
+     * The listers in use, by input directory and settings. Guarded by itself, as their reference counts.
      */
-    private final Condition notEmpty = updateLock.newCondition();
-
-    private File inputPath;
-    private FilenameFilter inputFilenameFilter;
-    private String processingFileExtension;
-    private long minimumFileAgeMS;
-
-    private final BlockingQueue<File> fileQueue = new LinkedHashSetBlockingQueue<>(1024);
-
+    private static final Map<List<Object>, SynchronizedFileLister> listers = new HashMap<>();
 
     private static Logger log = LoggerFactory.getLogger(SynchronizedFileLister.class);
 
+    private final List<Object> key;
+    private final Path inputPath;
+    private final FilenameFilter inputFilenameFilter;
+    private final String processingFileExtension;
+    private final long minimumFileAgeMS;
 
     /**
-     * Holder
+     * Files seen in the directory and not queued yet, in the order they were discovered.
      */
-    private static class SynchronizedFileListernHolder {
-        /**
-         * Instance unique non préinitialisée
-         */
-        private final static SynchronizedFileLister instance = new SynchronizedFileLister();
+    private final Set<Path> candidates = new LinkedHashSet<>();
+    /**
+     * Files queued or being read, so that further events about them are ignored.
+     */
+    private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<File> fileQueue;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private boolean rescanNeeded = true;
+    private int references = 0;
+
+
+    private SynchronizedFileLister(List<Object> key,
+                                   File inputPath,
+                                   FilenameFilter inputFilenameFilter,
+                                   long minimumFileAgeMS,
+                                   String processingFileExtension,
+                                   int queueDepth) {
+        this.key = key;
+        this.inputPath = inputPath.getAbsoluteFile().toPath();
+        this.inputFilenameFilter = inputFilenameFilter;
+        this.minimumFileAgeMS = minimumFileAgeMS;
+        this.processingFileExtension = processingFileExtension;
+        this.fileQueue = new LinkedBlockingQueue<>(queueDepth);
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Unable to watch {}, the directory will be walked on every update : {}", inputPath, e.toString());
+        }
     }
 
     /**
-     * Point d'accès pour l'instance unique du singleton
+     * Gets the lister of the given input directory and settings, creating it the first time.
+     * Each call must be matched by a call to {@link #release()} once the lister is no longer used.
+     *
+     * @param inputFilePattern the regular expression the names of the files to list must match
      */
     public static SynchronizedFileLister getInstance(File inputPath,
-                                                     FilenameFilter inputFilenameFilter,
+                                                     String inputFilePattern,
                                                      long minimumFileAgeMS,
-                                                     String processingFileExtension) {
-        return SynchronizedFileListernHolder.instance
-                .config(inputPath, inputFilenameFilter, minimumFileAgeMS, processingFileExtension);
+                                                     String processingFileExtension,
+                                                     int queueDepth) {
+        final List<Object> key = Arrays.asList(inputPath.getAbsolutePath(), inputFilePattern, minimumFileAgeMS,
+                processingFileExtension, queueDepth);
+        synchronized (listers) {
+            SynchronizedFileLister lister = listers.get(key);
+            if (lister == null) {
+                lister = new SynchronizedFileLister(key, inputPath, new PatternFilenameFilter(inputFilePattern),
+                        minimumFileAgeMS, processingFileExtension, queueDepth);
+                listers.put(key, lister);
+            }
+            lister.references++;
+            return lister;
+        }
     }
 
-    private SynchronizedFileLister config(File inputPath,
-                                          FilenameFilter inputFilenameFilter,
-                                          long minimumFileAgeMS,
-                                          String processingFileExtension) {
-        this.inputPath = inputPath;
-        this.inputFilenameFilter = inputFilenameFilter;
-        this.minimumFileAgeMS = minimumFileAgeMS;
-        this.processingFileExtension = processingFileExtension;
+    /**
+     * Releases this lister, closing it when no other task uses it.
+     */
+    public void release() {
+        synchronized (listers) {
+            if (--references > 0) {
+                return;
+            }
+            listers.remove(key);
+        }
+        synchronized (this) {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close the watch service of {} : {}", inputPath, e.toString());
+                }
+                watchService = null;
+            }
+            watchedDirectories.clear();
+        }
+    }
 
-        return this;
+    /**
+     * @return the number of listers in use in this JVM
+     */
+    static int instances() {
+        synchronized (listers) {
+            return listers.size();
+        }
     }
 
-    public void updateList() throws InterruptedException {
-        final ReentrantLock updateLock = this.updateLock;
-        updateLock.lock();
+    /**
+     * Collects the files reported by the watch service and queues the candidates which are ready to be read.
+     */
+    public synchronized void updateList() {
+        if (watchService == null || rescanNeeded) {
+            rescan();
+        } else {
+            drainEvents();
+        }
 
-        try {
-            if (fileQueue.size() < 20) {
-                java.nio.file.Files.find(Paths.get(inputPath.getAbsolutePath()),
-                        10,
-                        (filePath, fileAttr) -> fileAttr.isRegularFile() &&
-                                !filePath.toUri().getPath().contains(processingFileExtension) &&
-                                inputFilenameFilter.accept(filePath.getParent().toFile(), filePath.getFileName().toString()))
-                        .limit(20)
-                        .forEach(f -> {
-                            File newFile = f.toFile();
-
-                            File processingFile = processingFile(newFile);
-                            log.trace("Checking for processing file: {}", processingFile);
-
-                            long fileAgeMS = System.currentTimeMillis() - newFile.lastModified();
-
-                            if (fileAgeMS < 0L) {
-                                log.warn("File {} has a date in the future.", newFile);
-                            }
-
-                            if (processingFile.exists()) {
-                                log.trace("Skipping {} because processing file exists.", f);
-                            } else if (minimumFileAgeMS > 0L && fileAgeMS < minimumFileAgeMS) {
-                                log.debug("Skipping {} because it does not meet the minimum age.", newFile);
-                            } else {
-                                fileQueue.add(newFile);
-                            }
-                        });
+        final long now = System.currentTimeMillis();
+        final Iterator<Path> iterator = candidates.iterator();
+        while (iterator.hasNext() && fileQueue.remainingCapacity() > 0) {
+            final Path candidate = iterator.next();
+            final File file = candidate.toFile();
+            if (!file.isFile() || queued.contains(candidate)) {
+                iterator.remove();
+                continue;
             }
+            if (processingFile(file).exists()) {
+                log.trace("Skipping {} because processing file exists.", file);
+                iterator.remove();
+                continue;
+            }
+            final long fileAgeMS = now - file.lastModified();
+            if (fileAgeMS < 0L) {
+                log.warn("File {} has a date in the future.", file);
+            }
+            if (minimumFileAgeMS > 0L && fileAgeMS < minimumFileAgeMS) {
+                log.debug("Skipping {} because it does not meet the minimum age.", file);
+                continue;
+            }
+            iterator.remove();
+            queued.add(candidate);
+            fileQueue.add(file);
+        }
+    }
+
+    private void rescan() {
+        rescanNeeded = false;
+        try (Stream<Path> paths = java.nio.file.Files.walk(inputPath, MAX_DEPTH)) {
+            paths.forEach(path -> {
+                if (java.nio.file.Files.isDirectory(path)) {
+                    watch(path);
+                } else {
+                    offerCandidate(path);
+                }
+            });
         } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            updateLock.unlock();
+            log.error("Unable to list the files of {}", inputPath, e);
         }
     }
 
-    public void closeAndMoveToFinished(InputStream inputStream, File inputFile, File inputDirectory, File outputDirectory, boolean errored) throws IOException, InterruptedException {
-        final ReentrantLock updateLock = this.updateLock;
-        updateLock.lock();
+    private void watch(Path directory) {
+        if (watchService == null) {
+            return;
+        }
         try {
-            if (null != inputStream) {
-                log.info("Closing {}", inputFile);
-                inputStream.close();
+            watchedDirectories.put(directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), directory);
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.warn("Unable to watch {} : {}", directory, e.toString());
+            rescanNeeded = true;
+        }
+    }
 
-                String enclosingFolderName = inputFile.getAbsolutePath()
-                        .replaceAll(inputDirectory.getAbsolutePath(), "")
-                        .replaceAll(inputFile.getName(), "");
+    private void drainEvents() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            final Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    log.debug("Too many changes in {}, walking it again.", inputPath);
+                    rescanNeeded = true;
+                } else if (directory != null) {
+                    final Path path = directory.resolve((Path) event.context());
+                    if (java.nio.file.Files.isDirectory(path)) {
+                        // files may have been created before the new directory is watched
+                        rescanNeeded = true;
+                    } else {
+                        offerCandidate(path);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+        if (rescanNeeded) {
+            rescan();
+        }
+    }
 
-                File realOutputDir = new File(outputDirectory.getAbsolutePath() + enclosingFolderName);
-                if (!realOutputDir.exists())
-                    realOutputDir.mkdirs();
+    private void offerCandidate(Path path) {
+        if (path.getFileName().toString().contains(processingFileExtension) || queued.contains(path)) {
+            return;
+        }
+        if (inputPath.relativize(path).getNameCount() > MAX_DEPTH) {
+            return;
+        }
+        if (inputFilenameFilter.accept(path.getParent().toFile(), path.getFileName().toString())) {
+            candidates.add(path);
+        }
+    }
 
-                File finishedFile = new File(realOutputDir, inputFile.getName());
+    public void closeAndMoveToFinished(InputStream inputStream, File inputFile, File inputDirectory, File outputDirectory, boolean errored) throws IOException {
+        if (null != inputStream) {
+            log.info("Closing {}", inputFile);
+            inputStream.close();
 
-                if (errored) {
-                    log.error("Error during processing, moving {} to {}.", inputFile, outputDirectory);
-                }
+            String enclosingFolderName = inputFile.getAbsolutePath()
+                    .replaceAll(inputDirectory.getAbsolutePath(), "")
+                    .replaceAll(inputFile.getName(), "");
 
-                if (inputFile.exists()) {
-                    Files.move(inputFile, finishedFile);
-                } else {
-                    log.trace("Unable to move file {}, may be already moved.", inputFile);
-                }
+            File realOutputDir = new File(outputDirectory.getAbsolutePath() + enclosingFolderName);
+            if (!realOutputDir.exists())
+                realOutputDir.mkdirs();
 
-                File processingFile = processingFile(inputFile);
-                if (processingFile.exists()) {
-                    log.info("Removing processing file {}", processingFile);
-                    processingFile.delete();
-                }
+            File finishedFile = new File(realOutputDir, inputFile.getName());
 
+            if (errored) {
+                log.error("Error during processing, moving {} to {}.", inputFile, outputDirectory);
             }
-        } finally {
-            updateLock.unlock();
-        }
-
-    }
 
-    public File take() throws InterruptedException {
-        final ReentrantLock updateLock = this.updateLock;
-        updateLock.lock();
+            if (inputFile.exists()) {
+                Files.move(inputFile, finishedFile);
+            } else {
+                log.trace("Unable to move file {}, may be already moved.", inputFile);
+            }
 
-        File file = null;
-        try {
-            file = fileQueue.poll();
-            if (file != null) {
-                File processingFile = processingFile(file);
-                Files.touch(processingFile);
+            File processingFile = processingFile(inputFile);
+            if (processingFile.exists()) {
+                log.info("Removing processing file {}", processingFile);
+                processingFile.delete();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            updateLock.unlock();
+            queued.remove(inputFile.getAbsoluteFile().toPath());
         }
+    }
 
-        return file;
+    /**
+     * @return the next file claimed for the calling task, or null if there is none
+     */
+    public File take() {
+        File file;
+        while ((file = fileQueue.poll()) != null) {
+            try {
+                if (file.exists() && processingFile(file).createNewFile()) {
+                    return file;
+                }
+                log.trace("Skipping {} because it was claimed by another task.", file);
+            } catch (IOException e) {
+                log.error("Unable to create the processing file of {}", file, e);
+            }
+            queued.remove(file.toPath());
+        }
+        return null;
     }
 
     File processingFile(File input) {
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.connect.spooldir;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+public class SpoolDirSourceTaskTest {
+
+    private static final byte[] CONTENT = "id,host\n1,host1\n2,host2\n".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] read(File file) throws IOException {
+        try (InputStream in = SpoolDirSourceTask.open(file, 16)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void plainFilesAreReadAsIs() throws IOException {
+        final File file = folder.newFile("plain.csv");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(CONTENT);
+        }
+        Assert.assertArrayEquals(CONTENT, read(file));
+    }
+
+    @Test
+    public void gzipFilesAreDecompressed() throws IOException {
+        final File file = folder.newFile("compressed.csv");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(CONTENT);
+        }
+        Assert.assertArrayEquals(CONTENT, read(file));
+    }
+
+    @Test
+    public void zstdFilesAreDecompressed() throws IOException {
+        final File file = folder.newFile("compressed.csv");
+        try (OutputStream out = new ZstdOutputStream(new FileOutputStream(file))) {
+            out.write(CONTENT);
+        }
+        Assert.assertArrayEquals(CONTENT, read(file));
+    }
+
+    @Test
+    public void shortFilesAreReadAsIs() throws IOException {
+        final File empty = folder.newFile("empty.csv");
+        Assert.assertArrayEquals(new byte[0], read(empty));
+
+        // starts like a gzip file, but too short to be one
+        final File gzipPrefix = folder.newFile("short.csv");
+        try (OutputStream out = new FileOutputStream(gzipPrefix)) {
+            out.write(new byte[]{(byte) 0x1f});
+        }
+        Assert.assertArrayEquals(new byte[]{(byte) 0x1f}, read(gzipPrefix));
+    }
+}
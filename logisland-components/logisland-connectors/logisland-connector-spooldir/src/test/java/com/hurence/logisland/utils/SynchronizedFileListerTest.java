@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.utils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SynchronizedFileListerTest {
+
+    private static final String PATTERN = "^.*\\.csv$";
+    private static final String PROCESSING = ".PROCESSING";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File input;
+    private File finished;
+
+    @Before
+    public void setUp() throws IOException {
+        input = folder.newFolder("input");
+        finished = folder.newFolder("finished");
+    }
+
+    private SynchronizedFileLister lister(long minimumFileAgeMS) {
+        return SynchronizedFileLister.getInstance(input, PATTERN, minimumFileAgeMS, PROCESSING, 16);
+    }
+
+    private File write(File directory, String name) throws IOException {
+        final File file = new File(directory, name);
+        Files.write(file.toPath(), "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Lists and claims files until none is left, waiting for the ones which are expected but not seen yet.
+     */
+    private static Set<String> takeAll(SynchronizedFileLister lister, int expected) throws InterruptedException {
+        final Set<String> names = new HashSet<>();
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (names.size() < expected && System.currentTimeMillis() < deadline) {
+            lister.updateList();
+            File file;
+            while ((file = lister.take()) != null) {
+                Assert.assertTrue(names.add(file.getName()));
+            }
+            if (names.size() < expected) {
+                Thread.sleep(50);
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void tasksShareTheListerOfTheirSettings() {
+        final int instances = SynchronizedFileLister.instances();
+        final SynchronizedFileLister first = lister(0);
+        final SynchronizedFileLister second = lister(0);
+        final SynchronizedFileLister otherSettings = lister(1000);
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, otherSettings);
+        Assert.assertEquals(instances + 2, SynchronizedFileLister.instances());
+
+        first.release();
+        otherSettings.release();
+        Assert.assertEquals(instances + 1, SynchronizedFileLister.instances());
+
+        second.release();
+        Assert.assertEquals(instances, SynchronizedFileLister.instances());
+        final SynchronizedFileLister next = lister(0);
+        Assert.assertNotSame(first, next);
+        next.release();
+    }
+
+    @Test
+    public void listsExistingAndNewFiles() throws Exception {
+        write(input, "existing.csv");
+        write(input, "ignored.txt");
+        final SynchronizedFileLister lister = lister(0);
+        try {
+            Assert.assertEquals(setOf("existing.csv"), takeAll(lister, 1));
+
+            // reported by the watch service, in a sub directory created after the first walk
+            final File sub = new File(input, "sub");
+            Assert.assertTrue(sub.mkdir());
+            write(input, "created.csv");
+            write(sub, "nested.csv");
+            Assert.assertEquals(setOf("created.csv", "nested.csv"), takeAll(lister, 2));
+        } finally {
+            lister.release();
+        }
+    }
+
+    @Test
+    public void eachFileIsClaimedOnce() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            write(input, "file" + i + ".csv");
+        }
+        // two listers of the same directory, as tasks of two connectors or JVMs
+        final SynchronizedFileLister first = lister(0);
+        final SynchronizedFileLister second = lister(1);
+        try {
+            first.updateList();
+            second.updateList();
+            final Set<String> claimed = new HashSet<>();
+            File file;
+            while ((file = first.take()) != null) {
+                Assert.assertTrue(claimed.add(file.getName()));
+            }
+            while ((file = second.take()) != null) {
+                Assert.assertTrue(claimed.add(file.getName()));
+            }
+            Assert.assertEquals(10, claimed.size());
+            Assert.assertTrue(new File(input, "file0.csv" + PROCESSING).exists());
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void finishedFilesAreMoved() throws Exception {
+        write(input, "done.csv");
+        final SynchronizedFileLister lister = lister(0);
+        try {
+            lister.updateList();
+            final File file = lister.take();
+            Assert.assertNotNull(file);
+            lister.closeAndMoveToFinished(new FileInputStream(file), file, input, finished, false);
+
+            Assert.assertFalse(file.exists());
+            Assert.assertFalse(new File(input, "done.csv" + PROCESSING).exists());
+            Assert.assertTrue(new File(finished, "done.csv").exists());
+            lister.updateList();
+            Assert.assertNull(lister.take());
+        } finally {
+            lister.release();
+        }
+    }
+
+    @Test
+    public void youngFilesWaitForTheirMinimumAge() throws Exception {
+        write(input, "young.csv");
+        final SynchronizedFileLister lister = lister(60000);
+        try {
+            lister.updateList();
+            Assert.assertNull(lister.take());
+
+            Assert.assertTrue(new File(input, "young.csv").setLastModified(System.currentTimeMillis() - 120000));
+            lister.updateList();
+            Assert.assertNotNull(lister.take());
+        } finally {
+            lister.release();
+        }
+    }
+
+    private static Set<String> setOf(String... names) {
+        final Set<String> set = new HashSet<>();
+        for (String name : names) {
+            set.add(name);
+        }
+        return set;
+    }
+}
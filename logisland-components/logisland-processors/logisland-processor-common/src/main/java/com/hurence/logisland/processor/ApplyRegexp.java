@@ -16,6 +16,7 @@
 package com.hurence.logisland.processor;
 
 import com.hurence.logisland.annotation.behavior.DynamicProperty;
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
 import com.hurence.logisland.annotation.documentation.*;
 import com.hurence.logisland.component.AllowableValue;
 import com.hurence.logisland.component.PropertyDescriptor;
@@ -37,6 +38,7 @@ import java.util.regex.Pattern;
         value = "another regex that could match",
         description = "This processor is used to create a new set of fields from one field (using regexp).")
 @ExtraDetailFile("./details/common-processors/ApplyRegexp-Detail.rst")
+@ThreadSafe
 public class ApplyRegexp extends AbstractProcessor {
 
     static final long serialVersionUID = 1413578915552852739L;
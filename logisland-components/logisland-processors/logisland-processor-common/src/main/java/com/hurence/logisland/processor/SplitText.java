@@ -16,6 +16,7 @@
 package com.hurence.logisland.processor;
 
 import com.hurence.logisland.annotation.behavior.DynamicProperty;
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
 import com.hurence.logisland.annotation.documentation.*;
 import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.record.*;
@@ -41,6 +42,7 @@ import java.util.regex.Pattern;
         description = "this regex will be tried if the main one has not matched. " +
                 "It must be in the form alt.value.regex.1 and alt.value.fields.1")
 @ExtraDetailFile("./details/common-processors/SplitText-Detail.rst")
+@ThreadSafe
 public class SplitText extends AbstractProcessor {
 
     static final long serialVersionUID = 1413578915552852739L;
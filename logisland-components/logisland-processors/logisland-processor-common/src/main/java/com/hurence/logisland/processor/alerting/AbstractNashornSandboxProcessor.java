@@ -30,8 +30,12 @@ import delight.nashornsandbox.NashornSandboxes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.script.ScriptException;
 import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @DynamicProperty(name = "field to add",
         supportsExpressionLanguage = false,
@@ -46,6 +50,11 @@ public abstract class AbstractNashornSandboxProcessor extends AbstractProcessor
      */
     private static final Map<String, String> DEFAULT_JS_STORAGE = Collections.synchronizedMap(new HashMap<>());
 
+    /**
+     * Record ids written as string literals in cache("...") calls, which can be fetched before running the scripts.
+     */
+    private static final Pattern CACHE_ID_PATTERN = Pattern.compile("cache\\(\\s*[\"']([^\"']+)[\"']\\s*\\)");
+
     public static final PropertyDescriptor MAX_CPU_TIME = new PropertyDescriptor.Builder()
             .name("max.cpu.time")
             .description("maximum CPU time in milliseconds allowed for script execution.")
@@ -125,6 +134,15 @@ public abstract class AbstractNashornSandboxProcessor extends AbstractProcessor
             .addValidator(StandardValidators.INTEGER_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor RULES_PARALLELISM = new PropertyDescriptor.Builder()
+            .name("rules.parallelism")
+            .description("The number of rules evaluated at the same time, each one in its own sandbox with the CPU time " +
+                    "and memory limits above.")
+            .required(false)
+            .defaultValue("1")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
     public static final PropertyDescriptor DATASTORE_CLIENT_SERVICE = new PropertyDescriptor.Builder()
             .name("datastore.client.service")
             .description("The instance of the Controller Service to use for accessing datastore.")
@@ -162,6 +180,15 @@ public abstract class AbstractNashornSandboxProcessor extends AbstractProcessor
     protected NashornSandbox sandbox;
     protected Map<String, String> dynamicTagValuesMap;
     protected String outputRecordType;
+    protected String cacheCollection;
+
+    /**
+     * One sandbox per rule evaluated concurrently, all of them defining the same functions.
+     */
+    private List<NashornSandbox> sandboxes = Collections.emptyList();
+    private BlockingQueue<NashornSandbox> idleSandboxes;
+    private ExecutorService rulesExecutor;
+    private static final AtomicInteger poolCounter = new AtomicInteger();
 
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
@@ -170,6 +197,7 @@ public abstract class AbstractNashornSandboxProcessor extends AbstractProcessor
         properties.add(MAX_MEMORY);
         properties.add(ALLOW_NO_BRACE);
         properties.add(MAX_PREPARED_STATEMENTS);
+        properties.add(RULES_PARALLELISM);
         properties.add(DATASTORE_CLIENT_SERVICE);
         properties.add(DATASTORE_CACHE_COLLECTION);
         properties.add(JS_CACHE_SERVICE);
@@ -203,7 +231,35 @@ public abstract class AbstractNashornSandboxProcessor extends AbstractProcessor
     public void init(ProcessContext context) throws InitializationException {
 
         super.init(context);
-        sandbox = NashornSandboxes.create();
+        shutdownSandboxes();
+
+        datastoreClientService = PluginProxy.rewrap(context.getPropertyValue(DATASTORE_CLIENT_SERVICE).asControllerService());
+        if (datastoreClientService == null) {
+            getLogger().error("Datastore client service is not initialized!");
+        }
+        cacheCollection = context.getPropertyValue(DATASTORE_CACHE_COLLECTION).asString();
+
+        final int parallelism = context.getPropertyValue(RULES_PARALLELISM).asInteger();
+        sandboxes = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            sandboxes.add(createSandbox(context));
+        }
+        sandbox = sandboxes.get(0);
+        idleSandboxes = new ArrayBlockingQueue<>(parallelism, false, sandboxes);
+        if (parallelism > 1) {
+            rulesExecutor = newDaemonPool(parallelism, "rules");
+        }
+
+        dynamicTagValuesMap = new HashMap<>();
+        outputRecordType = context.getPropertyValue(OUTPUT_RECORD_TYPE).asString();
+
+        this.setupDynamicProperties(context);
+
+
+    }
+
+    private NashornSandbox createSandbox(ProcessContext context) {
+        NashornSandbox sandbox = NashornSandboxes.create();
 
         CacheService<String, String> cacheService = PluginProxy.rewrap(context.getPropertyValue(JS_CACHE_SERVICE).asControllerService());
 
@@ -232,27 +288,147 @@ public abstract class AbstractNashornSandboxProcessor extends AbstractProcessor
         sandbox.setMaxMemory(maxMemory);
         sandbox.allowNoBraces(allowNoBrace);
         sandbox.setMaxPreparedStatements(maxPreparedStatements); // because preparing scripts for execution is expensive
-        sandbox.setExecutor(Executors.newSingleThreadExecutor());
-        //TODO properly shutdown Executor service in stop method when framework will support it
-        datastoreClientService = PluginProxy.rewrap(context.getPropertyValue(DATASTORE_CLIENT_SERVICE).asControllerService());
-        if (datastoreClientService == null) {
-            getLogger().error("Datastore client service is not initialized!");
-        }
+        sandbox.setExecutor(newDaemonPool(1, "sandbox"));
 
         sandbox.inject("cache", datastoreClientService);
+        sandbox.inject("cacheCollection", cacheCollection);
         sandbox.allow(DatastoreClientService.class);
         sandbox.allow(Record.class);
         sandbox.allow(StandardRecord.class);
         sandbox.allow(FieldType.class);
         sandbox.allow(FieldDictionary.class);
 
+        return sandbox;
+    }
 
-        dynamicTagValuesMap = new HashMap<>();
-        outputRecordType = context.getPropertyValue(OUTPUT_RECORD_TYPE).asString();
+    /**
+     * The threads are daemons which die when idle : as processors are never stopped, the pools of a replaced
+     * processor are collected with it, while the ones of a re-initialized processor are shut down by {@link #init}.
+     */
+    private static ExecutorService newDaemonPool(int threads, String name) {
+        final int poolId = poolCounter.incrementAndGet();
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "nashorn-" + name + "-" + poolId + "-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
 
-        this.setupDynamicProperties(context);
+    private void shutdownSandboxes() {
+        for (NashornSandbox sandbox : sandboxes) {
+            sandbox.getExecutor().shutdown();
+        }
+        if (rulesExecutor != null) {
+            rulesExecutor.shutdown();
+            rulesExecutor = null;
+        }
+    }
+
+    /**
+     * Allows the scripts of every sandbox to use the given class.
+     */
+    protected void allow(Class<?> clazz) {
+        for (NashornSandbox sandbox : sandboxes) {
+            sandbox.allow(clazz);
+        }
+    }
+
+    /**
+     * Evaluates a script defining functions in every sandbox, so that they are parsed and sanitized only once.
+     */
+    protected void define(String script) throws ScriptException {
+        for (NashornSandbox sandbox : sandboxes) {
+            sandbox.eval(script);
+        }
+    }
+
+    /**
+     * @return the record ids written as literals in the cache("...") calls of the given script
+     */
+    protected static Set<String> referencedRecordIds(String script) {
+        Set<String> ids = new LinkedHashSet<>();
+        Matcher matcher = CACHE_ID_PATTERN.matcher(script);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
 
+    /**
+     * Fetches the given records of the cache collection in a single multiGet, keeping their field types.
+     * The ids which are not found are mapped to null, so that the scripts do not look them up again.
+     */
+    protected Map<String, Record> prefetch(Set<String> ids) {
+        final Map<String, Record> records = new HashMap<>();
+        if (datastoreClientService == null || ids.isEmpty()) {
+            return records;
+        }
+        final List<String> idList = new ArrayList<>(ids);
+        final List<Record> queries = new ArrayList<>(idList.size());
+        for (String id : idList) {
+            queries.add(new StandardRecord().setId(id));
+        }
+        final List<Record> found = datastoreClientService.multiGet(cacheCollection, queries);
+        for (int i = 0; i < idList.size(); i++) {
+            records.put(idList.get(i), found.get(i));
+        }
+        return records;
+    }
+
+    /**
+     * Calls a function defined with {@link #define(String)} in an idle sandbox, under its CPU time limit.
+     */
+    protected Object invoke(String function, Object... args) throws Exception {
+        NashornSandbox sandbox = idleSandboxes.take();
+        try {
+            return sandbox.getSandboxedInvocable().invokeFunction(function, args);
+        } finally {
+            idleSandboxes.add(sandbox);
+        }
+    }
 
+    /**
+     * Calls the function of each rule, concurrently when several sandboxes are configured.
+     * A rule whose function fails is logged and missing from the results.
+     *
+     * @param functions the function of each rule, by rule name
+     * @return the value returned by each rule, in the order of the given rules
+     */
+    protected Map<String, Object> invokeAll(Map<String, String> functions, Object... args) {
+        final Map<String, Object> results = new LinkedHashMap<>();
+        if (rulesExecutor == null) {
+            for (Map.Entry<String, String> rule : functions.entrySet()) {
+                try {
+                    results.put(rule.getKey(), invoke(rule.getValue(), args));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return results;
+                } catch (Exception e) {
+                    logger.error("rule {} failed : {}", rule.getKey(), e.toString());
+                }
+            }
+            return results;
+        }
+
+        final Map<String, Future<Object>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, String> rule : functions.entrySet()) {
+            futures.put(rule.getKey(), rulesExecutor.submit(() -> invoke(rule.getValue(), args)));
+        }
+        for (Map.Entry<String, Future<Object>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return results;
+            } catch (ExecutionException e) {
+                logger.error("rule {} failed : {}", future.getKey(), e.getCause().toString());
+            }
+        }
+        return results;
     }
 
-}
\ No newline at end of file
+}
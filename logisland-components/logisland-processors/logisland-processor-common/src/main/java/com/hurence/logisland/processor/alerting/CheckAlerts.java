@@ -21,7 +21,6 @@ import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.processor.ProcessContext;
 import com.hurence.logisland.record.FieldDictionary;
 import com.hurence.logisland.record.Record;
-import com.hurence.logisland.record.RecordDictionary;
 import com.hurence.logisland.record.StandardRecord;
 import com.hurence.logisland.validator.StandardValidators;
 import org.slf4j.Logger;
@@ -92,66 +91,97 @@ public class CheckAlerts extends AbstractNashornSandboxProcessor {
     private static final Logger logger = LoggerFactory.getLogger(CheckAlerts.class);
 
 
+    private static final String PROFILE_ACTIVATION_FUNCTION = "profile_activation";
+
+    /**
+     * The function of each alert, by alert name.
+     */
+    private final Map<String, String> alertFunctions = new LinkedHashMap<>();
+    /**
+     * The cached records referenced by the activation condition and the alerts.
+     */
+    private final Set<String> referencedIds = new HashSet<>();
+
+
     private String expandCode(String rawCode) {
-        return rawCode.replaceAll("cache\\((\\S*)\\).value", "getValue($1)")
-                .replaceAll("cache\\((\\S*)\\).count", "getCount($1)")
-                .replaceAll("cache\\((\\S*)\\).duration", "getDuration($1)");
+        return rawCode.replaceAll("cache\\((\\S*)\\).value", "getValue(records, $1)")
+                .replaceAll("cache\\((\\S*)\\).count", "getCount(records, $1)")
+                .replaceAll("cache\\((\\S*)\\).duration", "getDuration(records, $1)");
     }
 
 
     @Override
     protected void setupDynamicProperties(ProcessContext context) {
 
-        sandbox.allow(System.class);
-        sandbox.allow(Date.class);
-        sandbox.allow(Double.class);
+        allow(System.class);
+        allow(Date.class);
+        allow(Double.class);
         String profileActivationRule = context.getPropertyValue(PROFILE_ACTIVATION_CONDITION).asString();
 
-        StringBuilder sbActivation = new StringBuilder();
-        sbActivation.append("var alert = false;\n")
-                .append("function getValue(id) {\n")
-                .append("  var record = cache.get(\"test\", new com.hurence.logisland.record.StandardRecord().setId(id));\n")
-                .append("  if(record === null) return Double.NaN;\n")
-                .append("  else return record.getField(com.hurence.logisland.record.FieldDictionary.RECORD_VALUE).asDouble(); \n};\n")
-                .append("function getDuration(id) {\n")
-                .append("  var record = cache.get(\"test\", new com.hurence.logisland.record.StandardRecord().setId(id));\n")
-                .append("  if(record === null) return -1;\n")
+        alertFunctions.clear();
+        referencedIds.clear();
+
+        // records are the cached records fetched for the whole batch
+        StringBuilder sbHelpers = new StringBuilder();
+        sbHelpers.append("function getRecord(records, id) {\n")
+                .append("  if (records.containsKey(id)) { return records.get(id); }\n")
+                .append("  return cache.get(cacheCollection, new com.hurence.logisland.record.StandardRecord().setId(id));\n};\n")
+                .append("function getValue(records, id) {\n")
+                .append("  var record = getRecord(records, id);\n")
+                .append("  if(record === null) { return Double.NaN; }\n")
+                .append("  else { return record.getField(com.hurence.logisland.record.FieldDictionary.RECORD_VALUE).asDouble(); }\n};\n")
+                .append("function getDuration(records, id) {\n")
+                .append("  var record = getRecord(records, id);\n")
+                .append("  if(record === null) { return -1; }\n")
                 .append("  else { \n")
                 .append("    var duration =  new Date().getTime() - record.getTime().getTime();\n")
                 .append("    return duration; \n}};\n")
-                .append("function getCount(id) {\n")
-                .append("  var record = cache.get(\"test\", new com.hurence.logisland.record.StandardRecord().setId(id));\n")
-                .append("  if(record === null) return -1;\n")
-                .append("  else return record.getField(\"record_count\").asLong(); \n};\n")
-                .append("try {\n")
-                .append("if( ")
-                .append(expandCode(profileActivationRule))
-                .append(" ) { \n");
+                .append("function getCount(records, id) {\n")
+                .append("  var record = getRecord(records, id);\n")
+                .append("  if(record === null) { return -1; }\n")
+                .append("  else { return record.getField(\"record_count\").asLong(); }\n};\n")
+                .append("function ").append(PROFILE_ACTIVATION_FUNCTION).append("(records) {\n")
+                .append("  try {\n")
+                .append("    if( ").append(expandCode(profileActivationRule)).append(" ) { return true; }\n")
+                .append("  } catch(error) {}\n")
+                .append("  return false;\n};\n");
+        try {
+            define(sbHelpers.toString());
+        } catch (ScriptException e) {
+            // every alert is off, as when the activation condition fails
+            logger.error(e.toString());
+            return;
+        }
+        referencedIds.addAll(referencedRecordIds(profileActivationRule));
 
 
+        int index = 0;
         for (final Map.Entry<PropertyDescriptor, String> entry : context.getProperties().entrySet()) {
             if (!entry.getKey().isDynamic()) {
                 continue;
             }
 
             String key = entry.getKey().getName();
-            String value = expandCode(entry.getValue());
-            StringBuilder sb = new StringBuilder(sbActivation);
-            sb.append("  if( ")
-                    .append(value)
-                    .append(" ) { alert = true; }\n")
-                    .append("}\n")
-                    .append("} catch(error) {}");
-
-            dynamicTagValuesMap.put(entry.getKey().getName(), sb.toString());
-
-            //  System.out.println(sb.toString());
-            // logger.debug(sb.toString());
-        }
-
-
-
+            String function = "alert_" + index++;
+            StringBuilder sb = new StringBuilder();
+            sb.append("function ").append(function).append("(records) {\n")
+                    .append("  try {\n")
+                    .append("    if( ")
+                    .append(expandCode(entry.getValue()))
+                    .append(" ) { return true; }\n")
+                    .append("  } catch(error) {}\n")
+                    .append("  return false;\n")
+                    .append("};");
 
+            try {
+                define(sb.toString());
+                alertFunctions.put(key, function);
+                referencedIds.addAll(referencedRecordIds(entry.getValue()));
+            } catch (ScriptException e) {
+                logger.error("alert {} is ignored : {}", key, e.toString());
+            }
+            dynamicTagValuesMap.put(key, sb.toString());
+        }
     }
 
 
@@ -160,27 +190,31 @@ public class CheckAlerts extends AbstractNashornSandboxProcessor {
 
 
         List<Record> outputRecords = new ArrayList<>(records);
-        for (final Map.Entry<String, String> entry : dynamicTagValuesMap.entrySet()) {
-            try {
-                sandbox.eval(entry.getValue());
-                Boolean alert = (Boolean) sandbox.get("alert");
-                if (alert) {
-                    Record alertRecord = new StandardRecord(outputRecordType)
-                            .setId(entry.getKey())
-                            .setStringField(FieldDictionary.RECORD_VALUE, context.getPropertyValue(entry.getKey()).asString());
-                    outputRecords.add(alertRecord);
-
-                    logger.info(alertRecord.toString());
-                }
-            } catch (ScriptException e) {
-                Record errorRecord = new StandardRecord(RecordDictionary.ERROR)
-                        .setId(entry.getKey())
-                        .addError("ScriptException", e.getMessage());
-                // outputRecords.add(errorRecord);
-                logger.error(e.toString());
+        if (alertFunctions.isEmpty()) {
+            return outputRecords;
+        }
+
+        Map<String, Record> cachedRecords = prefetch(referencedIds);
+        try {
+            if (!Boolean.TRUE.equals(invoke(PROFILE_ACTIVATION_FUNCTION, cachedRecords))) {
+                return outputRecords;
+            }
+        } catch (Exception e) {
+            logger.error(e.toString());
+            return outputRecords;
+        }
+
+        for (final Map.Entry<String, Object> alert : invokeAll(alertFunctions, cachedRecords).entrySet()) {
+            if (Boolean.TRUE.equals(alert.getValue())) {
+                Record alertRecord = new StandardRecord(outputRecordType)
+                        .setId(alert.getKey())
+                        .setStringField(FieldDictionary.RECORD_VALUE, context.getPropertyValue(alert.getKey()).asString());
+                outputRecords.add(alertRecord);
+
+                logger.info(alertRecord.toString());
             }
         }
 
         return outputRecords;
     }
-}
\ No newline at end of file
+}
@@ -21,16 +21,11 @@ import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.processor.ProcessContext;
 import com.hurence.logisland.record.FieldDictionary;
 import com.hurence.logisland.record.Record;
-import com.hurence.logisland.record.RecordDictionary;
-import com.hurence.logisland.record.StandardRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.script.ScriptException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @Category(ComponentCategory.ENRICHMENT)
 @Tags({"record", "fields", "Add"})
@@ -50,15 +45,35 @@ public class ComputeTags extends AbstractNashornSandboxProcessor {
     private static final Logger logger = LoggerFactory.getLogger(ComputeTags.class);
 
 
+    /**
+     * The function of each tag, by tag name.
+     */
+    private final Map<String, String> tagFunctions = new LinkedHashMap<>();
+    /**
+     * The cached records referenced by the tag formulas.
+     */
+    private final Set<String> referencedIds = new HashSet<>();
+
+
     @Override
     protected void setupDynamicProperties(ProcessContext context) {
 
+        tagFunctions.clear();
+        referencedIds.clear();
+
+        // records are the cached records fetched for the whole batch
         StringBuilder sbActivation = new StringBuilder();
         sbActivation
-                .append("function getValue(id) {\n")
-                .append("  var record = cache.get(\"test\", new com.hurence.logisland.record.StandardRecord().setId(id));\n")
-                .append("  if(record === undefined) return Double.NaN;\n")
-                .append("  else return record.getField(com.hurence.logisland.record.FieldDictionary.RECORD_VALUE).asDouble(); \n};\n");
+                .append("function getValue(records, id) {\n")
+                .append("  var record = records.containsKey(id) ? records.get(id) : cache.get(cacheCollection, new com.hurence.logisland.record.StandardRecord().setId(id));\n")
+                .append("  if(record === undefined) { return Double.NaN; }\n")
+                .append("  else { return record.getField(com.hurence.logisland.record.FieldDictionary.RECORD_VALUE).asDouble(); }\n};\n");
+        try {
+            define(sbActivation.toString());
+        } catch (ScriptException e) {
+            logger.error(e.toString());
+            return;
+        }
 
 
         for (final Map.Entry<PropertyDescriptor, String> entry : context.getProperties().entrySet()) {
@@ -67,15 +82,17 @@ public class ComputeTags extends AbstractNashornSandboxProcessor {
             }
 
             String key = entry.getKey().getName();
-            String value = entry.getValue().replaceAll("cache\\((\\S*)\\).value", "getValue($1)");
+            String value = entry.getValue().replaceAll("cache\\((\\S*)\\).value", "getValue(records, $1)");
 
-            StringBuilder sb = new StringBuilder(sbActivation);
+            StringBuilder sb = new StringBuilder();
             sb.append("function ")
                     .append(key)
-                    .append("() { ")
+                    .append("(records) { ")
                     .append(value)
                     .append(" }; \n");
-            sb.append("try {\n");
+            sb.append("function tag_")
+                    .append(key)
+                    .append("(records) {\n");
             sb.append("var record_")
                     .append(key)
                     .append(" = new com.hurence.logisland.record.StandardRecord(\"")
@@ -84,18 +101,27 @@ public class ComputeTags extends AbstractNashornSandboxProcessor {
                     .append(".setId(\"")
                     .append(key)
                     .append("\");\n");
+            sb.append("try {\n");
             sb.append("record_")
                     .append(key)
                     .append(".setField( ")
                     .append("\"record_value\",")
                     .append(" com.hurence.logisland.record.FieldType.DOUBLE,")
                     .append(key)
-                    .append("());\n");
-            sb.append("}\ncatch(error){}");
+                    .append("(records));\n");
+            sb.append("}\ncatch(error){}\n");
+            sb.append("return record_")
+                    .append(key)
+                    .append(";\n};");
 
-            dynamicTagValuesMap.put(entry.getKey().getName(), sb.toString());
-            //     System.out.println(sb.toString());
-            //    logger.debug(sb.toString());
+            try {
+                define(sb.toString());
+                tagFunctions.put(key, "tag_" + key);
+                referencedIds.addAll(referencedRecordIds(entry.getValue()));
+            } catch (ScriptException e) {
+                logger.error("tag {} is ignored : {}", key, e.toString());
+            }
+            dynamicTagValuesMap.put(key, sb.toString());
         }
     }
 
@@ -103,23 +129,16 @@ public class ComputeTags extends AbstractNashornSandboxProcessor {
     public Collection<Record> process(ProcessContext context, Collection<Record> records) {
 
         List<Record> outputRecords = new ArrayList<>(records);
-        for (final Map.Entry<String, String> entry : dynamicTagValuesMap.entrySet()) {
-
+        if (tagFunctions.isEmpty()) {
+            return outputRecords;
+        }
 
-            try {
-                sandbox.eval(entry.getValue());
-                Record cached = (Record) sandbox.get("record_" + entry.getKey());
-                if (cached.hasField(FieldDictionary.RECORD_VALUE))
-                    outputRecords.add(cached);
-            } catch (ScriptException e) {
-                Record errorRecord = new StandardRecord(RecordDictionary.ERROR)
-                        .setId(entry.getKey())
-                        .addError("ScriptException", e.getMessage());
-                //  outputRecords.add(errorRecord);
-                logger.error(e.toString());
-            }
+        Map<String, Record> cachedRecords = prefetch(referencedIds);
+        for (final Object tag : invokeAll(tagFunctions, cachedRecords).values()) {
+            if (tag instanceof Record && ((Record) tag).hasField(FieldDictionary.RECORD_VALUE))
+                outputRecords.add((Record) tag);
         }
 
         return outputRecords;
     }
-}
\ No newline at end of file
+}
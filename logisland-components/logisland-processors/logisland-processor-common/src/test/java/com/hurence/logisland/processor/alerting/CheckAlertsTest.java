@@ -22,14 +22,16 @@ import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.record.StandardRecord;
 import com.hurence.logisland.service.datastore.DatastoreClientService;
+import com.hurence.logisland.service.datastore.MultiGetQueryRecord;
+import com.hurence.logisland.service.datastore.MultiGetResponseRecord;
 import com.hurence.logisland.util.runner.TestRunner;
 import com.hurence.logisland.util.runner.TestRunners;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class CheckAlertsTest {
 
@@ -153,6 +155,80 @@ public class CheckAlertsTest {
     }
 
 
+    /**
+     * Counts the requests sent to the datastore.
+     */
+    private static class CountingDatastoreService extends MockDatastoreService {
+
+        private final AtomicInteger multiGets = new AtomicInteger();
+        private final AtomicInteger typedMultiGets = new AtomicInteger();
+        private final AtomicInteger gets = new AtomicInteger();
+
+        @Override
+        public List<MultiGetResponseRecord> multiGet(List<MultiGetQueryRecord> multiGetQueryRecords) {
+            multiGets.incrementAndGet();
+            return super.multiGet(multiGetQueryRecords);
+        }
+
+        @Override
+        public List<Record> multiGet(String collectionName, List<Record> records) {
+            typedMultiGets.incrementAndGet();
+            return super.multiGet(collectionName, records);
+        }
+
+        @Override
+        public Record get(String collectionName, Record record) {
+            gets.incrementAndGet();
+            return super.get(collectionName, record);
+        }
+    }
+
+    @Test
+    public void testParallelRulesWithPrefetchedRecords() throws InitializationException {
+
+        // create the controller service and link it to the test processor
+        final CountingDatastoreService service = new CountingDatastoreService();
+        getCacheRecords().forEach(r -> service.put("test", r, false));
+
+        final CheckAlerts processor = new CheckAlerts();
+        final TestRunner runner = TestRunners.newTestRunner(processor);
+        runner.setProperty(CheckAlerts.MAX_CPU_TIME, "200");
+        runner.setProperty(CheckAlerts.MAX_MEMORY, "12800000");
+        runner.setProperty(CheckAlerts.MAX_PREPARED_STATEMENTS, "100");
+        runner.setProperty(CheckAlerts.ALLOW_NO_BRACE, "false");
+        runner.setProperty(CheckAlerts.RULES_PARALLELISM, "4");
+        runner.setProperty(CheckAlerts.PROFILE_ACTIVATION_CONDITION, "cache(\"cached_id1\").value > 10.0 && cache(\"cached_id2\").value >= 0");
+        for (int i = 0; i < 10; i++) {
+            runner.setProperty("avib_ok_" + i, "cache(\"cached_id1\").value > " + i);        // ok
+            runner.setProperty("avib_ko_" + i, "cache(\"cached_id3\").value > 10 + " + i);   // ko
+        }
+        runner.setProperty("avib_count", "cache(\"cached_id1\").count > 4");                 // ok
+        runner.setProperty("avib_duration", "cache(\"cached_id2\").duration > 10000");       // ok
+
+        runner.setProperty(ComputeTags.DATASTORE_CLIENT_SERVICE, service.getIdentifier());
+        runner.addControllerService(service.getIdentifier(), service);
+        runner.enableControllerService(service);
+
+        runner.assertValid();
+        runner.run();
+        runner.assertAllInputRecordsProcessed();
+        runner.assertOutputRecordsCount(12);
+        runner.assertOutputErrorCount(0);
+
+        // the 3 cached records are fetched in a single round trip for all the rules
+        assertEquals(1, service.typedMultiGets.get());
+        assertEquals(0, service.multiGets.get());
+        assertEquals(0, service.gets.get());
+
+        // and they keep their field types
+        Map<String, Record> prefetched = processor.prefetch(new HashSet<>(Arrays.asList("cached_id1", "unknown_id")));
+        assertEquals(FieldType.DOUBLE, prefetched.get("cached_id1").getField(FieldDictionary.RECORD_VALUE).getType());
+        assertEquals(12.45, prefetched.get("cached_id1").getField(FieldDictionary.RECORD_VALUE).asDouble(), 0.0);
+        assertTrue(prefetched.containsKey("unknown_id"));
+        assertNull(prefetched.get("unknown_id"));
+    }
+
+
     private Collection<Record> getCacheRecords() {
         Collection<Record> lookupRecords = new ArrayList<>();
 
@@ -129,6 +129,15 @@ public class MockDatastoreService implements DatastoreClientService {
         return collections.get(collectionName).get(record.getId());
     }
 
+    @Override
+    public List<Record> multiGet(String collectionName, List<Record> records) throws DatastoreClientServiceException {
+        List<Record> results = new ArrayList<>();
+        for (Record record : records) {
+            results.add(collections.get(collectionName).get(record.getId()));
+        }
+        return results;
+    }
+
     @Override
     public Collection<Record> query(String query) {
         return Collections.emptyList();
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.netflow;
+
+import com.hurence.logisland.record.CompactRecord;
+import com.hurence.logisland.record.Record;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Flyweight decoder of Netflow v5, v9 and IPFIX (v10) packets.
+ * <p>
+ * The packet is wrapped once in a {@link ByteBuffer} and every value is read in place at its absolute offset,
+ * numbers are written unboxed into {@link CompactRecord}s and IPv4 addresses are formatted without going through
+ * {@link java.net.InetAddress}. v9 and IPFIX data records are decoded with the templates previously received from
+ * the same exporter, data sets whose template is still unknown are skipped.
+ * <p>
+ * A decoder is not thread safe: use one per thread (it is cheap to create), they can share the template cache.
+ */
+final class NetflowDecoder {
+
+    static final int V5_HEADER_LENGTH = 24;
+    static final int V5_FLOW_LENGTH = 48;
+    static final int V9_HEADER_LENGTH = 20;
+    static final int IPFIX_HEADER_LENGTH = 16;
+
+    private static final int V9_TEMPLATE_FLOWSET = 0;
+    private static final int V9_OPTIONS_TEMPLATE_FLOWSET = 1;
+    private static final int IPFIX_TEMPLATE_SET = 2;
+    private static final int IPFIX_OPTIONS_TEMPLATE_SET = 3;
+    private static final int MIN_DATA_SET_ID = 256;
+    private static final int ENTERPRISE_BIT = 0x8000;
+
+    private final NetflowTemplateCache templates;
+    private final String recordType;
+    private final StringBuilder text = new StringBuilder(39);
+    private ByteBuffer buffer;
+    private int skippedSets;
+
+    NetflowDecoder(NetflowTemplateCache templates, String recordType) {
+        this.templates = templates;
+        this.recordType = recordType;
+    }
+
+    /**
+     * Decode a packet, adding a record per flow to out. The flows decoded before a malformed part of the packet
+     * are kept.
+     *
+     * @param packet   the netflow packet
+     * @param exporter identifies the exporter of the packet for the template cache
+     * @param out      where the flow records are added
+     * @return the number of flow records added
+     * @throws InvalidNetflowPacketException if the version is not supported or the packet is truncated
+     */
+    int decode(byte[] packet, String exporter, Collection<Record> out) throws InvalidNetflowPacketException {
+        buffer = ByteBuffer.wrap(packet);
+        require(0, 2, "version");
+        int version = u16(0);
+        switch (version) {
+            case 5:
+                return decodeV5(out);
+            case 9:
+                require(0, V9_HEADER_LENGTH, "v9 header");
+                return decodeSets(exporter, u32(16), u32(8) * 1000, V9_HEADER_LENGTH, buffer.limit(), false, out);
+            case 10:
+                require(0, IPFIX_HEADER_LENGTH, "IPFIX header");
+                int length = u16(2);
+                if (length < IPFIX_HEADER_LENGTH || length > buffer.limit()) {
+                    throw new InvalidNetflowPacketException("IPFIX message length " + length
+                            + " does not match the packet length " + buffer.limit());
+                }
+                return decodeSets(exporter, u32(12), u32(4) * 1000, IPFIX_HEADER_LENGTH, length, true, out);
+            default:
+                throw new InvalidNetflowPacketException("unsupported netflow version " + version);
+        }
+    }
+
+    /**
+     * @return the number of data sets skipped so far because their template was unknown
+     */
+    int getSkippedSets() {
+        return skippedSets;
+    }
+
+    private int decodeV5(Collection<Record> out) throws InvalidNetflowPacketException {
+        require(0, V5_HEADER_LENGTH, "v5 header");
+        int count = u16(2);
+        long time = u32(8) * 1000;
+        require(V5_HEADER_LENGTH, count * V5_FLOW_LENGTH, count + " v5 flows");
+
+        for (int i = 0; i < count; i++) {
+            int o = V5_HEADER_LENGTH + i * V5_FLOW_LENGTH;
+            CompactRecord evt = new CompactRecord(recordType);
+            evt.setTime(time);
+            evt.setStringField("src_ip4", ipv4(o));
+            evt.setStringField("dst_ip4", ipv4(o + 4));
+            evt.setStringField("nexthop", ipv4(o + 8));
+            evt.setIntValue("input", u16(o + 12));
+            evt.setIntValue("output", u16(o + 14));
+            evt.setLongValue("dPkts", u32(o + 16));
+            evt.setLongValue("dOctets", u32(o + 20));
+            evt.setLongValue("first", u32(o + 24));
+            evt.setLongValue("last", u32(o + 28));
+            evt.setIntValue("src_port", u16(o + 32));
+            evt.setIntValue("dst_port", u16(o + 34));
+            // o + 36 is pad1
+            evt.setIntValue("flags", u8(o + 37));
+            evt.setIntValue("nprot", u8(o + 38));
+            evt.setIntValue("tos", u8(o + 39));
+            evt.setIntValue("src_as", u16(o + 40));
+            evt.setIntValue("dst_as", u16(o + 42));
+            evt.setIntValue("src_mask", u8(o + 44));
+            evt.setIntValue("dst_mask", u8(o + 45));
+            out.add(evt);
+        }
+        return count;
+    }
+
+    /**
+     * decode the flowsets (v9) or sets (IPFIX) between offset and end
+     */
+    private int decodeSets(String exporter, long sourceId, long time, int offset, int end, boolean ipfix,
+                           Collection<Record> out) throws InvalidNetflowPacketException {
+        int flows = 0;
+        while (offset + 4 <= end) {
+            int setId = u16(offset);
+            int setLength = u16(offset + 2);
+            if (setLength < 4 || offset + setLength > end) {
+                throw new InvalidNetflowPacketException("set " + setId + " of length " + setLength
+                        + " at offset " + offset + " overflows the packet");
+            }
+            int setEnd = offset + setLength;
+            offset += 4;
+
+            if (setId >= MIN_DATA_SET_ID) {
+                NetflowTemplate template = templates.get(exporter, sourceId, setId);
+                if (template == null) {
+                    skippedSets++;
+                } else if (!template.isOptions()) {
+                    flows += decodeData(template, time, offset, setEnd, out);
+                }
+            } else if (setId == (ipfix ? IPFIX_TEMPLATE_SET : V9_TEMPLATE_FLOWSET)) {
+                decodeTemplates(exporter, sourceId, offset, setEnd, ipfix, false);
+            } else if (setId == IPFIX_OPTIONS_TEMPLATE_SET && ipfix) {
+                decodeTemplates(exporter, sourceId, offset, setEnd, true, true);
+            } else if (setId == V9_OPTIONS_TEMPLATE_FLOWSET && !ipfix) {
+                decodeV9OptionsTemplates(exporter, sourceId, offset, setEnd);
+            }
+            offset = setEnd;
+        }
+        return flows;
+    }
+
+    private void decodeTemplates(String exporter, long sourceId, int offset, int end, boolean ipfix, boolean options)
+            throws InvalidNetflowPacketException {
+        while (offset + 4 <= end) {
+            int templateId = u16(offset);
+            int fieldCount = u16(offset + 2);
+            offset += 4;
+
+            if (fieldCount == 0 && ipfix) {
+                // template withdrawal, the set id as template id withdraws all the templates of the set type
+                if (templateId == IPFIX_TEMPLATE_SET || templateId == IPFIX_OPTIONS_TEMPLATE_SET) {
+                    templates.removeAll(exporter, sourceId, templateId == IPFIX_OPTIONS_TEMPLATE_SET);
+                } else {
+                    templates.remove(exporter, sourceId, templateId);
+                }
+                continue;
+            }
+            if (templateId < MIN_DATA_SET_ID || fieldCount == 0) {
+                // padding up to the end of the set
+                return;
+            }
+            if (options) {
+                // scope field count, scope fields are decoded as any other element
+                require(offset, 2, "options template " + templateId);
+                offset += 2;
+            }
+
+            int[] types = new int[fieldCount];
+            long[] enterprises = new long[fieldCount];
+            int[] lengths = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                requireIn(offset, 4, end, "template " + templateId);
+                int type = u16(offset);
+                lengths[i] = u16(offset + 2);
+                offset += 4;
+                if (ipfix && (type & ENTERPRISE_BIT) != 0) {
+                    requireIn(offset, 4, end, "template " + templateId);
+                    enterprises[i] = u32(offset);
+                    offset += 4;
+                    type &= ~ENTERPRISE_BIT;
+                }
+                types[i] = type;
+            }
+            templates.put(exporter, sourceId, new NetflowTemplate(templateId, options, types, enterprises, lengths));
+        }
+    }
+
+    private void decodeV9OptionsTemplates(String exporter, long sourceId, int offset, int end)
+            throws InvalidNetflowPacketException {
+        while (offset + 6 <= end) {
+            int templateId = u16(offset);
+            int scopeLength = u16(offset + 2);
+            int optionLength = u16(offset + 4);
+            offset += 6;
+            if (templateId < MIN_DATA_SET_ID) {
+                return;
+            }
+
+            int fieldCount = (scopeLength + optionLength) / 4;
+            requireIn(offset, fieldCount * 4, end, "options template " + templateId);
+            int[] types = new int[fieldCount];
+            int[] lengths = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                types[i] = u16(offset);
+                lengths[i] = u16(offset + 2);
+                offset += 4;
+            }
+            templates.put(exporter, sourceId,
+                    new NetflowTemplate(templateId, true, types, new long[fieldCount], lengths));
+        }
+    }
+
+    private int decodeData(NetflowTemplate template, long time, int offset, int end, Collection<Record> out)
+            throws InvalidNetflowPacketException {
+        int minLength = template.getMinRecordLength();
+        if (minLength == 0) {
+            return 0;
+        }
+        int fieldCount = template.getFieldCount();
+        int flows = 0;
+        // what is left once no more record fits is padding
+        while (offset + minLength <= end) {
+            CompactRecord evt = new CompactRecord(recordType);
+            evt.setTime(time);
+            for (int i = 0; i < fieldCount; i++) {
+                int length = template.lengths[i];
+                if (length == NetflowTemplate.VARIABLE_LENGTH) {
+                    requireIn(offset, 1, end, "variable length field");
+                    length = u8(offset++);
+                    if (length == 255) {
+                        requireIn(offset, 2, end, "variable length field");
+                        length = u16(offset);
+                        offset += 2;
+                    }
+                }
+                requireIn(offset, length, end, "data record of template " + template.getId());
+                write(evt, template.kinds[i], template.names[i], offset, length);
+                offset += length;
+            }
+            out.add(evt);
+            flows++;
+        }
+        return flows;
+    }
+
+    private void write(CompactRecord evt, byte kind, String name, int offset, int length) {
+        switch (kind) {
+            case NetflowTemplate.INT:
+                evt.setIntValue(name, (int) unsigned(offset, length));
+                break;
+            case NetflowTemplate.LONG:
+                evt.setLongValue(name, unsigned(offset, length));
+                break;
+            case NetflowTemplate.IPV4:
+                evt.setStringField(name, ipv4(offset));
+                break;
+            case NetflowTemplate.IPV6:
+                evt.setStringField(name, ipv6(offset));
+                break;
+            case NetflowTemplate.PADDING:
+                break;
+            case NetflowTemplate.BYTES:
+                evt.setBytesField(name, Arrays.copyOfRange(buffer.array(), offset, offset + length));
+                break;
+            default:
+                if (length <= 8) {
+                    evt.setLongValue(name, unsigned(offset, length));
+                } else {
+                    evt.setBytesField(name, Arrays.copyOfRange(buffer.array(), offset, offset + length));
+                }
+        }
+    }
+
+    private void require(int offset, int length, String what) throws InvalidNetflowPacketException {
+        requireIn(offset, length, buffer.limit(), what);
+    }
+
+    private static void requireIn(int offset, int length, int end, String what) throws InvalidNetflowPacketException {
+        if (offset + length > end) {
+            throw new InvalidNetflowPacketException("truncated packet: " + what + " needs " + length
+                    + " bytes at offset " + offset + " but only " + Math.max(0, end - offset) + " are left");
+        }
+    }
+
+    private int u8(int offset) {
+        return buffer.get(offset) & 0xFF;
+    }
+
+    private int u16(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private long u32(int offset) {
+        return buffer.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * big endian unsigned value of 0 to 8 bytes (8 bytes ones may come out negative)
+     */
+    private long unsigned(int offset, int length) {
+        switch (length) {
+            case 1:
+                return u8(offset);
+            case 2:
+                return u16(offset);
+            case 4:
+                return u32(offset);
+            case 8:
+                return buffer.getLong(offset);
+            default:
+                long value = 0;
+                for (int i = 0; i < length; i++) {
+                    value = (value << 8) | u8(offset + i);
+                }
+                return value;
+        }
+    }
+
+    private String ipv4(int offset) {
+        text.setLength(0);
+        text.append(u8(offset)).append('.')
+                .append(u8(offset + 1)).append('.')
+                .append(u8(offset + 2)).append('.')
+                .append(u8(offset + 3));
+        return text.toString();
+    }
+
+    /**
+     * full form (no :: compression), like {@link java.net.Inet6Address#getHostAddress()}
+     */
+    private String ipv6(int offset) {
+        text.setLength(0);
+        for (int i = 0; i < 8; i++) {
+            if (i > 0) {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(u16(offset + 2 * i)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.netflow;
+
+import java.io.Serializable;
+
+/**
+ * A Netflow v9 or IPFIX template: the information elements of the data records exported with its id, and how
+ * each of them is written into a record.
+ * <p>
+ * Well known elements get the field names (and types) of the Netflow v5 records, any other element is named
+ * {@code field_<id>} (or {@code field_<enterprise>_<id>} for enterprise specific ones) and kept as a long when it
+ * has a fixed length of at most 8 bytes, as bytes otherwise.
+ */
+final class NetflowTemplate implements Serializable {
+
+    /**
+     * IPFIX length of a variable length element, the actual length prefixes each value
+     */
+    static final int VARIABLE_LENGTH = 65535;
+
+    static final byte INT = 0;
+    static final byte LONG = 1;
+    static final byte IPV4 = 2;
+    static final byte IPV6 = 3;
+    static final byte RAW = 4;
+    static final byte PADDING = 5;
+    static final byte BYTES = 6;
+
+    private final int id;
+    private final boolean options;
+    final int[] lengths;
+    final String[] names;
+    final byte[] kinds;
+    private final int minRecordLength;
+    private final boolean variableLength;
+
+    /**
+     * @param id          the template id
+     * @param options     true for an options template, whose data records describe the exporter and not flows
+     * @param types       the information element ids
+     * @param enterprises the enterprise numbers of the elements, 0 for IANA ones
+     * @param lengths     the element lengths, {@link #VARIABLE_LENGTH} for variable length IPFIX elements
+     */
+    NetflowTemplate(int id, boolean options, int[] types, long[] enterprises, int[] lengths) {
+        this.id = id;
+        this.options = options;
+        this.lengths = lengths;
+        this.names = new String[types.length];
+        this.kinds = new byte[types.length];
+        int min = 0;
+        boolean variable = false;
+        for (int i = 0; i < types.length; i++) {
+            if (lengths[i] == VARIABLE_LENGTH) {
+                variable = true;
+                min += 1;
+            } else {
+                min += lengths[i];
+            }
+            kinds[i] = kindOf(enterprises[i], types[i], lengths[i]);
+            names[i] = nameOf(enterprises[i], types[i], kinds[i]);
+        }
+        this.minRecordLength = min;
+        this.variableLength = variable;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    boolean isOptions() {
+        return options;
+    }
+
+    int getFieldCount() {
+        return kinds.length;
+    }
+
+    /**
+     * @return the length of a data record, the smallest one when the template has variable length elements
+     */
+    int getMinRecordLength() {
+        return minRecordLength;
+    }
+
+    boolean hasVariableLength() {
+        return variableLength;
+    }
+
+    private static byte kindOf(long enterprise, int type, int length) {
+        if (length == VARIABLE_LENGTH) {
+            return BYTES;
+        }
+        if (enterprise != 0) {
+            return RAW;
+        }
+        switch (type) {
+            case 4:     // protocolIdentifier
+            case 5:     // ipClassOfService
+            case 6:     // tcpControlBits
+            case 7:     // sourceTransportPort
+            case 9:     // sourceIPv4PrefixLength
+            case 10:    // ingressInterface
+            case 11:    // destinationTransportPort
+            case 13:    // destinationIPv4PrefixLength
+            case 14:    // egressInterface
+            case 16:    // bgpSourceAsNumber
+            case 17:    // bgpDestinationAsNumber
+                return length <= 4 ? INT : RAW;
+            case 1:     // octetDeltaCount
+            case 2:     // packetDeltaCount
+            case 21:    // flowEndSysUpTime
+            case 22:    // flowStartSysUpTime
+            case 152:   // flowStartMilliseconds
+            case 153:   // flowEndMilliseconds
+                return length <= 8 ? LONG : RAW;
+            case 8:     // sourceIPv4Address
+            case 12:    // destinationIPv4Address
+            case 15:    // ipNextHopIPv4Address
+                return length == 4 ? IPV4 : RAW;
+            case 27:    // sourceIPv6Address
+            case 28:    // destinationIPv6Address
+            case 62:    // ipNextHopIPv6Address
+                return length == 16 ? IPV6 : RAW;
+            case 210:   // paddingOctets
+                return PADDING;
+            default:
+                return RAW;
+        }
+    }
+
+    private static String nameOf(long enterprise, int type, byte kind) {
+        if (kind != RAW && kind != BYTES && kind != PADDING) {
+            switch (type) {
+                case 1: return "dOctets";
+                case 2: return "dPkts";
+                case 4: return "nprot";
+                case 5: return "tos";
+                case 6: return "flags";
+                case 7: return "src_port";
+                case 8: return "src_ip4";
+                case 9: return "src_mask";
+                case 10: return "input";
+                case 11: return "dst_port";
+                case 12: return "dst_ip4";
+                case 13: return "dst_mask";
+                case 14: return "output";
+                case 15: return "nexthop";
+                case 16: return "src_as";
+                case 17: return "dst_as";
+                case 21: return "last";
+                case 22: return "first";
+                case 27: return "src_ip6";
+                case 28: return "dst_ip6";
+                case 62: return "nexthop6";
+                case 152: return "flow_start_ms";
+                case 153: return "flow_end_ms";
+                default: break;
+            }
+        }
+        return enterprise == 0 ? "field_" + type : "field_" + enterprise + "_" + type;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.netflow;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Netflow v9 / IPFIX templates received so far, per exporter and source id (observation domain for IPFIX).
+ * <p>
+ * Templates are usually exported in other packets than the data records using them, possibly decoded by another
+ * task. The engines serialize the processors into every task, so the caches are not held by the processors but
+ * registered in the JVM by processor identifier: all the tasks of a processor running in the same JVM share its cache.
+ */
+final class NetflowTemplateCache {
+
+    private static final ConcurrentMap<String, NetflowTemplateCache> CACHES = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Key, NetflowTemplate> templates = new ConcurrentHashMap<>();
+
+    private NetflowTemplateCache() {
+    }
+
+    /**
+     * @return the cache of a processor in this JVM, created on first use
+     */
+    static NetflowTemplateCache of(String processorId) {
+        return CACHES.computeIfAbsent(processorId == null ? "" : processorId, id -> new NetflowTemplateCache());
+    }
+
+    NetflowTemplate get(String exporter, long sourceId, int templateId) {
+        return templates.get(new Key(exporter, sourceId, templateId));
+    }
+
+    void put(String exporter, long sourceId, NetflowTemplate template) {
+        templates.put(new Key(exporter, sourceId, template.getId()), template);
+    }
+
+    void remove(String exporter, long sourceId, int templateId) {
+        templates.remove(new Key(exporter, sourceId, templateId));
+    }
+
+    /**
+     * withdraw all the templates (options ones or not) of an exporter source
+     */
+    void removeAll(String exporter, long sourceId, boolean options) {
+        templates.entrySet().removeIf(entry -> entry.getKey().sourceId == sourceId
+                && entry.getKey().exporter.equals(exporter)
+                && entry.getValue().isOptions() == options);
+    }
+
+    int size() {
+        return templates.size();
+    }
+
+    private static final class Key {
+        private final String exporter;
+        private final long sourceId;
+        private final int templateId;
+
+        Key(String exporter, long sourceId, int templateId) {
+            this.exporter = exporter;
+            this.sourceId = sourceId;
+            this.templateId = templateId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return sourceId == key.sourceId && templateId == key.templateId && exporter.equals(key.exporter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(exporter, sourceId, templateId);
+        }
+    }
+}
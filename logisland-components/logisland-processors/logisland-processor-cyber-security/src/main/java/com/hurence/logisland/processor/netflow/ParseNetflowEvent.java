@@ -22,6 +22,7 @@ import com.hurence.logisland.component.InitializationException;
 import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.processor.AbstractProcessor;
 import com.hurence.logisland.processor.ProcessContext;
+import com.hurence.logisland.processor.ProcessError;
 import com.hurence.logisland.record.*;
 import com.hurence.logisland.validator.StandardValidators;
 import org.slf4j.Logger;
@@ -50,7 +51,11 @@ import java.util.*;
                 + "this traffic will be sent to port 2055. The we rely on nifi to listen of that port for  "
                 + " incoming netflow (V5) traffic and send them to a kafka topic. "
                 + "The Netflow processor could thus treat these events and generate corresponding logisland records. The following processors "
-                + "in the stream can then process the Netflow records generated by this processor.")
+                + "in the stream can then process the Netflow records generated by this processor.\n"
+                + "Netflow v9 and IPFIX packets are decoded too, with the templates previously received from the same exporter "
+                + "(identified by the record_key of the incoming records when set, e.g. the exporter address). Well known "
+                + "information elements get the field names of the v5 records, the other ones are named field_<element id>. "
+                + "Data flowsets whose template has not been received yet are skipped.")
 @ExtraDetailFile("./details/ParseNetflowEvent-Detail.rst")
 
 public class ParseNetflowEvent extends AbstractProcessor {
@@ -65,7 +70,7 @@ public class ParseNetflowEvent extends AbstractProcessor {
     final int URG = 32;
 
     private boolean debug = false;
-    
+
     private static final String KEY_DEBUG = "debug";
     
     public static final PropertyDescriptor DEBUG = new PropertyDescriptor.Builder()
@@ -112,7 +117,7 @@ public class ParseNetflowEvent extends AbstractProcessor {
     @Override
     public Collection<Record> process(ProcessContext context, Collection<Record> records)
     {
-        Collection<Record> list = new ArrayList<>();
+        List<Record> list = new ArrayList<>();
         final String outputRecordType = context.getPropertyValue(OUTPUT_RECORD_TYPE).asString();
         final boolean enrichRecord = context.getPropertyValue(ENRICH_RECORD).asBoolean();
         if (debug)
@@ -121,100 +126,90 @@ public class ParseNetflowEvent extends AbstractProcessor {
         }
 
         /**
-         * Get  Netflow event as a JSON string:
+         * Decode the netflow packets in place, one record per flow
          */
-        records.forEach(record -> {
-            byte[] recordValue=null;
-            recordValue = (byte[]) record.getField(FieldDictionary.RECORD_VALUE).getRawValue();
+        final NetflowTemplateCache templates = NetflowTemplateCache.of(context.getIdentifier());
+        final NetflowDecoder decoder = new NetflowDecoder(templates, outputRecordType);
+        for (Record record : records) {
+            byte[] recordValue = (byte[]) record.getField(FieldDictionary.RECORD_VALUE).getRawValue();
             if (debug) {
                 logger.debug("record=" + Arrays.toString(recordValue));
             }
+            Field key = record.getField(FieldDictionary.RECORD_KEY);
+            String exporter = key == null || key.getRawValue() == null ? "" : key.asString();
+
+            int first = list.size();
+            InvalidNetflowPacketException error = null;
+            try {
+                decoder.decode(recordValue, exporter, list);
+            } catch (InvalidNetflowPacketException e) {
+                error = e;
+            }
 
-
-            Map header = getHeader(Arrays.copyOfRange(recordValue,0,24));
-
-            for (int i=0; i < (int) header.get("count"); i++) {
-                int offset = i*48;
-
-                Map netflowRecord = getRecord(Arrays.copyOfRange(recordValue,24+offset,72+offset));
-
-                Record evt = new StandardRecord(outputRecordType)
-                        .setTime(new Date(((long) header.get("unix_secs"))*1000))
-                        .setField(new Field("src_ip4", FieldType.STRING, netflowRecord.get("src_ip4")))
-                        .setField(new Field("dst_ip4", FieldType.STRING, netflowRecord.get("dst_ip4")))
-                        .setField(new Field("nexthop", FieldType.STRING, netflowRecord.get("nexthop")))
-                        .setField(new Field("input", FieldType.INT, netflowRecord.get("input")))
-                        .setField(new Field("output", FieldType.INT, netflowRecord.get("output")))
-                        .setField(new Field("dPkts", FieldType.LONG, netflowRecord.get("dPkts")))
-                        .setField(new Field("dOctets", FieldType.LONG, netflowRecord.get("dOctets")))
-                        .setField(new Field("first", FieldType.LONG, netflowRecord.get("first")))
-                        .setField(new Field("last", FieldType.LONG, netflowRecord.get("last")))
-                        .setField(new Field("src_port", FieldType.INT, netflowRecord.get("src_port")))
-                        .setField(new Field("dst_port", FieldType.INT, netflowRecord.get("dst_port")))
-                        .setField(new Field("flags", FieldType.INT, netflowRecord.get("flags")))
-                        .setField(new Field("nprot", FieldType.INT, netflowRecord.get("nprot")))
-                        .setField(new Field("tos", FieldType.INT, netflowRecord.get("tos")))
-                        .setField(new Field("src_as", FieldType.INT, netflowRecord.get("src_as")))
-                        .setField(new Field("dst_as", FieldType.INT, netflowRecord.get("dst_as")))
-                        .setField(new Field("src_mask", FieldType.INT, netflowRecord.get("src_mask")))
-                        .setField(new Field("dst_mask", FieldType.INT, netflowRecord.get("dst_mask")));
-
-                // enrich record if required
-                if (enrichRecord) {
-                    long duration = ((long) netflowRecord.get("last")) - ((long) netflowRecord.get("first"));
-                    evt.setField(new Field("duration", FieldType.LONG, duration));
-                    try{
-                        String ipString = (String) netflowRecord.get("src_ip4");
-                        InetAddress ia = InetAddress.getByName(ipString);
-                        String host = ia.getCanonicalHostName();
-                        if (host.compareTo(ipString) != 0) {
-                            evt.setField(new Field("src_host", FieldType.STRING, host));
-
-                            int index = host.indexOf('.');
-                            String domain = (index >= 0) ? host.substring(index) : null;
-                            if (domain != null)
-                                evt.setField(new Field("src_domain", FieldType.STRING, domain));
-                        }
-
-                        ipString = (String) netflowRecord.get("dst_ip4");
-                        ia = InetAddress.getByName(ipString);
-                        host = ia.getCanonicalHostName();
-                        if (host.compareTo(ipString) != 0) {
-                            evt.setField(new Field("dst_host", FieldType.STRING, host));
-
-                            int index = host.indexOf('.');
-                            String domain = (index >= 0) ? host.substring(index) : null;
-                            if (domain != null)
-                                evt.setField(new Field("dst_domain", FieldType.STRING, domain));
-                        }
-
-                        // flags
-                        short tcpflags = (short) netflowRecord.get("flags");
-                        evt.setField(new Field("tcp_fin", FieldType.BOOLEAN, (tcpflags & FIN) == FIN));
-                        evt.setField(new Field("tcp_syn", FieldType.BOOLEAN, (tcpflags & SYN) == SYN));
-                        evt.setField(new Field("tcp_rst", FieldType.BOOLEAN, (tcpflags & RST) == RST));
-                        evt.setField(new Field("tcp_psh", FieldType.BOOLEAN, (tcpflags & PSH) == PSH));
-                        evt.setField(new Field("tcp_ack", FieldType.BOOLEAN, (tcpflags & ACK) == ACK));
-                        evt.setField(new Field("tcp_urg", FieldType.BOOLEAN, (tcpflags & URG) == URG));
-
-                    } catch (UnknownHostException e) {
-                        logger.error("Bad host address");
-                    }
+            // enrich record if required
+            if (enrichRecord) {
+                for (int i = first; i < list.size(); i++) {
+                    enrich((CompactRecord) list.get(i));
                 }
+            }
 
-                list.add(evt);
+            if (error != null) {
+                logger.warn("Invalid netflow packet: " + error.getMessage());
+                StandardRecord outputRecord = new StandardRecord(outputRecordType);
+                outputRecord.addError(ProcessError.INVALID_FILE_FORMAT_ERROR.getName(), error.getMessage());
+                outputRecord.setField(new Field(FieldDictionary.RECORD_VALUE, FieldType.BYTES, recordValue));
+                list.add(outputRecord);
             }
+        }
 
+        if (debug) {
+            logger.debug(decoder.getSkippedSets() + " flowsets skipped waiting for their template, "
+                    + templates.size() + " templates cached");
+            logger.debug("Netflow Processor records output: " + list);
+        }
 
-            // Parse Netflow event as JSON object
-            // Map<String, Object> jsonNetflowEvent = JsonUtil.convertJsonToMap(recordValue);
+        return list;
+    }
 
-        });
-            if (debug) {
-                logger.debug("Netflow Processor records output: " + records);
-            }
+    private void enrich(CompactRecord evt) {
+        if (evt.hasField("first") && evt.hasField("last")) {
+            long duration = evt.getLongValue("last", 0L) - evt.getLongValue("first", 0L);
+            evt.setLongValue("duration", duration);
+        }
+        enrichHost(evt, "src_ip4", "src_host", "src_domain");
+        enrichHost(evt, "dst_ip4", "dst_host", "dst_domain");
+
+        // flags
+        if (evt.hasField("flags")) {
+            int tcpflags = evt.getIntValue("flags", 0);
+            evt.setBooleanValue("tcp_fin", (tcpflags & FIN) == FIN);
+            evt.setBooleanValue("tcp_syn", (tcpflags & SYN) == SYN);
+            evt.setBooleanValue("tcp_rst", (tcpflags & RST) == RST);
+            evt.setBooleanValue("tcp_psh", (tcpflags & PSH) == PSH);
+            evt.setBooleanValue("tcp_ack", (tcpflags & ACK) == ACK);
+            evt.setBooleanValue("tcp_urg", (tcpflags & URG) == URG);
+        }
+    }
 
-        return list;
+    private void enrichHost(CompactRecord evt, String ipField, String hostField, String domainField) {
+        Object ipString = evt.getRawValue(ipField);
+        if (ipString == null) {
+            return;
+        }
+        try {
+            InetAddress ia = InetAddress.getByName((String) ipString);
+            String host = ia.getCanonicalHostName();
+            if (host.compareTo((String) ipString) != 0) {
+                evt.setField(new Field(hostField, FieldType.STRING, host));
+
+                int index = host.indexOf('.');
+                String domain = (index >= 0) ? host.substring(index) : null;
+                if (domain != null)
+                    evt.setField(new Field(domainField, FieldType.STRING, domain));
+            }
+        } catch (UnknownHostException e) {
+            logger.error("Bad host address");
+        }
     }
 
     
@@ -240,122 +235,4 @@ public class ParseNetflowEvent extends AbstractProcessor {
           }
         }
     }
-
-    private Map getHeader(byte[] header) {
-        String[] header_label = {"version","count","sysuptime","unix_secs",
-                "unix_nsecs","flow_sequence","engine_type","engine_id","sampling_interval"};
-        String[] header_type = {"short","short","int","int","int","int","byte","byte","short"};
-        Map<String, Object> header_value = new HashMap<>();
-
-        byte shift = 0;
-        byte[] ID = null;
-
-        for (byte i=0; i < header_label.length; i++) {
-            switch(header_type[i]) {
-                case "byte":
-                    ID = Arrays.copyOfRange(header, shift, shift+1);
-                    header_value.put(header_label[i], getByte(ID));
-                    shift += 1;
-                    break;
-
-                case "short":
-                    ID = Arrays.copyOfRange(header, shift, shift+2);
-                    header_value.put(header_label[i], getShort(ID));
-                    shift += 2;
-                    break;
-
-                case "int":
-                    ID = Arrays.copyOfRange(header, shift, shift+4);
-                    header_value.put(header_label[i], getInt(ID));
-                    shift += 4;
-                    break;
-            }
-        }
-
-        if (debug) {
-            for (String label : header_label) {
-                logger.debug(label + "=" + header_value.get(label));
-            }
-        }
-
-        return (header_value);
-    }
-
-    private Map getRecord(byte[] record) {
-
-        String[] record_label = {"src_ip4", "dst_ip4", "nexthop", "input", "output", "dPkts", "dOctets", "first",
-                "last", "src_port", "dst_port", "pad1", "flags", "nprot", "tos", "src_as", "dst_as", "src_mask",
-                "dst_mask", "pad2"};
-        String[] record_type = {"ip","ip","ip","short","short","int","int","int","int","short","short","byte","byte",
-                "byte","byte","short","short","byte","byte","short"};
-
-        Map<String, Object> record_value = new HashMap<>();
-
-        byte shift = 0;
-        byte[] ID = null;
-
-        for (byte i=0; i < record_label.length; i++) {
-            switch(record_type[i]) {
-                case "byte":
-                    ID = Arrays.copyOfRange(record, shift, shift+1);
-                    record_value.put(record_label[i], getByte(ID));
-                    shift += 1;
-                    break;
-
-                case "short":
-                    ID = Arrays.copyOfRange(record, shift, shift+2);
-                    record_value.put(record_label[i], getShort(ID));
-                    shift += 2;
-                    break;
-
-                case "int":
-                    ID = Arrays.copyOfRange(record, shift, shift+4);
-                    record_value.put(record_label[i], getInt(ID));
-                    shift += 4;
-                    break;
-
-                case "ip":
-                    ID = Arrays.copyOfRange(record, shift, shift+4);
-                    record_value.put(record_label[i], getIP(ID));
-                    shift += 4;
-                    break;
-            }
-        }
-
-        if (debug) {
-            for (String label : record_label) {
-                logger.debug(label + "=" + record_value.get(label));
-            }
-        }
-
-        return (record_value);
-
-    }
-
-    private short getByte(byte[] buffer) {
-        return((short) (buffer[0] & 0xFF));
-    }
-
-    private  int getShort(byte[] buffer) {
-        return((int) (((buffer[0] & 0xFF) << 8) | (buffer[1] & 0xFF)));
-    }
-
-    private  long getInt(byte[] buffer) {
-        return(  (long) (((buffer[0] & 0xFF) << 24) | ((buffer[1] & 0xFF) << 16)
-                | ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF)));
-    }
-
-    private String getIP(byte[] buffer) {
-
-        try {
-            for (byte i = 1; i < 4; i++) {
-                buffer[i] = (byte) (buffer[i] & 0xFF);
-            }
-            InetAddress address = InetAddress.getByAddress(buffer);
-            return (address.toString().replace("/",""));
-        } catch ( UnknownHostException e) {
-            logger.error("Bad host address");
-        }
-        return("");
-    }
 }
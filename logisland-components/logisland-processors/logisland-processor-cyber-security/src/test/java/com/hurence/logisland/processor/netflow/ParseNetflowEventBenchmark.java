@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.netflow;
+
+import com.hurence.logisland.record.FieldDictionary;
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.util.runner.TestRunner;
+import com.hurence.logisland.util.runner.TestRunners;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParseNetflowEvent} decoding a batch of 100 full packets (30 flows each) of v5 or v9 flows, the v9 template
+ * being received once before; the score is in flows per second on a single thread.
+ * <p>
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseNetflowEventBenchmark {
+
+    private static final int PACKETS = 100;
+    private static final int FLOWS_PER_PACKET = 30;
+
+    @Param({"5", "9"})
+    public int version;
+
+    private ParseNetflowEvent processor;
+    private TestRunner runner;
+    private List<Record> batch;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        processor = new ParseNetflowEvent();
+        runner = TestRunners.newTestRunner(processor);
+        if (version == 9) {
+            processor.process(runner.getProcessContext(), packets(ParseNetflowEventTest.v9Packet(0, 1,
+                    ParseNetflowEventTest.v9Template(256, ParseNetflowEventTest.V9_TEMPLATE))));
+        }
+
+        batch = new ArrayList<>(PACKETS);
+        for (int p = 0; p < PACKETS; p++) {
+            byte[] packet = version == 5 ? v5Packet(random) : v9Packet(random);
+            batch.addAll(packets(packet));
+        }
+    }
+
+    private static List<Record> packets(byte[] packet) {
+        List<Record> records = new ArrayList<>();
+        records.add(new StandardRecord("netflow")
+                .setField(FieldDictionary.RECORD_KEY, FieldType.STRING, "10.0.0.1")
+                .setField(FieldDictionary.RECORD_VALUE, FieldType.BYTES, packet));
+        return records;
+    }
+
+    private static byte[] v5Packet(Random random) {
+        ByteBuffer buffer = ByteBuffer.allocate(NetflowDecoder.V5_HEADER_LENGTH
+                + FLOWS_PER_PACKET * NetflowDecoder.V5_FLOW_LENGTH);
+        buffer.putShort((short) 5).putShort((short) FLOWS_PER_PACKET).putInt(1000).putInt(1_500_000_000)
+                .putInt(0).putInt(1).putInt(0);
+        for (int i = 0; i < FLOWS_PER_PACKET; i++) {
+            buffer.putInt(random.nextInt()).putInt(random.nextInt()).putInt(0)
+                    .putShort((short) 1).putShort((short) 2)
+                    .putInt(random.nextInt(1000)).putInt(random.nextInt(1_000_000))
+                    .putInt(5000).putInt(6000)
+                    .putShort((short) random.nextInt()).putShort((short) 443)
+                    .put((byte) 0).put((byte) 0x12).put((byte) 6).put((byte) 0)
+                    .putShort((short) 0).putShort((short) 0)
+                    .put((byte) 24).put((byte) 24).putShort((short) 0);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] v9Packet(Random random) {
+        ByteBuffer flows = ByteBuffer.allocate(FLOWS_PER_PACKET * 41);
+        for (int i = 0; i < FLOWS_PER_PACKET; i++) {
+            flows.put(ParseNetflowEventTest.v9Flow(random.nextInt(), random.nextInt(), random.nextInt(0x10000), 443,
+                    random.nextInt(1000), random.nextInt(1_000_000)));
+        }
+        return ParseNetflowEventTest.v9Packet(1_500_000_000, 1, ParseNetflowEventTest.dataSet(256, flows.array()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS * FLOWS_PER_PACKET)
+    public Collection<Record> decode() {
+        return processor.process(runner.getProcessContext(), batch);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ParseNetflowEventBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -15,10 +15,13 @@
  */
 package com.hurence.logisland.processor.netflow;
 
+import com.hurence.logisland.record.CompactRecord;
+import com.hurence.logisland.record.Field;
 import com.hurence.logisland.record.FieldDictionary;
 import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.serializer.KryoSerializer;
 import com.hurence.logisland.util.runner.MockRecord;
 import com.hurence.logisland.util.runner.TestRunner;
 import com.hurence.logisland.util.runner.TestRunners;
@@ -26,9 +29,18 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test simple Bro events processor.
@@ -184,4 +196,253 @@ public class ParseNetflowEventTest {
         out.assertFieldExists("first");
         out.assertFieldEquals("first", (int) 1048478456);
     }
+
+    /**
+     * v9 packet: header, then the given flowsets
+     */
+    static byte[] v9Packet(long unixSecs, long sourceId, byte[]... flowsets) {
+        int length = NetflowDecoder.V9_HEADER_LENGTH;
+        for (byte[] flowset : flowsets) {
+            length += flowset.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort((short) 9).putShort((short) flowsets.length).putInt(1000)
+                .putInt((int) unixSecs).putInt(1).putInt((int) sourceId);
+        for (byte[] flowset : flowsets) {
+            buffer.put(flowset);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * v9 template flowset with a template of (type, length) pairs
+     */
+    static byte[] v9Template(int templateId, int... fields) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + fields.length * 2);
+        buffer.putShort((short) 0).putShort((short) buffer.capacity())
+                .putShort((short) templateId).putShort((short) (fields.length / 2));
+        for (int field : fields) {
+            buffer.putShort((short) field);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * data flowset, padded to 4 bytes
+     */
+    static byte[] dataSet(int templateId, byte[] records) {
+        int length = 4 + records.length;
+        length += (4 - length % 4) % 4;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort((short) templateId).putShort((short) length).put(records);
+        return buffer.array();
+    }
+
+    static final int[] V9_TEMPLATE = {8, 4, 12, 4, 7, 2, 11, 2, 4, 1, 6, 1, 2, 4, 1, 8, 22, 4, 21, 4, 10, 2, 14, 2, 99, 3};
+
+    static byte[] v9Flow(int src, int dst, int srcPort, int dstPort, long packets, long octets) {
+        return ByteBuffer.allocate(41)
+                .putInt(src).putInt(dst)
+                .putShort((short) srcPort).putShort((short) dstPort)
+                .put((byte) 6).put((byte) 0x12)
+                .putInt((int) packets).putLong(octets)
+                .putInt(5000).putInt(6000)
+                .putShort((short) 3).putShort((short) 4)
+                .put(new byte[]{1, 2, 3})
+                .array();
+    }
+
+    private static final AtomicInteger processorIds = new AtomicInteger();
+
+    /**
+     * @return a runner of a new processor, whose templates are not shared with the other tests
+     */
+    private static TestRunner newRunner() {
+        return newRunner("netflow_" + processorIds.incrementAndGet());
+    }
+
+    private static TestRunner newRunner(String processorId) {
+        final TestRunner testRunner = TestRunners.newTestRunner(new ParseNetflowEvent());
+        testRunner.setProcessorIdentifier(processorId);
+        testRunner.assertValid();
+        return testRunner;
+    }
+
+    private static Record packet(String exporter, byte[] packet) {
+        Record record = new StandardRecord("netflow");
+        if (exporter != null) {
+            record.setField(FieldDictionary.RECORD_KEY, FieldType.STRING, exporter);
+        }
+        record.setField(FieldDictionary.RECORD_VALUE, FieldType.BYTES, packet);
+        return record;
+    }
+
+    @Test
+    public void testNetFlowV9Event() {
+        byte[] flows = ByteBuffer.allocate(82)
+                .put(v9Flow(0xC0A8011A, 0x68F42AC1, 50574, 443, 10, 5_000_000_000L))
+                .put(v9Flow(0x68F42AC1, 0xC0A8011A, 443, 50574, 12, 900))
+                .array();
+        byte[] packet = v9Packet(1_500_000_000L, 7, v9Template(300, V9_TEMPLATE), dataSet(300, flows));
+
+        TestRunner testRunner = newRunner();
+        testRunner.enqueue(packet("10.0.0.1", packet));
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(2);
+        testRunner.assertOutputErrorCount(0);
+
+        MockRecord out = testRunner.getOutputRecords().get(0);
+        out.assertFieldEquals(FieldDictionary.RECORD_TYPE, "netflowevent");
+        assertEquals(1_500_000_000_000L, out.getTime().getTime());
+        out.assertFieldEquals("src_ip4", "192.168.1.26");
+        out.assertFieldEquals("dst_ip4", "104.244.42.193");
+        out.assertFieldEquals("src_port", 50574);
+        out.assertFieldEquals("dst_port", 443);
+        out.assertFieldEquals("nprot", 6);
+        out.assertFieldEquals("flags", 0x12);
+        out.assertFieldEquals("dPkts", 10L);
+        out.assertFieldEquals("dOctets", 5_000_000_000L);
+        assertEquals(FieldType.LONG, out.getField("dOctets").getType());
+        out.assertFieldEquals("first", 5000L);
+        out.assertFieldEquals("last", 6000L);
+        out.assertFieldEquals("input", 3);
+        out.assertFieldEquals("output", 4);
+        out.assertFieldEquals("field_99", 0x010203L);
+
+        out = testRunner.getOutputRecords().get(1);
+        out.assertFieldEquals("src_ip4", "104.244.42.193");
+        out.assertFieldEquals("dst_port", 50574);
+        out.assertFieldEquals("dOctets", 900L);
+    }
+
+    /**
+     * the decoded flows are compact records, they must go through the default kryo serializer unchanged
+     */
+    @Test
+    public void testSerializedFlows() {
+        byte[] flows = ByteBuffer.allocate(82)
+                .put(v9Flow(0xC0A8011A, 0x68F42AC1, 50574, 443, 10, 5_000_000_000L))
+                .put(v9Flow(0x68F42AC1, 0xC0A8011A, 443, 50574, 12, 900))
+                .array();
+        byte[] packet = v9Packet(1_500_000_000L, 7, v9Template(300, V9_TEMPLATE), dataSet(300, flows));
+
+        ParseNetflowEvent processor = new ParseNetflowEvent();
+        TestRunner testRunner = TestRunners.newTestRunner(processor);
+        List<Record> decoded = new ArrayList<>(processor.process(testRunner.getProcessContext(),
+                Collections.singletonList(packet("10.0.0.1", packet))));
+        assertEquals(2, decoded.size());
+
+        KryoSerializer serializer = new KryoSerializer(true);
+        for (Record flow : decoded) {
+            assertTrue(flow instanceof CompactRecord);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(out, flow);
+            Record deserialized = serializer.deserialize(new ByteArrayInputStream(out.toByteArray()));
+
+            assertEquals(flow.getId(), deserialized.getId());
+            assertEquals(flow.getTime(), deserialized.getTime());
+            assertEquals(flow.getAllFieldNames(), deserialized.getAllFieldNames());
+            for (Field field : flow.getAllFields()) {
+                Field copy = deserialized.getField(field.getName());
+                assertEquals(field.getName(), field.getType(), copy.getType());
+                assertEquals(field.getName(), field.getRawValue(), copy.getRawValue());
+            }
+        }
+        assertEquals(5_000_000_000L, (long) decoded.get(0).getField("dOctets").asLong());
+    }
+
+    @Test
+    public void testNetFlowV9TemplatePerExporter() {
+        byte[] data = dataSet(300, v9Flow(0x0A000001, 0x0A000002, 1, 2, 1, 1));
+        TestRunner testRunner = newRunner();
+
+        // data before its template is skipped
+        testRunner.enqueue(packet("10.0.0.1", v9Packet(1, 7, data)));
+        testRunner.run();
+        testRunner.assertOutputRecordsCount(0);
+
+        // the template of an exporter is not used for another exporter or source id
+        testRunner.clearQueues();
+        testRunner.enqueue(packet("10.0.0.1", v9Packet(1, 7, v9Template(300, V9_TEMPLATE))));
+        testRunner.enqueue(packet("10.0.0.2", v9Packet(1, 7, data)));
+        testRunner.enqueue(packet("10.0.0.1", v9Packet(1, 8, data)));
+        testRunner.enqueue(packet("10.0.0.1", v9Packet(1, 7, data)));
+        testRunner.run();
+        testRunner.assertOutputRecordsCount(1);
+        testRunner.getOutputRecords().get(0).assertFieldEquals("dst_ip4", "10.0.0.2");
+    }
+
+    /**
+     * the engines run a deserialized copy of the processor in every task, the templates must outlive them
+     */
+    @Test
+    public void testNetFlowV9TemplateSharedByProcessorInstances() {
+        byte[] data = dataSet(300, v9Flow(0x0A000001, 0x0A000002, 1, 2, 1, 1));
+
+        TestRunner templateRunner = newRunner("netflow_shared_templates");
+        templateRunner.enqueue(packet("10.0.0.1", v9Packet(1, 7, v9Template(300, V9_TEMPLATE))));
+        templateRunner.run();
+        templateRunner.assertOutputRecordsCount(0);
+
+        TestRunner dataRunner = newRunner("netflow_shared_templates");
+        dataRunner.enqueue(packet("10.0.0.1", v9Packet(1, 7, data)));
+        dataRunner.run();
+        dataRunner.assertOutputRecordsCount(1);
+        dataRunner.getOutputRecords().get(0).assertFieldEquals("dst_ip4", "10.0.0.2");
+
+        // another processor does not see them
+        TestRunner otherRunner = newRunner();
+        otherRunner.enqueue(packet("10.0.0.1", v9Packet(1, 7, data)));
+        otherRunner.run();
+        otherRunner.assertOutputRecordsCount(0);
+    }
+
+    @Test
+    public void testIpfixEvent() {
+        ByteBuffer template = ByteBuffer.allocate(32);
+        template.putShort((short) 2).putShort((short) 32)
+                .putShort((short) 400).putShort((short) 5)
+                .putShort((short) 27).putShort((short) 16)                 // sourceIPv6Address
+                .putShort((short) 152).putShort((short) 8)                 // flowStartMilliseconds
+                .putShort((short) (0x8000 | 12)).putShort((short) 2).putInt(29305)    // enterprise element
+                .putShort((short) 96).putShort((short) 65535)              // applicationName, variable length
+                .putShort((short) 210).putShort((short) 2);               // paddingOctets
+        ByteBuffer record = ByteBuffer.allocate(32);
+        record.put(new byte[]{0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1})
+                .putLong(1_500_000_000_123L)
+                .putShort((short) 42)
+                .put((byte) 3).put("dns".getBytes())
+                .putShort((short) 0);
+        byte[] data = dataSet(400, Arrays.copyOf(record.array(), 32));
+
+        ByteBuffer message = ByteBuffer.allocate(16 + template.capacity() + data.length);
+        message.putShort((short) 10).putShort((short) message.capacity()).putInt(1_500_000_000)
+                .putInt(1).putInt(0).put(template.array()).put(data);
+
+        TestRunner testRunner = newRunner();
+        testRunner.enqueue(packet(null, message.array()));
+        testRunner.run();
+        testRunner.assertOutputRecordsCount(1);
+        testRunner.assertOutputErrorCount(0);
+
+        MockRecord out = testRunner.getOutputRecords().get(0);
+        out.assertFieldEquals("src_ip6", "2001:db8:0:0:0:0:0:1");
+        out.assertFieldEquals("flow_start_ms", 1_500_000_000_123L);
+        out.assertFieldEquals("field_29305_12", 42L);
+        assertTrue(Arrays.equals("dns".getBytes(), (byte[]) out.getField("field_96").getRawValue()));
+        out.assertFieldNotExists("field_210");
+    }
+
+    @Test
+    public void testTruncatedNetFlowEvent() {
+        TestRunner testRunner = newRunner();
+        testRunner.enqueue(packet(null, Arrays.copyOf(nfByterecord, nfByterecord.length - 10)));
+        testRunner.enqueue(packet(null, new byte[]{0, 7, 0, 0}));
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsIncludingErrorsCount(2);
+        testRunner.assertOutputErrorCount(2);
+        testRunner.getOutputRecords().get(1).assertFieldExists(FieldDictionary.RECORD_VALUE);
+    }
 }
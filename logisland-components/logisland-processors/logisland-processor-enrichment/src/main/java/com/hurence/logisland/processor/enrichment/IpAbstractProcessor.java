@@ -54,26 +54,9 @@ public abstract class IpAbstractProcessor extends AbstractProcessor {
             return Collections.emptyList();
         }
 
-        String ip = null;
         for (final Record record : records) {
-            if (record.hasField(ipAddrField)) {
-                String ipAsString = record.getField(ipAddrField).asString();
-                if (ipAsString == null)
-                {
-                    getLogger().debug("record has a null IP_ADDRESS_FIELD : {}. So it is ignored. record : '{}'", new Object[]{ipAddrField, record});
-                    continue;
-                }
-                ip = ipAsString.trim();
-            } else {
-                getLogger().debug("record has no IP_ADDRESS_FIELD : {}. So it is ignored. record : '{}'", new Object[]{ipAddrField, record});
-                continue;
-            }
-            if (ip.isEmpty()) {
-                getLogger().debug("record has an empty IP_ADDRESS_FIELD : {}. So it is ignored. record : '{}'", new Object[]{ipAddrField, record});
-                continue;
-            }
-            if (!InetAddressValidator.getInstance().isValidInet4Address(ip) && !InetAddressValidator.getInstance().isValidInet6Address(ip)) {
-                getLogger().debug("record has an invalid ip '{}'. So it is ignored.  record : '{}'", new Object[]{ip, record});
+            String ip = getIp(record, ipAddrField);
+            if (ip == null) {
                 continue;
             }
             // ip cannot be null from here
@@ -87,6 +70,32 @@ public abstract class IpAbstractProcessor extends AbstractProcessor {
         return records;
     }
 
+    /**
+     * @return the trimmed ip address held by the given field of the record, or null if there is none or if it is invalid
+     */
+    protected String getIp(Record record, String ipAddrField) {
+        if (!record.hasField(ipAddrField)) {
+            getLogger().debug("record has no IP_ADDRESS_FIELD : {}. So it is ignored. record : '{}'", new Object[]{ipAddrField, record});
+            return null;
+        }
+        String ipAsString = record.getField(ipAddrField).asString();
+        if (ipAsString == null)
+        {
+            getLogger().debug("record has a null IP_ADDRESS_FIELD : {}. So it is ignored. record : '{}'", new Object[]{ipAddrField, record});
+            return null;
+        }
+        String ip = ipAsString.trim();
+        if (ip.isEmpty()) {
+            getLogger().debug("record has an empty IP_ADDRESS_FIELD : {}. So it is ignored. record : '{}'", new Object[]{ipAddrField, record});
+            return null;
+        }
+        if (!InetAddressValidator.getInstance().isValidInet4Address(ip) && !InetAddressValidator.getInstance().isValidInet6Address(ip)) {
+            getLogger().debug("record has an invalid ip '{}'. So it is ignored.  record : '{}'", new Object[]{ip, record});
+            return null;
+        }
+        return ip;
+    }
+
     // ip is never null when passed
     protected abstract void processIp(Record record, String ip, ProcessContext context);
 
@@ -26,12 +26,19 @@ import com.hurence.logisland.processor.ProcessError;
 import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.service.cache.CacheService;
+import com.hurence.logisland.service.cache.ExpiringCacheService;
 import com.hurence.logisland.validator.StandardValidators;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Processor to resolve an IP into a FQDN (Fully Qualified Domain Name).
@@ -53,25 +60,52 @@ import java.util.concurrent.*;
 public class IpToFqdn extends IpAbstractProcessor {
 
     protected CacheService<String, CacheEntry> cacheService;
+    // Set when the cache service expires its entries by itself, in which case their age needs no check
+    protected ExpiringCacheService<String, CacheEntry> expiringCacheService;
 
     protected String fqdnField = null;
     protected boolean overwrite = false;
     protected static final long DEFAULT_CACHE_VALIDITY_PERIOD = 84600L;
     protected long cacheValidityPeriodSec = DEFAULT_CACHE_VALIDITY_PERIOD;
+    protected static final long DEFAULT_NEGATIVE_CACHE_VALIDITY_PERIOD = 300L;
+    protected long negativeCacheValidityPeriodSec = DEFAULT_NEGATIVE_CACHE_VALIDITY_PERIOD;
     protected static final long DEFAULT_RESOLUTION_TIMEOUT = 1000L;
     protected long resolutionTimeoutMs = DEFAULT_RESOLUTION_TIMEOUT;
+    protected static final int DEFAULT_RESOLUTION_THREADS = 16;
+    // Resolutions which may wait for a resolver thread, per thread. The others are left to a later batch
+    private static final int RESOLUTION_QUEUE_SIZE_PER_THREAD = 64;
     protected boolean debug = false;
 
     static final String DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX = "_os_resolution_time_ms";
     static final String DEBUG_OS_RESOLUTION_TIMEOUT_SUFFIX = "_os_resolution_timeout";
     static final String DEBUG_FROM_CACHE_SUFFIX = "_from_cache";
 
+    // Completes the resolutions which time out, shared by all the instances of the processor
+    private static final ScheduledThreadPoolExecutor TIMEOUT_SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "ip-to-fqdn-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        TIMEOUT_SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final AtomicInteger resolverCounter = new AtomicInteger();
+
+    // Runs the reverse DNS requests, its threads die when idle so that the pool of a dropped processor is collected
+    private ThreadPoolExecutor resolverPool;
+    // Resolutions currently running, by IP, so that an IP is never resolved twice at the same time
+    private final ConcurrentHashMap<String, Resolution> inFlightResolutions = new ConcurrentHashMap<>();
+
     // Definitions for config properties
     protected static final String PROP_FQDN_FIELD = "fqdn.field";
     protected static final String PROP_OVERWRITE_FQDN = "overwrite.fqdn.field";
     protected static final String PROP_CACHE_SERVICE = "cache.service";
     protected static final String PROP_CACHE_MAX_TIME = "cache.max.time";
+    protected static final String PROP_CACHE_NEGATIVE_MAX_TIME = "cache.negative.max.time";
     protected static final String PROP_RESOLUTION_TIMEOUT = "resolution.timeout";
+    protected static final String PROP_RESOLUTION_THREADS = "resolution.threads";
     protected static final String PROP_DEBUG = "debug";
 
     public static final PropertyDescriptor CONFIG_FQDN_FIELD = new PropertyDescriptor.Builder()
@@ -112,9 +146,22 @@ public class IpToFqdn extends IpAbstractProcessor {
             .defaultValue(new Long(DEFAULT_CACHE_VALIDITY_PERIOD).toString())
             .build();
 
+    public static final PropertyDescriptor CONFIG_CACHE_NEGATIVE_MAX_TIME = new PropertyDescriptor.Builder()
+            .name(PROP_CACHE_NEGATIVE_MAX_TIME)
+            .description("The amount of time, in seconds, for which the fact that an IP could not be resolved into a FQDN (or that its" +
+                    " resolution timed out) is kept in the cache service. Unresolved IPs are usually worth retrying sooner than" +
+                    " resolved ones. A value of 0 seconds disables this expiration mechanism. The default value is " +
+                    DEFAULT_NEGATIVE_CACHE_VALIDITY_PERIOD + " seconds."
+            )
+            .required(false)
+            .addValidator(StandardValidators.INTEGER_VALIDATOR)
+            .defaultValue(Long.toString(DEFAULT_NEGATIVE_CACHE_VALIDITY_PERIOD))
+            .build();
+
     public static final PropertyDescriptor CONFIG_RESOLUTION_TIMEOUT = new PropertyDescriptor.Builder()
             .name(PROP_RESOLUTION_TIMEOUT)
-            .description("The amount of time, in milliseconds, to wait at most for the resolution to occur. This avoids to block the stream" +
+            .description("The amount of time, in milliseconds, to wait at most for the resolution to occur, from the moment the request" +
+                    " is sent to the operating system. This avoids to block the stream" +
                     " for too much time. Default value is " + DEFAULT_RESOLUTION_TIMEOUT + "ms. If the delay expires and no resolution could" +
                     " occur before, the FQDN field is not created. A special value of 0 disables the logisland timeout and the resolution" +
                     " request may last for many seconds if the IP cannot be translated into a FQDN by the underlying operating system. In" +
@@ -126,6 +173,19 @@ public class IpToFqdn extends IpAbstractProcessor {
             .defaultValue(new Long(DEFAULT_RESOLUTION_TIMEOUT).toString())
             .build();
 
+    public static final PropertyDescriptor CONFIG_RESOLUTION_THREADS = new PropertyDescriptor.Builder()
+            .name(PROP_RESOLUTION_THREADS)
+            .description("The maximum number of resolution requests running at the same time. The distinct IPs of a batch of records" +
+                    " that are not in the cache are resolved concurrently, then all the records are enriched. At most " +
+                    RESOLUTION_QUEUE_SIZE_PER_THREAD + " requests per thread may wait for a free thread. The requests which are still waiting" +
+                    " when the timeout of the batch expires, or which find no room to wait, are not sent: their records get no FQDN" +
+                    " field and nothing is stored in the cache, so that a later batch retries them. Default value is " + DEFAULT_RESOLUTION_THREADS + "."
+            )
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue(Integer.toString(DEFAULT_RESOLUTION_THREADS))
+            .build();
+
     public static final PropertyDescriptor CONFIG_DEBUG = new PropertyDescriptor.Builder()
             .name(PROP_DEBUG)
             .description("If true, some additional debug fields are added. If the FQDN field is named X," +
@@ -150,92 +210,147 @@ public class IpToFqdn extends IpAbstractProcessor {
         if (cacheService == null) {
             getLogger().error("Cache service is not initialized!");
         }
+        expiringCacheService = cacheService instanceof ExpiringCacheService ? (ExpiringCacheService<String, CacheEntry>) cacheService : null;
+
+        if (resolverPool != null) {
+            resolverPool.shutdown();
+        }
+        final int resolutionThreads = context.getPropertyValue(CONFIG_RESOLUTION_THREADS).asInteger();
+        final int poolId = resolverCounter.incrementAndGet();
+        final AtomicInteger threadCounter = new AtomicInteger();
+        resolverPool = new ThreadPoolExecutor(resolutionThreads, resolutionThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(resolutionThreads * RESOLUTION_QUEUE_SIZE_PER_THREAD), r -> {
+            Thread t = new Thread(r, "ip-to-fqdn-resolver-" + poolId + "-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        resolverPool.allowCoreThreadTimeOut(true);
+
+    }
+
+    @Override
+    public Collection<Record> process(ProcessContext context, Collection<Record> records) {
+
+        final long start = System.nanoTime();
+
+        if (records == null || records.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        String ipAddrField = context.getPropertyValue(IP_ADDRESS_FIELD).asString();
+        List<Record> ipRecords = new ArrayList<>(records.size());
+        List<String> ips = new ArrayList<>(records.size());
+        for (final Record record : records) {
+            String ip = getIp(record, ipAddrField);
+            if (ip != null) {
+                ipRecords.add(record);
+                ips.add(ip);
+            }
+        }
+        enrich(ipRecords, ips, context);
+
+        final long sendMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        getLogger().info("Processed {} records in {} milliseconds",
+                new Object[]{records.size(), sendMillis});
 
+        return records;
     }
 
     protected void processIp(Record record, String ip, ProcessContext context) {
+        enrich(Collections.singletonList(record), Collections.singletonList(ip), context);
+    }
+
+    /**
+     * Enrich the records in three passes: look up the cache once per distinct IP and start the resolution of the
+     * missing ones on the resolver pool, wait for these resolutions, then set the FQDN field of every record.
+     *
+     * @param records the records to enrich
+     * @param ips     the IP of each record, at the same index
+     */
+    private void enrich(List<Record> records, List<String> ips, ProcessContext context) {
 
         fqdnField = context.getPropertyValue(CONFIG_FQDN_FIELD).asString();
         overwrite = context.getPropertyValue(CONFIG_OVERWRITE_FQDN).asBoolean();
         cacheValidityPeriodSec = (long) context.getPropertyValue(CONFIG_CACHE_MAX_TIME).asInteger();
+        negativeCacheValidityPeriodSec = (long) context.getPropertyValue(CONFIG_CACHE_NEGATIVE_MAX_TIME).asInteger();
         resolutionTimeoutMs = (long) context.getPropertyValue(CONFIG_RESOLUTION_TIMEOUT).asInteger();
         debug = context.getPropertyValue(CONFIG_DEBUG).asBoolean();
 
-        if (!overwrite && record.hasField(fqdnField)) {
-            getLogger().trace("Skipped domain name resolution for Record (Field is already set and override is set to false):" + record,
-                    new Object[]{IP_ADDRESS_FIELD,
-                            record.getField(fqdnField).getRawValue()});
-            return;
-        }
-
         /**
-         * Attempt to find info from the cache
+         * Attempt to find info from the cache, triggering the resolution of what is missing
          */
-        CacheEntry cacheEntry = null;
-        try {
-            cacheEntry = cacheService.get(ip);
-        } catch (Exception e) {
-            getLogger().warn("Could not use cache!", e);
+        final Map<String, Lookup> lookups = new HashMap<>();
+        final List<Record> toEnrich = new ArrayList<>(records.size());
+        final List<Lookup> toEnrichLookups = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            if (!overwrite && record.hasField(fqdnField)) {
+                getLogger().trace("Skipped domain name resolution for Record (Field is already set and override is set to false):" + record,
+                        new Object[]{IP_ADDRESS_FIELD,
+                                record.getField(fqdnField).getRawValue()});
+                continue;
+            }
+            toEnrich.add(record);
+            toEnrichLookups.add(lookups.computeIfAbsent(ips.get(i), this::lookup));
         }
 
         /**
-         * If something in the cache, get it and be sure it is not obsolete
+         * Wait for the resolutions and store their results into the cache. The resolutions which were never sent to
+         * the OS are not stored, so that the next batch retries them
          */
-        String fqdn = null;
-        boolean fromCache = true;
-        if (cacheEntry != null) { // Something in the cache?
-            fqdn = cacheEntry.getFqdn();
-            if (cacheValidityPeriodSec > 0) { // Cache validity period enabled?
-                long cacheTime = cacheEntry.getTime();
-                long now = System.currentTimeMillis();
-                long cacheAge = now - cacheTime;
-                if (cacheAge > (cacheValidityPeriodSec * 1000L)) { // Cache entry older than allowed max age?
-                    fqdn = null; // Cache entry expired, force triggering a new request
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resolutionTimeoutMs);
+        for (Lookup lookup : lookups.values()) {
+            if (lookup.resolution != null) {
+                lookup.result = await(lookup.resolution, deadline);
+                if (!lookup.result.isAttempted()) {
+                    continue;
+                }
+                String fqdn = lookup.getFqdn();
+                try {
+                    // Store the found FQDN (or the ip if the FQDN could not be found)
+                    CacheEntry cacheEntry = new CacheEntry(fqdn, System.currentTimeMillis());
+                    long validityPeriodSec = fqdn.equals(lookup.ip) ? negativeCacheValidityPeriodSec : cacheValidityPeriodSec;
+                    if (expiringCacheService != null && validityPeriodSec > 0) {
+                        expiringCacheService.set(lookup.ip, cacheEntry, validityPeriodSec * 1000L);
+                    } else {
+                        cacheService.set(lookup.ip, cacheEntry);
+                    }
+                } catch (Exception e) {
+                    getLogger().trace("Could not put entry in the cache:" + e.getMessage());
                 }
             }
         }
 
-        if (fqdn == null) {
-            // Not in the cache or cache entry expired, trigger a real resolution request to the underlying OS
-            fromCache = false;
-            InetAddress addr = null;
-            try {
-                addr = InetAddress.getByName(ip);
-            } catch (UnknownHostException ex) {
-                getLogger().error("Error for ip {}, for record {}.", new Object[]{ip, record}, ex);
-                String msg = "Could not translate ip: '" + ip + "' into InetAddress, for record: '" + record.toString() + "'.\n Cause: " + ex.getMessage();
-                record.addError(ProcessError.RUNTIME_ERROR.toString(), msg);
-                return;
-            }
+        for (int i = 0; i < toEnrich.size(); i++) {
+            enrich(toEnrich.get(i), toEnrichLookups.get(i));
+        }
+    }
 
-            // Attempt to translate the ip into an FQDN
-            Result result = ipToFqdn(addr, record);
-
-            fqdn = result.getFqdn();
-            boolean timeout = (fqdn == null);
-            if (timeout) {
-                // Timeout. For the moment, we do as if the FQDN could not have been resolved and store the IP.
-                // That way, following requests to for the same IP will not immediately trigger a new resolution
-                // request. The cache timeout will however allow to retry later. This also ends up with no FQDN field
-                // created
-                fqdn = ip;
-            }
+    private void enrich(Record record, Lookup lookup) {
+        String ip = lookup.ip;
+        if (lookup.unknownHost != null) {
+            getLogger().error("Error for ip {}, for record {}.", new Object[]{ip, record}, lookup.unknownHost);
+            String msg = "Could not translate ip: '" + ip + "' into InetAddress, for record: '" + record.toString() + "'.\n Cause: " + lookup.unknownHost.getMessage();
+            record.addError(ProcessError.RUNTIME_ERROR.toString(), msg);
+            return;
+        }
 
+        boolean fromCache = lookup.result == null;
+        if (!fromCache) {
+            if (lookup.result.getError() != null) {
+                // Too bad but let's say its also a timeout, log however an error
+                getLogger().error("Error for ip {}, for record {}.", new Object[]{ip, record}, lookup.result.getError());
+                String msg = "Could not resolve ip: '" + ip + "' , for record: '" + record.toString() + "'.\n Cause: " + lookup.result.getError().getMessage();
+                record.addError(ProcessError.RUNTIME_ERROR.toString(), msg);
+            }
             if (debug) {
                 // Add some debug fields
-                record.setField(fqdnField + DEBUG_OS_RESOLUTION_TIMEOUT_SUFFIX, FieldType.BOOLEAN, timeout);
-                record.setField(fqdnField + DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX, FieldType.LONG, result.getResolutionTimeMs());
-            }
-
-            try {
-                // Store the found FQDN (or the ip if the FQDN could not be found)
-                cacheEntry = new CacheEntry(fqdn, System.currentTimeMillis());
-                cacheService.set(ip, cacheEntry);
-            } catch (Exception e) {
-                getLogger().trace("Could not put entry in the cache:" + e.getMessage());
+                record.setField(fqdnField + DEBUG_OS_RESOLUTION_TIMEOUT_SUFFIX, FieldType.BOOLEAN, lookup.result.getFqdn() == null);
+                record.setField(fqdnField + DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX, FieldType.LONG, lookup.result.getResolutionTimeMs());
             }
         }
 
+        String fqdn = lookup.getFqdn();
         if (fqdn.equals(ip)) {
             getLogger().debug("Could not find FQDN corresponding to ip {}. This may be an authorization problem.",
                     new Object[]{ip});
@@ -252,90 +367,233 @@ public class IpToFqdn extends IpAbstractProcessor {
     }
 
     /**
-     * Helper class for result of the ipToFqdn method
+     * Look up an IP in the cache and, if it is not there or if its entry is obsolete, start its resolution
      */
-    private static class Result {
-        private String fqdn = null;
-        private long resolutionTimeMs = 0L;
+    private Lookup lookup(String ip) {
+        Lookup lookup = new Lookup(ip);
 
-        public String getFqdn() {
-            return fqdn;
-        }
-
-        public void setFqdn(String fqdn) {
-            this.fqdn = fqdn;
+        CacheEntry cacheEntry = null;
+        try {
+            cacheEntry = cacheService.get(ip);
+        } catch (Exception e) {
+            getLogger().warn("Could not use cache!", e);
         }
 
-        public long getResolutionTimeMs() {
-            return resolutionTimeMs;
+        /**
+         * If something in the cache, get it and be sure it is not obsolete
+         */
+        if (cacheEntry != null) { // Something in the cache?
+            lookup.cachedFqdn = cacheEntry.getFqdn();
+            long validityPeriodSec = ip.equals(cacheEntry.getFqdn()) ? negativeCacheValidityPeriodSec : cacheValidityPeriodSec;
+            if (validityPeriodSec > 0 && expiringCacheService == null) { // Cache validity period enabled?
+                long cacheTime = cacheEntry.getTime();
+                long now = System.currentTimeMillis();
+                long cacheAge = now - cacheTime;
+                if (cacheAge > (validityPeriodSec * 1000L)) { // Cache entry older than allowed max age?
+                    lookup.cachedFqdn = null; // Cache entry expired, force triggering a new request
+                }
+            }
         }
 
-        public void setResolutionMs(long resolutionTimeMs) {
-            this.resolutionTimeMs = resolutionTimeMs;
+        if (lookup.cachedFqdn == null) {
+            // Not in the cache or cache entry expired, trigger a real resolution request to the underlying OS
+            try {
+                lookup.resolution = resolve(InetAddress.getByName(ip));
+            } catch (UnknownHostException ex) {
+                lookup.unknownHost = ex;
+            }
         }
+        return lookup;
     }
 
     /**
-     * Request to the OS the translation of the IP address into a FQDN
+     * Request to the OS the translation of the IP address into a FQDN. The request runs on the resolver pool,
+     * a request already in flight for the same IP is shared.
      *
-     * @param ip     IP to resolve
-     * @param record The record in which one can add error if any during resolution attempt
-     * @return Three possibilities for the FQDN:
+     * @param ip IP to resolve
+     * @return the future result of the resolution, whose FQDN is:
      * - The FQDN matching the IP
      * - The IP if no FQDN found
      * - null If timeout waiting for an answer from the subsystem.
      * Also the resolution time is returned in any case
      */
-    private Result ipToFqdn(InetAddress ip, Record record) {
+    private Resolution resolve(InetAddress ip) {
+        final String key = ip.getHostAddress();
+        final Resolution resolution = new Resolution();
+        final Resolution inFlight = inFlightResolutions.putIfAbsent(key, resolution);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        resolution.whenComplete((result, e) -> inFlightResolutions.remove(key, resolution));
+
         /**
-         * We'll use the InetAddress.getCanonicalHostName method but it's a synchronized call and does not exist
-         * in asynchronous mode. We don't want too wait too mush for a resolution so to implement a timeout, we
-         * use a separated thread. We wait for the completion of this thread for a certain amount of time then
-         * we stop waiting. This method returns null if this timeout occurs.
-         * If the timeout has the special 0 value, use the synchronized call
+         * The timeout starts when a resolver thread picks the request up and completes the resolution with a null
+         * FQDN. The running request is left to the OS: InetAddress.getCanonicalHostName is a synchronized call which
+         * cannot be interrupted. If the timeout has the special 0 value, there is none.
          */
-        Result result = new Result();
-        String fqdn = null; // null means timeout
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-
-        long start, stop;
-        if (resolutionTimeoutMs != 0L) {
-            start = System.currentTimeMillis();
-            Future<String> future = executor.submit(new Callable<String>() {
-                public String call() throws Exception {
+        final long timeoutMs = resolutionTimeoutMs;
+        try {
+            resolverPool.execute(() -> {
+                if (!resolution.start()) {
+                    // Given up while queued
+                    return;
+                }
+                final long start = System.currentTimeMillis();
+                if (timeoutMs != 0L) {
+                    final ScheduledFuture<?> timeout = TIMEOUT_SCHEDULER.schedule(
+                            () -> resolution.complete(new Result(null, System.currentTimeMillis() - start, null)),
+                            timeoutMs, TimeUnit.MILLISECONDS);
+                    resolution.whenComplete((result, e) -> timeout.cancel(false));
+                }
+                try {
                     // Returns the fully qualified domain name for this IP address, or if the operation is not allowed by the security check,
                     //the textual representation of the IP address.
-
-                    return ip.getCanonicalHostName();
+                    String fqdn = reverseLookup(ip);
+                    resolution.complete(new Result(fqdn, System.currentTimeMillis() - start, null));
+                } catch (Exception e) {
+                    resolution.complete(new Result(null, System.currentTimeMillis() - start, e));
                 }
             });
+        } catch (RejectedExecutionException e) {
+            // The resolver threads are all stuck on slow requests and the queue is full: leave the ip to a later batch
+            getLogger().warn("Too many pending resolutions, giving up the one of ip {}", new Object[]{key});
+            resolution.giveUpIfQueued();
+        }
+        return resolution;
+    }
 
+    /**
+     * The reverse DNS request itself, run on a resolver thread
+     */
+    String reverseLookup(InetAddress ip) {
+        return ip.getCanonicalHostName();
+    }
+
+    /**
+     * Wait for a resolution until the deadline unless the timeout is disabled. A resolution still queued by then is
+     * given up, a running one is waited for until its own timeout.
+     *
+     * @param resolution the resolution to wait for
+     * @param deadline   the {@link System#nanoTime()} after which a queued resolution is given up
+     */
+    private Result await(Resolution resolution, long deadline) {
+        try {
+            if (resolutionTimeoutMs == 0L) {
+                return resolution.get();
+            }
             try {
-                fqdn = future.get(resolutionTimeoutMs, TimeUnit.MILLISECONDS);
+                return resolution.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
             } catch (TimeoutException e) {
-                // fqdn stays null which means timeout
-            } catch (InterruptedException e) {
-                // Consider also it's a timeout, we gonna stop anyway
-                getLogger().debug("Interrupted while trying to resolve ip {}.", new Object[]{ip});
-            } catch (ExecutionException e) {
-                // Too bad but let's say its also a timeout, log however an error
-                getLogger().error("Error for ip {}, for record {}.", new Object[]{ip, record}, e);
-                String msg = "Could not resolve ip: '" + ip + "' , for record: '" + record.toString() + "'.\n Cause: " + e.getMessage();
-                record.addError(ProcessError.RUNTIME_ERROR.toString(), msg);
+                resolution.giveUpIfQueued();
+                return resolution.get();
             }
-            stop = System.currentTimeMillis();
-            executor.shutdownNow();
-        } else {
-            // No timeout, directly use the synchronized call
-            start = System.currentTimeMillis();
-            fqdn = ip.getCanonicalHostName();
-            stop = System.currentTimeMillis();
+        } catch (InterruptedException e) {
+            // We gonna stop anyway, leave the ip to the next run
+            Thread.currentThread().interrupt();
+            return Result.NOT_ATTEMPTED;
+        } catch (ExecutionException e) {
+            return new Result(null, 0L, e.getCause());
+        }
+    }
+
+    /**
+     * Resolution of an IP, which is either queued, running on a resolver thread, or given up before it could run
+     */
+    private static class Resolution extends CompletableFuture<Result> {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int GIVEN_UP = 2;
+
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        /**
+         * @return true if the resolution may run, false if it was given up
+         */
+        boolean start() {
+            return state.compareAndSet(QUEUED, RUNNING);
+        }
+
+        /**
+         * Complete the resolution as not attempted, unless it already runs
+         */
+        void giveUpIfQueued() {
+            if (state.compareAndSet(QUEUED, GIVEN_UP)) {
+                complete(Result.NOT_ATTEMPTED);
+            }
+        }
+    }
+
+    /**
+     * Helper class for result of a resolution
+     */
+    private static class Result {
+        // The resolution was never sent to the OS
+        static final Result NOT_ATTEMPTED = new Result(null, 0L, null, false);
+
+        // null means timeout
+        private final String fqdn;
+        private final long resolutionTimeMs;
+        private final Throwable error;
+        private final boolean attempted;
+
+        Result(String fqdn, long resolutionTimeMs, Throwable error) {
+            this(fqdn, resolutionTimeMs, error, true);
         }
 
-        result.setFqdn(fqdn);
-        result.setResolutionMs(stop - start);
+        private Result(String fqdn, long resolutionTimeMs, Throwable error, boolean attempted) {
+            this.fqdn = fqdn;
+            this.resolutionTimeMs = resolutionTimeMs;
+            this.error = error;
+            this.attempted = attempted;
+        }
+
+        public boolean isAttempted() {
+            return attempted;
+        }
 
-        return result;
+        public String getFqdn() {
+            return fqdn;
+        }
+
+        public long getResolutionTimeMs() {
+            return resolutionTimeMs;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    /**
+     * What is known of an IP of the batch being processed
+     */
+    private static class Lookup {
+        private final String ip;
+        // Set if a valid entry was found in the cache
+        private String cachedFqdn;
+        // Set if the IP had to be resolved
+        private Resolution resolution;
+        private Result result;
+        // Set if the IP could not even be translated into an InetAddress
+        private UnknownHostException unknownHost;
+
+        Lookup(String ip) {
+            this.ip = ip;
+        }
+
+        /**
+         * @return the FQDN of the IP, or the IP itself if it could not be resolved
+         */
+        String getFqdn() {
+            if (cachedFqdn != null) {
+                return cachedFqdn;
+            }
+            // Timeout. For the moment, we do as if the FQDN could not have been resolved and store the IP.
+            // That way, following requests to for the same IP will not immediately trigger a new resolution
+            // request. The cache timeout will however allow to retry later. This also ends up with no FQDN field
+            // created
+            return result.getFqdn() != null ? result.getFqdn() : ip;
+        }
     }
 
     @Override
@@ -345,7 +603,9 @@ public class IpToFqdn extends IpAbstractProcessor {
         properties.add(CONFIG_OVERWRITE_FQDN);
         properties.add(CONFIG_CACHE_SERVICE);
         properties.add(CONFIG_CACHE_MAX_TIME);
+        properties.add(CONFIG_CACHE_NEGATIVE_MAX_TIME);
         properties.add(CONFIG_RESOLUTION_TIMEOUT);
+        properties.add(CONFIG_RESOLUTION_THREADS);
         properties.add(CONFIG_DEBUG);
         return properties;
     }
@@ -24,6 +24,7 @@ import com.hurence.logisland.processor.ProcessContext;
 import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.service.cache.CacheService;
+import com.hurence.logisland.service.cache.ExpiringCacheService;
 import com.hurence.logisland.service.iptogeo.IpToGeoService;
 import com.hurence.logisland.validator.StandardValidators;
 import org.slf4j.Logger;
@@ -62,6 +63,8 @@ public class IpToGeo extends IpAbstractProcessor {
     protected static final long DEFAULT_CACHE_VALIDITY_PERIOD = 0;
     protected long cacheValidityPeriodSec = DEFAULT_CACHE_VALIDITY_PERIOD;
     protected CacheService<String, IpToGeo.CacheEntry> cacheService;
+    // Set when the cache service expires its entries by itself, in which case their age needs no check
+    protected ExpiringCacheService<String, IpToGeo.CacheEntry> expiringCacheService;
     protected boolean debug = false;
     static final String DEBUG_FROM_CACHE_SUFFIX = "_from_cache";
     protected static final String PROP_CACHE_SERVICE = "cache.service";
@@ -253,6 +256,7 @@ public class IpToGeo extends IpAbstractProcessor {
         if (cacheService == null) {
             logger.error("Cache service is not initialized!");
         }
+        expiringCacheService = cacheService instanceof ExpiringCacheService ? (ExpiringCacheService<String, IpToGeo.CacheEntry>) cacheService : null;
     }
 
     /**
@@ -300,7 +304,7 @@ public class IpToGeo extends IpAbstractProcessor {
         boolean fromCache = true;
         if (cacheEntry != null) { // Something in the cache?
             geoInfo = cacheEntry.getGeoInfo();
-            if (cacheValidityPeriodSec > 0) { // Cache validity period enabled?
+            if (cacheValidityPeriodSec > 0 && expiringCacheService == null) { // Cache validity period enabled?
                 long cacheTime = cacheEntry.getTime();
                 long now = System.currentTimeMillis();
                 long cacheAge = now - cacheTime;
@@ -332,7 +336,11 @@ public class IpToGeo extends IpAbstractProcessor {
             try {
                 // Store the geoInfo into the cache
                 cacheEntry = new CacheEntry(geoInfo, System.currentTimeMillis());
-                cacheService.set(ip, cacheEntry);
+                if (expiringCacheService != null && cacheValidityPeriodSec > 0) {
+                    expiringCacheService.set(ip, cacheEntry, cacheValidityPeriodSec * 1000L);
+                } else {
+                    cacheService.set(ip, cacheEntry);
+                }
             } catch (Exception e) {
                 logger.trace("Could not put entry in the cache:" + e.getMessage());
             }
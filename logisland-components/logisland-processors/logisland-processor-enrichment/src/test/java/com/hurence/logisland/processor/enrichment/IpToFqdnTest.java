@@ -32,6 +32,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -387,7 +389,7 @@ public class IpToFqdnTest {
         try {
             Thread.sleep(3000);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Assert.fail("Interrupted while waiting for the cache entry expiration");
         }
 
         inputRecord = getRecordWithStringIp("78.109.84.114");
@@ -401,15 +403,128 @@ public class IpToFqdnTest {
         outputRecord.assertFieldNotExists(ProcessError.RUNTIME_ERROR.toString());
     }
 
+    @Test
+    public void testBatchResolvesEachDistinctIpOnce() throws InitializationException {
+        final TestRunner runner = getTestRunner();
+        runner.setProperty(IpToFqdn.CONFIG_RESOLUTION_THREADS, "4");
+
+        // Documentation only addresses, which no DNS resolves
+        final String[] ips = {"192.0.2.1", "192.0.2.2", "192.0.2.3", "198.51.100.1", "203.0.113.1"};
+        for (int i = 0; i < 50; i++) {
+            runner.enqueue(getRecordWithStringIp(ips[i % ips.length]));
+        }
+        runner.run();
+        runner.assertAllInputRecordsProcessed();
+        runner.assertOutputRecordsCount(50);
+
+        // Records with the same ip share the same resolution
+        final Map<String, String> resolutionTimes = new HashMap<>();
+        for (MockRecord outputRecord : runner.getOutputRecords()) {
+            outputRecord.assertFieldNotExists(ProcessError.RUNTIME_ERROR.toString());
+            String ip = outputRecord.getField(IP_ADDRESS_FIELD_NAME).asString();
+            String resolutionTime = outputRecord.getField(FQDN_FIELD_NAME + IpToFqdn.DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX).asString();
+            Assert.assertEquals(resolutionTimes.computeIfAbsent(ip, k -> resolutionTime), resolutionTime);
+        }
+        Assert.assertEquals(ips.length, resolutionTimes.size());
+    }
+
+    @Test
+    public void testNegativeCacheEntryExpiration() throws InitializationException {
+        final TestRunner runner = getTestRunner();
+        runner.setProperty(IpToFqdn.CONFIG_CACHE_MAX_TIME, "3600");
+        runner.setProperty(IpToFqdn.CONFIG_CACHE_NEGATIVE_MAX_TIME, "1");
+
+        processRecordIn(getRecordWithStringIp("192.0.2.1"), runner);
+        runner.getOutputRecords().get(0).assertFieldExists(FQDN_FIELD_NAME + IpToFqdn.DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX);
+
+        // The unresolved ip is in the cache
+        processRecordIn(getRecordWithStringIp("192.0.2.1"), runner);
+        runner.getOutputRecords().get(1).assertFieldNotExists(FQDN_FIELD_NAME + IpToFqdn.DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX);
+
+        try {
+            Thread.sleep(1500);
+        } catch (InterruptedException e) {
+            Assert.fail("Interrupted while waiting for the negative cache entry expiration");
+        }
+
+        // Its entry expired long before the one of a resolved ip would
+        processRecordIn(getRecordWithStringIp("192.0.2.1"), runner);
+        runner.getOutputRecords().get(2).assertFieldExists(FQDN_FIELD_NAME + IpToFqdn.DEBUG_OS_RESOLUTION_TIME_MS_SUFFIX);
+    }
+
+    @Test
+    public void testQueuedResolutionsAreNotCached() throws InitializationException {
+        // One resolver thread, whose requests last 100ms
+        final IpToFqdn processor = new IpToFqdn() {
+            @Override
+            String reverseLookup(InetAddress ip) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "host-" + ip.getHostAddress().replace('.', '-');
+            }
+        };
+        final MockCacheService<Object, Object> cacheService = new MockCacheService<>();
+        final TestRunner runner = getTestRunner(processor, cacheService);
+        runner.setProperty(IpToFqdn.CONFIG_RESOLUTION_THREADS, "1");
+        runner.setProperty(IpToFqdn.CONFIG_RESOLUTION_TIMEOUT, "250");
+
+        // More distinct ips than the thread and its queue can take
+        final List<String> ips = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ips.add("10.0.0." + i);
+        }
+        for (String ip : ips) {
+            runner.enqueue(getRecordWithStringIp(ip));
+        }
+        runner.run();
+        runner.assertAllInputRecordsProcessed();
+        runner.assertOutputRecordsCount(ips.size());
+
+        // Only the ips resolved within the timeout are cached, the queued and rejected ones are left to the next batch
+        int resolved = 0;
+        for (MockRecord outputRecord : runner.getOutputRecords()) {
+            String ip = outputRecord.getField(IP_ADDRESS_FIELD_NAME).asString();
+            if (outputRecord.hasField(FQDN_FIELD_NAME)) {
+                outputRecord.assertFieldEquals(FQDN_FIELD_NAME, "host-" + ip.replace('.', '-'));
+                Assert.assertNotNull(ip, cacheService.get(ip));
+                resolved++;
+            } else {
+                Assert.assertNull(ip, cacheService.get(ip));
+            }
+            outputRecord.assertFieldNotExists(ProcessError.RUNTIME_ERROR.toString());
+        }
+        Assert.assertTrue("resolved " + resolved, resolved > 0 && resolved < 10);
+
+        // The next batch retries them
+        runner.clearQueues();
+        for (String ip : ips) {
+            runner.enqueue(getRecordWithStringIp(ip));
+        }
+        runner.run();
+        int resolvedTwice = 0;
+        for (String ip : ips) {
+            if (cacheService.get(ip) != null) {
+                resolvedTwice++;
+            }
+        }
+        Assert.assertTrue("resolved " + resolvedTwice, resolvedTwice > resolved);
+    }
+
     private TestRunner getTestRunner() throws InitializationException {
-        final TestRunner runner = TestRunners.newTestRunner("com.hurence.logisland.processor.enrichment.IpToFqdn");
+        return getTestRunner(new IpToFqdn(), new MockCacheService<>());
+    }
+
+    private TestRunner getTestRunner(IpToFqdn processor, MockCacheService<Object, Object> cacheService) throws InitializationException {
+        final TestRunner runner = TestRunners.newTestRunner(processor);
         runner.setProperty(IpToFqdn.CONFIG_FQDN_FIELD, FQDN_FIELD_NAME);
         runner.setProperty(IpToFqdn.IP_ADDRESS_FIELD, IP_ADDRESS_FIELD_NAME);
         runner.setProperty(IpToFqdn.CONFIG_OVERWRITE_FQDN, OVERRIDE_FQDN);
         runner.setProperty(IpToFqdn.CONFIG_RESOLUTION_TIMEOUT, "1000");
         runner.setProperty(IpToFqdn.CONFIG_DEBUG, "true");
 
-        final MockCacheService<Object, Object> cacheService = new MockCacheService<>();
         runner.addControllerService("cacheService", cacheService);
         runner.enableControllerService(cacheService);
         runner.setProperty(IpToFqdn.CONFIG_CACHE_SERVICE, "cacheService");
@@ -22,8 +22,6 @@ import com.hurence.logisland.classloading.PluginProxy;
 import com.hurence.logisland.component.AllowableValue;
 import com.hurence.logisland.component.InitializationException;
 import com.hurence.logisland.component.PropertyDescriptor;
-import com.hurence.logisland.logging.ComponentLog;
-import com.hurence.logisland.logging.StandardComponentLogger;
 import com.hurence.logisland.processor.AbstractProcessor;
 import com.hurence.logisland.processor.ProcessContext;
 import com.hurence.logisland.processor.ProcessError;
@@ -33,7 +31,6 @@ import com.hurence.logisland.serializer.*;
 import com.hurence.logisland.service.hbase.HBaseClientService;
 import com.hurence.logisland.service.hbase.scan.Column;
 import com.hurence.logisland.service.hbase.scan.ResultCell;
-import com.hurence.logisland.service.hbase.scan.ResultHandler;
 import com.hurence.logisland.validator.StandardValidators;
 import org.apache.commons.lang3.StringUtils;
 
@@ -127,9 +124,26 @@ public class FetchHBaseRow extends AbstractProcessor {
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor ROW_CACHE_SIZE = new PropertyDescriptor.Builder()
+            .name("row.cache.size")
+            .description("the maximum number of fetched rows kept in memory to be reused by the next records, 0 disables the cache")
+            .required(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .defaultValue("0")
+            .build();
+
+    public static final PropertyDescriptor ROW_CACHE_TTL = new PropertyDescriptor.Builder()
+            .name("row.cache.ttl.ms")
+            .description("the time in ms during which a cached row is reused before being fetched again")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .defaultValue("60000")
+            .build();
+
 
     public HBaseClientService clientService;
     public RecordSerializer serializer;
+    private RowCache rowCache;
 
 
     static final String HBASE_TABLE_ATTR = "hbase.table";
@@ -146,6 +160,8 @@ public class FetchHBaseRow extends AbstractProcessor {
         props.add(RECORD_SERIALIZER);
         props.add(RECORD_SCHEMA);
         props.add(TABLE_NAME_DEFAULT);
+        props.add(ROW_CACHE_SIZE);
+        props.add(ROW_CACHE_TTL);
         properties = Collections.unmodifiableList(props);
     }
 
@@ -173,6 +189,14 @@ public class FetchHBaseRow extends AbstractProcessor {
         } else {
             serializer = SerializerProvider.getSerializer(context.getPropertyValue(RECORD_SERIALIZER).asString(), null);
         }
+        // keep the cached rows when the processor is initialized again with the same cache settings
+        final int rowCacheSize = context.getPropertyValue(ROW_CACHE_SIZE).asInteger();
+        final long rowCacheTtl = context.getPropertyValue(ROW_CACHE_TTL).asLong();
+        if (rowCacheSize == 0) {
+            rowCache = null;
+        } else if (rowCache == null || rowCache.maxSize != rowCacheSize || rowCache.ttlMs != rowCacheTtl) {
+            rowCache = new RowCache(rowCacheSize, rowCacheTtl);
+        }
 
 
     }
@@ -181,8 +205,10 @@ public class FetchHBaseRow extends AbstractProcessor {
     @Override
     public Collection<Record> process(ProcessContext context, Collection<Record> records) throws ProcessException {
 
-
-        List<Record> outputRecords = new ArrayList<>();
+        // collect the distinct rows to fetch, grouped by table and columns
+        final List<RowRequest> requests = new ArrayList<>(records.size());
+        final Map<String, FetchGroup> groups = new LinkedHashMap<>();
+        final Map<String, List<byte[]>> fetchedRows = new HashMap<>();
         for (Record record : records) {
 
             try {
@@ -210,60 +236,114 @@ public class FetchHBaseRow extends AbstractProcessor {
                     continue;
                 }
 
-                List<Column> columns = null;
+                String columnsValue = null;
                 if (record.hasField(context.getPropertyValue(COLUMNS_FIELD).asString()))
-                    columns = getColumns(record.getField(context.getPropertyValue(COLUMNS_FIELD).asString()).asString());
-
-
-                final RecordContentHandler handler = new RecordContentHandler(serializer);
-
-                final byte[] rowIdBytes = rowId.getBytes(StandardCharsets.UTF_8);
-
-                try {
-                    clientService.scan(tableName, rowIdBytes, rowIdBytes, columns, handler);
-                } catch (Exception e) {
-                    record.addError(
-                            ProcessError.BAD_RECORD.toString(),
-                            getLogger(),
-                            "Unable to fetch row {} from  {} due to {}",
-                            new Object[]{rowId, tableName, e});
-                    continue;
-                }
+                    columnsValue = record.getField(context.getPropertyValue(COLUMNS_FIELD).asString()).asString();
 
-                Collection<Record> handlerRecords = handler.getRecords();
-                if (!handler.handledRow()) {
-                    record.addError(
-                            ProcessError.BAD_RECORD.toString(),
-                            getLogger(),
-                            "Row {} not found in {}",
-                            new Object[]{rowId, tableName});
-                    continue;
+                final String groupKey = tableName + '\n' + columnsValue;
+                FetchGroup group = groups.get(groupKey);
+                if (group == null) {
+                    group = new FetchGroup(tableName, columnsValue == null ? null : getColumns(columnsValue));
+                    groups.put(groupKey, group);
                 }
-
-                if (getLogger().isDebugEnabled()) {
-                    getLogger().debug("Fetched {} from {} with row id {}", new Object[]{handlerRecords, tableName, rowId});
+                final RowRequest request = new RowRequest(record, group, rowId, groupKey + '\n' + rowId);
+                requests.add(request);
+
+                if (!fetchedRows.containsKey(request.rowKey)) {
+                    final List<byte[]> cachedRow = rowCache == null ? null : rowCache.get(request.rowKey);
+                    if (cachedRow != null) {
+                        fetchedRows.put(request.rowKey, cachedRow);
+                    } else {
+                        group.rowIds.add(rowId);
+                    }
                 }
 
-                final Map<String, String> attributes = new HashMap<>();
-                attributes.put(HBASE_TABLE_ATTR, tableName);
-
-
-                outputRecords.addAll(handlerRecords);
-
-
             } catch (Exception ex) {
                 record.addError(ProcessError.RUNTIME_ERROR.toString(),
                         getLogger(),
                         "Unable to fetch row {}",
                         new Object[]{ex});
             }
+        }
 
+        // fetch the rows of each group in a single batch
+        for (Map.Entry<String, FetchGroup> entry : groups.entrySet()) {
+            final FetchGroup group = entry.getValue();
+            if (group.rowIds.isEmpty()) {
+                continue;
+            }
+            final String groupKey = entry.getKey();
+            final List<byte[]> rowIds = new ArrayList<>(group.rowIds.size());
+            for (String rowId : group.rowIds) {
+                rowIds.add(rowId.getBytes(StandardCharsets.UTF_8));
+            }
+            try {
+                clientService.get(group.tableName, rowIds, group.columns, (row, resultCells) -> {
+                    final String rowKey = groupKey + '\n' + new String(row, StandardCharsets.UTF_8);
+                    final List<byte[]> cellValues = new ArrayList<>(resultCells.length);
+                    for (ResultCell cell : resultCells) {
+                        cellValues.add(Arrays.copyOfRange(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength() + cell.getValueOffset()));
+                    }
+                    fetchedRows.put(rowKey, cellValues);
+                    if (rowCache != null) {
+                        rowCache.put(rowKey, cellValues);
+                    }
+                });
+            } catch (Exception e) {
+                group.error = e;
+            }
+        }
+
+        // map the fetched rows back onto the records
+        List<Record> outputRecords = new ArrayList<>();
+        for (RowRequest request : requests) {
+            final Record record = request.record;
+            final String tableName = request.group.tableName;
+            final List<byte[]> cellValues = fetchedRows.get(request.rowKey);
+            if (cellValues == null && request.group.error != null) {
+                record.addError(
+                        ProcessError.BAD_RECORD.toString(),
+                        getLogger(),
+                        "Unable to fetch row {} from  {} due to {}",
+                        new Object[]{request.rowId, tableName, request.group.error});
+                continue;
+            }
+            if (cellValues == null) {
+                record.addError(
+                        ProcessError.BAD_RECORD.toString(),
+                        getLogger(),
+                        "Row {} not found in {}",
+                        new Object[]{request.rowId, tableName});
+                continue;
+            }
+
+            final Collection<Record> handlerRecords = deserialize(cellValues);
+            if (getLogger().isDebugEnabled()) {
+                getLogger().debug("Fetched {} from {} with row id {}", new Object[]{handlerRecords, tableName, request.rowId});
+            }
+            outputRecords.addAll(handlerRecords);
         }
 
         return outputRecords;
 
     }
 
+    /**
+     * Deserializes the records stored in the cells of a row.
+     * A new record is created for each call, so that the records built from a cached row can be modified.
+     */
+    private Collection<Record> deserialize(List<byte[]> cellValues) {
+        final List<Record> deserializedRecords = new ArrayList<>(cellValues.size());
+        for (byte[] cellValue : cellValues) {
+            try (ByteArrayInputStream bais = new ByteArrayInputStream(cellValue)) {
+                deserializedRecords.add(serializer.deserialize(bais));
+            } catch (Exception e) {
+                getLogger().error("error while deserializing cell value {} : {}", new Object[]{new String(cellValue, StandardCharsets.UTF_8), e});
+            }
+        }
+        return deserializedRecords;
+    }
+
     /**
      * @param columnsValue a String in the form colFam:colQual,colFam:colQual
      * @return a list of Columns based on parsing the given String
@@ -290,46 +370,84 @@ public class FetchHBaseRow extends AbstractProcessor {
 
 
     /**
-     * A FetchHBaseRowHandler that writes the resulting row to the Record content.
+     * The rows to fetch from a table with the same columns.
      */
-    private static class RecordContentHandler implements ResultHandler {
-
-        private ArrayList<Record> records;
-        private final RecordSerializer serializer;
-        private boolean handledRow = false;
+    private static class FetchGroup {
 
-        private ComponentLog logger = new StandardComponentLogger("", this.getClass());
+        private final String tableName;
+        private final List<Column> columns;
+        private final Set<String> rowIds = new LinkedHashSet<>();
+        private Exception error;
 
-        public RecordContentHandler(final RecordSerializer serializer) {
-            this.records = new ArrayList<>();
-            this.serializer = serializer;
+        FetchGroup(String tableName, List<Column> columns) {
+            this.tableName = tableName;
+            this.columns = columns;
         }
+    }
 
-        @Override
-        public void handle(byte[] row, ResultCell[] resultCells) {
-
-            for (ResultCell cell : resultCells) {
+    /**
+     * A record and the row it is enriched with.
+     */
+    private static class RowRequest {
+
+        private final Record record;
+        private final FetchGroup group;
+        private final String rowId;
+        private final String rowKey;
+
+        RowRequest(Record record, FetchGroup group, String rowId, String rowKey) {
+            this.record = record;
+            this.group = group;
+            this.rowId = rowId;
+            this.rowKey = rowKey;
+        }
+    }
 
-                try {
-                    final byte[] cellValue = Arrays.copyOfRange(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength() + cell.getValueOffset());
-                    ByteArrayInputStream bais = new ByteArrayInputStream(cellValue);
-                    Record deserializedRecord = serializer.deserialize(bais);
-                    records.add(deserializedRecord);
-                    bais.close();
-                } catch (Exception e) {
-                    logger.error("error while handling ResultCell for {} : {}", new Object[]{cell, e});
+    /**
+     * A LRU cache of the cell values of the last fetched rows, which expire after a given time.
+     */
+    private static class RowCache {
+
+        private final int maxSize;
+        private final long ttlMs;
+        private final Map<String, CachedRow> rows;
+
+        RowCache(final int maxSize, long ttlMs) {
+            this.maxSize = maxSize;
+            this.ttlMs = ttlMs;
+            this.rows = new LinkedHashMap<String, CachedRow>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedRow> eldest) {
+                    return size() > maxSize;
                 }
-            }
-            handledRow = true;
+            };
         }
 
+        synchronized List<byte[]> get(String rowKey) {
+            final CachedRow row = rows.get(rowKey);
+            if (row == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - row.fetchTime > ttlMs) {
+                rows.remove(rowKey);
+                return null;
+            }
+            return row.cellValues;
+        }
 
-        public Collection<Record> getRecords() {
-            return records;
+        synchronized void put(String rowKey, List<byte[]> cellValues) {
+            rows.put(rowKey, new CachedRow(System.currentTimeMillis(), cellValues));
         }
+    }
+
+    private static class CachedRow {
+
+        private final long fetchTime;
+        private final List<byte[]> cellValues;
 
-        public boolean handledRow() {
-            return handledRow;
+        CachedRow(long fetchTime, List<byte[]> cellValues) {
+            this.fetchTime = fetchTime;
+            this.cellValues = cellValues;
         }
     }
 
@@ -188,6 +188,53 @@ public class TestFetchHBaseRow {
 
         Assert.assertEquals(1, hBaseClientService.getNumScans());
     }
+    @Test
+    public void testFetchSameRowOnce() throws IOException {
+        final Map<String, String> cells = new HashMap<>();
+        cells.put(COLUMN_QUALIFIER_1, serializeRecord(new JsonSerializer(), inputRecord));
+
+        hBaseClientService.addResult(ROW_ID_1, cells, 123456789);
+
+        runner.enqueue(new MockRecord(RecordUtils.getKeyValueRecord(KEY, VALUE))
+                .setStringField(ROW_ID_KEY, ROW_ID_1)
+                .setStringField(TABLE_NAME_KEY, TABLE_NAME));
+        runner.enqueue(new MockRecord(RecordUtils.getKeyValueRecord(KEY, "other content"))
+                .setStringField(ROW_ID_KEY, ROW_ID_1)
+                .setStringField(TABLE_NAME_KEY, TABLE_NAME));
+        runner.run();
+
+        runner.assertOutputErrorCount(0);
+        runner.assertOutputRecordsCount(2);
+        runner.getOutputRecords().get(0).assertContentEquals(inputRecord);
+        runner.getOutputRecords().get(1).assertContentEquals(inputRecord);
+
+        Assert.assertEquals(1, hBaseClientService.getNumScans());
+    }
+
+    @Test
+    public void testRowCache() throws IOException {
+        runner.setProperty(FetchHBaseRow.ROW_CACHE_SIZE, "10");
+
+        final Map<String, String> cells = new HashMap<>();
+        cells.put(COLUMN_QUALIFIER_1, serializeRecord(new JsonSerializer(), inputRecord));
+
+        hBaseClientService.addResult(ROW_ID_1, cells, 123456789);
+
+        runner.enqueue(inputRecord);
+        runner.run();
+        runner.assertOutputRecordsCount(1);
+
+        runner.clearQueues();
+        runner.enqueue(inputRecord);
+        runner.run();
+        runner.assertOutputErrorCount(0);
+        runner.assertOutputRecordsCount(1);
+        runner.getOutputRecords().get(0).assertContentEquals(inputRecord);
+
+        // the second record is enriched from the cache
+        Assert.assertEquals(1, hBaseClientService.getNumScans());
+    }
+
 /*
     @Test
     public void testFetchToAttributesWithBase64Values() {
@@ -27,14 +27,15 @@ import com.twitter.algebird.QTree;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import scala.Tuple2;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
-public class Distribution implements Measurable {
+public class Distribution implements Measurable, Serializable {
 
 
-    public static class Context {
+    public static class Context implements Serializable {
         private Distribution currentDistribution;
         private Distribution previousDistribution;
         private LinkedList<Distribution> chunks = new LinkedList<>();
@@ -15,6 +15,7 @@
  */
 package com.caseystella.analytics.distribution.sampling;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -23,7 +24,7 @@ import java.util.Random;
 /**
  * See http://arxiv.org/pdf/1012.0256.pdf
  */
-class AChao<T> {
+class AChao<T> implements Serializable {
     private final List<T> reservoir;
     double runningCount;
     private final int reservoirCapacity;
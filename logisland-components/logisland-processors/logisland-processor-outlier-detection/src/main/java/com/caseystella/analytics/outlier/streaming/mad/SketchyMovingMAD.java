@@ -28,6 +28,7 @@ import com.caseystella.analytics.util.ConfigUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.util.*;
 
 public class SketchyMovingMAD implements OutlierAlgorithm{
@@ -70,6 +71,37 @@ public class SketchyMovingMAD implements OutlierAlgorithm{
         return valueDistributions;
     }
 
+    /**
+     * The distributions and the last severities learnt so far, which can be saved and given back to another
+     * instance with the same configuration to resume the analysis where it stopped.
+     */
+    public static class State implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, Distribution.Context> valueDistributions;
+        private final Map<String, Distribution.Context> medianDistributions;
+        private final Map<String, Distribution.Context> zScoreDistributions;
+        private final LinkedList<Severity> lastOutlier;
+
+        private State(SketchyMovingMAD mad) {
+            this.valueDistributions = mad.valueDistributions;
+            this.medianDistributions = mad.medianDistributions;
+            this.zScoreDistributions = mad.zScoreDistributions;
+            this.lastOutlier = mad.lastOutlier;
+        }
+    }
+
+    public State getState() {
+        return new State(this);
+    }
+
+    public void setState(State state) {
+        valueDistributions = state.valueDistributions;
+        medianDistributions = state.medianDistributions;
+        zScoreDistributions = state.zScoreDistributions;
+        lastOutlier = state.lastOutlier;
+    }
+
     @Override
     public Outlier analyze(DataPoint dp) {
         if(config == null) {
@@ -22,15 +22,19 @@ import com.caseystella.analytics.distribution.config.Unit;
 import com.caseystella.analytics.outlier.Outlier;
 import com.caseystella.analytics.outlier.Severity;
 import com.caseystella.analytics.outlier.batch.rpca.RPCAOutlierAlgorithm;
-import com.caseystella.analytics.outlier.streaming.OutlierAlgorithm;
 import com.caseystella.analytics.outlier.streaming.OutlierConfig;
 import com.caseystella.analytics.outlier.streaming.mad.SketchyMovingMAD;
 import com.hurence.logisland.annotation.behavior.Stateful;
+import com.hurence.logisland.classloading.PluginProxy;
 import com.hurence.logisland.annotation.documentation.CapabilityDescription;
 import com.hurence.logisland.annotation.documentation.ExtraDetailFile;
 import com.hurence.logisland.annotation.documentation.Tags;
 import com.hurence.logisland.component.InitializationException;
 import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.processor.outlier.DatastoreOutlierStateStore;
+import com.hurence.logisland.processor.outlier.FileOutlierStateStore;
+import com.hurence.logisland.processor.outlier.OutlierStateStore;
+import com.hurence.logisland.service.datastore.DatastoreClientService;
 import com.hurence.logisland.validator.ValidationContext;
 import com.hurence.logisland.validator.ValidationResult;
 import com.hurence.logisland.record.FieldDictionary;
@@ -41,7 +45,10 @@ import com.hurence.logisland.validator.StandardValidators;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 @Stateful
@@ -61,7 +68,12 @@ import java.util.*;
         "- Use traditional, more computationally complex approaches to outlier analysis (e.g. Robust PCA) on the biased sample\n" +
         "- Expensive computationally, but run infrequently\n" +
         "\n" +
-        "This becomes a data filter which can be attached to a timeseries data stream within a distributed computational framework (i.e. Storm, Spark, Flink, NiFi) to detect outliers.")
+        "This becomes a data filter which can be attached to a timeseries data stream within a distributed computational framework (i.e. Storm, Spark, Flink, NiFi) to detect outliers.\n" +
+        "\n" +
+        "Each series (the records sharing the same series.field value, or the same type) is analyzed by its own detector, " +
+        "the series of a batch being analyzed in parallel with series.parallelism > 1. The state of the detectors can be " +
+        "saved into a state store after each batch and restored when the processor is restarted. At most series.max " +
+        "series are kept in memory, the least recently seen ones being dropped after each batch.")
 @ExtraDetailFile("./details/DetectOutliers-Detail.rst")
 public class DetectOutliers extends AbstractProcessor {
 
@@ -72,8 +84,44 @@ public class DetectOutliers extends AbstractProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(DetectOutliers.class);
     private OutlierConfig outlierConfig;
-    private OutlierAlgorithm sketchyOutlierAlgorithm;
-    com.caseystella.analytics.outlier.batch.OutlierAlgorithm batchOutlierAlgorithm;
+    private String seriesField;
+    /**
+     * The detectors by series, in access order so that the least recently seen series come first.
+     */
+    private final LinkedHashMap<String, SeriesDetector> detectors = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxSeries;
+    private OutlierStateStore stateStore;
+    private ExecutorService seriesExecutor;
+
+    /**
+     * The detectors of a single series, which are never used by two threads at the same time.
+     */
+    private static class SeriesDetector {
+        final SketchyMovingMAD sketchyOutlierAlgorithm;
+        final com.caseystella.analytics.outlier.batch.OutlierAlgorithm batchOutlierAlgorithm;
+
+        SeriesDetector(OutlierConfig outlierConfig) {
+            sketchyOutlierAlgorithm = new SketchyMovingMAD();
+            sketchyOutlierAlgorithm.configure(outlierConfig);
+            batchOutlierAlgorithm = new RPCAOutlierAlgorithm();
+            batchOutlierAlgorithm.configure(outlierConfig);
+        }
+    }
+
+    /**
+     * A point found severe by the sketchy algorithm, waiting for the batch algorithm to confirm it.
+     */
+    private static class Candidate {
+        final Record record;
+        final DataPoint dataPoint;
+        final Outlier outlier;
+
+        Candidate(Record record, DataPoint dataPoint, Outlier outlier) {
+            this.record = record;
+            this.dataPoint = dataPoint;
+            this.outlier = outlier;
+        }
+    }
 
 
     public static final PropertyDescriptor RECORD_VALUE_FIELD = new PropertyDescriptor.Builder()
@@ -311,6 +359,70 @@ public class DetectOutliers extends AbstractProcessor {
             .defaultValue("alert_match")
             .build();
 
+    public static final PropertyDescriptor SERIES_FIELD = new PropertyDescriptor.Builder()
+            .name("series.field")
+            .description("the field identifying the series of a record, each series being analyzed separately. " +
+                    "The type of the record is used when this field is not set or missing")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor SERIES_PARALLELISM = new PropertyDescriptor.Builder()
+            .name("series.parallelism")
+            .description("the number of series of a batch analyzed at the same time, the points of a series " +
+                    "being always analyzed in order")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("1")
+            .build();
+
+    public static final PropertyDescriptor SERIES_MAX = new PropertyDescriptor.Builder()
+            .name("series.max")
+            .description("the maximum number of series kept in memory, the least recently seen ones being dropped " +
+                    "after each batch. A dropped series is restored from the state store when it is seen again, or " +
+                    "starts from scratch without state store")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("10000")
+            .build();
+
+    public static final PropertyDescriptor STATE_STORE = new PropertyDescriptor.Builder()
+            .name("state.store")
+            .description("where to save the state of the series after each batch, to restore it when the processor " +
+                    "is restarted : none, a local directory (file) or a datastore collection (datastore)")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .defaultValue("none")
+            .allowableValues("none", "file", "datastore")
+            .build();
+
+    public static final PropertyDescriptor STATE_STORE_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("state.store.directory")
+            .description("the local directory of the file state store")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor DATASTORE_CLIENT_SERVICE = new PropertyDescriptor.Builder()
+            .name("datastore.client.service")
+            .description("the instance of the Controller Service used by the datastore state store")
+            .required(false)
+            .identifiesControllerService(DatastoreClientService.class)
+            .build();
+
+    public static final PropertyDescriptor STATE_STORE_COLLECTION = new PropertyDescriptor.Builder()
+            .name("state.store.collection")
+            .description("the collection of the datastore state store")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .defaultValue("outlier_state")
+            .build();
+
+    @Override
+    public boolean hasControllerService() {
+        return true;
+    }
+
     @Override
     public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
         final List<PropertyDescriptor> descriptors = new ArrayList<>();
@@ -346,6 +458,14 @@ public class DetectOutliers extends AbstractProcessor {
         descriptors.add(RPCA_SPENALTY);
         descriptors.add(RPCA_THRESHOLD);
 
+        descriptors.add(SERIES_FIELD);
+        descriptors.add(SERIES_PARALLELISM);
+        descriptors.add(SERIES_MAX);
+        descriptors.add(STATE_STORE);
+        descriptors.add(STATE_STORE_DIRECTORY);
+        descriptors.add(DATASTORE_CLIENT_SERVICE);
+        descriptors.add(STATE_STORE_COLLECTION);
+
 
         return Collections.unmodifiableList(descriptors);
     }
@@ -537,10 +657,50 @@ public class DetectOutliers extends AbstractProcessor {
                     context.getPropertyValue(RPCA_MIN_RECORDS).asInteger());
         }
 
-        sketchyOutlierAlgorithm = new SketchyMovingMAD();
-        sketchyOutlierAlgorithm.configure(outlierConfig);
-        batchOutlierAlgorithm = new RPCAOutlierAlgorithm();
-        batchOutlierAlgorithm.configure(outlierConfig);
+        // fails now rather than on the first record if the configuration is wrong
+        new SeriesDetector(outlierConfig);
+        synchronized (detectors) {
+            detectors.clear();
+        }
+
+        /**
+         * series
+         */
+        seriesField = context.getPropertyValue(SERIES_FIELD).asString();
+        maxSeries = context.getPropertyValue(SERIES_MAX).asInteger();
+        if (seriesExecutor != null) {
+            seriesExecutor.shutdown();
+            seriesExecutor = null;
+        }
+        final int parallelism = context.getPropertyValue(SERIES_PARALLELISM).asInteger();
+        if (parallelism > 1) {
+            seriesExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "detect-outliers");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * state store
+         */
+        switch (context.getPropertyValue(STATE_STORE).asString()) {
+            case "file":
+                try {
+                    stateStore = new FileOutlierStateStore(Paths.get(context.getPropertyValue(STATE_STORE_DIRECTORY).asString()));
+                } catch (IOException e) {
+                    throw new InitializationException(e);
+                }
+                break;
+            case "datastore":
+                DatastoreClientService datastoreClientService =
+                        PluginProxy.rewrap(context.getPropertyValue(DATASTORE_CLIENT_SERVICE).asControllerService());
+                stateStore = new DatastoreOutlierStateStore(datastoreClientService,
+                        context.getPropertyValue(STATE_STORE_COLLECTION).asString());
+                break;
+            default:
+                stateStore = null;
+        }
     }
 
 
@@ -569,6 +729,32 @@ public class DetectOutliers extends AbstractProcessor {
                             .build()
             );
         }
+        switch (context.getPropertyValue(STATE_STORE).asString()) {
+            case "file":
+                if (!context.getPropertyValue(STATE_STORE_DIRECTORY).isSet()) {
+                    results.add(
+                            new ValidationResult.Builder()
+                                    .valid(false)
+                                    .input(null)
+                                    .subject(STATE_STORE_DIRECTORY.getName())
+                                    .explanation(STATE_STORE_DIRECTORY.getName() + " is required by the file state store")
+                                    .build()
+                    );
+                }
+                break;
+            case "datastore":
+                if (!context.getPropertyValue(DATASTORE_CLIENT_SERVICE).isSet()) {
+                    results.add(
+                            new ValidationResult.Builder()
+                                    .valid(false)
+                                    .input(null)
+                                    .subject(DATASTORE_CLIENT_SERVICE.getName())
+                                    .explanation(DATASTORE_CLIENT_SERVICE.getName() + " is required by the datastore state store")
+                                    .build()
+                    );
+                }
+                break;
+        }
 
 
         return results;
@@ -577,21 +763,73 @@ public class DetectOutliers extends AbstractProcessor {
     }
 
     /**
-     *
+     * The records of each series are analyzed in order by the detector of the series, the series themselves being
+     * analyzed in parallel. The severe candidates of a series are confirmed by the batch algorithm once all its
+     * records went through the sketchy algorithm, and the state of the series is then saved into the state store
+     * before the least recently seen series are dropped.
      */
     @Override
     public Collection<Record> process(final ProcessContext context, final Collection<Record> records) {
 
-
-        Collection<Record> list = new ArrayList<>();
-
         final String valueField = context.getPropertyValue(RECORD_VALUE_FIELD).asString();
         final String timeField = context.getPropertyValue(RECORD_TIME_FIELD).asString();
         final String outputRecordType = context.getPropertyValue(OUTPUT_RECORD_TYPE).asString();
 
-        // loop over all events in collection
+        final Map<String, List<Record>> recordsBySeries = new LinkedHashMap<>();
         for (Record record : records) {
+            recordsBySeries.computeIfAbsent(seriesKey(record), key -> new ArrayList<>()).add(record);
+        }
+        restore(recordsBySeries.keySet());
+
+        final List<Callable<List<Record>>> tasks = new ArrayList<>(recordsBySeries.size());
+        synchronized (detectors) {
+            for (Map.Entry<String, List<Record>> series : recordsBySeries.entrySet()) {
+                final SeriesDetector detector = detectors.get(series.getKey());
+                tasks.add(() -> analyze(detector, series.getValue(), valueField, timeField, outputRecordType));
+            }
+        }
 
+        final Collection<Record> list = new ArrayList<>();
+        if (seriesExecutor == null || tasks.size() < 2) {
+            for (Callable<List<Record>> task : tasks) {
+                try {
+                    list.addAll(task.call());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } else {
+            try {
+                for (Future<List<Record>> result : seriesExecutor.invokeAll(tasks)) {
+                    list.addAll(result.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        checkpoint(recordsBySeries.keySet());
+        evictIdleSeries();
+        return list;
+    }
+
+    private String seriesKey(Record record) {
+        if (seriesField != null && record.hasField(seriesField) && record.getField(seriesField).getRawValue() != null) {
+            return record.getField(seriesField).asString();
+        }
+        return record.getType();
+    }
+
+    private List<Record> analyze(SeriesDetector detector, List<Record> records,
+                                 String valueField, String timeField, String outputRecordType) {
+
+        final List<Record> list = new ArrayList<>();
+        final List<Candidate> candidates = new ArrayList<>();
+
+        for (Record record : records) {
             try {
                 // convert an event to a dataPoint.
                 long timestamp = record.getField(timeField).asLong();
@@ -600,32 +838,140 @@ public class DetectOutliers extends AbstractProcessor {
                 DataPoint dp = new DataPoint(timestamp, value, new HashMap<>(), record.getType());
 
                 // now let's look for outliers
-                Outlier outlier = sketchyOutlierAlgorithm.analyze(dp);
+                Outlier outlier = detector.sketchyOutlierAlgorithm.analyze(dp);
                 if (outlier.getSeverity() == Severity.SEVERE_OUTLIER) {
-
-                    outlier = batchOutlierAlgorithm.analyze(outlier, outlier.getSample(), dp);
-                    if (outlier.getSeverity() == Severity.SEVERE_OUTLIER) {
-
-                        Record evt = new StandardRecord(record)
-                                .setType(outputRecordType)
-                                .setTime(new Date(timestamp))
-                                .setStringField("outlier_severity", "severe")
-                                .setField("outlier_score", FieldType.DOUBLE, outlier.getScore())
-                                .setField("outlier_num_points", FieldType.INT, outlier.getNumPts());
-                        list.add(evt);
-                    }
+                    candidates.add(new Candidate(record, dp, outlier));
                 }
-
             } catch (RuntimeException e) {
-                list.add(new StandardRecord(OUTLIER_PROCESSING_EXCEPTION_TYPE)
-                        .setStringField(FieldDictionary.RECORD_ERRORS, ProcessError.RUNTIME_ERROR.toString())
-                        .setStringField(FieldDictionary.RECORD_VALUE, e.getMessage())
-                        .setStringField(FieldDictionary.PROCESSOR_NAME, DetectOutliers.class.getName())
-                );
+                list.add(processingError(e));
             }
         }
 
+        // the sample of each candidate was taken when it was analyzed
+        for (Candidate candidate : candidates) {
+            try {
+                Outlier outlier = detector.batchOutlierAlgorithm.analyze(
+                        candidate.outlier, candidate.outlier.getSample(), candidate.dataPoint);
+                if (outlier.getSeverity() == Severity.SEVERE_OUTLIER) {
+
+                    Record evt = new StandardRecord(candidate.record)
+                            .setType(outputRecordType)
+                            .setTime(new Date(candidate.dataPoint.getTimestamp()))
+                            .setStringField("outlier_severity", "severe")
+                            .setField("outlier_score", FieldType.DOUBLE, outlier.getScore())
+                            .setField("outlier_num_points", FieldType.INT, outlier.getNumPts());
+                    list.add(evt);
+                }
+            } catch (RuntimeException e) {
+                list.add(processingError(e));
+            }
+        }
         return list;
     }
 
+    private static Record processingError(RuntimeException e) {
+        return new StandardRecord(OUTLIER_PROCESSING_EXCEPTION_TYPE)
+                .setStringField(FieldDictionary.RECORD_ERRORS, ProcessError.RUNTIME_ERROR.toString())
+                .setStringField(FieldDictionary.RECORD_VALUE, e.getMessage())
+                .setStringField(FieldDictionary.PROCESSOR_NAME, DetectOutliers.class.getName());
+    }
+
+    /**
+     * Creates the detectors of the series seen for the first time, from their saved state if any.
+     */
+    private void restore(Set<String> seriesKeys) {
+        final List<String> newSeries = new ArrayList<>();
+        synchronized (detectors) {
+            for (String seriesKey : seriesKeys) {
+                if (!detectors.containsKey(seriesKey)) {
+                    newSeries.add(seriesKey);
+                }
+            }
+        }
+        if (newSeries.isEmpty()) {
+            return;
+        }
+
+        Map<String, byte[]> states = Collections.emptyMap();
+        if (stateStore != null) {
+            try {
+                states = stateStore.load(newSeries);
+            } catch (IOException e) {
+                logger.error("Unable to restore the state of {} series, starting them from scratch", newSeries.size(), e);
+            }
+        }
+        for (String seriesKey : newSeries) {
+            final SeriesDetector detector = new SeriesDetector(outlierConfig);
+            final byte[] state = states.get(seriesKey);
+            if (state != null) {
+                try {
+                    detector.sketchyOutlierAlgorithm.setState(deserialize(state));
+                } catch (IOException | ClassNotFoundException e) {
+                    logger.error("Unable to restore the state of series {}, starting it from scratch", seriesKey, e);
+                }
+            }
+            synchronized (detectors) {
+                detectors.put(seriesKey, detector);
+            }
+        }
+    }
+
+    /**
+     * Saves the state of the given series into the state store.
+     */
+    private void checkpoint(Set<String> seriesKeys) {
+        if (stateStore == null || seriesKeys.isEmpty()) {
+            return;
+        }
+        try {
+            final Map<String, byte[]> states = new HashMap<>();
+            synchronized (detectors) {
+                for (String seriesKey : seriesKeys) {
+                    states.put(seriesKey, serialize(detectors.get(seriesKey).sketchyOutlierAlgorithm.getState()));
+                }
+            }
+            stateStore.save(states);
+        } catch (IOException e) {
+            logger.error("Unable to save the state of {} series", seriesKeys.size(), e);
+        }
+    }
+
+    /**
+     * Drops the least recently seen series beyond series.max, once the batch is analyzed and checkpointed so that
+     * none of its series is dropped before being saved.
+     */
+    private void evictIdleSeries() {
+        synchronized (detectors) {
+            final Iterator<String> seriesKeys = detectors.keySet().iterator();
+            while (detectors.size() > maxSeries && seriesKeys.hasNext()) {
+                seriesKeys.next();
+                seriesKeys.remove();
+            }
+        }
+    }
+
+    private static byte[] serialize(SketchyMovingMAD.State state) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SketchyMovingMAD.State deserialize(byte[] state) throws IOException, ClassNotFoundException {
+        // the classes of the state are resolved by the loader of the processor plugin
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return Class.forName(desc.getName(), false, DetectOutliers.class.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        }) {
+            return (SketchyMovingMAD.State) in.readObject();
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.outlier;
+
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.service.datastore.DatastoreClientService;
+import com.hurence.logisland.service.datastore.MultiGetQueryRecord;
+import com.hurence.logisland.service.datastore.MultiGetResponseRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saves the state of each series as a record of a datastore collection, the id of the record being the series key
+ * and its state field the base 64 encoded state. All the series of a batch are loaded with a single multiGet.
+ */
+public class DatastoreOutlierStateStore implements OutlierStateStore {
+
+    public static final String STATE_FIELD = "outlier_state";
+
+    private final DatastoreClientService datastoreClientService;
+    private final String collection;
+
+    public DatastoreOutlierStateStore(DatastoreClientService datastoreClientService, String collection) {
+        this.datastoreClientService = datastoreClientService;
+        this.collection = collection;
+    }
+
+    @Override
+    public Map<String, byte[]> load(Collection<String> seriesKeys) throws IOException {
+        final Map<String, byte[]> states = new HashMap<>();
+        if (seriesKeys.isEmpty()) {
+            return states;
+        }
+        try {
+            final MultiGetQueryRecord query = new MultiGetQueryRecord(collection, "",
+                    new String[]{STATE_FIELD}, new String[]{}, new ArrayList<>(seriesKeys));
+            for (MultiGetResponseRecord response : datastoreClientService.multiGet(Collections.singletonList(query))) {
+                final Map<String, String> fields = response.getRetrievedFields();
+                if (fields != null && fields.get(STATE_FIELD) != null) {
+                    states.put(response.getDocumentId(), Base64.getDecoder().decode(fields.get(STATE_FIELD)));
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("Unable to load the outlier detection state from " + collection, e);
+        }
+        return states;
+    }
+
+    @Override
+    public void save(Map<String, byte[]> states) throws IOException {
+        try {
+            for (Map.Entry<String, byte[]> state : states.entrySet()) {
+                final Record record = new StandardRecord()
+                        .setId(state.getKey())
+                        .setField(STATE_FIELD, FieldType.STRING, Base64.getEncoder().encodeToString(state.getValue()));
+                datastoreClientService.bulkPut(collection, record);
+            }
+            datastoreClientService.bulkFlush();
+        } catch (Exception e) {
+            throw new IOException("Unable to save the outlier detection state into " + collection, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.outlier;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saves the state of each series in its own file of a local directory.
+ * A file is written next to the previous one and then renamed, so that a crash never leaves a partial state.
+ */
+public class FileOutlierStateStore implements OutlierStateStore {
+
+    private static final String EXTENSION = ".state";
+
+    private final Path directory;
+
+    public FileOutlierStateStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public Map<String, byte[]> load(Collection<String> seriesKeys) throws IOException {
+        final Map<String, byte[]> states = new HashMap<>();
+        for (String seriesKey : seriesKeys) {
+            final Path file = file(seriesKey);
+            if (Files.exists(file)) {
+                states.put(seriesKey, Files.readAllBytes(file));
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public void save(Map<String, byte[]> states) throws IOException {
+        for (Map.Entry<String, byte[]> state : states.entrySet()) {
+            final Path file = file(state.getKey());
+            final Path tmp = directory.resolve(file.getFileName() + ".tmp");
+            Files.write(tmp, state.getValue());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private Path file(String seriesKey) throws UnsupportedEncodingException {
+        return directory.resolve(URLEncoder.encode(seriesKey, "UTF-8") + EXTENSION);
+    }
+}
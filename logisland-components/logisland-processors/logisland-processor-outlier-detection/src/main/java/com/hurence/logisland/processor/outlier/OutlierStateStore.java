@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.outlier;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Keeps the serialized detection state of each series, so that a series can be analyzed again from where it
+ * stopped after a restart, or by another instance of the processor.
+ */
+public interface OutlierStateStore {
+
+    /**
+     * @param seriesKeys the series to restore
+     * @return the saved state of the given series, the series never saved being missing from the map
+     */
+    Map<String, byte[]> load(Collection<String> seriesKeys) throws IOException;
+
+    /**
+     * Saves the state of some series, replacing their previous state.
+     */
+    void save(Map<String, byte[]> states) throws IOException;
+}
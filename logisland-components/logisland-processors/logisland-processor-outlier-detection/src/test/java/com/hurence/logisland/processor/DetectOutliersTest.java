@@ -15,7 +15,10 @@
  */
 package com.hurence.logisland.processor;
 
+import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.util.runner.MockRecord;
 import com.hurence.logisland.util.runner.TestRunner;
 import com.hurence.logisland.util.runner.TestRunners;
 import org.apache.commons.io.FileUtils;
@@ -26,7 +29,9 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.junit.Assert;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +41,11 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
 
 public class DetectOutliersTest {
@@ -45,6 +54,9 @@ public class DetectOutliersTest {
     private final String RESOURCES_DIRECTORY = "target/test-classes/benchmark_data/";
     private static final DateTimeFormatter inputDateFormat = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss");
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
 
     @Test
@@ -112,4 +124,138 @@ public class DetectOutliersTest {
     }
 
 
+    private static TestRunner newSeriesTestRunner() {
+        return newSeriesTestRunner(new DetectOutliers());
+    }
+
+    private static TestRunner newSeriesTestRunner(DetectOutliers processor) {
+        final TestRunner testRunner = TestRunners.newTestRunner(processor);
+        testRunner.setProperty(DetectOutliers.ROTATION_POLICY_TYPE, "by_amount");
+        testRunner.setProperty(DetectOutliers.ROTATION_POLICY_AMOUNT, "100");
+        testRunner.setProperty(DetectOutliers.ROTATION_POLICY_UNIT, "points");
+        testRunner.setProperty(DetectOutliers.CHUNKING_POLICY_TYPE, "by_amount");
+        testRunner.setProperty(DetectOutliers.CHUNKING_POLICY_AMOUNT, "10");
+        testRunner.setProperty(DetectOutliers.CHUNKING_POLICY_UNIT, "points");
+        testRunner.setProperty(DetectOutliers.GLOBAL_STATISTICS_MIN, "-100000");
+        testRunner.setProperty(DetectOutliers.MIN_AMOUNT_TO_PREDICT, "100");
+        testRunner.setProperty(DetectOutliers.ZSCORE_CUTOFFS_NORMAL, "3.5");
+        testRunner.setProperty(DetectOutliers.ZSCORE_CUTOFFS_MODERATE, "5");
+        testRunner.setProperty(DetectOutliers.RECORD_VALUE_FIELD, "value");
+        testRunner.setProperty(DetectOutliers.RECORD_TIME_FIELD, "timestamp");
+        testRunner.setProperty(DetectOutliers.SERIES_FIELD, "sensor");
+        return testRunner;
+    }
+
+    /**
+     * Interleaved points of a few sensors, each sensor having its own level and some spikes.
+     */
+    private static List<Record> sensorRecords(int pointsPerSensor) {
+        final Random random = new Random(42);
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < pointsPerSensor; i++) {
+            for (int sensor = 0; sensor < 4; sensor++) {
+                double value = 100 * (sensor + 1) + random.nextGaussian() * (sensor + 1);
+                if (i > 200 && random.nextDouble() < 0.01) {
+                    value += 50 * (sensor + 1);
+                }
+                records.add(new StandardRecord("measure")
+                        .setStringField("sensor", "sensor_" + sensor)
+                        .setField("timestamp", FieldType.LONG, 1000L * i)
+                        .setField("value", FieldType.DOUBLE, value));
+            }
+        }
+        return records;
+    }
+
+    private static Set<String> outliers(List<MockRecord> records) {
+        final Set<String> outliers = new TreeSet<>();
+        for (MockRecord record : records) {
+            outliers.add(record.getField("sensor").asString() + "@" + record.getField("timestamp").asLong());
+        }
+        return outliers;
+    }
+
+    @Test
+    public void testParallelSeries() {
+        final List<Record> records = sensorRecords(1000);
+
+        final TestRunner sequentialRunner = newSeriesTestRunner();
+        sequentialRunner.assertValid();
+        sequentialRunner.enqueue(records);
+        sequentialRunner.run();
+        sequentialRunner.assertAllInputRecordsProcessed();
+        final Set<String> expected = outliers(sequentialRunner.getOutputRecords());
+        Assert.assertFalse(expected.isEmpty());
+
+        final TestRunner parallelRunner = newSeriesTestRunner();
+        parallelRunner.setProperty(DetectOutliers.SERIES_PARALLELISM, "4");
+        parallelRunner.assertValid();
+        parallelRunner.enqueue(records);
+        parallelRunner.run();
+        parallelRunner.assertAllInputRecordsProcessed();
+        Assert.assertEquals(expected, outliers(parallelRunner.getOutputRecords()));
+    }
+
+    @Test
+    public void testStateRestoredFromFileStore() throws IOException {
+        final List<Record> records = sensorRecords(1000);
+
+        final TestRunner referenceRunner = newSeriesTestRunner();
+        referenceRunner.enqueue(records);
+        referenceRunner.run();
+        final Set<String> expected = outliers(referenceRunner.getOutputRecords());
+
+        final TestRunner testRunner = newSeriesTestRunner();
+        testRunner.setProperty(DetectOutliers.STATE_STORE, "file");
+        testRunner.assertNotValid();
+        testRunner.setProperty(DetectOutliers.STATE_STORE_DIRECTORY, temporaryFolder.newFolder().getAbsolutePath());
+        testRunner.assertValid();
+
+        // each run initializes the processor again, which restores the series from the store
+        final Set<String> actual = new TreeSet<>();
+        final int half = records.size() / 2;
+        testRunner.enqueue(records.subList(0, half));
+        testRunner.run();
+        actual.addAll(outliers(testRunner.getOutputRecords()));
+        testRunner.clearQueues();
+        testRunner.enqueue(records.subList(half, records.size()));
+        testRunner.run();
+        actual.addAll(outliers(testRunner.getOutputRecords()));
+
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testIdleSeriesRestoredFromFileStore() throws IOException {
+        final List<Record> records = sensorRecords(1000);
+
+        final TestRunner referenceRunner = newSeriesTestRunner();
+        referenceRunner.enqueue(records);
+        referenceRunner.run();
+        final Set<String> expected = outliers(referenceRunner.getOutputRecords());
+
+        final DetectOutliers processor = new DetectOutliers();
+        final TestRunner testRunner = newSeriesTestRunner(processor);
+        testRunner.setProperty(DetectOutliers.SERIES_MAX, "1");
+        testRunner.setProperty(DetectOutliers.STATE_STORE, "file");
+        testRunner.setProperty(DetectOutliers.STATE_STORE_DIRECTORY, temporaryFolder.newFolder().getAbsolutePath());
+        testRunner.assertValid();
+
+        // the first run initializes the processor, the next batches go through the same detectors, all the series
+        // but one being dropped after each batch and restored from the store
+        final int batchSize = 400;
+        testRunner.enqueue(records.subList(0, batchSize));
+        testRunner.run();
+        final Set<String> actual = new TreeSet<>(outliers(testRunner.getOutputRecords()));
+        for (int start = batchSize; start < records.size(); start += batchSize) {
+            final List<MockRecord> output = new ArrayList<>();
+            for (Record record : processor.process(testRunner.getProcessContext(),
+                    records.subList(start, Math.min(start + batchSize, records.size())))) {
+                output.add(new MockRecord(record));
+            }
+            actual.addAll(outliers(output));
+        }
+
+        Assert.assertEquals(expected, actual);
+    }
 }
@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compressed binary (PATRICIA) trie of IPv4 and IPv6 prefixes, each prefix holding one or more values.
+ * <p>
+ * Addresses are handled as 128 bits numbers (an IPv4 address uses the 32 first bits, in its own trie), so that
+ * comparing a prefix costs a couple of masked xor. A lookup walks down at most one node per distinct prefix length
+ * on the path of the address, whatever the number of prefixes.
+ * <p>
+ * The trie is not thread safe for writes: build it, then share it read only.
+ */
+public class IpPrefixTrie<V> {
+
+    private static final int IPV4_BITS = 32;
+    private static final int IPV6_BITS = 128;
+
+    private Node<V> ipv4Root;
+    private Node<V> ipv6Root;
+    private int size;
+
+    /**
+     * Add a prefix to the trie.
+     *
+     * @param prefix an IPv4 or IPv6 address, optionally followed by a /length suffix (a single address otherwise)
+     * @param value  the value to associate to the prefix
+     * @throws IllegalArgumentException if the prefix is not an IP address or has an invalid length
+     */
+    public void put(String prefix, V value) {
+        int slash = prefix.indexOf('/');
+        String address = slash < 0 ? prefix : prefix.substring(0, slash);
+        long[] bits = new long[2];
+        int family = parse(address, bits);
+        if (family == 0) {
+            throw new IllegalArgumentException("'" + prefix + "' is not an IP address or prefix");
+        }
+        int length = family;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(prefix.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'" + prefix + "' has an invalid prefix length");
+            }
+            if (length < 0 || length > family) {
+                throw new IllegalArgumentException("'" + prefix + "' has an invalid prefix length");
+            }
+        }
+        long hi = bits[0] & maskHi(length);
+        long lo = bits[1] & maskLo(length);
+        if (family == IPV4_BITS) {
+            ipv4Root = insert(ipv4Root, hi, lo, length, value);
+        } else {
+            ipv6Root = insert(ipv6Root, hi, lo, length, value);
+        }
+        size++;
+    }
+
+    /**
+     * @return the number of values in the trie
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values of the most specific prefix containing the address, an empty list if there is none or if
+     * the given string is not an IP address
+     */
+    public List<V> longestPrefixMatch(String address) {
+        long[] bits = new long[2];
+        Node<V> node = root(parse(address, bits));
+        List<V> longest = Collections.emptyList();
+        while (node != null && node.contains(bits[0], bits[1])) {
+            if (node.values != null) {
+                longest = node.values;
+            }
+            node = node.child(bits[0], bits[1]);
+        }
+        return longest;
+    }
+
+    /**
+     * @return the values of all the prefixes containing the address, from the least to the most specific one, an
+     * empty list if there is none or if the given string is not an IP address
+     */
+    public List<V> allMatches(String address) {
+        long[] bits = new long[2];
+        Node<V> node = root(parse(address, bits));
+        List<V> matches = null;
+        while (node != null && node.contains(bits[0], bits[1])) {
+            if (node.values != null) {
+                if (matches == null) {
+                    matches = new ArrayList<>(node.values.size());
+                }
+                matches.addAll(node.values);
+            }
+            node = node.child(bits[0], bits[1]);
+        }
+        return matches == null ? Collections.emptyList() : matches;
+    }
+
+    private Node<V> root(int family) {
+        switch (family) {
+            case IPV4_BITS:
+                return ipv4Root;
+            case IPV6_BITS:
+                return ipv6Root;
+            default:
+                return null;
+        }
+    }
+
+    private static <V> Node<V> insert(Node<V> node, long hi, long lo, int length, V value) {
+        if (node == null) {
+            return new Node<>(hi, lo, length, value);
+        }
+        int common = Math.min(commonPrefixLength(node.hi, node.lo, hi, lo), Math.min(node.length, length));
+        if (common == node.length) {
+            if (length == node.length) {
+                node.add(value);
+            } else if (bitAt(hi, lo, node.length)) {
+                node.right = insert(node.right, hi, lo, length, value);
+            } else {
+                node.left = insert(node.left, hi, lo, length, value);
+            }
+            return node;
+        }
+        Node<V> parent;
+        if (common == length) {
+            // the new prefix contains the node
+            parent = new Node<>(hi, lo, length, value);
+        } else {
+            // the prefixes diverge, join them under a node without value
+            parent = new Node<>(hi & maskHi(common), lo & maskLo(common), common, null);
+            parent.setChild(hi, lo, new Node<>(hi, lo, length, value));
+        }
+        parent.setChild(node.hi, node.lo, node);
+        return parent;
+    }
+
+    private static int commonPrefixLength(long hi1, long lo1, long hi2, long lo2) {
+        long diff = hi1 ^ hi2;
+        if (diff != 0) {
+            return Long.numberOfLeadingZeros(diff);
+        }
+        return 64 + Long.numberOfLeadingZeros(lo1 ^ lo2);
+    }
+
+    private static boolean bitAt(long hi, long lo, int index) {
+        return index < 64 ? (hi << index) < 0 : (lo << (index - 64)) < 0;
+    }
+
+    private static long maskHi(int length) {
+        return length == 0 ? 0L : length >= 64 ? -1L : -1L << (64 - length);
+    }
+
+    private static long maskLo(int length) {
+        return length <= 64 ? 0L : length == 128 ? -1L : -1L << (128 - length);
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 address, without any name resolution.
+     *
+     * @param address the address
+     * @param bits    receives the 64 high and the 64 low bits of the address
+     * @return 32 for an IPv4 address, 128 for an IPv6 one, 0 if the string is not an IP address
+     */
+    static int parse(String address, long[] bits) {
+        if (address == null) {
+            return 0;
+        }
+        int end = address.length();
+        if (address.indexOf(':') < 0) {
+            long ipv4 = parseIpv4(address, 0, end);
+            if (ipv4 < 0) {
+                return 0;
+            }
+            bits[0] = ipv4 << 32;
+            bits[1] = 0L;
+            return IPV4_BITS;
+        }
+        return parseIpv6(address, end, bits) ? IPV6_BITS : 0;
+    }
+
+    /**
+     * @return the address as an unsigned 32 bits number, -1 if it is not a dotted quad
+     */
+    private static long parseIpv4(String address, int start, int end) {
+        long result = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = start; i < end; i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && octets < 3) {
+                result = (result << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octet < 0 || octets != 3) {
+            return -1;
+        }
+        return (result << 8) | octet;
+    }
+
+    private static boolean parseIpv6(String address, int end, long[] bits) {
+        int[] groups = new int[8];
+        int count = 0;
+        int compressedAt = -1;
+        int i = 0;
+        if (address.startsWith("::")) {
+            compressedAt = 0;
+            i = 2;
+        }
+        while (i < end) {
+            if (count == 8) {
+                return false;
+            }
+            int groupEnd = address.indexOf(':', i);
+            if (groupEnd < 0) {
+                groupEnd = end;
+            }
+            if (groupEnd == i) {
+                return false;
+            }
+            if (groupEnd == end && address.indexOf('.', i) >= 0) {
+                // embedded IPv4 address in the two last groups
+                long ipv4 = parseIpv4(address, i, end);
+                if (ipv4 < 0 || count > 6) {
+                    return false;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xFFFF);
+                break;
+            }
+            if (groupEnd - i > 4) {
+                return false;
+            }
+            int group = 0;
+            for (int j = i; j < groupEnd; j++) {
+                int digit = Character.digit(address.charAt(j), 16);
+                if (digit < 0) {
+                    return false;
+                }
+                group = (group << 4) | digit;
+            }
+            groups[count++] = group;
+            i = groupEnd + 1;
+            if (groupEnd < end - 1 && address.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = count;
+                i++;
+            } else if (groupEnd == end - 1) {
+                // trailing single colon
+                return false;
+            }
+        }
+        if (compressedAt >= 0) {
+            if (count == 8) {
+                return false;
+            }
+            int shift = 8 - count;
+            System.arraycopy(groups, compressedAt, groups, compressedAt + shift, count - compressedAt);
+            for (int j = compressedAt; j < compressedAt + shift; j++) {
+                groups[j] = 0;
+            }
+        } else if (count != 8) {
+            return false;
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int j = 0; j < 4; j++) {
+            hi = (hi << 16) | groups[j];
+            lo = (lo << 16) | groups[j + 4];
+        }
+        bits[0] = hi;
+        bits[1] = lo;
+        return true;
+    }
+
+    private static final class Node<V> {
+        final long hi;
+        final long lo;
+        final int length;
+        final long maskHi;
+        final long maskLo;
+        List<V> values;
+        Node<V> left;
+        Node<V> right;
+
+        Node(long hi, long lo, int length, V value) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.maskHi = maskHi(length);
+            this.maskLo = maskLo(length);
+            if (value != null) {
+                add(value);
+            }
+        }
+
+        void add(V value) {
+            if (values == null) {
+                values = new ArrayList<>(1);
+            }
+            values.add(value);
+        }
+
+        boolean contains(long addressHi, long addressLo) {
+            return ((addressHi ^ hi) & maskHi) == 0 && ((addressLo ^ lo) & maskLo) == 0;
+        }
+
+        Node<V> child(long addressHi, long addressLo) {
+            if (length == IPV6_BITS) {
+                return null;
+            }
+            return bitAt(addressHi, addressLo, length) ? right : left;
+        }
+
+        void setChild(long childHi, long childLo, Node<V> child) {
+            if (bitAt(childHi, childLo, length)) {
+                right = child;
+            } else {
+                left = child;
+            }
+        }
+    }
+}
@@ -21,45 +21,69 @@ import com.hurence.logisland.annotation.documentation.ExtraDetailFile;
 import com.hurence.logisland.annotation.documentation.Tags;
 import com.hurence.logisland.component.InitializationException;
 import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.record.Field;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.validator.StandardValidators;
-import uk.co.flax.luwak.*;
-import uk.co.flax.luwak.matchers.SimpleMatcher;
 
-import java.io.IOException;
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.apache.commons.net.util.SubnetUtils;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
-@Tags({"analytic", "percolator", "record", "record", "query", "lucene"})
-@CapabilityDescription("IP address Query matching (using `Luwak <http://www.confluent.io/blog/real-time-full-text-search-with-luwak-and-samza/>)`_\n\n" +
+@Tags({"analytic", "percolator", "record", "record", "query", "ip", "cidr"})
+@CapabilityDescription("IP address Query matching\n\n" +
         "You can use this processor to handle custom events matching IP address (CIDR)\n" +
         "The record sent from a matching an IP address record is tagged appropriately.\n\n" +
-        "A query is expressed as a lucene query against a field like for example: \n\n" +
+        "A query is expressed as a field name followed by an IPv4 or IPv6 address, a CIDR prefix or a regular expression like for example: \n\n" +
         ".. code::\n" +
         "\n" +
-        "\tmessage:'bad exception'\n" +
-        "\terror_count:[10 TO *]\n" +
-        "\tbytes_out:5000\n" +
-        "\tuser_name:tom*\n\n" +
-        "Please read the `Lucene syntax guide <https://lucene.apache.org/core/5_5_0/queryparser/org/apache/lucene/queryparser/classic/package-summary.html#package_description>`_ for supported operations\n\n" +
-        ".. warning::\n\n" +
-        "\tdon't forget to set numeric fields property to handle correctly numeric ranges queries")
-@DynamicProperty(name = "query", supportsExpressionLanguage = true, value = "some Lucene query", description = "generate a new record when this query is matched")
+        "\tremoteHost:192.168.1.2\n" +
+        "\tremoteHost:192.168.1.0/24\n" +
+        "\tremoteHost:2001:db8::/32\n" +
+        "\tremoteHost:192.168.1.[1-9]$\n\n" +
+        "Addresses and prefixes are matched with a prefix trie, so that the number of rules barely changes the matching time. " +
+        "Regular expressions are only tried on records that did not match any address or prefix.")
+@DynamicProperty(name = "query", supportsExpressionLanguage = true, value = "some IP address, CIDR prefix or regular expression", description = "generate a new record when this query is matched")
 @ExtraDetailFile("./details/MatchIP-Detail.rst")
 public class MatchIP extends MatchQuery {
 
-    private HashMap<String, HashSet<Pair<String, Pattern>>> ipRegexps;
-    private HashMap<String, MatchingRule> regexpMatchingRules;
-    private final String ipSyntax = "^\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d+$";
-    private final String CIDRSyntax = "^\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\/\\d+$";
-    private final Pattern ipPattern = Pattern.compile(ipSyntax);
-    private final Pattern cidrPattern = Pattern.compile(CIDRSyntax);
-    private HashSet<String> luceneAttrsToQuery;
+    public static final PropertyDescriptor IP_MATCH_MODE = new PropertyDescriptor.Builder()
+            .name("ip.match.mode")
+            .description("the rules reported when an ip matches several prefixes: " +
+                    "'" + IpMatchMode.all.toString() + "' (default value) every matching rule;" +
+                    "'" + IpMatchMode.longest.toString() + "' only the rules of the most specific prefix.")
+            .required(false)
+            .addValidator(new StandardValidators.EnumValidator(IpMatchMode.class))
+            .defaultValue(IpMatchMode.all.toString())
+            .build();
+
+    /**
+     * The rules reported when an ip matches several prefixes.
+     */
+    enum IpMatchMode {
+        /**
+         * Every matching rule, from the least to the most specific prefix.
+         */
+        all,
+        /**
+         * Only the rules of the most specific prefix.
+         */
+        longest
+    }
+
+    private IpMatchMode ipMatchMode;
+    // The rule definitions by name, as set in the dynamic properties
+    private Map<String, String> ruleDefinitions = new LinkedHashMap<>();
+    // The compiled rules, replaced as a whole when a rule definition changes
+    private volatile IpRules ipRules;
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> descriptors = new ArrayList<>(super.getSupportedPropertyDescriptors());
+        descriptors.add(IP_MATCH_MODE);
+        return Collections.unmodifiableList(descriptors);
+    }
 
     @Override
     protected PropertyDescriptor getSupportedDynamicPropertyDescriptor(final String propertyDescriptorName) {
@@ -74,174 +98,123 @@ public class MatchIP extends MatchQuery {
 
     @Override
     public void init(final ProcessContext context) throws InitializationException {
-        regexpMatchingRules = new HashMap<>();
-        luceneAttrsToQuery = new HashSet<String>();
+        ipMatchMode = IpMatchMode.valueOf(context.getPropertyValue(IP_MATCH_MODE).asString());
         super.init(context);
     }
 
     @Override
     protected void updateMatchingRules(ProcessContext context) {
-        // loop over dynamic properties to add rules
+        // loop over dynamic properties to add rules, they are not lucene queries so they stay out of matchingRules
+        final Map<String, String> definitions = new LinkedHashMap<>();
         for (final Map.Entry<PropertyDescriptor, String> entry : context.getProperties().entrySet()) {
-            if (!entry.getKey().isDynamic()) {
-                continue;
+            if (entry.getKey().isDynamic()) {
+                definitions.put(entry.getKey().getName(), entry.getValue());
             }
+        }
+        synchronized (this) {
+            ruleDefinitions = definitions;
+            ipRules = new IpRules(definitions);
+        }
+    }
 
-            final String name = entry.getKey().getName();
-            final String query = entry.getValue();
-            String[] params = query.split(":",2);
-            if (params.length == 2){
-                String queryField=params[0];
-                String luceneQuery;
-                String luceneValue;
-                String ipValue = params[1];
-                Matcher ipMatcher = ipPattern.matcher(ipValue);
-                Matcher cidrMatcher = cidrPattern.matcher(ipValue);
-                if (ipMatcher.lookingAt()){
-                    // This is a static ip address
-                    // convert it to a long
-                    long addr = ipToLong(ipValue);
-                    luceneValue = String.valueOf(addr);
-                    luceneQuery=queryField+":"+luceneValue;
-                    matchingRules.put(name, new MatchingRule(name, luceneQuery, query));
-                    luceneAttrsToQuery.add(queryField);
-                }
-                else if (cidrMatcher.lookingAt()) {
-                    // This is a cidr
-                    // Convert it to a range
-                    SubnetUtils su = new SubnetUtils(ipValue);
-                    String lowIp = su.getInfo().getLowAddress();
-                    String highIp = su.getInfo().getHighAddress();
-                    long lowIpLong = ipToLong(lowIp);
-                    long highIpLong = ipToLong(highIp);
-                    luceneValue = "[ " + String.valueOf(lowIpLong) + " TO " + String.valueOf(highIpLong) + " ]";
-                    luceneQuery=queryField+":"+luceneValue;
-                    matchingRules.put(name, new MatchingRule(name, luceneQuery, query));
-                    luceneAttrsToQuery.add(queryField);
-                }
-                else {
-                    regexpMatchingRules.put(name, new MatchingRule(name, query));
-                    // Consider the value to be a regexp
-                    // To Be Done
-                    Pattern ipRegexp = Pattern.compile(ipValue);
-                    if (ipRegexps==null){
-                        ipRegexps=new HashMap<>();
-                    }
-                    if (ipRegexps.containsKey(queryField)){
-                        HashSet<Pair<String,Pattern>> regexpVals = ipRegexps.get(queryField);
-                        regexpVals.add(new ImmutablePair<>(name, ipRegexp));
-                        ipRegexps.put(queryField, regexpVals);
-                    }
-                    else {
-                        HashSet<Pair<String, Pattern>> regexpVals = new HashSet<>();
-                        regexpVals.add(new org.apache.commons.lang3.tuple.ImmutablePair<>(name, ipRegexp));
-                        ipRegexps.put(queryField, regexpVals);
-                    }
-                }
+    /**
+     * Rebuild the rules when one of them is added, modified or removed, so that a running processor
+     * picks it up at its next batch.
+     */
+    @Override
+    public void onPropertyModified(PropertyDescriptor descriptor, String oldValue, String newValue) {
+        super.onPropertyModified(descriptor, oldValue, newValue);
+        if (!descriptor.isDynamic()) {
+            return;
+        }
+        synchronized (this) {
+            if (ipRules == null) {
+                // not initialized yet, the rules will be built from the context
+                return;
+            }
+            final Map<String, String> definitions = new LinkedHashMap<>(ruleDefinitions);
+            if (newValue == null) {
+                definitions.remove(descriptor.getName());
+            } else {
+                definitions.put(descriptor.getName(), newValue);
             }
+            ruleDefinitions = definitions;
+            ipRules = new IpRules(definitions);
         }
     }
 
     @Override
     protected Collection<Record> internalProcess(ProcessContext context, Collection<Record> records) {
-        // convert all numeric fields to double to get numeric range working ...
-        final List<Record> outRecords = new ArrayList<>();
-        final List<InputDocument> inputDocs = new ArrayList<>();
-        final Map<String, Record> inputRecords = new HashMap<>();
+        final IpRules rules = ipRules;
+        final MatchHandlers.MatchHandler matchHandler = newMatchHandler(records);
+
         for (final Record record : records) {
-            final InputDocument.Builder docbuilder = InputDocument.builder(record.getId());
-            for (final String fieldName : record.getAllFieldNames()) {
-                if (luceneAttrsToQuery.contains(fieldName) &&
-                        record.getField(fieldName).getRawValue() != null) {
-                    String ip = record.getField(fieldName).asString();
-                    // Check the value is an IPv4 address or ignore
-                    Matcher checkIp = ipPattern.matcher(ip);
-                    if (checkIp.lookingAt()) {
-                        long ipLong = ipToLong(ip);
-                        docbuilder.addField(fieldName, String.valueOf(ipLong), keywordAnalyzer);
-                    }
+            boolean matched = false;
+            for (Map.Entry<String, IpPrefixTrie<MatchingRule>> fieldPrefixes : rules.prefixes.entrySet()) {
+                final Field field = record.getField(fieldPrefixes.getKey());
+                if (field == null || field.getRawValue() == null) {
+                    continue;
+                }
+                final String ip = field.asString().trim();
+                final List<MatchingRule> matchingRules = ipMatchMode == IpMatchMode.longest ?
+                        fieldPrefixes.getValue().longestPrefixMatch(ip) : fieldPrefixes.getValue().allMatches(ip);
+                for (MatchingRule matchingRule : matchingRules) {
+                    matchHandler.handleMatch(record, context, matchingRule, recordTypeUpdatePolicy);
+                    matched = true;
                 }
             }
-            inputDocs.add(docbuilder.build());
-            inputRecords.put(record.getId(), record);
-        }
-
-        // match a batch of documents
-        Matches<QueryMatch> matches;
-        try {
-            matches = monitor.match(DocumentBatch.of(inputDocs), SimpleMatcher.FACTORY);
-        } catch (IOException e) {
-            getLogger().error("Could not match documents", e);
-            return outRecords;
-        }
-
-        MatchHandlers.MatchHandler _matchHandler = null;
-
-
-        if (onMatchPolicy== OnMatchPolicy.first && onMissPolicy== OnMissPolicy.discard) {
-            // Legacy behaviour
-            _matchHandler = new MatchHandlers.LegacyMatchHandler();
-        }
-        else if (onMissPolicy== OnMissPolicy.discard) {
-            // Ignore non matching records. Concat all query information (name, value) instead of first one only.
-            _matchHandler = new MatchHandlers.ConcatMatchHandler();
-        }
-        else {
-            // All records in, all records out. Concat all query information (name, value) instead of first one only.
-            _matchHandler = new MatchHandlers.AllInAllOutMatchHandler(records, this.onMatchPolicy);
-        }
-
-        final MatchHandlers.MatchHandler matchHandler = _matchHandler;
-        for (DocumentMatches<QueryMatch> docMatch : matches) {
-            docMatch.getMatches().forEach(queryMatch ->
-                    matchHandler.handleMatch(inputRecords.get(docMatch.getDocId()),
-                            context,
-                            matchingRules.get(queryMatch.getQueryId()),
-                            recordTypeUpdatePolicy)
-            );
-        }
-        if (ipRegexps != null && ipRegexps.size() > 0) {
-            inputRecords.keySet().forEach(
-                    (k) -> {
-                        // Only consider records that have not matched any IP rules yet
-                        int count = matches.getMatchCount(k);
-                        if (count == 0) {
-                            // Apply regexp rules if any available
-                            for (String ipAttrName : ipRegexps.keySet()){
-                                if (inputRecords.get(k).hasField(ipAttrName) &&
-                                        (inputRecords.get(k).getField(ipAttrName).getRawValue() != null)) {
-                                    HashSet<Pair<String, Pattern>> ipRegexHashset = ipRegexps.get(ipAttrName);
-                                    ipRegexHashset.forEach(p -> {
-                                        String ruleName = p.getLeft();
-                                        Pattern ipRegexPattern = p.getRight();
-                                        String attrValueToMatch = inputRecords.get(k).getField(ipAttrName).asString();
-                                        Matcher ipMatcher = ipRegexPattern.matcher(attrValueToMatch);
-                                        if (ipMatcher.lookingAt()){
-                                            // This is a match !
-                                            matchHandler.handleMatch(
-                                                    inputRecords.get(k),
-                                                    context,
-                                                    regexpMatchingRules.get(ruleName),
-                                                    recordTypeUpdatePolicy);
-                                        }
-                                    });
-                                }
-                            }
+            if (!matched) {
+                // Only consider records that have not matched any IP rules yet, apply regexp rules if any available
+                for (Map.Entry<String, List<Pair<MatchingRule, Pattern>>> fieldRegexps : rules.regexps.entrySet()) {
+                    final Field field = record.getField(fieldRegexps.getKey());
+                    if (field == null || field.getRawValue() == null) {
+                        continue;
+                    }
+                    final String attrValueToMatch = field.asString();
+                    for (Pair<MatchingRule, Pattern> regexp : fieldRegexps.getValue()) {
+                        if (regexp.getRight().matcher(attrValueToMatch).lookingAt()) {
+                            // This is a match !
+                            matchHandler.handleMatch(record, context, regexp.getLeft(), recordTypeUpdatePolicy);
                         }
                     }
-            );
+                }
+            }
         }
         return matchHandler.outputRecords();
     }
 
-    public long ipToLong(String ipAddress) {
-        String[] ipAddressInArray = ipAddress.split("\\.");
-        long result = 0;
-        for (int i = 0; i < ipAddressInArray.length; i++) {
-            int power = 3 - i;
-            int ip = Integer.parseInt(ipAddressInArray[i]);
-            result += ip * Math.pow(256, power);
+    /**
+     * The rules of the processor by field: IPv4 and IPv6 addresses and prefixes in a trie, regular expressions
+     * in a list. Never modified once built.
+     */
+    private static final class IpRules {
+
+        private final Map<String, IpPrefixTrie<MatchingRule>> prefixes = new HashMap<>();
+        private final Map<String, List<Pair<MatchingRule, Pattern>>> regexps = new HashMap<>();
+
+        IpRules(Map<String, String> definitions) {
+            for (Map.Entry<String, String> definition : definitions.entrySet()) {
+                final String name = definition.getKey();
+                final String query = definition.getValue();
+                String[] params = query.split(":", 2);
+                if (params.length != 2) {
+                    continue;
+                }
+                final String queryField = params[0];
+                final String ipValue = params[1];
+                final MatchingRule rule = new MatchingRule(name, query);
+                if (IpPrefixTrie.parse(ipValue.split("/", 2)[0], new long[2]) != 0) {
+                    // This is a static ip address or a cidr
+                    try {
+                        prefixes.computeIfAbsent(queryField, f -> new IpPrefixTrie<>()).put(ipValue, rule);
+                        continue;
+                    } catch (IllegalArgumentException e) {
+                        // not a valid prefix length, consider the value to be a regexp
+                    }
+                }
+                regexps.computeIfAbsent(queryField, f -> new ArrayList<>())
+                        .add(new ImmutablePair<>(rule, Pattern.compile(ipValue)));
+            }
         }
-        return result;
     }
 }
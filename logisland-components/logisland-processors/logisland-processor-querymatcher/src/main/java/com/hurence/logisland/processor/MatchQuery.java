@@ -113,7 +113,7 @@ public class MatchQuery extends AbstractProcessor {
             .build();
 
     @Override
-    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
         final List<PropertyDescriptor> descriptors = new ArrayList<>();
         descriptors.add(NUMERIC_FIELDS);
         descriptors.add(OUTPUT_RECORD_TYPE);
@@ -282,22 +282,7 @@ public class MatchQuery extends AbstractProcessor {
             return outRecords;
         }
 
-        MatchHandlers.MatchHandler _matchHandler = null;
-
-        if (onMatchPolicy==OnMatchPolicy.first && onMissPolicy==OnMissPolicy.discard) {
-            // Legacy behaviour
-            _matchHandler = new MatchHandlers.LegacyMatchHandler();
-        }
-        else if (onMissPolicy==OnMissPolicy.discard) {
-            // Ignore non matching records. Concat all query information (name, value) instead of first one only.
-            _matchHandler = new MatchHandlers.ConcatMatchHandler();
-        }
-        else {
-            // All records in, all records out. Concat all query information (name, value) instead of first one only.
-            _matchHandler = new MatchHandlers.AllInAllOutMatchHandler(records, this.onMatchPolicy);
-        }
-
-        final MatchHandlers.MatchHandler matchHandler = _matchHandler;
+        final MatchHandlers.MatchHandler matchHandler = newMatchHandler(records);
         for (DocumentMatches<QueryMatch> docMatch : matches) {
             docMatch.getMatches().forEach(queryMatch ->
                     matchHandler.handleMatch(inputRecords.get(docMatch.getDocId()),
@@ -310,6 +295,24 @@ public class MatchQuery extends AbstractProcessor {
         return matchHandler.outputRecords();
     }
 
+    /**
+     * @return the handler of the matches of the given records, according to the match and miss policies
+     */
+    protected MatchHandlers.MatchHandler newMatchHandler(Collection<Record> records) {
+        if (onMatchPolicy==OnMatchPolicy.first && onMissPolicy==OnMissPolicy.discard) {
+            // Legacy behaviour
+            return new MatchHandlers.LegacyMatchHandler();
+        }
+        else if (onMissPolicy==OnMissPolicy.discard) {
+            // Ignore non matching records. Concat all query information (name, value) instead of first one only.
+            return new MatchHandlers.ConcatMatchHandler();
+        }
+        else {
+            // All records in, all records out. Concat all query information (name, value) instead of first one only.
+            return new MatchHandlers.AllInAllOutMatchHandler(records, this.onMatchPolicy);
+        }
+    }
+
     public void stop() {
         try {//necessary as currently processor instances are not kept between batches (avoid memory leak)
             if (monitor != null) {
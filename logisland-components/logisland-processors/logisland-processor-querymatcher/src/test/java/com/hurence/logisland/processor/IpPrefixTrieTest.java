@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class IpPrefixTrieTest {
+
+    @Test
+    public void testIpv4Prefixes() {
+        IpPrefixTrie<String> trie = new IpPrefixTrie<>();
+        trie.put("10.0.0.0/8", "a");
+        trie.put("10.1.0.0/16", "b");
+        trie.put("10.1.2.3", "c");
+        trie.put("192.168.1.0/24", "d");
+        trie.put("0.0.0.0/0", "any");
+        Assert.assertEquals(5, trie.size());
+
+        Assert.assertEquals(Arrays.asList("any", "a", "b", "c"), trie.allMatches("10.1.2.3"));
+        Assert.assertEquals(Collections.singletonList("c"), trie.longestPrefixMatch("10.1.2.3"));
+        Assert.assertEquals(Collections.singletonList("b"), trie.longestPrefixMatch("10.1.2.4"));
+        Assert.assertEquals(Collections.singletonList("a"), trie.longestPrefixMatch("10.2.0.1"));
+        Assert.assertEquals(Arrays.asList("any", "d"), trie.allMatches("192.168.1.0"));
+        Assert.assertEquals(Arrays.asList("any", "d"), trie.allMatches("192.168.1.255"));
+        Assert.assertEquals(Collections.singletonList("any"), trie.allMatches("192.168.2.1"));
+    }
+
+    @Test
+    public void testPrefixesInsertedInAnyOrder() {
+        IpPrefixTrie<String> trie = new IpPrefixTrie<>();
+        trie.put("10.1.2.3/32", "c");
+        trie.put("10.1.2.0/24", "b");
+        trie.put("10.1.3.0/24", "e");
+        trie.put("10.0.0.0/8", "a");
+        trie.put("10.1.2.0/24", "b2");
+
+        Assert.assertEquals(Arrays.asList("a", "b", "b2", "c"), trie.allMatches("10.1.2.3"));
+        Assert.assertEquals(Arrays.asList("a", "e"), trie.allMatches("10.1.3.3"));
+        Assert.assertEquals(Arrays.asList("b", "b2"), trie.longestPrefixMatch("10.1.2.200"));
+        Assert.assertEquals(Collections.emptyList(), trie.allMatches("11.1.2.3"));
+    }
+
+    @Test
+    public void testIpv6Prefixes() {
+        IpPrefixTrie<String> trie = new IpPrefixTrie<>();
+        trie.put("2001:db8::/32", "doc");
+        trie.put("2001:db8:1:1a0::/59", "net");
+        trie.put("::1", "loopback");
+        trie.put("::ffff:10.0.0.0/104", "mapped");
+        trie.put("10.0.0.0/8", "ipv4");
+
+        Assert.assertEquals(Arrays.asList("doc", "net"), trie.allMatches("2001:db8:1:1a0::"));
+        Assert.assertEquals(Arrays.asList("doc", "net"), trie.allMatches("2001:0DB8:0001:01BF:ffff:ffff:ffff:ffff"));
+        Assert.assertEquals(Collections.singletonList("doc"), trie.longestPrefixMatch("2001:db8:1:1c0::1"));
+        Assert.assertEquals(Collections.singletonList("loopback"), trie.allMatches("0:0:0:0:0:0:0:1"));
+        Assert.assertEquals(Collections.singletonList("mapped"), trie.allMatches("::ffff:10.1.2.3"));
+        Assert.assertEquals(Collections.singletonList("ipv4"), trie.allMatches("10.1.2.3"));
+        Assert.assertEquals(Collections.emptyList(), trie.allMatches("2001:db9::1"));
+    }
+
+    @Test
+    public void testParse() {
+        long[] bits = new long[2];
+        Assert.assertEquals(32, IpPrefixTrie.parse("255.255.255.255", bits));
+        Assert.assertEquals(0xFFFFFFFF00000000L, bits[0]);
+        Assert.assertEquals(128, IpPrefixTrie.parse("1:2:3:4:5:6:7:8", bits));
+        Assert.assertEquals(0x0001000200030004L, bits[0]);
+        Assert.assertEquals(0x0005000600070008L, bits[1]);
+        Assert.assertEquals(128, IpPrefixTrie.parse("::", bits));
+        Assert.assertEquals(128, IpPrefixTrie.parse("1::", bits));
+
+        for (String invalid : new String[]{"", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4 ", "a.b.c.d",
+                "localhost", "1:2", "1:::2", "1::2::3", "1:2:3:4:5:6:7:8:9", "12345::", "1:", ":1", "1.2.3.4:80"}) {
+            Assert.assertEquals(invalid, 0, IpPrefixTrie.parse(invalid, bits));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPrefixLength() {
+        new IpPrefixTrie<String>().put("10.0.0.0/33", "a");
+    }
+
+    /**
+     * Compare the trie against a brute force matching on random prefixes.
+     */
+    @Test
+    public void testRandomPrefixes() {
+        Random random = new Random(42);
+        IpPrefixTrie<Integer> trie = new IpPrefixTrie<>();
+        int[] networks = new int[2000];
+        int[] lengths = new int[networks.length];
+        for (int i = 0; i < networks.length; i++) {
+            lengths[i] = 8 + random.nextInt(25);
+            networks[i] = random.nextInt() & (int) (0xFFFFFFFFL << (32 - lengths[i]));
+            trie.put(toString(networks[i]) + "/" + lengths[i], i);
+        }
+        for (int n = 0; n < 20000; n++) {
+            // half of the addresses inside a known prefix
+            int address = n % 2 == 0 ? random.nextInt() : networks[random.nextInt(networks.length)] | (random.nextInt() & 0xFF);
+            List<Integer> matches = trie.allMatches(toString(address));
+            int expected = 0;
+            for (int i = 0; i < networks.length; i++) {
+                int mask = (int) (0xFFFFFFFFL << (32 - lengths[i]));
+                if ((address & mask) == networks[i]) {
+                    expected++;
+                    Assert.assertTrue(matches.contains(i));
+                }
+            }
+            Assert.assertEquals(expected, matches.size());
+        }
+    }
+
+    private static String toString(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
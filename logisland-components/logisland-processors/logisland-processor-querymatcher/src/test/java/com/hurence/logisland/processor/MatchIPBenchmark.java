@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor;
+
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.util.runner.TestRunner;
+import com.hurence.logisland.util.runner.TestRunners;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MatchIP} against 100k threat intelligence like rules (random IPv4 addresses, IPv4 prefixes from /8 to /31
+ * and IPv6 prefixes): the trie lookup of a single address, and a batch of 1000 records, half of them matching.
+ * <p>
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchIPBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"100000"})
+    public int rules;
+
+    @Param({"all", "longest"})
+    public String mode;
+
+    private IpPrefixTrie<String> trie;
+    private String[] addresses;
+    private MatchIP processor;
+    private TestRunner runner;
+    private List<Record> batch;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        trie = new IpPrefixTrie<>();
+        processor = new MatchIP();
+        runner = TestRunners.newTestRunner(processor);
+        runner.setProperty(MatchIP.IP_MATCH_MODE, mode);
+        runner.setProperty(MatchQuery.ON_MISS_POLICY, "forward");
+        List<String> matchingAddresses = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            String prefix;
+            switch (i % 4) {
+                case 0:
+                    prefix = toString(random.nextInt());
+                    matchingAddresses.add(prefix);
+                    break;
+                case 1:
+                    prefix = toString(random.nextInt()) + "/" + (24 + random.nextInt(8));
+                    break;
+                case 2:
+                    prefix = toString(random.nextInt()) + "/" + (8 + random.nextInt(16));
+                    break;
+                default:
+                    prefix = String.format("2001:db8:%x:%x::/64", random.nextInt(0x10000), random.nextInt(0x10000));
+            }
+            trie.put(prefix, "rule_" + i);
+            runner.setProperty("rule_" + i, "src_ip:" + prefix);
+        }
+        runner.run();
+
+        addresses = new String[BATCH_SIZE];
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            addresses[i] = i % 2 == 0 ? matchingAddresses.get(random.nextInt(matchingAddresses.size())) : toString(random.nextInt());
+            batch.add(new StandardRecord("connection")
+                    .setId("id" + i)
+                    .setStringField("src_ip", addresses[i]));
+        }
+    }
+
+    private static String toString(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    @Benchmark
+    public List<String> lookup() {
+        String address = addresses[next++ % BATCH_SIZE];
+        return "longest".equals(mode) ? trie.longestPrefixMatch(address) : trie.allMatches(address);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public Collection<Record> matchBatch() {
+        return processor.internalProcess(runner.getProcessContext(), batch);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MatchIPBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
 
 public class MatchIPTest {
@@ -152,6 +153,97 @@ public class MatchIPTest {
         testRunner.assertOutputRecordsCount(2);
     }
 
+    @Test
+    public void testIpv6Netmask() {
+        final TestRunner testRunner = TestRunners.newTestRunner(new MatchIP());
+        testRunner.setProperty("documentation_ips", "remoteHost:2001:db8::/32");
+        testRunner.setProperty("loopback", "remoteHost:::1");
+        testRunner.assertValid();
+
+        Record[] records = {
+                new StandardRecord(EXCEPTION_RECORD)
+                        .setId("id1")
+                        .setStringField("remoteHost", "2001:db8:1:1a0::"),
+                new StandardRecord(EXCEPTION_RECORD)
+                        .setId("id2")
+                        .setStringField("remoteHost", "0:0:0:0:0:0:0:1"),
+                new StandardRecord(EXCEPTION_RECORD)
+                        .setId("id3")
+                        .setStringField("remoteHost", "2001:db9::1")
+        };
+        testRunner.clearQueues();
+        testRunner.enqueue(records);
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(2);
+        testRunner.getOutputRecords().forEach(record -> {
+            if ("id1".equals(record.getId())) {
+                record.assertFieldEquals(MatchQuery.ALERT_MATCH_NAME, "documentation_ips");
+            } else {
+                record.assertFieldEquals(MatchQuery.ALERT_MATCH_NAME, "loopback");
+            }
+        });
+    }
+
+    @Test
+    public void testLongestPrefixMatch() {
+        final TestRunner testRunner = TestRunners.newTestRunner(new MatchIP());
+        testRunner.setProperty("private_ips", "remoteHost:192.168.0.0/16");
+        testRunner.setProperty("internal_ips", "remoteHost:192.168.1.0/24");
+        testRunner.setProperty(MatchIP.IP_MATCH_MODE, "longest");
+        testRunner.setProperty(MatchQuery.ON_MATCH_POLICY, MatchQuery.OnMatchPolicy.all.toString());
+        testRunner.assertValid();
+
+        Record[] records = {
+                new StandardRecord(EXCEPTION_RECORD)
+                        .setId("id1")
+                        .setStringField("remoteHost", "192.168.1.5"),
+                new StandardRecord(EXCEPTION_RECORD)
+                        .setId("id2")
+                        .setStringField("remoteHost", "192.168.2.5")
+        };
+        testRunner.clearQueues();
+        testRunner.enqueue(records);
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(2);
+        testRunner.getOutputRecords().forEach(record -> {
+            String[] names = (String[]) record.getField(MatchQuery.ALERT_MATCH_NAME).getRawValue();
+            Assert.assertEquals(1, names.length);
+            Assert.assertEquals("id1".equals(record.getId()) ? "internal_ips" : "private_ips", names[0]);
+        });
+
+        // every matching prefix by default
+        testRunner.setProperty(MatchIP.IP_MATCH_MODE, "all");
+        testRunner.clearQueues();
+        testRunner.enqueue(records[0]);
+        testRunner.run();
+        String[] names = (String[]) testRunner.getOutputRecords().get(0).getField(MatchQuery.ALERT_MATCH_NAME).getRawValue();
+        Assert.assertArrayEquals(new String[]{"private_ips", "internal_ips"}, names);
+    }
+
+    @Test
+    public void testRulesReloadedWhenModified() {
+        final MatchIP processor = new MatchIP();
+        final TestRunner testRunner = TestRunners.newTestRunner(processor);
+        testRunner.setProperty("blacklist", "remoteHost:10.0.0.0/8");
+        testRunner.assertValid();
+
+        final Record record = new StandardRecord(EXCEPTION_RECORD)
+                .setId("id1")
+                .setStringField("remoteHost", "172.16.0.1");
+        testRunner.enqueue(record);
+        testRunner.run();
+        testRunner.assertOutputRecordsCount(0);
+
+        // the running processor is not initialized again
+        testRunner.setProperty("blacklist", "remoteHost:172.16.0.0/12");
+        Assert.assertEquals(1, processor.process(testRunner.getProcessContext(), Collections.singletonList(record)).size());
+
+        testRunner.removeProperty("blacklist");
+        Assert.assertEquals(0, processor.process(testRunner.getProcessContext(), Collections.singletonList(record)).size());
+    }
+
     /**
      * A bunch of records for testing purpose.
      */
@@ -15,6 +15,7 @@
  */
 package com.hurence.logisland.processor.useragent;
 
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
 import com.hurence.logisland.annotation.documentation.*;
 import com.hurence.logisland.classloading.PluginLoader;
 import com.hurence.logisland.component.InitializationException;
@@ -47,6 +48,7 @@ import java.util.stream.Collectors;
                 + " There is no standard format for User-Agent strings, hence it is not easily possible to use regexp to handle them."
                 + " This processor rely on the `YAUAA library <https://github.com/nielsbasjes/yauaa>`_ to do the heavy work.")
 @ExtraDetailFile("./details/ParseUserAgent-Detail.rst")
+@ThreadSafe
 public class ParseUserAgent extends AbstractProcessor {
 
     private static final Object sync = new Object();
@@ -16,6 +16,7 @@
 package com.hurence.logisland.processor.xml;
 
 import com.hurence.logisland.annotation.behavior.DynamicProperty;
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
 import com.hurence.logisland.annotation.behavior.WritesAttribute;
 import com.hurence.logisland.annotation.documentation.*;
 import com.hurence.logisland.component.AllowableValue;
@@ -29,23 +30,29 @@ import com.hurence.logisland.record.Field;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.validator.ValidationResult;
 import com.hurence.logisland.validator.Validator;
+import net.sf.saxon.Configuration;
 import net.sf.saxon.lib.NamespaceConstant;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.trans.XPathException;
 import net.sf.saxon.xpath.XPathEvaluator;
+import net.sf.saxon.xpath.XPathFactoryImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPathFactoryConfigurationException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.StringReader;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -58,18 +65,31 @@ import static javax.xml.xpath.XPathConstants.STRING;
         + "new attributes in the records, depending on configuration of the "
         + "Processor. XPaths are entered by adding user-defined properties; the name of the property maps to the Attribute "
         + "Name into which the result will be placed. "
-        + "The value of the property must be a valid XPath expression. If the expression matches nothing, no attributes is added. ")
+        + "The value of the property must be a valid XPath expression. If the expression matches nothing, no attributes is added. "
+        + "The xml data (a string or bytes field) is parsed into a Saxon tiny tree, or, in streaming mode, the XPaths are "
+        + "evaluated while parsing when they are all simple paths of element names.")
 @WritesAttribute(attribute = "user-defined", description = "This processor adds user-defined attributes.")
 @DynamicProperty(name = "An attribute", value = "An XPath expression", description = " "
         + "the attribute is set to the result of the XPath Expression.")
 @ExtraDetailFile("./details/EvaluateXPath-Detail.rst")
+@ThreadSafe
 public class EvaluateXPath extends AbstractProcessor {
 
     private static final String XPATH_FACTORY_IMPL = "net.sf.saxon.xpath.XPathFactoryImpl";
     private static Logger logger = LoggerFactory.getLogger(EvaluateXPath.class);
 
+    /**
+     * the xml parser of each thread, reused from a record to another
+     */
+    private static final ThreadLocal<XMLReader> XML_READERS = ThreadLocal.withInitial(EvaluateXPath::newXmlReader);
+
     protected HashMap<String, XPathExpression> xpathRules = new HashMap<String, XPathExpression>();
 
+    /**
+     * the XPaths compiled for each thread: JAXP expressions are not thread safe
+     */
+    private ThreadLocal<Map<String, XPathExpression>> threadRules;
+
     public static final PropertyDescriptor SOURCE = new PropertyDescriptor.Builder()
             .name("source")
             .description("Indicates the attribute containing the xml data to evaluate xpath against.")
@@ -84,6 +104,16 @@ public class EvaluateXPath extends AbstractProcessor {
             .defaultValue("true")
             .build();
 
+    public static final PropertyDescriptor STREAMING = new PropertyDescriptor.Builder()
+            .name("streaming")
+            .description("Evaluate the XPaths while parsing the xml data, without building the document tree, and stop "
+                    + "parsing as soon as they are all resolved. Only applies when every XPath is an absolute path of "
+                    + "element names, optionally ending with an attribute (like /Envelope/Header/MessageId or /config/path/@name), "
+                    + "the tree is used otherwise.")
+            .required(false)
+            .allowableValues("true", "false")
+            .defaultValue("false")
+            .build();
 
     private static final AllowableValue OVERWRITE_EXISTING =
             new AllowableValue("overwrite_existing", "overwrite existing field", "if field already exist");
@@ -106,6 +136,16 @@ public class EvaluateXPath extends AbstractProcessor {
 
     private final AtomicReference<XPathFactory> factoryRef = new AtomicReference<>();
 
+    /**
+     * the Saxon configuration the expressions are compiled with, and the documents built with
+     */
+    private Configuration configuration;
+
+    /**
+     * the XPaths by attribute name when they are evaluated while parsing, null otherwise
+     */
+    private Map<String, String> streamingRules;
+
 
     @Override
     public void init(ProcessContext context) throws InitializationException {
@@ -118,23 +158,25 @@ public class EvaluateXPath extends AbstractProcessor {
             logger.warn(e.toString());
         }
         final XPathFactory factory = factoryRef.get();
+        configuration = ((XPathFactoryImpl) factory).getConfiguration();
+        final Map<String, String> rules = new HashMap<>();
 
         // loop over dynamic properties to add rules
         for (final Map.Entry<PropertyDescriptor, String> entry : context.getProperties().entrySet()) {
-            if (!entry.getKey().isDynamic()) {
-                continue;
+            if (entry.getKey().isDynamic()) {
+                rules.put(entry.getKey().getName(), entry.getValue());
             }
-
-            final String name = entry.getKey().getName();
-            final String rule = entry.getValue();
-
-            final XPathEvaluator xpathEvaluator = (XPathEvaluator) factory.newXPath();
-            XPathExpression xpathExpression;
-            try {
-                xpathExpression = xpathEvaluator.compile(rule);
-                xpathRules.put(name, xpathExpression);
-            } catch (XPathExpressionException e) {
-                throw new ProcessException(e.getMessage());  // should not happen because we've already validated the XPath (in XPathValidator)
+        }
+        xpathRules = compile(factory, rules);
+        threadRules = ThreadLocal.withInitial(() -> compile(factory, rules));
+        threadRules.set(xpathRules);
+
+        streamingRules = null;
+        if (context.getPropertyValue(STREAMING).asBoolean()) {
+            if (rules.values().stream().allMatch(StreamingXPathEvaluator::isSimple)) {
+                streamingRules = rules;
+            } else {
+                logger.warn("streaming disabled as some XPaths are not simple paths of element names: {}", rules.values());
             }
         }
     }
@@ -144,6 +186,7 @@ public class EvaluateXPath extends AbstractProcessor {
         final List<PropertyDescriptor> properties = new ArrayList<>();
         properties.add(SOURCE);
         properties.add(VALIDATE_DTD);
+        properties.add(STREAMING);
         properties.add(CONFLICT_RESOLUTION_POLICY);
         return Collections.unmodifiableList(properties);
     }
@@ -161,7 +204,6 @@ public class EvaluateXPath extends AbstractProcessor {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Collection<Record> process(ProcessContext context, Collection<Record> records) {
 
         if (records.isEmpty()) {
@@ -170,81 +212,107 @@ public class EvaluateXPath extends AbstractProcessor {
 
         final String sourceAttrName = context.getPropertyValue(SOURCE).asString();
         final String conflictPolicy = context.getPropertyValue(CONFLICT_RESOLUTION_POLICY).asString();
-        final QName returnType = STRING;
+        final XMLReader xmlReader = XML_READERS.get();
+        final StreamingXPathEvaluator streamingEvaluator =
+                streamingRules == null ? null : new StreamingXPathEvaluator(streamingRules);
 
-        recordLoop:
         for (Record record : records) {
-            final AtomicReference<Throwable> error = new AtomicReference<>(null);
-            final AtomicReference<Source> sourceRef = new AtomicReference<>(null);
 
-            // Grab the XML Document to evaluate xpath against
-            String xmlDocToEvaluate = record.getField(sourceAttrName).getRawValue().toString();
-            if (xmlDocToEvaluate == null || xmlDocToEvaluate.isEmpty()){
-                continue recordLoop;
+            // Grab the XML Document to evaluate xpath against, parsed straight from the field value
+            final Field sourceField = record.getField(sourceAttrName);
+            final InputSource xmlDocToEvaluate = sourceField == null ? null : toInputSource(sourceField.getRawValue());
+            if (xmlDocToEvaluate == null) {
+                continue;
             }
 
-
-            final Map<String, String> xpathResults = new HashMap<>();
-
-            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-            org.w3c.dom.Document xmlDoc = null;
+            final Map<String, String> xpathResults;
             try {
-                javax.xml.parsers.DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-                StringBuilder xmlStringBuilder = new StringBuilder();
-                xmlStringBuilder.append(xmlDocToEvaluate);
-                ByteArrayInputStream input =  new ByteArrayInputStream(
-                        xmlStringBuilder.toString().getBytes("UTF-8"));
-                xmlDoc = docBuilder.parse(input);
-            } catch (ParserConfigurationException e) {
+                xpathResults = streamingEvaluator != null
+                        ? streamingEvaluator.evaluate(xmlReader, xmlDocToEvaluate)
+                        : evaluate(record, new SAXSource(xmlReader, xmlDocToEvaluate));
+            } catch (IOException | SAXException | XPathException e) {
                 logger.warn(e.toString());
-                continue recordLoop;
-            } catch (UnsupportedEncodingException e) {
-                logger.warn(e.toString());
-                continue recordLoop;
-            } catch (IOException e) {
-                logger.warn(e.toString());
-                continue recordLoop;
-            } catch (SAXException e) {
-                logger.warn(e.toString());
-                continue recordLoop;
+                continue;
             }
 
-            for (final Map.Entry<String, XPathExpression> entry : xpathRules.entrySet()) {
-                String result = null;
-                try {
-                    XPathExpression xpe = entry.getValue();
-                    result = (String) xpe.evaluate(xmlDoc, returnType);
-                    if (result == null || result.isEmpty()) {
-                        continue ;
+            for (final Map.Entry<String, String> result : xpathResults.entrySet()) {
+                final String resultString = result.getValue();
+                String addedFieldName = result.getKey();
+
+                // field is already here
+                if (record.hasField(addedFieldName)) {
+                    if (conflictPolicy.equals(OVERWRITE_EXISTING.getValue())) {
+                        overwriteObsoleteFieldValue(record, addedFieldName, resultString);
                     }
-                } catch (final XPathExpressionException e) {
-                    logger.error("failed to evaluate XPath for {} for Property {} due to {}; routing to failure",
-                            new Object[]{record, entry.getKey(), e});
-                    continue recordLoop;
+                } else {
+                    record.setStringField(addedFieldName, resultString);
                 }
+            }
+        }
+        return records;
+    }
 
-                if (returnType == STRING) {
-                    final String resultString = (String) result;
-                    xpathResults.put(entry.getKey(), resultString);
-                    String addedFieldName = entry.getKey();
-
-                    // field is already here
-                    if (record.hasField(addedFieldName)) {
-                        if (conflictPolicy.equals(OVERWRITE_EXISTING.getValue())) {
-                            overwriteObsoleteFieldValue(record, addedFieldName, resultString);
-                        }
-                    } else {
-                        record.setStringField(addedFieldName, resultString);
-                    }
+    /**
+     * Build the Saxon tiny tree of a document and evaluate the compiled XPaths against it.
+     *
+     * @return the non empty results by attribute name, up to the first failing XPath
+     */
+    private Map<String, String> evaluate(Record record, SAXSource source) throws XPathException {
+        final NodeInfo xmlDoc = configuration.buildDocument(source);
+        final Map<String, String> xpathResults = new HashMap<>();
+        final QName returnType = STRING;
+
+        for (final Map.Entry<String, XPathExpression> entry : threadRules.get().entrySet()) {
+            try {
+                final String result = (String) entry.getValue().evaluate(xmlDoc, returnType);
+                if (result != null && !result.isEmpty()) {
+                    xpathResults.put(entry.getKey(), result);
                 }
+            } catch (final XPathExpressionException e) {
+                logger.error("failed to evaluate XPath for {} for Property {} due to {}; routing to failure",
+                        new Object[]{record, entry.getKey(), e});
+                break;
             }
+        }
+        return xpathResults;
+    }
 
-            if (error.get() != null) {
-                logger.error("Failed to write XPath result for {} due to {}; record left unchanged",
-                        new Object[]{record, error.get()});
+    /**
+     * Compile the XPaths by attribute name. The factory is not thread safe either.
+     */
+    private static HashMap<String, XPathExpression> compile(XPathFactory factory, Map<String, String> rules) {
+        final HashMap<String, XPathExpression> expressions = new HashMap<>();
+        synchronized (factory) {
+            for (final Map.Entry<String, String> rule : rules.entrySet()) {
+                final XPathEvaluator xpathEvaluator = (XPathEvaluator) factory.newXPath();
+                try {
+                    expressions.put(rule.getKey(), xpathEvaluator.compile(rule.getValue()));
+                } catch (XPathExpressionException e) {
+                    throw new ProcessException(e.getMessage());  // should not happen because we've already validated the XPath (in XPathValidator)
+                }
             }
         }
-        return records;
+        return expressions;
+    }
+
+    private static InputSource toInputSource(Object xmlDoc) {
+        if (xmlDoc instanceof byte[]) {
+            final byte[] bytes = (byte[]) xmlDoc;
+            // let the parser detect the encoding
+            return bytes.length == 0 ? null : new InputSource(new ByteArrayInputStream(bytes));
+        }
+        final String xml = xmlDoc == null ? null : xmlDoc.toString();
+        return xml == null || xml.isEmpty() ? null : new InputSource(new StringReader(xml));
+    }
+
+    private static XMLReader newXmlReader() {
+        try {
+            final SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+            parserFactory.setNamespaceAware(true);
+            return parserFactory.newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new ProcessException(e.getMessage());
+        }
     }
 
     private void overwriteObsoleteFieldValue(Record record, String fieldName, String newValue) {
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.processor.xml;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates simple XPaths while a document is parsed, without building its tree.
+ * <p>
+ * A simple XPath is an absolute path of element names, optionally ending with an attribute, like
+ * {@code /Envelope/Header/MessageId} or {@code /config/path/@name}. As in XPath, unprefixed names only match
+ * elements and attributes in no namespace, and the result is the string value of the first matching node in
+ * document order. The parsing stops as soon as every path is resolved.
+ */
+final class StreamingXPathEvaluator extends DefaultHandler {
+
+    private static final Pattern SIMPLE_PATH =
+            Pattern.compile("(/[\\p{L}_][\\p{L}\\p{N}_.\\-]*)+(/@[\\p{L}_][\\p{L}\\p{N}_.\\-]*)?");
+
+    private static final SAXException RESOLVED = new SAXException("all the paths are resolved");
+
+    private final String[] names;
+    private final String[][] steps;
+    private final String[] attributes;
+
+    private final int[] matched;
+    private final StringBuilder[] values;
+    private final String[] results;
+    private int depth;
+    private int unresolved;
+
+    /**
+     * @param paths the simple XPaths by result name
+     * @throws IllegalArgumentException if one of the paths is not simple
+     */
+    StreamingXPathEvaluator(Map<String, String> paths) {
+        int size = paths.size();
+        names = new String[size];
+        steps = new String[size][];
+        attributes = new String[size];
+        int i = 0;
+        for (Map.Entry<String, String> path : paths.entrySet()) {
+            if (!isSimple(path.getValue())) {
+                throw new IllegalArgumentException(path.getValue() + " is not a simple path");
+            }
+            String[] parts = path.getValue().trim().substring(1).split("/");
+            int elements = parts.length;
+            if (parts[elements - 1].startsWith("@")) {
+                attributes[i] = parts[--elements].substring(1);
+            }
+            steps[i] = new String[elements];
+            System.arraycopy(parts, 0, steps[i], 0, elements);
+            names[i++] = path.getKey();
+        }
+        matched = new int[size];
+        values = new StringBuilder[size];
+        results = new String[size];
+    }
+
+    /**
+     * @return true if the expression can be evaluated while streaming
+     */
+    static boolean isSimple(String expression) {
+        return expression != null && SIMPLE_PATH.matcher(expression.trim()).matches();
+    }
+
+    /**
+     * Parse a document with the given reader, which is left with this evaluator as content and error handler.
+     *
+     * @return the non empty results by name
+     */
+    Map<String, String> evaluate(XMLReader reader, InputSource input) throws IOException, SAXException {
+        for (int i = 0; i < names.length; i++) {
+            matched[i] = 0;
+            values[i] = null;
+            results[i] = null;
+        }
+        depth = 0;
+        unresolved = names.length;
+
+        reader.setContentHandler(this);
+        reader.setErrorHandler(this);
+        try {
+            reader.parse(input);
+        } catch (SAXException e) {
+            if (e != RESOLVED) {
+                throw e;
+            }
+        }
+
+        Map<String, String> found = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (results[i] != null && !results[i].isEmpty()) {
+                found.put(names[i], results[i]);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        depth++;
+        boolean inNoNamespace = uri == null || uri.isEmpty();
+        for (int i = 0; i < names.length; i++) {
+            if (results[i] != null || matched[i] != depth - 1 || depth > steps[i].length
+                    || !inNoNamespace || !steps[i][depth - 1].equals(localName)) {
+                continue;
+            }
+            matched[i] = depth;
+            if (depth < steps[i].length) {
+                continue;
+            }
+            if (attributes[i] == null) {
+                values[i] = new StringBuilder();
+            } else {
+                String value = atts.getValue("", attributes[i]);
+                if (value != null) {
+                    resolve(i, value);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        for (StringBuilder value : values) {
+            if (value != null) {
+                value.append(ch, start, length);
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        for (int i = 0; i < names.length; i++) {
+            if (matched[i] != depth) {
+                continue;
+            }
+            matched[i] = depth - 1;
+            if (values[i] != null) {
+                String value = values[i].toString();
+                values[i] = null;
+                resolve(i, value);
+            }
+        }
+        depth--;
+    }
+
+    private void resolve(int i, String value) throws SAXException {
+        results[i] = value;
+        if (--unresolved == 0) {
+            throw RESOLVED;
+        }
+    }
+}
@@ -25,6 +25,15 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
 /**
  * Test consolidate session processor.
  */
@@ -243,4 +252,144 @@ public class EvaluateXPathTest {
         MockRecord out = testRunner.getOutputRecords().get(0);
         out.assertFieldEquals("newAttr","Q836556");
     }
+
+    @Test
+    public void testXPathRuleOnBytes() {
+
+        Record record1 = new StandardRecord()
+                .setField("attrSource", FieldType.BYTES,
+                        "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><config><path>caf\u00e9</path></config>"
+                                .getBytes(StandardCharsets.ISO_8859_1));
+
+        TestRunner testRunner = TestRunners.newTestRunner(new EvaluateXPath());
+        testRunner.setProperty(EvaluateXPath.SOURCE, "attrSource");
+        testRunner.setProperty(EvaluateXPath.VALIDATE_DTD, "false");
+        testRunner.setProperty("newAttr", "/config/path");
+        testRunner.assertValid();
+        testRunner.enqueue(record1);
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(1);
+        MockRecord out = testRunner.getOutputRecords().get(0);
+        out.assertFieldEquals("newAttr","caf\u00e9");
+    }
+
+    @Test
+    public void testInvalidXmlLeavesRecordUnchanged() {
+
+        Record record1 = new StandardRecord()
+                .setField("attrSource", FieldType.STRING, "<config><path>myvalue</path>")
+                .setField("attr1", FieldType.STRING,"default");
+        Record record2 = new StandardRecord()
+                .setField("attrSource", FieldType.STRING, "<config><path>myvalue2</path></config>");
+
+        TestRunner testRunner = TestRunners.newTestRunner(new EvaluateXPath());
+        testRunner.setProperty(EvaluateXPath.SOURCE, "attrSource");
+        testRunner.setProperty(EvaluateXPath.VALIDATE_DTD, "false");
+        testRunner.setProperty("newAttr", "/config/path");
+        testRunner.assertValid();
+        testRunner.enqueue(record1, record2);
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(2);
+        testRunner.getOutputRecords().get(0).assertRecordSizeEquals(2);
+        testRunner.getOutputRecords().get(0).assertFieldNotExists("newAttr");
+        testRunner.getOutputRecords().get(1).assertFieldEquals("newAttr","myvalue2");
+    }
+
+    @Test
+    public void testStreamingXPathRules() {
+
+        Record record1 = new StandardRecord()
+                .setField("attrSource", FieldType.STRING,
+                        "<?xml version=\"1.0\"?><config><other><path>no</path></other>" +
+                                "<path>my<b>val</b>ue</path><newpath>a</newpath><newpath id=\"7\">b</newpath>" +
+                                "<ns xmlns=\"urn:test\">hidden</ns></config>")
+                .setField("newAttr", FieldType.STRING,"default");
+
+        TestRunner testRunner = TestRunners.newTestRunner(new EvaluateXPath());
+        testRunner.setProperty(EvaluateXPath.SOURCE, "attrSource");
+        testRunner.setProperty(EvaluateXPath.VALIDATE_DTD, "false");
+        testRunner.setProperty(EvaluateXPath.STREAMING, "true");
+        testRunner.setProperty(EvaluateXPath.CONFLICT_RESOLUTION_POLICY, "overwrite_existing");
+        testRunner.setProperty("newAttr", "/config/path");
+        testRunner.setProperty("newAttr2", "/config/newpath/@id");
+        testRunner.setProperty("newAttr3", "/config/ns");
+        testRunner.assertValid();
+        testRunner.enqueue(record1);
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(1);
+        testRunner.assertOutputErrorCount(0);
+        MockRecord out = testRunner.getOutputRecords().get(0);
+        out.assertFieldEquals("newAttr","myvalue");
+        out.assertFieldEquals("newAttr2","7");
+        out.assertFieldNotExists("newAttr3");
+        out.assertRecordSizeEquals(3);
+    }
+
+    @Test
+    public void testStreamingFallsBackToTree() {
+
+        Record record1 = new StandardRecord()
+                .setField("attrSource", FieldType.STRING,
+                        "<?xml version=\"1.0\"?><config><path>myvalue</path><newpath>myvalue2</newpath></config>");
+
+        TestRunner testRunner = TestRunners.newTestRunner(new EvaluateXPath());
+        testRunner.setProperty(EvaluateXPath.SOURCE, "attrSource");
+        testRunner.setProperty(EvaluateXPath.VALIDATE_DTD, "false");
+        testRunner.setProperty(EvaluateXPath.STREAMING, "true");
+        testRunner.setProperty("newAttr", "/config/path");
+        testRunner.setProperty("newAttr2", "//*[name()='newpath']");
+        testRunner.assertValid();
+        testRunner.enqueue(record1);
+        testRunner.run();
+        testRunner.assertAllInputRecordsProcessed();
+        testRunner.assertOutputRecordsCount(1);
+        MockRecord out = testRunner.getOutputRecords().get(0);
+        out.assertFieldEquals("newAttr","myvalue");
+        out.assertFieldEquals("newAttr2","myvalue2");
+    }
+
+    @Test
+    public void testConcurrentThreads() throws Exception {
+
+        final EvaluateXPath processor = new EvaluateXPath();
+        final TestRunner testRunner = TestRunners.newTestRunner(processor);
+        testRunner.setProperty(EvaluateXPath.SOURCE, "attrSource");
+        testRunner.setProperty(EvaluateXPath.VALIDATE_DTD, "false");
+        testRunner.setProperty("newAttr", "concat(/config/path, '-', count(//item))");
+        testRunner.assertValid();
+        // the runner initializes the processor
+        testRunner.run();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<Record>>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                final int items = thread;
+                results.add(executor.submit(() -> {
+                    final List<Record> records = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        final StringBuilder xml = new StringBuilder("<config><path>value" + i + "</path>");
+                        for (int j = 0; j < items; j++) {
+                            xml.append("<item/>");
+                        }
+                        records.add(new StandardRecord()
+                                .setField("attrSource", FieldType.STRING, xml.append("</config>").toString()));
+                    }
+                    processor.process(testRunner.getProcessContext(), records);
+                    return records;
+                }));
+            }
+            for (int thread = 0; thread < 4; thread++) {
+                final List<Record> records = results.get(thread).get();
+                for (int i = 0; i < records.size(); i++) {
+                    assertEquals("value" + i + "-" + thread, records.get(i).getField("newAttr").asString());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
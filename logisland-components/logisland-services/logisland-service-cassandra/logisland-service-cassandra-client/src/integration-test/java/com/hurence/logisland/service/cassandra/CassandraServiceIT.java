@@ -1009,6 +1009,72 @@ public class CassandraServiceIT {
         runner.disableControllerService(service); // Disconnect service from cassandra
     }
 
+    @Test
+    public void testPartitionBatches()
+            throws InitializationException {
+
+        /**
+         * Table with a partition key and a clustering column: rows of a same sensor go to the same partition and are
+         * grouped in unlogged batches, while rows of different sensors are written by concurrent requests
+         */
+
+        String tableName = TEST_KEYSPACE_A + ".tableWithPartitions";
+        String createTableCql = "CREATE TABLE IF NOT EXISTS " + tableName
+                + " (sensor text, ts int, value int, PRIMARY KEY (sensor, ts));";
+
+        ResultSet resultSet = session.execute(createTableCql);
+        if (!resultSet.wasApplied()) {
+            Assert.fail("Statement not applied: " + createTableCql);
+        }
+
+        final int sensors = 5;
+        final int rowsPerSensor = 1000;
+        List<Map<Field, CassandraType>> rows = new ArrayList<Map<Field, CassandraType>>();
+        for (int ts = 0; ts < rowsPerSensor; ts++) {
+            for (int sensor = 0; sensor < sensors; sensor++) {
+                Map<Field, CassandraType> row = new HashMap<Field, CassandraType>();
+                row.put(new Field("sensor", FieldType.STRING, "sensor" + sensor), CassandraType.TEXT);
+                row.put(new Field("ts", FieldType.INT, ts), CassandraType.INT);
+                row.put(new Field("value", FieldType.INT, ts * sensor), CassandraType.INT);
+                rows.add(row);
+            }
+        }
+
+        final TestRunner runner = TestRunners.newTestRunner("com.hurence.logisland.processor.datastore.BulkPut");
+
+        final CassandraControllerService service = new CassandraControllerService();
+        runner.addControllerService("cassandra_service", service);
+        runner.setProperty(service, CassandraControllerService.HOSTS.getName(), CASSANDRA_HOST);
+        runner.setProperty(service, CassandraControllerService.PORT.getName(), CASSANDRA_PORT);
+        runner.setProperty(service, CassandraControllerService.FLUSH_INTERVAL.getName(), "1000");
+        runner.setProperty(service, CassandraControllerService.BATCH_SIZE.getName(), "2000");
+        runner.setProperty(service, CassandraControllerService.PARTITION_BATCH_SIZE.getName(), "7");
+        runner.setProperty(service, CassandraControllerService.MAX_INFLIGHT_REQUESTS.getName(), "4");
+
+        runner.assertValid(service);
+        runner.enableControllerService(service);
+
+        /**
+         * Bulk insert records
+         */
+        bulkInsert(service, rows, tableName);
+
+        service.bulkPut(END_OF_TEST, new StandardRecord()); // Signal end of test
+        service.waitForFlush();
+
+        /**
+         * Check table content
+         */
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            Row count = session.execute("SELECT COUNT(*) FROM " + tableName + " WHERE sensor = 'sensor" + sensor + "'").one();
+            assertEquals("Number of found lines for sensor" + sensor, rowsPerSensor, count.getLong(0));
+        }
+        Row last = session.execute("SELECT value FROM " + tableName + " WHERE sensor = 'sensor3' AND ts = 999").one();
+        assertEquals(999 * 3, last.getInt("value"));
+
+        runner.disableControllerService(service); // Disconnect service from cassandra
+    }
+
     /**
      * Checks that provided rows are equal with respect to potential null values
      *
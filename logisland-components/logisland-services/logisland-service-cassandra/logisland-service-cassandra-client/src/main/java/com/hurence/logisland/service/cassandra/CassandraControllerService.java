@@ -129,6 +129,24 @@ public class CassandraControllerService extends AbstractControllerService implem
             .required(false)
             .build();
 
+    protected static final PropertyDescriptor PARTITION_BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("cassandra.partition.batch.size")
+            .displayName("Partition batch size")
+            .description("The maximum number of rows of a same partition written in a single unlogged batch. 1 disables batching.")
+            .required(false)
+            .defaultValue("20")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor MAX_INFLIGHT_REQUESTS = new PropertyDescriptor.Builder()
+            .name("cassandra.max.inflight.requests")
+            .displayName("Max in-flight requests")
+            .description("The maximum number of asynchronous write requests waiting for cassandra. Writing blocks once this limit is reached.")
+            .required(false)
+            .defaultValue("256")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
         List<PropertyDescriptor> descriptors = new ArrayList<>();
@@ -141,6 +159,8 @@ public class CassandraControllerService extends AbstractControllerService implem
         descriptors.add(CREDENTIALS_PASSWORD);
         descriptors.add(BATCH_SIZE);
         descriptors.add(FLUSH_INTERVAL);
+        descriptors.add(PARTITION_BATCH_SIZE);
+        descriptors.add(MAX_INFLIGHT_REQUESTS);
         return descriptors;
     }
 
@@ -251,7 +271,10 @@ public class CassandraControllerService extends AbstractControllerService implem
         // setup a thread pool of cassandra updaters
         int batchSize = context.getPropertyValue(BATCH_SIZE).asInteger();
         flushInterval = context.getPropertyValue(FLUSH_INTERVAL).asLong();
-        updater = new CassandraUpdater(cluster, session, queue , batchSize, this, flushInterval);
+        int partitionBatchSize = context.getPropertyValue(PARTITION_BATCH_SIZE).asInteger();
+        int maxInflightRequests = context.getPropertyValue(MAX_INFLIGHT_REQUESTS).asInteger();
+        updater = new CassandraUpdater(cluster, session, queue , batchSize, this, flushInterval,
+                partitionBatchSize, maxInflightRequests);
 
         executorService.execute(updater);
     }
@@ -27,14 +27,22 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import com.hurence.logisland.service.cassandra.CassandraControllerService.RecordToIndex;
 import com.hurence.logisland.service.cassandra.RecordConverter.CassandraType;
 
 import static com.hurence.logisland.service.cassandra.CassandraControllerService.END_OF_TEST;
 
 /**
- * This is a Runnable class used to buffer record to bulk put into Cassandra
+ * This is a Runnable class used to buffer record to bulk put into Cassandra.
+ *
+ * Buffered rows are written asynchronously: rows going to the same partition of a table are grouped into unlogged
+ * batches of at most partitionBatchSize statements, and at most maxInflightRequests statements or batches are
+ * waiting for cassandra at any time, the updater thread blocking on new writes beyond that.
  */
 public class CassandraUpdater implements Runnable {
 
@@ -42,6 +50,15 @@ public class CassandraUpdater implements Runnable {
     private final BlockingQueue<RecordToIndex> records;
     private final int batchSize;
     private final long flushInterval;
+    private final int partitionBatchSize;
+    private final int maxInflightRequests;
+    private final Semaphore inflightRequests;
+
+    // Cumulated write metrics
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushTimeNanos = new AtomicLong();
     private volatile int batchedUpdates = 0;
     private volatile long lastTS = 0L;
     volatile boolean stop = false;
@@ -62,41 +79,58 @@ public class CassandraUpdater implements Runnable {
     private static class TableData {
 
         // Prepared statement to use for inserting data into the table
-        private BoundStatement boundStatement = null;
+        private PreparedStatement preparedStatement = null;
         // Ordered list of fields of the table and their types
         private LinkedHashMap<String, CassandraType> orderedFields;
+        // Indexes in orderedFields of the partition key columns, empty if unknown
+        private int[] partitionKeyIndexes;
 
-        public TableData(BoundStatement boundStatement, LinkedHashMap<String, CassandraType> orderedFields)
+        public TableData(PreparedStatement preparedStatement, LinkedHashMap<String, CassandraType> orderedFields,
+                         int[] partitionKeyIndexes)
         {
-            this.boundStatement = boundStatement;
+            this.preparedStatement = preparedStatement;
             this.orderedFields = orderedFields;
+            this.partitionKeyIndexes = partitionKeyIndexes;
         }
 
-        public BoundStatement getBoundStatement() {
-            return boundStatement;
+        public PreparedStatement getPreparedStatement() {
+            return preparedStatement;
         }
 
         public LinkedHashMap<String, CassandraType> getOrderedFields() {
             return orderedFields;
         }
+
+        public int[] getPartitionKeyIndexes() {
+            return partitionKeyIndexes;
+        }
     }
 
     public CassandraUpdater(Cluster cluster, Session session, BlockingQueue<RecordToIndex> records, int batchSize,
                             CassandraControllerService service, long flushInterval) {
+        this(cluster, session, records, batchSize, service, flushInterval, 20, 256);
+    }
+
+    public CassandraUpdater(Cluster cluster, Session session, BlockingQueue<RecordToIndex> records, int batchSize,
+                            CassandraControllerService service, long flushInterval, int partitionBatchSize,
+                            int maxInflightRequests) {
         this.cluster = cluster;
         this.session = session;
         this.records = records;
         this.batchSize = batchSize;
         this.flushInterval = flushInterval;
         this.service = service;
+        this.partitionBatchSize = partitionBatchSize;
+        this.maxInflightRequests = maxInflightRequests;
+        this.inflightRequests = new Semaphore(maxInflightRequests);
         threadCount++;
     }
 
     /**
-     * Prepare once for all a bound statement that will be always used for a table: this is faster than constructing and using a
+     * Prepare once for all a statement that will be always used for a table: this is faster than constructing and using a
      * specific string each time.
      */
-    private BoundStatement prepareStatement(String collectionName, LinkedHashMap<String, CassandraType> tableSchema) {
+    private PreparedStatement prepareStatement(String collectionName, LinkedHashMap<String, CassandraType> tableSchema) {
 
         /**
          * INSERT INTO keyspace.table (field1, field2) VALUES (?, ?)
@@ -117,8 +151,33 @@ public class CassandraUpdater implements Runnable {
         }
         sb.append(") VALUES (").append(questionMarksSb).append(");");
         String statementString = sb.toString();
-        PreparedStatement statement = session.prepare(statementString);
-        return new BoundStatement(statement);
+        return session.prepare(statementString);
+    }
+
+    /**
+     * Finds where the partition key columns of a table are in its ordered fields.
+     * @return the indexes of the partition key columns, or an empty array if the table metadata is not available
+     */
+    private int[] partitionKeyIndexes(String collectionName, LinkedHashMap<String, CassandraType> tableSchema) {
+        String[] tokens = collectionName.split("\\.");
+        if (tokens.length != 2) {
+            return new int[0];
+        }
+        KeyspaceMetadata keyspaceMetadata = cluster.getMetadata().getKeyspace(tokens[0]);
+        TableMetadata tableMetadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(tokens[1]);
+        if (tableMetadata == null) {
+            return new int[0];
+        }
+        List<String> fields = new ArrayList<String>(tableSchema.keySet());
+        List<ColumnMetadata> partitionKey = tableMetadata.getPartitionKey();
+        int[] indexes = new int[partitionKey.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = fields.indexOf(partitionKey.get(i).getName());
+            if (indexes[i] == -1) {
+                return new int[0];
+            }
+        }
+        return indexes;
     }
 
     /**
@@ -256,8 +315,8 @@ public class CassandraUpdater implements Runnable {
             return null;
         }
 
-        BoundStatement boundStatement = prepareStatement(collectionName, tableSchema);
-        tableData = new TableData(boundStatement, tableSchema);
+        PreparedStatement preparedStatement = prepareStatement(collectionName, tableSchema);
+        tableData = new TableData(preparedStatement, tableSchema, partitionKeyIndexes(collectionName, tableSchema));
 
         synchronized(tablesData) {
             tablesData.put(collectionName, tableData);
@@ -277,10 +336,19 @@ public class CassandraUpdater implements Runnable {
     private static class DataToInsert
     {
         String collectionName; // Table name
-        BoundStatement boundStatement; // Prepared statement
+        TableData tableData; // Prepared statement and partition key of the table
         List<Object> values; // Values to put in the preparded statement
     }
 
+    /**
+     * Statements of a flush going to the same partition
+     */
+    private static class PartitionStatements
+    {
+        final List<BoundStatement> statements = new ArrayList<BoundStatement>();
+        final List<List<Object>> values = new ArrayList<List<Object>>();
+    }
+
     @Override
     public void run() {
 
@@ -315,7 +383,7 @@ public class CassandraUpdater implements Runnable {
                         {
                             DataToInsert dataToInsert = new DataToInsert();
                             dataToInsert.collectionName = collectionName;
-                            dataToInsert.boundStatement = tableData.getBoundStatement();
+                            dataToInsert.tableData = tableData;
                             dataToInsert.values = RecordConverter.convertInsert(record, tableData.getOrderedFields());
                             batchValues.add(dataToInsert);
                             batchedUpdates++;
@@ -344,44 +412,184 @@ public class CassandraUpdater implements Runnable {
                 logger.error("Error in cassandra updater: " + t.getMessage());
             }
         }
+
+        // Give the pending writes a chance to complete before the session is closed
+        try {
+            if (!inflightRequests.tryAcquire(maxInflightRequests, 4, TimeUnit.SECONDS)) {
+                logger.warn("Some writes to Cassandra were still pending when stopping");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Cassandra updater stopped after writing {} rows ({} failed), {} ms per flush on average",
+                getWrittenRows(), getFailedRows(), getAverageFlushTimeMs());
     }
 
     private void executeInserts(List<DataToInsert> batchValues)
     {
+        final long start = System.nanoTime();
+        boolean endOfTest = false;
+
+        // Group the rows of a same partition, in order of appearance
+        Map<List<Object>, PartitionStatements> partitions = new LinkedHashMap<List<Object>, PartitionStatements>();
+        int rows = 0;
         for (DataToInsert dataToInsert : batchValues)
         {
             // Special test for unit test
             if (dataToInsert.collectionName.equals(END_OF_TEST))
             {
-                // Signal end of test stream
-                service.stillSomeRecords = false; // We suppose the unit test code is mono-threaded and never writes more than a batch can handle
+                endOfTest = true;
                 continue;
             }
 
             List<Object> insertValues = dataToInsert.values;
-            BoundStatement boundStatement = dataToInsert.boundStatement;
-            logger.debug("Cassandra inserting values: " + insertValues + " for bound statement: " + boundStatement);
-            Object[] values = new Object[insertValues.size()];
-            values = insertValues.toArray(values);
+            BoundStatement boundStatement;
             try {
-                boundStatement = boundStatement.bind(values);
-                // Handle null values: unset them to avoid unwanted tombstones. See #450
-                int i = 0;
-                for (Object value : values)
-                {
-                    if (value == null)
-                    {
-                        boundStatement.unset(i);
+                boundStatement = bind(dataToInsert.tableData.getPreparedStatement(), insertValues);
+            } catch(DriverException e) {
+                logger.error("Error inserting " + insertValues + ": " + e.getMessage());
+                failedRows.incrementAndGet();
+                continue;
+            }
+
+            List<Object> partitionKey = new ArrayList<Object>();
+            partitionKey.add(dataToInsert.collectionName);
+            int[] partitionKeyIndexes = dataToInsert.tableData.getPartitionKeyIndexes();
+            if (partitionKeyIndexes.length == 0) {
+                // Unknown partition key, never group this row with another one
+                partitionKey.add(rows);
+            }
+            for (int index : partitionKeyIndexes) {
+                partitionKey.add(insertValues.get(index));
+            }
+
+            PartitionStatements partition = partitions.get(partitionKey);
+            if (partition == null) {
+                partition = new PartitionStatements();
+                partitions.put(partitionKey, partition);
+            }
+            partition.statements.add(boundStatement);
+            partition.values.add(insertValues);
+            rows++;
+        }
+
+        final AtomicInteger pendingRequests = new AtomicInteger(1);
+        final int flushedRows = rows;
+        final Runnable onRequestDone = () -> {
+            if (pendingRequests.decrementAndGet() == 0) {
+                long elapsedNanos = System.nanoTime() - start;
+                flushes.incrementAndGet();
+                flushTimeNanos.addAndGet(elapsedNanos);
+                if (logger.isDebugEnabled() && flushedRows > 0) {
+                    logger.debug("Wrote {} rows to Cassandra in {} ms ({} rows/s)", flushedRows,
+                            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                            elapsedNanos == 0 ? 0 : flushedRows * 1000000000L / elapsedNanos);
+                }
+            }
+        };
+
+        try {
+            for (PartitionStatements partition : partitions.values()) {
+                for (int from = 0; from < partition.statements.size(); from += partitionBatchSize) {
+                    int to = Math.min(from + partitionBatchSize, partition.statements.size());
+                    Statement statement;
+                    if (to - from == 1) {
+                        statement = partition.statements.get(from);
+                    } else {
+                        BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                        batchStatement.addAll(partition.statements.subList(from, to));
+                        statement = batchStatement;
                     }
-                    i++;
+                    pendingRequests.incrementAndGet();
+                    executeAsync(statement, partition.values.subList(from, to), onRequestDone);
                 }
-                ResultSet resultSet = session.execute(boundStatement);
-                if (!resultSet.wasApplied()) {
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting to write to Cassandra", e);
+        } finally {
+            onRequestDone.run();
+        }
+
+        if (endOfTest) {
+            // Signal end of test stream once every pending write is acknowledged
+            inflightRequests.acquireUninterruptibly(maxInflightRequests);
+            inflightRequests.release(maxInflightRequests);
+            service.stillSomeRecords = false; // We suppose the unit test code is mono-threaded and never writes more than a batch can handle
+        }
+    }
+
+    private BoundStatement bind(PreparedStatement preparedStatement, List<Object> insertValues) {
+        Object[] values = insertValues.toArray(new Object[insertValues.size()]);
+        BoundStatement boundStatement = preparedStatement.bind(values);
+        // Handle null values: unset them to avoid unwanted tombstones. See #450
+        int i = 0;
+        for (Object value : values)
+        {
+            if (value == null)
+            {
+                boundStatement.unset(i);
+            }
+            i++;
+        }
+        return boundStatement;
+    }
+
+    /**
+     * Sends a statement once a permit is available, the permit being given back when cassandra answers.
+     */
+    private void executeAsync(Statement statement, List<List<Object>> insertValues, Runnable onDone) throws InterruptedException {
+        inflightRequests.acquire();
+        final ResultSetFuture future;
+        try {
+            logger.debug("Cassandra inserting values: " + insertValues);
+            future = session.executeAsync(statement);
+        } catch (DriverException e) {
+            inflightRequests.release();
+            failedRows.addAndGet(insertValues.size());
+            logger.error("Error inserting " + insertValues + ": " + e.getMessage());
+            onDone.run();
+            return;
+        }
+        future.addListener(() -> {
+            try {
+                ResultSet resultSet = future.get();
+                if (resultSet.wasApplied()) {
+                    writtenRows.addAndGet(insertValues.size());
+                } else {
+                    failedRows.addAndGet(insertValues.size());
                     logger.error("Error inserting " + insertValues);
                 }
-            } catch(DriverException e) {
-                logger.error("Error inserting " + insertValues + ": " + e.getMessage());
+            } catch (InterruptedException | ExecutionException | RuntimeException e) {
+                failedRows.addAndGet(insertValues.size());
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                logger.error("Error inserting " + insertValues + ": " + cause.getMessage());
+            } finally {
+                inflightRequests.release();
+                onDone.run();
             }
-        }
+        }, Runnable::run);
+    }
+
+    /**
+     * @return the number of rows acknowledged by cassandra so far
+     */
+    long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    /**
+     * @return the number of rows which could not be written so far
+     */
+    long getFailedRows() {
+        return failedRows.get();
+    }
+
+    /**
+     * @return the average time between the start of a flush and the acknowledgement of its last row, in milliseconds
+     */
+    double getAverageFlushTimeMs() {
+        long count = flushes.get();
+        return count == 0 ? 0 : flushTimeNanos.get() / 1000000.0 / count;
     }
-}
\ No newline at end of file
+}
@@ -29,6 +29,7 @@ import com.hurence.logisland.validator.StandardValidators;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 
 @Tags({"hbase", "client"})
 @CapabilityDescription("A controller service for accessing an HBase client.")
@@ -118,6 +119,25 @@ public interface HBaseClientService extends ControllerService {
      */
     void scan(String tableName, byte[] startRow, byte[] endRow, Collection<Column> columns, ResultHandler handler) throws IOException;
 
+    /**
+     * Gets the given rows of a table in a single batch and passes each row found to the handler.
+     * Rows which do not exist are not passed to the handler.
+     *
+     * The default implementation scans the rows one by one, implementations should override it to fetch all the rows
+     * in a single request.
+     *
+     * @param tableName the name of an HBase table
+     * @param rowIds the identifiers of the rows to get
+     * @param columns optional columns to return, if not specified all columns are returned
+     * @param handler a handler to process the rows found
+     * @throws IOException thrown when there are communication errors with HBase
+     */
+    default void get(String tableName, List<byte[]> rowIds, Collection<Column> columns, ResultHandler handler) throws IOException {
+        for (final byte[] rowId : rowIds) {
+            scan(tableName, rowId, rowId, columns, (row, resultCells) -> handler.handle(rowId, resultCells));
+        }
+    }
+
     /**
      * Converts the given boolean to it's byte representation.
      *
@@ -46,6 +46,7 @@ import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -322,23 +323,7 @@ public class HBase_1_1_2_ClientService extends AbstractControllerService impleme
              final ResultScanner scanner = getResults(table, columns, filter, minTime)) {
 
             for (final Result result : scanner) {
-                final byte[] rowKey = result.getRow();
-                final Cell[] cells = result.rawCells();
-
-                if (cells == null) {
-                    continue;
-                }
-
-                // convert HBase cells to NiFi cells
-                final ResultCell[] resultCells = new ResultCell[cells.length];
-                for (int i=0; i < cells.length; i++) {
-                    final Cell cell = cells[i];
-                    final ResultCell resultCell = getResultCell(cell);
-                    resultCells[i] = resultCell;
-                }
-
-                // delegate to the handler
-                handler.handle(rowKey, resultCells);
+                handle(result, handler);
             }
         }
     }
@@ -351,27 +336,60 @@ public class HBase_1_1_2_ClientService extends AbstractControllerService impleme
              final ResultScanner scanner = getResults(table, startRow, endRow, columns)) {
 
             for (final Result result : scanner) {
-                final byte[] rowKey = result.getRow();
-                final Cell[] cells = result.rawCells();
+                handle(result, handler);
+            }
+        }
+    }
 
-                if (cells == null) {
-                    continue;
-                }
+    @Override
+    public void get(final String tableName, final List<byte[]> rowIds, final Collection<Column> columns, final ResultHandler handler)
+            throws IOException {
 
-                // convert HBase cells to NiFi cells
-                final ResultCell[] resultCells = new ResultCell[cells.length];
-                for (int i=0; i < cells.length; i++) {
-                    final Cell cell = cells[i];
-                    final ResultCell resultCell = getResultCell(cell);
-                    resultCells[i] = resultCell;
+        final List<Get> gets = new ArrayList<>(rowIds.size());
+        for (final byte[] rowId : rowIds) {
+            final Get get = new Get(rowId);
+            if (columns != null) {
+                for (Column col : columns) {
+                    if (col.getQualifier() == null) {
+                        get.addFamily(col.getFamily());
+                    } else {
+                        get.addColumn(col.getFamily(), col.getQualifier());
+                    }
                 }
+            }
+            gets.add(get);
+        }
 
-                // delegate to the handler
-                handler.handle(rowKey, resultCells);
+        try (final Table table = connection.getTable(TableName.valueOf(tableName))) {
+            // a single multi get, split by the client into one request per region server
+            for (final Result result : table.get(gets)) {
+                if (result != null && !result.isEmpty()) {
+                    handle(result, handler);
+                }
             }
         }
     }
 
+    private void handle(final Result result, final ResultHandler handler) {
+        final byte[] rowKey = result.getRow();
+        final Cell[] cells = result.rawCells();
+
+        if (cells == null) {
+            return;
+        }
+
+        // convert HBase cells to NiFi cells
+        final ResultCell[] resultCells = new ResultCell[cells.length];
+        for (int i=0; i < cells.length; i++) {
+            final Cell cell = cells[i];
+            final ResultCell resultCell = getResultCell(cell);
+            resultCells[i] = resultCell;
+        }
+
+        // delegate to the handler
+        handler.handle(rowKey, resultCells);
+    }
+
     // protected and extracted into separate method for testing
     protected ResultScanner getResults(final Table table, final byte[] startRow, final byte[] endRow, final Collection<Column> columns) throws IOException {
         final Scan scan = new Scan();
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.service.cache;
+
+import com.hurence.logisland.annotation.documentation.CapabilityDescription;
+import com.hurence.logisland.annotation.documentation.Category;
+import com.hurence.logisland.annotation.documentation.ComponentCategory;
+import com.hurence.logisland.annotation.documentation.Tags;
+import com.hurence.logisland.annotation.lifecycle.OnDisabled;
+import com.hurence.logisland.annotation.lifecycle.OnEnabled;
+import com.hurence.logisland.component.InitializationException;
+import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.controller.AbstractControllerService;
+import com.hurence.logisland.controller.ControllerServiceInitializationContext;
+import com.hurence.logisland.record.Field;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.service.cache.model.CacheStats;
+import com.hurence.logisland.service.cache.model.ConcurrentLRUCache;
+import com.hurence.logisland.validator.StandardValidators;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * <p>A thread safe key value cache, meant to be shared by all the tasks of an executor.</p>
+ *
+ * <p>Reads do not lock anything, the eviction is an approximate LRU and every entry may have its own
+ * time to live.</p>
+ *
+ * @see ConcurrentLRUCache
+ */
+@Category(ComponentCategory.DATASTORE)
+@Tags({"cache", "service", "key", "value", "pair", "LRU", "TTL", "concurrent"})
+@CapabilityDescription("A thread safe controller service for caching data by key value pair. Reads do not lock, the eviction " +
+        "follows an approximate LRU (last recently used) strategy, entries can expire after a time to live and the cache can be " +
+        "bounded by an estimation of its size in memory rather than by its number of entries.")
+public class ConcurrentKeyValueCacheService<K, V> extends AbstractControllerService implements ExpiringCacheService<K, V> {
+
+    public static final PropertyDescriptor CACHE_TTL_MS = new PropertyDescriptor.Builder()
+            .name("cache.ttl.ms")
+            .description("The default time to live of the elements, in milliseconds. 0 means they never expire.")
+            .required(false)
+            .defaultValue("0")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor CACHE_MAX_BYTES = new PropertyDescriptor.Builder()
+            .name("cache.max.bytes")
+            .description("If set, the cache is bounded by an estimation of the memory used by its elements instead of by cache.size.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .build();
+
+    protected volatile ConcurrentLRUCache<K, V> cache;
+
+    @Override
+    public V get(K k) {
+        return cache.get(k);
+    }
+
+    @Override
+    public void set(K k, V v) {
+        cache.set(k, v);
+    }
+
+    @Override
+    public void set(K k, V v, long ttlMillis) {
+        cache.set(k, v, ttlMillis);
+    }
+
+    /**
+     * @return the hit, miss, eviction and expiration counts of the cache since it has been enabled
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    @OnEnabled
+    public void init(ControllerServiceInitializationContext context) throws InitializationException {
+        super.init(context);
+        try {
+            final long ttl = context.getPropertyValue(CACHE_TTL_MS).asLong();
+            if (context.getPropertyValue(CACHE_MAX_BYTES).isSet()) {
+                this.cache = new ConcurrentLRUCache<>(context.getPropertyValue(CACHE_MAX_BYTES).asLong(), ttl,
+                        (k, v) -> estimateSize(k) + estimateSize(v));
+            } else {
+                this.cache = new ConcurrentLRUCache<>(context.getPropertyValue(CACHE_SIZE).asInteger(), ttl, (k, v) -> 1L);
+            }
+        } catch (Exception e) {
+            throw new InitializationException(e);
+        }
+    }
+
+    @OnDisabled
+    public void logStats() {
+        if (cache != null) {
+            getLogger().info("cache {} disabled, {}", new Object[]{getIdentifier(), cache.stats()});
+        }
+    }
+
+    @Override
+    public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        List<PropertyDescriptor> props = new ArrayList<>();
+        props.add(CACHE_SIZE);
+        props.add(CACHE_MAX_BYTES);
+        props.add(CACHE_TTL_MS);
+        return Collections.unmodifiableList(props);
+    }
+
+    /**
+     * A rough estimation of the memory held by an object, accurate enough to bound a cache of strings,
+     * byte arrays, records and collections of them.
+     */
+    static long estimateSize(Object o) {
+        if (o == null) {
+            return 0;
+        } else if (o instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) o).length();
+        } else if (o instanceof byte[]) {
+            return 16 + ((byte[]) o).length;
+        } else if (o instanceof Number || o instanceof Boolean) {
+            return 16;
+        } else if (o instanceof Record) {
+            long size = 64;
+            for (Field field : ((Record) o).getAllFields()) {
+                size += 32 + estimateSize(field.getName()) + estimateSize(field.getRawValue());
+            }
+            return size;
+        } else if (o instanceof Map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        } else if (o instanceof Collection) {
+            long size = 64;
+            for (Object element : (Collection<?>) o) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        return 64;
+    }
+}
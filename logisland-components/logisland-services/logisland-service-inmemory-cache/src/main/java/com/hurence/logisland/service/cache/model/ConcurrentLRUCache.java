@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.service.cache.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongBiFunction;
+
+
+/**
+ * <p>A thread safe cache with an approximate LRU (Last Recent Used) eviction, per entry expiration and
+ * a bound on the total weight of its entries.</p>
+ *
+ * <p>Entries are stored in a {@link ConcurrentHashMap}, so reads never take a lock: a hit only flags its
+ * entry as referenced. Eviction follows the CLOCK (second chance) algorithm: entries are queued in
+ * insertion order, and when the cache is too heavy the oldest ones are evicted unless they have been
+ * read since they were last examined, in which case they are queued again with their flag cleared.
+ * A single writer at a time runs the eviction, the others do not wait for it.</p>
+ *
+ * <p>Expired entries are dropped when they are read or when the eviction reaches them.</p>
+ */
+public class ConcurrentLRUCache<K, V> implements Cache<K, V> {
+
+    private static final long NO_EXPIRATION = Long.MAX_VALUE;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicInteger retiredInClock = new AtomicInteger();
+    private final long maxWeight;
+    private final long defaultTtlMillis;
+    private final ToLongBiFunction<K, V> weigher;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum number of entries of the cache
+     */
+    public ConcurrentLRUCache(int maxEntries) {
+        this(maxEntries, 0, (k, v) -> 1L);
+    }
+
+    /**
+     * @param maxWeight        the maximum total weight of the entries of the cache
+     * @param defaultTtlMillis the time to live of the entries set without one, 0 or less meaning forever
+     * @param weigher          computes the weight of an entry, which must be positive
+     */
+    public ConcurrentLRUCache(long maxWeight, long defaultTtlMillis, ToLongBiFunction<K, V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("the maximum weight of the cache must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.weigher = weigher;
+        this.map = new ConcurrentHashMap<>((int) Math.min(maxWeight, 1 << 16), 0.75f, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public V get(K k) {
+        Node<K, V> node = map.get(k);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (node.isExpired()) {
+            if (map.remove(k, node)) {
+                retire(node);
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    @Override
+    public void set(K k, V v) {
+        set(k, v, defaultTtlMillis);
+    }
+
+    /**
+     * Save an element into the cache for a limited time
+     *
+     * @param ttlMillis the time to live of the element, 0 or less meaning forever
+     */
+    public void set(K k, V v, long ttlMillis) {
+        long expiresAt = ttlMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis) : NO_EXPIRATION;
+        Node<K, V> node = new Node<>(k, v, weigher.applyAsLong(k, v), expiresAt);
+        weight.addAndGet(node.weight);
+        Node<K, V> previous = map.put(k, node);
+        if (previous != null) {
+            retire(previous);
+        }
+        clock.offer(node);
+
+        if (weight.get() > maxWeight || retiredInClock.get() > map.size() + 1024) {
+            evict();
+        }
+    }
+
+    /**
+     * @return the number of entries of the cache, expired ones included until they are dropped
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the total weight of the entries of the cache
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), map.size(), weight.get());
+    }
+
+    private void retire(Node<K, V> node) {
+        if (node.retire()) {
+            weight.addAndGet(-node.weight);
+            retiredInClock.incrementAndGet();
+        }
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (retiredInClock.get() > map.size() + 1024) {
+                // entries replaced or expired on read are still queued, drop them all at once
+                clock.removeIf(node -> {
+                    if (node.isRetired()) {
+                        retiredInClock.decrementAndGet();
+                        return true;
+                    }
+                    return false;
+                });
+            }
+
+            Node<K, V> node;
+            while (weight.get() > maxWeight && (node = clock.poll()) != null) {
+                if (node.isRetired()) {
+                    retiredInClock.decrementAndGet();
+                } else if (node.isExpired()) {
+                    if (map.remove(node.key, node)) {
+                        expirations.increment();
+                    }
+                    retire(node);
+                    retiredInClock.decrementAndGet();
+                } else if (node.referenced) {
+                    node.referenced = false;
+                    clock.offer(node);
+                } else {
+                    if (map.remove(node.key, node)) {
+                        evictions.increment();
+                    }
+                    retire(node);
+                    retiredInClock.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Node> RETIRED = AtomicIntegerFieldUpdater.newUpdater(Node.class, "retired");
+
+        final K key;
+        final V value;
+        final long weight;
+        final long expiresAt;
+        volatile boolean referenced;
+        volatile int retired;
+
+        Node(K key, V value, long weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return expiresAt != NO_EXPIRATION && System.nanoTime() - expiresAt > 0;
+        }
+
+        /**
+         * @return true for the caller that actually took this node out of the cache
+         */
+        boolean retire() {
+            return RETIRED.compareAndSet(this, 0, 1);
+        }
+
+        boolean isRetired() {
+            return retired != 0;
+        }
+    }
+}
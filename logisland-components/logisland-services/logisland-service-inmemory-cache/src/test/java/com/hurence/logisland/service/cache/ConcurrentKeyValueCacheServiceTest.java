@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.service.cache;
+
+import com.hurence.logisland.classloading.PluginProxy;
+import com.hurence.logisland.component.InitializationException;
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.util.runner.TestRunner;
+import com.hurence.logisland.util.runner.TestRunners;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class ConcurrentKeyValueCacheServiceTest {
+
+    @Test
+    public void testCache() throws InitializationException {
+
+        final TestRunner runner = TestRunners.newTestRunner(new TestProcessor());
+
+        final ConcurrentKeyValueCacheService<String, String> service = new ConcurrentKeyValueCacheService<>();
+        runner.addControllerService("concurrentCache", service);
+        runner.setProperty(service, ConcurrentKeyValueCacheService.CACHE_SIZE, "3");
+        runner.enableControllerService(service);
+        runner.setProperty(TestProcessor.CACHE_SERVICE, "concurrentCache");
+        runner.assertValid(service);
+
+        final CacheService cacheService = PluginProxy.unwrap(
+                runner.getProcessContext().getPropertyValue(TestProcessor.CACHE_SERVICE).asControllerService()
+        );
+        assertTrue(cacheService instanceof ExpiringCacheService);
+
+        cacheService.set("1", "1");
+        cacheService.set("2", "2");
+        cacheService.set("3", "3");
+        assertEquals("3", cacheService.get("3"));
+        cacheService.set("4", "4");
+
+        assertNull(cacheService.get("1"));
+        assertEquals("2", cacheService.get("2"));
+        assertEquals("3", cacheService.get("3"));
+        assertEquals("4", cacheService.get("4"));
+
+        assertEquals(3, service.getStats().getSize());
+        assertEquals(4, service.getStats().getHitCount());
+        assertEquals(1, service.getStats().getMissCount());
+    }
+
+    @Test
+    public void testTimeToLive() throws InitializationException, InterruptedException {
+
+        final TestRunner runner = TestRunners.newTestRunner(new TestProcessor());
+
+        final ConcurrentKeyValueCacheService<String, String> service = new ConcurrentKeyValueCacheService<>();
+        runner.addControllerService("concurrentCache", service);
+        runner.setProperty(service, ConcurrentKeyValueCacheService.CACHE_TTL_MS, "50");
+        runner.enableControllerService(service);
+        runner.assertValid(service);
+
+        service.set("default", "default");
+        service.set("longer", "longer", 60_000);
+        Thread.sleep(100);
+
+        assertNull(service.get("default"));
+        assertEquals("longer", service.get("longer"));
+        assertEquals(1, service.getStats().getExpirationCount());
+    }
+
+    @Test
+    public void testEstimatedSize() {
+        Record record = new StandardRecord("test")
+                .setField("name", FieldType.STRING, "logisland");
+
+        assertEquals(40 + 2 * 9, ConcurrentKeyValueCacheService.estimateSize("logisland"));
+        assertEquals(16 + 10, ConcurrentKeyValueCacheService.estimateSize(new byte[10]));
+        assertTrue(ConcurrentKeyValueCacheService.estimateSize(record) > ConcurrentKeyValueCacheService.estimateSize("logisland"));
+    }
+}
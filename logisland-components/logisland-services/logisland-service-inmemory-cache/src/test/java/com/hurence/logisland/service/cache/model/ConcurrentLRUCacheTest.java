@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.service.cache.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+public class ConcurrentLRUCacheTest {
+
+    @Test
+    public void testEvictionGivesReadEntriesASecondChance() {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(3);
+        cache.set("1", "1");
+        cache.set("2", "2");
+        cache.set("3", "3");
+        Assert.assertEquals("1", cache.get("1"));
+
+        cache.set("4", "4");
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals("1", cache.get("1"));
+        Assert.assertNull(cache.get("2"));
+        Assert.assertEquals("3", cache.get("3"));
+        Assert.assertEquals("4", cache.get("4"));
+        Assert.assertEquals(1, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void testReplacedEntriesAreNotCountedTwice() {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(2);
+        for (int i = 0; i < 10_000; i++) {
+            cache.set("a", "a" + i);
+        }
+        cache.set("b", "b");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(2, cache.weight());
+        Assert.assertEquals("a9999", cache.get("a"));
+        Assert.assertEquals(0, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void testEvictionByWeight() {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(10, 0, (k, v) -> v.length());
+        cache.set("1", "aaaa");
+        cache.set("2", "bbbb");
+        cache.set("3", "cc");
+        Assert.assertEquals(10, cache.weight());
+
+        cache.set("4", "d");
+
+        Assert.assertNull(cache.get("1"));
+        Assert.assertEquals("bbbb", cache.get("2"));
+        Assert.assertEquals(7, cache.weight());
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(10, 50, (k, v) -> 1L);
+        cache.set("short", "short");
+        cache.set("long", "long", TimeUnit.MINUTES.toMillis(1));
+        cache.set("forever", "forever", 0);
+
+        Thread.sleep(100);
+
+        Assert.assertNull(cache.get("short"));
+        Assert.assertEquals("long", cache.get("long"));
+        Assert.assertEquals("forever", cache.get("forever"));
+        Assert.assertEquals(2, cache.size());
+
+        CacheStats stats = cache.stats();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(1, stats.getExpirationCount());
+    }
+
+    @Test
+    public void testConcurrentAccessesKeepTheCacheBounded() throws Exception {
+        final ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100_000; i++) {
+                        int key = random.nextInt(5000);
+                        Integer value = cache.get(key);
+                        if (value == null) {
+                            cache.set(key, key);
+                        } else {
+                            Assert.assertEquals(key, value.intValue());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // a last write evicts whatever the concurrent writers left over the bound
+        cache.set(-1, -1);
+
+        Assert.assertTrue(cache.size() <= 1000);
+        Assert.assertEquals(cache.size(), cache.weight());
+        Assert.assertEquals(800_000, cache.stats().getHitCount() + cache.stats().getMissCount());
+    }
+}
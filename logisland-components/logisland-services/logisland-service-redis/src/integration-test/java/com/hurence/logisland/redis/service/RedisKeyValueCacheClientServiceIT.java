@@ -27,6 +27,8 @@ import com.hurence.logisland.serializer.DeserializationException;
 import com.hurence.logisland.serializer.Deserializer;
 import com.hurence.logisland.serializer.SerializationException;
 import com.hurence.logisland.serializer.Serializer;
+import com.hurence.logisland.service.datastore.MultiGetQueryRecord;
+import com.hurence.logisland.service.datastore.MultiGetResponseRecord;
 import com.hurence.logisland.util.runner.TestRunner;
 import com.hurence.logisland.util.runner.TestRunners;
 import com.hurence.logisland.validator.StandardValidators;
@@ -130,6 +132,55 @@ public class RedisKeyValueCacheClientServiceIT {
         }
     }
 
+    @Test
+    public void testBulkPutAndMultiGet() throws Exception {
+        try {
+            redisMapCacheClientService = new RedisKeyValueCacheService();
+            testRunner.addControllerService(SERVICE_IDENTIFIER, redisMapCacheClientService);
+
+            testRunner.setProperty(redisMapCacheClientService, RedisUtils.CONNECTION_STRING, "localhost:" + redisPort);
+            testRunner.setProperty(redisMapCacheClientService, RedisUtils.REDIS_MODE, RedisUtils.REDIS_MODE_STANDALONE);
+            testRunner.setProperty(redisMapCacheClientService, RedisKeyValueCacheService.RECORD_SERIALIZER, "com.hurence.logisland.serializer.JsonSerializer");
+            testRunner.setProperty(redisMapCacheClientService, RedisKeyValueCacheService.BATCH_SIZE, "4");
+            testRunner.setProperty(redisMapCacheClientService, RedisKeyValueCacheService.FLUSH_INTERVAL, "60000");
+            testRunner.setProperty(redisMapCacheClientService, RedisKeyValueCacheService.RECORD_TTL, "1000");
+            testRunner.enableControllerService(redisMapCacheClientService);
+
+            for (int i = 0; i < 10; i++) {
+                redisMapCacheClientService.bulkPut("metrics", new StandardRecord("metric")
+                        .setId("metric-" + i)
+                        .setStringField("host", "host" + i)
+                        .setField("cpu.user", FieldType.DOUBLE, i * 1.0)
+                        .setField("cpu.sys", FieldType.DOUBLE, i * 2.0));
+            }
+
+            // the first two batches of 4 records are already written, the last 2 records are still buffered
+            Assert.assertNotNull(redisMapCacheClientService.get("metric-7"));
+            Assert.assertNull(redisMapCacheClientService.get("metric-9"));
+            redisMapCacheClientService.bulkFlush();
+            Assert.assertNotNull(redisMapCacheClientService.get("metric-9"));
+
+            List<MultiGetResponseRecord> responses = redisMapCacheClientService.multiGet(Collections.singletonList(
+                    new MultiGetQueryRecord("metrics", null, new String[]{"cpu.*", "host"}, new String[]{"*.sys"},
+                            Arrays.asList("metric-1", "unknown", "metric-9"))));
+            Assert.assertEquals(2, responses.size());
+            Assert.assertEquals("metric-1", responses.get(0).getDocumentId());
+            Assert.assertEquals("metric-9", responses.get(1).getDocumentId());
+            Map<String, String> expectedFields = new HashMap<>();
+            expectedFields.put("host", "host9");
+            expectedFields.put("cpu.user", "9.0");
+            Assert.assertEquals(expectedFields, responses.get(1).getRetrievedFields());
+
+            // records expire after their time to live
+            Thread.sleep(1500);
+            Assert.assertNull(redisMapCacheClientService.get("metric-1"));
+        } finally {
+            if (redisMapCacheClientService != null) {
+                redisMapCacheClientService.close();
+            }
+        }
+    }
+
     private Collection<Record> getRandomMetrics(int size) throws InterruptedException {
 
         List<Record> records = new ArrayList<>();
@@ -19,12 +19,14 @@ import com.hurence.logisland.annotation.documentation.CapabilityDescription;
 import com.hurence.logisland.annotation.documentation.Category;
 import com.hurence.logisland.annotation.documentation.ComponentCategory;
 import com.hurence.logisland.annotation.documentation.Tags;
+import com.hurence.logisland.annotation.lifecycle.OnDisabled;
 import com.hurence.logisland.annotation.lifecycle.OnEnabled;
 import com.hurence.logisland.component.AllowableValue;
 import com.hurence.logisland.component.InitializationException;
 import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.controller.AbstractControllerService;
 import com.hurence.logisland.controller.ControllerServiceInitializationContext;
+import com.hurence.logisland.record.Field;
 import com.hurence.logisland.record.Record;
 import com.hurence.logisland.redis.util.RedisAction;
 import com.hurence.logisland.redis.util.RedisUtils;
@@ -47,7 +49,13 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 
 /**
@@ -58,6 +66,9 @@ import java.util.List;
  * to retrieve cached object.</p>
  * <p>
  * <p>You specify default TTL </p>
+ * <p>
+ * <p>Records given to bulkPut are buffered and written with a single pipelined round trip once batch.size records
+ * are buffered, every flush.interval ms, or on bulkFlush. multiGet reads the records of a query with a single MGET.</p>
  */
 @Category(ComponentCategory.DATASTORE)
 @Tags({"cache", "service", "key", "value", "pair", "redis"})
@@ -67,6 +78,11 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
     private volatile RecordSerializer recordSerializer;
     private final Serializer<String> stringSerializer = new StringSerializer();
     private volatile RedisConnectionPool redisConnectionPool;
+    private volatile long ttlMs;
+    private volatile int batchSize;
+    private List<Tuple<byte[], byte[]>> pendingPuts = new ArrayList<>();
+    private final Object flushLock = new Object();
+    private volatile ScheduledExecutorService flusher;
 
 
     public static final AllowableValue AVRO_SERIALIZER = new AllowableValue(AvroSerializer.class.getName(),
@@ -99,6 +115,14 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor RECORD_TTL = new PropertyDescriptor.Builder()
+            .name("record.ttl.ms")
+            .description("the time to live in ms of the records written by put and bulkPut, 0 meaning they never expire")
+            .required(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .defaultValue("0")
+            .build();
+
     @Override
     @OnEnabled
     public void init(ControllerServiceInitializationContext context) throws InitializationException {
@@ -109,17 +133,49 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
             this.recordSerializer = getSerializer(
                     context.getPropertyValue(RECORD_SERIALIZER).asString(),
                     context.getPropertyValue(AVRO_SCHEMA).asString());
+            this.ttlMs = context.getPropertyValue(RECORD_TTL).asLong();
+            this.batchSize = context.getPropertyValue(BATCH_SIZE).asInteger();
+            final long flushInterval = context.getPropertyValue(FLUSH_INTERVAL).asLong();
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "redis-bulk-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    bulkFlush();
+                } catch (Exception e) {
+                    getLogger().error("error while flushing buffered records", e);
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             throw new InitializationException(e);
         }
     }
 
+    @OnDisabled
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        try {
+            bulkFlush();
+        } catch (DatastoreClientServiceException e) {
+            getLogger().error("error while flushing buffered records", e);
+        }
+    }
+
 
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
 
         List<PropertyDescriptor> properties = new ArrayList<>(RedisUtils.REDIS_CONNECTION_PROPERTY_DESCRIPTORS);
         properties.add(RECORD_SERIALIZER);
+        properties.add(AVRO_SCHEMA);
+        properties.add(RECORD_TTL);
+        properties.add(BATCH_SIZE);
+        properties.add(FLUSH_INTERVAL);
 
         return properties;
     }
@@ -207,7 +263,7 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
     public <String, Record> void put(final String key, final Record value, final Serializer<String> keySerializer, final Serializer<Record> valueSerializer) throws IOException {
         withConnection(redisConnection -> {
             final Tuple<byte[], byte[]> kv = serialize(key, value, keySerializer, valueSerializer);
-            redisConnection.set(kv.getKey(), kv.getValue());
+            write(redisConnection, kv);
             return null;
         });
     }
@@ -226,7 +282,16 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
         });
     }
 
+    private void write(RedisConnection redisConnection, Tuple<byte[], byte[]> kv) {
+        if (ttlMs > 0) {
+            redisConnection.pSetEx(kv.getKey(), ttlMs, kv.getValue());
+        } else {
+            redisConnection.set(kv.getKey(), kv.getValue());
+        }
+    }
+
     public void close() throws IOException {
+        stop();
         try {
             if (this.redisConnectionPool != null)
                 this.redisConnectionPool.close();
@@ -391,12 +456,50 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
 
     @Override
     public void bulkFlush() throws DatastoreClientServiceException {
-
+        // flushes are serialized so that successive writes of a key are applied in order
+        synchronized (flushLock) {
+            final List<Tuple<byte[], byte[]>> puts;
+            synchronized (this) {
+                if (pendingPuts.isEmpty()) {
+                    return;
+                }
+                puts = pendingPuts;
+                pendingPuts = new ArrayList<>();
+            }
+            try {
+                withConnection(redisConnection -> {
+                    redisConnection.openPipeline();
+                    try {
+                        for (Tuple<byte[], byte[]> kv : puts) {
+                            write(redisConnection, kv);
+                        }
+                    } finally {
+                        redisConnection.closePipeline();
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                throw new DatastoreClientServiceException(e);
+            }
+        }
     }
 
     @Override
     public void bulkPut(String collectionName, Record record) throws DatastoreClientServiceException {
-        set(record.getId(), record);
+        final Tuple<byte[], byte[]> kv;
+        try {
+            kv = serialize(record.getId(), record, stringSerializer, (Serializer<Record>) recordSerializer);
+        } catch (IOException e) {
+            throw new DatastoreClientServiceException(e);
+        }
+        final boolean full;
+        synchronized (this) {
+            pendingPuts.add(kv);
+            full = pendingPuts.size() >= batchSize;
+        }
+        if (full) {
+            bulkFlush();
+        }
     }
 
     @Override
@@ -416,7 +519,133 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
 
     @Override
     public List<MultiGetResponseRecord> multiGet(List<MultiGetQueryRecord> multiGetQueryRecords) throws DatastoreClientServiceException {
-        return null;
+        final List<MultiGetResponseRecord> multiGetResponseRecords = new ArrayList<>();
+        try {
+            withConnection(redisConnection -> {
+                for (MultiGetQueryRecord query : multiGetQueryRecords) {
+                    multiGet(redisConnection, query, multiGetResponseRecords);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            throw new DatastoreClientServiceException(e);
+        }
+        return multiGetResponseRecords;
+    }
+
+    private void multiGet(RedisConnection redisConnection, MultiGetQueryRecord query,
+                          List<MultiGetResponseRecord> responses) throws IOException {
+        final List<String> documentIds = query.getDocumentIds();
+        if (documentIds.isEmpty()) {
+            return;
+        }
+        final byte[][] keys = new byte[documentIds.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = serialize(documentIds.get(i), stringSerializer);
+        }
+
+        // records written by this service are serialized strings, read them all in a single round trip
+        final List<byte[]> values = redisConnection.mGet(keys);
+        final List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            final byte[] value = values == null ? null : values.get(i);
+            if (value == null) {
+                missing.add(i);
+                continue;
+            }
+            final Record record = ((Deserializer<Record>) recordSerializer).deserialize(new ByteArrayInputStream(value));
+            responses.add(new MultiGetResponseRecord(query.getIndexName(), query.getTypeName(), documentIds.get(i),
+                    retrievedFields(record, query.getFieldsToInclude(), query.getFieldsToExclude())));
+        }
+
+        // keys written by other applications may be hashes: fetch the explicitly included fields from them
+        final String[] hashFields = explicitFields(query.getFieldsToInclude());
+        if (missing.isEmpty() || hashFields == null) {
+            return;
+        }
+        final byte[][] fields = new byte[hashFields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = serialize(hashFields[i], stringSerializer);
+        }
+        final List<Object> hashValues;
+        redisConnection.openPipeline();
+        try {
+            for (int i : missing) {
+                redisConnection.hMGet(keys[i], fields);
+            }
+        } finally {
+            hashValues = redisConnection.closePipeline();
+        }
+        for (int j = 0; j < missing.size(); j++) {
+            final List<byte[]> hashValue = (List<byte[]>) hashValues.get(j);
+            final Map<String, String> retrievedFields = new HashMap<>();
+            for (int i = 0; i < hashFields.length; i++) {
+                if (hashValue != null && hashValue.get(i) != null && !matches(hashFields[i], query.getFieldsToExclude())) {
+                    retrievedFields.put(hashFields[i], new String(hashValue.get(i), StandardCharsets.UTF_8));
+                }
+            }
+            if (!retrievedFields.isEmpty()) {
+                responses.add(new MultiGetResponseRecord(query.getIndexName(), query.getTypeName(),
+                        documentIds.get(missing.get(j)), retrievedFields));
+            }
+        }
+    }
+
+    /**
+     * Projects the fields of a record, the included and excluded field names may contain * wildcards.
+     * All the fields are included when no field to include is given.
+     */
+    static Map<String, String> retrievedFields(Record record, String[] fieldsToInclude, String[] fieldsToExclude) {
+        final Map<String, String> retrievedFields = new HashMap<>();
+        final boolean includeAll = fieldsToInclude == null || fieldsToInclude.length == 0;
+        for (Field field : record.getAllFields()) {
+            if ((includeAll || matches(field.getName(), fieldsToInclude))
+                    && !matches(field.getName(), fieldsToExclude)
+                    && field.getRawValue() != null) {
+                retrievedFields.put(field.getName(), field.asString());
+            }
+        }
+        return retrievedFields;
+    }
+
+    private static boolean matches(String fieldName, String[] patterns) {
+        if (patterns == null) {
+            return false;
+        }
+        for (String pattern : patterns) {
+            if (pattern.indexOf('*') < 0 ? pattern.equals(fieldName) : wildcardToRegex(pattern).matcher(fieldName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern wildcardToRegex(String pattern) {
+        final StringBuilder regex = new StringBuilder();
+        for (String part : pattern.split("\\*", -1)) {
+            if (regex.length() > 0 || pattern.startsWith("*")) {
+                regex.append(".*");
+            }
+            if (!part.isEmpty()) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @return the field names to include if they are all given explicitly, null otherwise
+     */
+    private static String[] explicitFields(String[] fieldsToInclude) {
+        if (fieldsToInclude == null || fieldsToInclude.length == 0) {
+            return null;
+        }
+        for (String field : fieldsToInclude) {
+            if (field.indexOf('*') >= 0) {
+                return null;
+            }
+        }
+        return fieldsToInclude;
     }
 
     @Override
@@ -424,6 +653,33 @@ public class RedisKeyValueCacheService extends AbstractControllerService impleme
         return get(record.getId());
     }
 
+    @Override
+    public List<Record> multiGet(String collectionName, List<Record> records) throws DatastoreClientServiceException {
+        final List<Record> results = new ArrayList<>(records.size());
+        if (records.isEmpty()) {
+            return results;
+        }
+        try {
+            withConnection(redisConnection -> {
+                final byte[][] keys = new byte[records.size()][];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = serialize(records.get(i).getId(), stringSerializer);
+                }
+                // a single round trip for all the records
+                final List<byte[]> values = redisConnection.mGet(keys);
+                for (int i = 0; i < keys.length; i++) {
+                    final byte[] value = values == null ? null : values.get(i);
+                    results.add(value == null ? null :
+                            ((Deserializer<Record>) recordSerializer).deserialize(new ByteArrayInputStream(value)));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            throw new DatastoreClientServiceException(e);
+        }
+        return results;
+    }
+
     @Override
     public Collection<Record> query(String query) {
         return null;
@@ -17,9 +17,12 @@ package com.hurence.logisland.service.solr.api;
 
 import com.hurence.logisland.annotation.documentation.CapabilityDescription;
 import com.hurence.logisland.annotation.documentation.Tags;
+import com.hurence.logisland.annotation.lifecycle.OnDisabled;
 import com.hurence.logisland.annotation.lifecycle.OnEnabled;
 import com.hurence.logisland.component.InitializationException;
 import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.component.PropertyValue;
+import com.hurence.logisland.component.StandardPropertyValue;
 import com.hurence.logisland.controller.AbstractControllerService;
 import com.hurence.logisland.controller.ControllerServiceInitializationContext;
 import com.hurence.logisland.processor.ProcessException;
@@ -50,8 +53,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Tags({ "solr", "client"})
 @CapabilityDescription("Abstract implementation of SolrClientService for Solr")
@@ -62,8 +64,10 @@ abstract public class SolrClientService extends AbstractControllerService implem
     protected int schemaUpdateTimeout;
 
     private static org.slf4j.Logger logger = LoggerFactory.getLogger(SolrClientService.class);
-    List<SolrUpdater> updaters = null;
-    final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(1000000);
+    protected volatile SolrUpdater updater;
+    private final Map<String, String> uniqueKeys = new ConcurrentHashMap<>();
+    // collections written to since their last commit, null standing for the default collection
+    private final Set<String> uncommittedCollections = Collections.synchronizedSet(new HashSet<>());
 
     PropertyDescriptor SOLR_CLOUD = new PropertyDescriptor.Builder()
             .name("solr.cloud")
@@ -90,7 +94,7 @@ abstract public class SolrClientService extends AbstractControllerService implem
 
     PropertyDescriptor CONCURRENT_REQUESTS = new PropertyDescriptor.Builder()
             .name("solr.concurrent.requests")
-            .description("setConcurrentRequests")
+            .description("maximum number of bulk update requests sent to solr at the same time")
             .required(false)
             .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
             .defaultValue("2")
@@ -104,6 +108,30 @@ abstract public class SolrClientService extends AbstractControllerService implem
             .defaultValue("500")
             .build();
 
+    PropertyDescriptor BATCH_MAX_BYTES = new PropertyDescriptor.Builder()
+            .name("solr.batch.max.bytes")
+            .description("a bulk update request is sent as soon as the estimated size of its documents reaches this number of bytes")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .defaultValue("5242880")
+            .build();
+
+    PropertyDescriptor MAX_RETRIES = new PropertyDescriptor.Builder()
+            .name("solr.max.retries")
+            .description("number of times a bulk update request failing on an I/O or server error is sent again")
+            .required(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .defaultValue("3")
+            .build();
+
+    PropertyDescriptor RETRY_BACKOFF = new PropertyDescriptor.Builder()
+            .name("solr.retry.backoff.ms")
+            .description("delay in ms before the first retry of a bulk update request, doubled on every further retry")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .defaultValue("100")
+            .build();
+
     PropertyDescriptor SCHEMA_UPDATE_TIMEOUT = new PropertyDescriptor.Builder()
             .name("schema.update_timeout")
             .description("Schema update timeout interval in s")
@@ -139,6 +167,9 @@ abstract public class SolrClientService extends AbstractControllerService implem
         props.add(SOLR_CONNECTION_STRING);
         props.add(CONCURRENT_REQUESTS);
         props.add(FLUSH_INTERVAL);
+        props.add(BATCH_MAX_BYTES);
+        props.add(MAX_RETRIES);
+        props.add(RETRY_BACKOFF);
         props.add(SCHEMA_UPDATE_TIMEOUT);
 
         return Collections.unmodifiableList(props);
@@ -151,12 +182,45 @@ abstract public class SolrClientService extends AbstractControllerService implem
         synchronized(this) {
             try {
                 setClient(createSolrClient(context));
+                createUpdater(context);
             }catch (Exception e){
                 throw new InitializationException(e);
             }
         }
     }
 
+    @OnDisabled
+    public void shutdown() {
+        if (updater != null) {
+            updater.stop();
+            updater = null;
+        }
+    }
+
+    protected void createUpdater(ControllerServiceInitializationContext context) {
+        shutdown();
+        if (getClient() == null) {
+            return;
+        }
+        updater = new SolrUpdater(getClient(),
+                getPropertyValue(context, BATCH_SIZE).asInteger(),
+                getPropertyValue(context, BATCH_MAX_BYTES).asLong(),
+                getPropertyValue(context, FLUSH_INTERVAL).asLong(),
+                getPropertyValue(context, CONCURRENT_REQUESTS).asInteger(),
+                getPropertyValue(context, MAX_RETRIES).asInteger(),
+                getPropertyValue(context, RETRY_BACKOFF).asLong());
+    }
+
+    /**
+     * Gets the value of a property, or its default value if a subclass does not support it.
+     */
+    private PropertyValue getPropertyValue(ControllerServiceInitializationContext context, PropertyDescriptor descriptor) {
+        if (getSupportedPropertyDescriptors().contains(descriptor)) {
+            return context.getPropertyValue(descriptor);
+        }
+        return new StandardPropertyValue(descriptor.getDefaultValue());
+    }
+
     abstract protected SolrClient createCloudClient(String connectionString, String collection);
     abstract protected SolrClient createHttpClient(String connectionString, String collection);
 
@@ -194,17 +258,6 @@ abstract public class SolrClientService extends AbstractControllerService implem
                 client = createHttpClient(connectionString, collection);
             }
 
-            // setup a thread pool of solr updaters
-            int batchSize = context.getPropertyValue(BATCH_SIZE).asInteger();
-            int numConcurrentRequests = context.getPropertyValue(CONCURRENT_REQUESTS).asInteger();
-            long flushInterval = context.getPropertyValue(FLUSH_INTERVAL).asLong();
-            updaters = new ArrayList<>(numConcurrentRequests);
-            for (int i = 0; i < numConcurrentRequests; i++) {
-                SolrUpdater updater = new SolrUpdater(client, queue, batchSize, flushInterval);
-                new Thread(updater).start();
-                updaters.add(updater);
-            }
-
             return client;
 
         } catch (Exception ex) {
@@ -226,6 +279,18 @@ abstract public class SolrClientService extends AbstractControllerService implem
     }
 
     public String getUniqueKey(String collectionName) throws IOException, SolrServerException {
+        if (collectionName != null) {
+            String uniqueKey = uniqueKeys.get(collectionName);
+            if (uniqueKey == null) {
+                uniqueKey = fetchUniqueKey(collectionName);
+                uniqueKeys.put(collectionName, uniqueKey);
+            }
+            return uniqueKey;
+        }
+        return fetchUniqueKey(null);
+    }
+
+    private String fetchUniqueKey(String collectionName) throws IOException, SolrServerException {
         SchemaRequest.UniqueKey keyRequest = new SchemaRequest.UniqueKey();
         SchemaResponse.UniqueKeyResponse keyResponse = keyRequest.process(getClient(), collectionName);
 
@@ -292,6 +357,7 @@ abstract public class SolrClientService extends AbstractControllerService implem
             return;
         }
 
+        uniqueKeys.remove(name);
         try {
             if (isCloud()) {
                 dropCloudCollection(name);
@@ -482,9 +548,17 @@ abstract public class SolrClientService extends AbstractControllerService implem
         return false;
     }
 
+    /**
+     * Sends the documents buffered for a collection, waits until solr acknowledged them and commits the collection.
+     */
     public void bulkFlush(String collectionName) throws DatastoreClientServiceException {
         try {
+            updater.flush(collectionName);
+            uncommittedCollections.remove(collectionName);
             getClient().commit(collectionName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatastoreClientServiceException(e);
         } catch (Exception e) {
             throw new DatastoreClientServiceException(e);
         }
@@ -492,12 +566,39 @@ abstract public class SolrClientService extends AbstractControllerService implem
 
     @Override
     public void bulkFlush() throws DatastoreClientServiceException {
-        bulkFlush(null);
+        try {
+            updater.flush(null);
+            final List<String> collections;
+            synchronized (uncommittedCollections) {
+                collections = new ArrayList<>(uncommittedCollections);
+                uncommittedCollections.clear();
+            }
+            if (collections.isEmpty()) {
+                collections.add(null);
+            }
+            for (String collection : collections) {
+                getClient().commit(collection);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatastoreClientServiceException(e);
+        } catch (Exception e) {
+            throw new DatastoreClientServiceException(e);
+        }
     }
 
     @Override
     public void bulkPut(String collectionName, Record record) throws DatastoreClientServiceException {
-        put(collectionName, record, false, false);
+        try {
+            SolrInputDocument document = getConverter().toSolrInputDocument(record, getUniqueKey(collectionName));
+            uncommittedCollections.add(collectionName);
+            updater.add(collectionName, document);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatastoreClientServiceException(e);
+        } catch (Exception e) {
+            throw new DatastoreClientServiceException(e);
+        }
     }
 
     public void put(String collectionName, Record record) throws DatastoreClientServiceException {
@@ -581,6 +682,33 @@ abstract public class SolrClientService extends AbstractControllerService implem
         }
     }
 
+    @Override
+    public List<Record> multiGet(String collectionName, List<Record> records) throws DatastoreClientServiceException {
+        final List<String> ids = new ArrayList<>(records.size());
+        for (Record record : records) {
+            ids.add(record.getId());
+        }
+        final List<Record> results = new ArrayList<>(Collections.nCopies(records.size(), (Record) null));
+        if (ids.isEmpty()) {
+            return results;
+        }
+        try {
+            // a single real time get request for all the records
+            final String uniqueKey = getUniqueKey(collectionName);
+            for (SolrDocument document : getClient().getById(collectionName, ids)) {
+                final Record record = getConverter().toRecord(document, uniqueKey);
+                for (int i = 0; i < ids.size(); i++) {
+                    if (ids.get(i).equals(record.getId())) {
+                        results.set(i, record);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new DatastoreClientServiceException(e);
+        }
+        return results;
+    }
+
     public Collection<Record> query(String queryString, String collectionName) {
         try {
             String uniqueKey = getUniqueKey(collectionName);
@@ -15,65 +15,298 @@
  */
 package com.hurence.logisland.service.solr.api;
 
-import com.hurence.logisland.record.Record;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
+import java.util.*;
+import java.util.concurrent.*;
 
-import static java.awt.SystemColor.text;
+/**
+ * Bulk indexing pipeline of a solr client.
+ *
+ * Documents are buffered per collection, and a batch is sent once it holds batchSize documents or batchMaxBytes
+ * bytes, or when it is older than flushInterval ms: a timer sends the pending batches even when no more documents
+ * are added. Up to concurrentRequests update requests are in flight at the same time, the callers adding documents
+ * being blocked beyond that. With SolrCloud the client splits each request by shard and sends it to the shard leaders.
+ *
+ * A request failing on an I/O error or a server side error is retried up to maxRetries times, waiting retryBackoff ms
+ * and then twice as long before each new attempt. The errors are kept per collection, and reported by the next flush
+ * of their collection.
+ */
+public class SolrUpdater {
+
+    private static Logger logger = LoggerFactory.getLogger(SolrUpdater.class);
+
+    // key of the documents sent to the default collection of the client
+    private static final String DEFAULT_COLLECTION = "";
 
-public class SolrUpdater implements Runnable {
-    private final UpdateRequest req = new UpdateRequest();
     private final SolrClient solr;
-    private final BlockingQueue<Record> records;
     private final int batchSize;
-    private final long flushInterval;
-    private volatile int batchedUpdates = 0;
-    private volatile long lastTS = 0;
+    private final long batchMaxBytes;
+    private final int maxRetries;
+    private final long retryBackoff;
+
+    private final Map<String, Batch> batches = new HashMap<>();
+    // the collection key of each request in flight, registered as soon as its batch leaves batches
+    private final Map<Future<?>, String> inflightRequests = new ConcurrentHashMap<>();
+    private final Semaphore requestPermits;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService flusher;
+    // the first error of each collection since its last flush, the next ones suppressed in it
+    private final Map<String, Exception> errors = new ConcurrentHashMap<>();
+
+    private static class Batch {
+        final String key;
+        final List<SolrInputDocument> documents = new ArrayList<>();
+        final long creationTime = System.currentTimeMillis();
+        long bytes = 0;
+        // the request sending the batch, set when the batch leaves batches
+        CompletableFuture<Void> request;
 
-    public SolrUpdater(SolrClient solr, BlockingQueue<Record> records, int batchSize, long flushInterval) {
+        Batch(String key) {
+            this.key = key;
+        }
+    }
+
+    public SolrUpdater(SolrClient solr, int batchSize, long batchMaxBytes, long flushInterval,
+                       int concurrentRequests, int maxRetries, long retryBackoff) {
         this.solr = solr;
-        this.records = records;
         this.batchSize = batchSize;
-        this.flushInterval = flushInterval;
-        this.lastTS = System.nanoTime() * 100; // far in the future ...
+        this.batchMaxBytes = batchMaxBytes;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.requestPermits = new Semaphore(concurrentRequests);
+        this.senders = Executors.newFixedThreadPool(concurrentRequests, daemonThreads("solr-updater"));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(daemonThreads("solr-updater-flusher"));
+        this.flusher.scheduleWithFixedDelay(() -> sendBatchesOlderThan(flushInterval),
+                flushInterval, flushInterval, TimeUnit.MILLISECONDS);
     }
 
-    @Override
-    public void run() {
-        while (true) {
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 
-            // process record if one
-            try {
-                Record record = records.take();
-                if (record != null) {
-                    SolrInputDocument doc = new SolrInputDocument();
-                    //   doc.setField("id", "doc-" + id.getAndIncrement());
-                    doc.setField("text", text);
-                    req.add(doc);
-                    batchedUpdates++;
+    /**
+     * Adds a document to the batch of its collection, sending the batch if it is full.
+     *
+     * @param collection the collection to index the document into, null for the default collection of the client
+     */
+    public void add(String collection, SolrInputDocument document) throws InterruptedException {
+        final String key = collection == null ? DEFAULT_COLLECTION : collection;
+        Batch fullBatch = null;
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                batches.put(key, batch);
+            }
+            batch.documents.add(document);
+            batch.bytes += estimateSize(document);
+            if (batch.documents.size() >= batchSize || batch.bytes >= batchMaxBytes) {
+                batches.remove(key);
+                fullBatch = register(batch);
+            }
+        }
+        if (fullBatch != null) {
+            send(Collections.singletonList(fullBatch));
+        }
+    }
+
+    /**
+     * Sends the pending documents of a collection and waits until solr acknowledged all the requests in flight.
+     *
+     * @param collection the collection to flush, null to flush all the collections
+     * @throws IOException if a batch of the flushed collections could not be indexed since their previous flush
+     */
+    public void flush(String collection) throws IOException, InterruptedException {
+        final List<Batch> pending = new ArrayList<>();
+        synchronized (batches) {
+            Iterator<Map.Entry<String, Batch>> iterator = batches.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Batch> entry = iterator.next();
+                if (collection == null || collection.equals(entry.getKey())) {
+                    pending.add(register(entry.getValue()));
+                    iterator.remove();
+                }
+            }
+        }
+        send(pending);
+
+        // also waits for the batches taken by other threads which are still waiting for a permit
+        for (Map.Entry<Future<?>, String> request : new ArrayList<>(inflightRequests.entrySet())) {
+            if (collection == null || collection.equals(request.getValue())) {
+                try {
+                    request.getKey().get();
+                } catch (ExecutionException e) {
+                    // reported through errors
                 }
+            }
+        }
+
+        Exception error = null;
+        for (String key : new ArrayList<>(errors.keySet())) {
+            if (collection == null || collection.equals(key)) {
+                final Exception collectionError = errors.remove(key);
+                if (collectionError == null) {
+                    continue;
+                }
+                if (error == null) {
+                    error = collectionError;
+                } else if (error != collectionError) {
+                    error.addSuppressed(collectionError);
+                }
+            }
+        }
+        if (error != null) {
+            throw new IOException("Unable to index some documents into solr" +
+                    (collection == null ? "" : " collection " + collection), error);
+        }
+    }
+
+    /**
+     * Sends the pending documents and stops the updater.
+     */
+    public void stop() {
+        try {
+            flush(null);
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.shutdown();
+        senders.shutdown();
+    }
+
+    private void sendBatchesOlderThan(long age) {
+        final long now = System.currentTimeMillis();
+        final List<Batch> expired = new ArrayList<>();
+        synchronized (batches) {
+            Iterator<Map.Entry<String, Batch>> iterator = batches.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Batch> entry = iterator.next();
+                if (now - entry.getValue().creationTime >= age) {
+                    expired.add(register(entry.getValue()));
+                    iterator.remove();
+                }
+            }
+        }
+        try {
+            send(expired);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Registers the request of a batch leaving batches, under the lock of batches so that a flush either sends the
+     * batch itself or waits for its request.
+     */
+    private Batch register(Batch batch) {
+        batch.request = new CompletableFuture<>();
+        inflightRequests.put(batch.request, batch.key);
+        return batch;
+    }
+
+    /**
+     * Sends registered batches, failing the ones which could not be sent so that no flush waits for them forever.
+     */
+    private void send(List<Batch> toSend) throws InterruptedException {
+        for (int i = 0; i < toSend.size(); i++) {
+            final Batch batch = toSend.get(i);
+            try {
+                requestPermits.acquire();
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                for (Batch unsent : toSend.subList(i, toSend.size())) {
+                    fail(unsent, e);
+                }
+                throw e;
             }
+            try {
+                senders.execute(() -> {
+                    try {
+                        process(DEFAULT_COLLECTION.equals(batch.key) ? null : batch.key, batch.documents);
+                        inflightRequests.remove(batch.request);
+                        batch.request.complete(null);
+                    } catch (Exception e) {
+                        fail(batch, e);
+                    } finally {
+                        requestPermits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                requestPermits.release();
+                for (Batch unsent : toSend.subList(i, toSend.size())) {
+                    fail(unsent, e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void fail(Batch batch, Exception e) {
+        errors.merge(batch.key, e, (first, next) -> {
+            if (first != next) {
+                first.addSuppressed(next);
+            }
+            return first;
+        });
+        logger.error("Unable to index {} documents into {} : {}", batch.documents.size(), batch.key, e.toString());
+        inflightRequests.remove(batch.request);
+        batch.request.completeExceptionally(e);
+    }
 
-            //
+    private void process(String collection, List<SolrInputDocument> documents) throws Exception {
+        final UpdateRequest request = new UpdateRequest();
+        request.add(documents);
+        long backoff = retryBackoff;
+        for (int attempt = 0; ; attempt++) {
             try {
-                long currentTS = System.nanoTime();
-                if ((currentTS - lastTS) >= flushInterval || batchedUpdates >= batchSize){
-                    req.process(solr);
-                    req.clear();
-                    lastTS = currentTS;
+                request.process(solr, collection);
+                return;
+            } catch (IOException | SolrServerException | SolrException e) {
+                if (attempt >= maxRetries || !isRetriable(e)) {
+                    throw e;
                 }
+                logger.warn("Indexing {} documents failed, retrying in {} ms : {}", documents.size(), backoff, e.toString());
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
 
-                // Thread.sleep(10);
-            } catch (IOException | SolrServerException e) {
-                e.printStackTrace();
+    private static boolean isRetriable(Exception e) {
+        if (e instanceof SolrException) {
+            // client errors such as bad documents will fail again
+            return ((SolrException) e).code() >= 500;
+        }
+        return true;
+    }
+
+    private static long estimateSize(SolrInputDocument document) {
+        long size = 0;
+        for (SolrInputField field : document) {
+            size += field.getName().length();
+            final Object value = field.getValue();
+            if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    size += String.valueOf(item).length();
+                }
+            } else {
+                size += String.valueOf(value).length();
             }
         }
+        return size;
     }
 }
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.service.solr.api;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SolrUpdaterTest {
+
+    /**
+     * Counts the documents it is sent, each request lasting 200 ms.
+     */
+    private static class SlowClient extends SolrClient {
+
+        final AtomicInteger indexed = new AtomicInteger();
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            indexed.addAndGet(((UpdateRequest) request).getDocuments().size());
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static SolrInputDocument document(String id) {
+        final SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", id);
+        return document;
+    }
+
+    @Test
+    public void flushWaitsForTheBatchesWaitingForARequestPermit() throws Exception {
+        final SlowClient solr = new SlowClient();
+        // a request per document, a single request in flight and no timer flush during the test
+        final SolrUpdater updater = new SolrUpdater(solr, 1, Long.MAX_VALUE, 3600000L, 1, 0, 0L);
+
+        updater.add("logs", document("1"));
+        final Thread adder = new Thread(() -> {
+            try {
+                updater.add("logs", document("2"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        adder.start();
+        // the second batch left the pending batches and waits for the permit of the first request
+        while (adder.isAlive() && adder.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        updater.flush("logs");
+        Assert.assertEquals(2, solr.indexed.get());
+
+        adder.join();
+        updater.stop();
+    }
+}
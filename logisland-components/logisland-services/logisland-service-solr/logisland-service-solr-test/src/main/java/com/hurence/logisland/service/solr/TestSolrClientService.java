@@ -206,6 +206,32 @@ abstract public class TestSolrClientService {
         Assert.assertEquals(2, solrClientService.queryCount(nameKey + ":" + nameValue, collection));
     }
 
+    @Test
+    public void testBulkPutSeveralBatches() throws InitializationException, IOException, InterruptedException {
+        final String collection = "foo";
+        final int count = 2500;
+
+        final TestRunner runner = TestRunners.newTestRunner(new TestProcessor());
+
+        // create the controller service and link it to the test processor :
+        final SolrClientService solrClientService = configureSolrClientService(runner);
+
+        solrClientService.dropCollection(collection);
+        solrClientService.createCollection(collection);
+
+        // more documents than a batch holds, so that some are sent before the flush
+        for (int i = 0; i < count; i++) {
+            Record document = new StandardRecord();
+            document.setId("id" + i);
+            document.setStringField("name_s", "fred");
+            solrClientService.bulkPut(collection, document);
+        }
+        // the flush returns once solr acknowledged all the batches
+        solrClientService.bulkFlush(collection);
+
+        Assert.assertEquals(count, solrClientService.countCollection(collection));
+    }
+
     @Test
     public void testMultiGet() throws InitializationException, IOException, InterruptedException, InvalidMultiGetQueryRecordException {
         final String index1 = "index1";
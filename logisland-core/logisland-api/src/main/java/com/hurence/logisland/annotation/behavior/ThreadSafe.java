@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.annotation.behavior;
+
+import com.hurence.logisland.processor.Processor;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation that may be placed on a
+ * {@link Processor} indicating that its process method
+ * can be called concurrently on distinct records, the output of a call
+ * depending only on the records it was given.
+ *
+ * The engines may then split a partition into chunks processed in parallel.
+ * This annotation is not inherited : a subclass must declare it again.
+ */
+@Documented
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ThreadSafe {
+
+}
@@ -30,6 +30,8 @@ import javax.script.*;
  */
 public class InterpretedPropertyValue extends AbstractPropertyValue {
 
+    private static final ThreadLocal<RecordScriptContext> CONTEXTS = ThreadLocal.withInitial(RecordScriptContext::new);
+
     private String script;
     private CompiledScript compiledScript;
 
@@ -77,11 +79,17 @@ public class InterpretedPropertyValue extends AbstractPropertyValue {
      * @throws InterpreterEngineException
      */
     protected Object getRawValue(Record record) throws InterpreterEngineException {
-        ScriptContext context = new SimpleScriptContext();
-        if (record != null) {
-            record.getFieldsEntrySet().forEach(entry -> context.setAttribute(entry.getKey(), entry.getValue().getRawValue(), ScriptContext.ENGINE_SCOPE));
+        RecordScriptContext context = CONTEXTS.get();
+        if (context.inUse) {
+            // an expression evaluated while evaluating another one on the same thread
+            context = new RecordScriptContext();
+        }
+        context.bind(record);
+        try {
+            return getRawValue(context);
+        } finally {
+            context.release();
         }
-        return getRawValue(context);
     }
 
     /**
@@ -102,4 +110,28 @@ public class InterpretedPropertyValue extends AbstractPropertyValue {
         }
     }
 
+    /**
+     * A script context whose engine scope reads the fields of the record being evaluated, reused for
+     * every evaluation made by the same thread.
+     */
+    private static class RecordScriptContext extends SimpleScriptContext {
+
+        private final RecordBindings bindings = new RecordBindings();
+        private boolean inUse;
+
+        RecordScriptContext() {
+            setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        }
+
+        void bind(Record record) {
+            bindings.bind(record);
+            inUse = true;
+        }
+
+        void release() {
+            bindings.bind(null);
+            inUse = false;
+        }
+    }
+
 }
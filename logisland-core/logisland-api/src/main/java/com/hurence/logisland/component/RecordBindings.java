@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.component;
+
+import com.hurence.logisland.jsr223.LazyBindings;
+import com.hurence.logisland.record.Field;
+import com.hurence.logisland.record.Record;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Bindings reading the fields of a record when an expression refers to them.
+ */
+class RecordBindings extends LazyBindings {
+
+    private Record record;
+
+    /**
+     * Binds another record, forgetting what previous evaluations put in these bindings.
+     */
+    RecordBindings bind(Record record) {
+        reset();
+        this.record = record;
+        return this;
+    }
+
+    @Override
+    protected boolean isResolvable(String name) {
+        return record != null && record.hasField(name);
+    }
+
+    @Override
+    protected Object resolve(String name) {
+        if (record == null) {
+            return null;
+        }
+        Field field = record.getField(name);
+        return field == null ? null : field.getRawValue();
+    }
+
+    @Override
+    protected Set<String> resolvableNames() {
+        return record == null ? Collections.emptySet() : record.getAllFieldNames();
+    }
+}
@@ -0,0 +1,1005 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.record;
+
+import com.hurence.logisland.logging.ComponentLog;
+import org.apache.commons.collections.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A {@link Record} that keeps its fields in flat, insertion-ordered arrays instead of a map of {@link Field}.
+ * <p>
+ * Field names are interned and looked up through an open-addressed hash index, int/long/float/double/boolean
+ * values are stored unboxed, and the {@link Field} objects handed out by {@link #getField(String)} and the
+ * collection views are only built on demand (and then cached until the field is overwritten).
+ * <p>
+ * Apart from iteration order (insertion order instead of name order) it behaves like {@link StandardRecord},
+ * and both implementations are equal to each other when they hold the same fields.
+ */
+public class CompactRecord implements Record {
+
+    private static Logger logger = LoggerFactory.getLogger(CompactRecord.class);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * field names are shared between records, up to a bound so that records with generated names cannot leak
+     */
+    private static final int MAX_INTERNED_NAMES = 1 << 16;
+    private static final ConcurrentMap<String, String> NAMES = new ConcurrentHashMap<>();
+
+    private static final byte REFERENCE = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+
+    private String[] names;
+    private FieldType[] types;
+    private byte[] kinds;
+    private Object[] values;
+    private long[] primitives;
+    private transient Field[] views;
+
+    /**
+     * open-addressed index: slot + 1, 0 meaning empty. Always at least twice as large as the slot arrays
+     */
+    private int[] index;
+    private int size;
+    private transient int modCount;
+
+    private List<String> errors = new ArrayList<>();
+
+    public CompactRecord() {
+        this(StandardRecord.DEFAULT_RECORD_TYPE);
+    }
+
+    public CompactRecord(String type) {
+        allocate(INITIAL_CAPACITY);
+        this.setType(type);
+        this.setTime(new Date());
+        this.setId(UUID.randomUUID().toString());
+    }
+
+    public CompactRecord(Record toClone) {
+        this();
+        this.setType(toClone.getType());
+        this.setTime(toClone.getTime());
+        this.setId(UUID.randomUUID().toString());
+        toClone.getAllFieldsSorted().forEach(this::setField);
+        this.errors = (List<String>) toClone.getErrors();
+    }
+
+    private CompactRecord(int capacity, List<String> errors) {
+        allocate(capacity);
+        this.errors = errors;
+    }
+
+    /**
+     * @param fields the number of fields the record will hold
+     * @param errors the errors of the record
+     * @return an empty record, without any technical field, for deserializers which set all of its fields back
+     */
+    public static CompactRecord restore(int fields, List<String> errors) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < fields) {
+            capacity <<= 1;
+        }
+        return new CompactRecord(capacity, errors);
+    }
+
+    /**
+     * Receives the fields of a {@link CompactRecord} in insertion order, the ones stored unboxed as primitives.
+     */
+    public interface ValueVisitor {
+
+        void visit(String name, FieldType type, Object value);
+
+        void visitInt(String name, int value);
+
+        void visitLong(String name, long value);
+
+        void visitFloat(String name, float value);
+
+        void visitDouble(String name, double value);
+
+        void visitBoolean(String name, boolean value);
+    }
+
+    /**
+     * hands every field over to the visitor, without building {@link Field} objects nor boxing values
+     */
+    public void visitValues(ValueVisitor visitor) {
+        for (int slot = 0; slot < size; slot++) {
+            long bits = primitives[slot];
+            switch (kinds[slot]) {
+                case INT:
+                    visitor.visitInt(names[slot], (int) bits);
+                    break;
+                case LONG:
+                    visitor.visitLong(names[slot], bits);
+                    break;
+                case FLOAT:
+                    visitor.visitFloat(names[slot], Float.intBitsToFloat((int) bits));
+                    break;
+                case DOUBLE:
+                    visitor.visitDouble(names[slot], Double.longBitsToDouble(bits));
+                    break;
+                case BOOLEAN:
+                    visitor.visitBoolean(names[slot], bits != 0L);
+                    break;
+                default:
+                    visitor.visit(names[slot], types[slot], values[slot]);
+                    break;
+            }
+        }
+    }
+
+    static String intern(String name) {
+        String interned = NAMES.get(name);
+        if (interned != null) {
+            return interned;
+        }
+        if (NAMES.size() >= MAX_INTERNED_NAMES) {
+            return name;
+        }
+        interned = NAMES.putIfAbsent(name, name);
+        return interned == null ? name : interned;
+    }
+
+    private void allocate(int capacity) {
+        names = new String[capacity];
+        types = new FieldType[capacity];
+        kinds = new byte[capacity];
+        values = new Object[capacity];
+        primitives = new long[capacity];
+        views = null;
+        index = new int[capacity * 2];
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        types = Arrays.copyOf(types, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        values = Arrays.copyOf(values, capacity);
+        primitives = Arrays.copyOf(primitives, capacity);
+        if (views != null) {
+            views = Arrays.copyOf(views, capacity);
+        }
+        index = new int[capacity * 2];
+        reindex();
+    }
+
+    private void reindex() {
+        Arrays.fill(index, 0);
+        int mask = index.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int i = hash(names[slot]) & mask;
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = slot + 1;
+        }
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot holding the given field, or -1
+     */
+    private int slotOf(String fieldName) {
+        if (fieldName == null) {
+            return -1;
+        }
+        int mask = index.length - 1;
+        int i = hash(fieldName) & mask;
+        int entry;
+        while ((entry = index[i]) != 0) {
+            String name = names[entry - 1];
+            if (name == fieldName || name.equals(fieldName)) {
+                return entry - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the slot for the given field, appending an empty one if needed
+     */
+    private int slotFor(String fieldName) {
+        int slot = slotOf(fieldName);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (size == names.length) {
+            grow();
+        }
+        slot = size++;
+        names[slot] = intern(fieldName);
+        int mask = index.length - 1;
+        int i = hash(fieldName) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+        modCount++;
+        return slot;
+    }
+
+    private Field[] views() {
+        if (views == null) {
+            views = new Field[names.length];
+        }
+        return views;
+    }
+
+    private void store(int slot, FieldType type, Object value) {
+        types[slot] = type;
+        values[slot] = null;
+        primitives[slot] = 0L;
+        kinds[slot] = REFERENCE;
+        if (value != null && type != null) {
+            switch (type) {
+                case INT:
+                    if (value instanceof Integer) {
+                        kinds[slot] = INT;
+                        primitives[slot] = (Integer) value;
+                        return;
+                    }
+                    break;
+                case LONG:
+                    if (value instanceof Long) {
+                        kinds[slot] = LONG;
+                        primitives[slot] = (Long) value;
+                        return;
+                    }
+                    break;
+                case FLOAT:
+                    if (value instanceof Float) {
+                        kinds[slot] = FLOAT;
+                        primitives[slot] = Float.floatToRawIntBits((Float) value);
+                        return;
+                    }
+                    break;
+                case DOUBLE:
+                    if (value instanceof Double) {
+                        kinds[slot] = DOUBLE;
+                        primitives[slot] = Double.doubleToRawLongBits((Double) value);
+                        return;
+                    }
+                    break;
+                case BOOLEAN:
+                    if (value instanceof Boolean) {
+                        kinds[slot] = BOOLEAN;
+                        primitives[slot] = ((Boolean) value) ? 1L : 0L;
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        values[slot] = value;
+    }
+
+    private CompactRecord storePrimitive(String fieldName, FieldType type, byte kind, long bits) {
+        int slot = slotFor(fieldName);
+        types[slot] = type;
+        kinds[slot] = kind;
+        values[slot] = null;
+        primitives[slot] = bits;
+        if (views != null) {
+            views[slot] = null;
+        }
+        return this;
+    }
+
+    private Object rawValue(int slot) {
+        long bits = primitives[slot];
+        switch (kinds[slot]) {
+            case INT:
+                return (int) bits;
+            case LONG:
+                return bits;
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case DOUBLE:
+                return Double.longBitsToDouble(bits);
+            case BOOLEAN:
+                return bits != 0L;
+            default:
+                return values[slot];
+        }
+    }
+
+    private Field fieldAt(int slot) {
+        Field[] views = views();
+        Field field = views[slot];
+        if (field == null) {
+            field = new Field(names[slot], types[slot], rawValue(slot));
+            views[slot] = field;
+        }
+        return field;
+    }
+
+    private Field removeAt(int slot) {
+        Field removed = fieldAt(slot);
+        int moved = size - slot - 1;
+        if (moved > 0) {
+            System.arraycopy(names, slot + 1, names, slot, moved);
+            System.arraycopy(types, slot + 1, types, slot, moved);
+            System.arraycopy(kinds, slot + 1, kinds, slot, moved);
+            System.arraycopy(values, slot + 1, values, slot, moved);
+            System.arraycopy(primitives, slot + 1, primitives, slot, moved);
+            System.arraycopy(views, slot + 1, views, slot, moved);
+        }
+        size--;
+        names[size] = null;
+        types[size] = null;
+        values[size] = null;
+        views[size] = null;
+        reindex();
+        modCount++;
+        return removed;
+    }
+
+    private void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(types, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        if (views != null) {
+            Arrays.fill(views, 0, size, null);
+        }
+        Arrays.fill(index, 0);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder fields = new StringBuilder("{");
+        for (int slot = 0; slot < size; slot++) {
+            if (slot > 0) {
+                fields.append(", ");
+            }
+            fields.append(names[slot]).append('=').append(fieldAt(slot));
+        }
+        fields.append('}');
+        return "Record{" +
+                "fields=" + fields +
+                ", time=" + getTime() +
+                ", type='" + getType() + '\'' +
+                ", id='" + getId() + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        if (!(o instanceof Record)) return false;
+
+        Record record = (Record) o;
+
+        if (record.getAllFields() == null ||
+                !CollectionUtils.isEqualCollection(this.getAllFields(), record.getAllFields()))
+
+            return false;
+        return getId() != null ? getId().equals(record.getId()) : record.getId() == null;
+    }
+
+    /**
+     * Same value as {@link StandardRecord#hashCode()} for the same fields.
+     */
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int slot = 0; slot < size; slot++) {
+            Field view = views == null ? null : views[slot];
+            int fieldHash;
+            if (view != null) {
+                fieldHash = view.hashCode();
+            } else {
+                fieldHash = 31 * types[slot].hashCode() + names[slot].hashCode();
+                Object value = rawValue(slot);
+                if (value != null) {
+                    fieldHash = 31 * fieldHash + value.hashCode();
+                }
+            }
+            result += names[slot].hashCode() ^ fieldHash;
+        }
+        result = 31 * result + (getId() != null ? getId().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public Position getPosition() {
+        if (hasPosition())
+            return (Position) getField(FieldDictionary.RECORD_POSITION).asRecord();
+        else return null;
+    }
+
+    @Override
+    public Record setPosition(Position position) {
+        if (position != null)
+            setRecordField(FieldDictionary.RECORD_POSITION, position);
+        return this;
+    }
+
+    @Override
+    public boolean hasPosition() {
+        return hasField(FieldDictionary.RECORD_POSITION);
+    }
+
+    @Override
+    public Date getTime() {
+        int slot = slotOf(FieldDictionary.RECORD_TIME);
+        if (slot < 0) {
+            return null;
+        }
+        if (kinds[slot] == LONG) {
+            return new Date(primitives[slot]);
+        }
+        return values[slot] instanceof Long ? new Date((Long) values[slot]) : null;
+    }
+
+    @Override
+    public Record setTime(Date recordTime) {
+        if (recordTime != null)
+            setTime(recordTime.getTime());
+        return this;
+    }
+
+    @Override
+    public Record setTime(long timestamp) {
+        return setLongValue(FieldDictionary.RECORD_TIME, timestamp);
+    }
+
+    @Override
+    public Record setFields(Map<String, Field> fields) {
+        clear();
+        fields.values().forEach(this::setField);
+        return this;
+    }
+
+    @Override
+    public Record addFields(Map<String, Field> fields) {
+        fields.values().forEach(this::setField);
+        return this;
+    }
+
+    @Override
+    public Record setType(String type) {
+        if (type != null) {
+            this.setStringField(FieldDictionary.RECORD_TYPE, type);
+        }
+        return this;
+    }
+
+    @Override
+    public String getType() {
+        return stringValue(FieldDictionary.RECORD_TYPE);
+    }
+
+    @Override
+    public String getId() {
+        return stringValue(FieldDictionary.RECORD_ID);
+    }
+
+    private String stringValue(String fieldName) {
+        int slot = slotOf(fieldName);
+        if (slot >= 0 && values[slot] instanceof String) {
+            return (String) values[slot];
+        }
+        return getField(fieldName).asString();
+    }
+
+    @Override
+    public Record setId(String id) {
+        setStringField(FieldDictionary.RECORD_ID, id);
+        return this;
+    }
+
+    @Override
+    public boolean hasField(String fieldName) {
+        return slotOf(fieldName) >= 0;
+    }
+
+    @Override
+    public boolean isInternField(String fieldName) {
+        return FieldDictionary.TECHNICAL_FIELDS.contains(fieldName);
+    }
+
+    @Override
+    public boolean isInternField(Field field) {
+        if (field != null) return isInternField(field.getName());
+        return false;
+    }
+
+    /**
+     * set a field value, the given instance being the one returned by subsequent {@link #getField(String)}
+     *
+     * @param field
+     */
+    @Override
+    public Record setField(Field field) {
+        int slot = slotFor(field.getName());
+        store(slot, field.getType(), field.getRawValue());
+        views()[slot] = field;
+        return this;
+    }
+
+    @Override
+    public Record setField(String fieldName, FieldType fieldType, Object value) {
+        int slot = slotFor(fieldName);
+        store(slot, fieldType, value);
+        if (views != null) {
+            views[slot] = null;
+        }
+        return this;
+    }
+
+    @Override
+    public Record setCheckedField(String fieldName, FieldType fieldType, Object value) throws FieldTypeException {
+        setField(new CheckedField(fieldName, fieldType, value));
+        return this;
+    }
+
+    @Override
+    public Record setStringField(String fieldName, String value) {
+        return setField(fieldName, FieldType.STRING, value);
+    }
+
+    @Override
+    public Record setLongField(String fieldName, Long value) {
+        return setField(fieldName, FieldType.LONG, value);
+    }
+
+    @Override
+    public Record setIntField(String fieldName, Integer value) {
+        return setField(fieldName, FieldType.INT, value);
+    }
+
+    @Override
+    public Record setFloatField(String fieldName, Float value) {
+        return setField(fieldName, FieldType.FLOAT, value);
+    }
+
+    @Override
+    public Record setDoubleField(String fieldName, Double value) {
+        return setField(fieldName, FieldType.DOUBLE, value);
+    }
+
+    @Override
+    public Record setBooleanField(String fieldName, Boolean value) {
+        return setField(fieldName, FieldType.BOOLEAN, value);
+    }
+
+    @Override
+    public Record setRecordField(String fieldName, Record value) {
+        return setField(fieldName, FieldType.RECORD, value);
+    }
+
+    @Override
+    public Record setBytesField(String fieldName, byte[] value) {
+        return setField(fieldName, FieldType.BYTES, value);
+    }
+
+    @Override
+    public Record setBytesField(String fieldName, Byte[] value) {
+        return setField(fieldName, FieldType.BYTES, value);
+    }
+
+    @Override
+    public Record setArrayField(String fieldName, Collection value) {
+        return setField(fieldName, FieldType.ARRAY, value);
+    }
+
+    @Override
+    public Record setObjectField(String fieldName, Object value) {
+        return setField(fieldName, FieldType.OBJECT, value);
+    }
+
+    @Override
+    public Record setDateTimeField(String fieldName, Date value) {
+        return setField(fieldName, FieldType.DATETIME, value);
+    }
+
+    @Override
+    public Record setMapField(String fieldName, Map value) {
+        return setField(fieldName, FieldType.MAP, value);
+    }
+
+    /**
+     * set an int field without boxing the value
+     */
+    public CompactRecord setIntValue(String fieldName, int value) {
+        return storePrimitive(fieldName, FieldType.INT, INT, value);
+    }
+
+    /**
+     * set a long field without boxing the value
+     */
+    public CompactRecord setLongValue(String fieldName, long value) {
+        return storePrimitive(fieldName, FieldType.LONG, LONG, value);
+    }
+
+    /**
+     * set a float field without boxing the value
+     */
+    public CompactRecord setFloatValue(String fieldName, float value) {
+        return storePrimitive(fieldName, FieldType.FLOAT, FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * set a double field without boxing the value
+     */
+    public CompactRecord setDoubleValue(String fieldName, double value) {
+        return storePrimitive(fieldName, FieldType.DOUBLE, DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * set a boolean field without boxing the value
+     */
+    public CompactRecord setBooleanValue(String fieldName, boolean value) {
+        return storePrimitive(fieldName, FieldType.BOOLEAN, BOOLEAN, value ? 1L : 0L);
+    }
+
+    /**
+     * @return the field value as an int, converted like {@link Field#asInteger()} when not stored as one,
+     * or defaultValue if the field is missing or null
+     */
+    public int getIntValue(String fieldName, int defaultValue) {
+        int slot = slotOf(fieldName);
+        if (slot >= 0 && kinds[slot] == INT) {
+            return (int) primitives[slot];
+        }
+        Integer value = slot < 0 ? null : fieldAt(slot).asInteger();
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @return the field value as a long, converted like {@link Field#asLong()} when not stored as one,
+     * or defaultValue if the field is missing or null
+     */
+    public long getLongValue(String fieldName, long defaultValue) {
+        int slot = slotOf(fieldName);
+        if (slot >= 0 && kinds[slot] == LONG) {
+            return primitives[slot];
+        }
+        Long value = slot < 0 ? null : fieldAt(slot).asLong();
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @return the field value as a double, converted like {@link Field#asDouble()} when not stored as one,
+     * or defaultValue if the field is missing or null
+     */
+    public double getDoubleValue(String fieldName, double defaultValue) {
+        int slot = slotOf(fieldName);
+        if (slot >= 0 && kinds[slot] == DOUBLE) {
+            return Double.longBitsToDouble(primitives[slot]);
+        }
+        Double value = slot < 0 ? null : fieldAt(slot).asDouble();
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @return the field value as a boolean, converted like {@link Field#asBoolean()} when not stored as one,
+     * or defaultValue if the field is missing or null
+     */
+    public boolean getBooleanValue(String fieldName, boolean defaultValue) {
+        int slot = slotOf(fieldName);
+        if (slot >= 0 && kinds[slot] == BOOLEAN) {
+            return primitives[slot] != 0L;
+        }
+        if (slot < 0 || rawValue(slot) == null) {
+            return defaultValue;
+        }
+        return fieldAt(slot).asBoolean();
+    }
+
+    /**
+     * @return the raw value of a field, or null if missing
+     */
+    public Object getRawValue(String fieldName) {
+        int slot = slotOf(fieldName);
+        return slot < 0 ? null : rawValue(slot);
+    }
+
+    @Override
+    public Field removeField(String fieldName) {
+        if (fieldName.equals(FieldDictionary.RECORD_TIME)) {
+            logger.debug("trying to remove record_time field. we won't let you do that !!");
+            return getField(FieldDictionary.RECORD_TIME);
+        }
+        int slot = slotOf(fieldName);
+        return slot < 0 ? null : removeAt(slot);
+    }
+
+    @Override
+    public Field getField(String fieldName) {
+        int slot = slotOf(fieldName);
+        return slot < 0 ? null : fieldAt(slot);
+    }
+
+    @Override
+    public Record setStringFields(Map<String, String> entrySets) {
+        Objects.requireNonNull(entrySets, "Argument can not be null");
+        for (Map.Entry<String, String> entry : entrySets.entrySet()) {
+            this.setStringField(entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    @Override
+    public Collection<Field> getAllFieldsSorted() {
+        List<Field> fields = new ArrayList<>(getAllFields());
+        Collections.sort(fields, (left, right) -> left.getName().compareTo(right.getName()));
+        return fields;
+    }
+
+    /**
+     * @return a live view of the fields, in insertion order
+     */
+    @Override
+    public Collection<Field> getAllFields() {
+        return new AbstractCollection<Field>() {
+            @Override
+            public Iterator<Field> iterator() {
+                return new SlotIterator<Field>() {
+                    @Override
+                    Field get(int slot) {
+                        return fieldAt(slot);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return a live view of the field names, in insertion order
+     */
+    @Override
+    public Set<String> getAllFieldNames() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new SlotIterator<String>() {
+                    @Override
+                    String get(int slot) {
+                        return names[slot];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && hasField((String) o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                int slot = o instanceof String ? slotOf((String) o) : -1;
+                if (slot < 0) {
+                    return false;
+                }
+                removeAt(slot);
+                return true;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return a live view of the fields by name, in insertion order
+     */
+    @Override
+    public Set<Map.Entry<String, Field>> getFieldsEntrySet() {
+        return new AbstractSet<Map.Entry<String, Field>>() {
+            @Override
+            public Iterator<Map.Entry<String, Field>> iterator() {
+                return new SlotIterator<Map.Entry<String, Field>>() {
+                    @Override
+                    Map.Entry<String, Field> get(int slot) {
+                        return new AbstractMap.SimpleImmutableEntry<>(names[slot], fieldAt(slot));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * iterates over the slots, failing fast on concurrent structural modifications like the JDK collections
+     */
+    private abstract class SlotIterator<E> implements Iterator<E> {
+        private int next = 0;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        abstract E get(int slot);
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * checks if record has no fields other than id, time and type
+     *
+     * @return true if fields is emty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 3;
+    }
+
+    @Override
+    public boolean isValid() {
+        for (int slot = 0; slot < size; slot++) {
+            if (kinds[slot] != REFERENCE || values[slot] == null) {
+                continue;
+            }
+            try {
+                CheckedField.checkType(types[slot], values[slot]);
+            } catch (FieldTypeException ex) {
+                logger.info("field {} is not an instance of type {}", names[slot], types[slot]);
+                return false;
+            } catch (Throwable ex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of fields (minus the 3 technical ones)
+     *
+     * @return number of real fields
+     */
+    @Override
+    public int size() {
+        return size - 3;
+    }
+
+    /**
+     * compute roughly the size in bytes for an event
+     *
+     * @return
+     */
+    @Override
+    public int sizeInBytes() {
+        int bytes = 0;
+        for (int slot = 0; slot < size; slot++) {
+            FieldType fieldType = types[slot];
+            if (fieldType == null) {
+                continue;
+            }
+            switch (fieldType) {
+                case STRING:
+                    if (values[slot] instanceof String) {
+                        bytes += ((String) values[slot]).getBytes().length;
+                    }
+                    break;
+                case INT:
+                case FLOAT:
+                    bytes += 4;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    bytes += 8;
+                    break;
+                case BOOLEAN:
+                    bytes += 1;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public Record addError(final String type, final String message) {
+        StringBuilder finalMessage = new StringBuilder();
+        finalMessage.append(type);
+        if (message == null || !message.isEmpty()) {
+            finalMessage.append(": ");
+            finalMessage.append(message);
+        }
+        errors.add(finalMessage.toString());
+        if (!hasField(FieldDictionary.RECORD_ERRORS)) {
+            setArrayField(FieldDictionary.RECORD_ERRORS, errors);
+        }
+        return this;
+    }
+
+    @Override
+    public Record addError(String errorType) {
+        return addError(errorType, null);
+    }
+
+    @Override
+    public Record addError(String errorType, ComponentLog logger, String errorMessage) {
+        logger.error(errorMessage);
+        return addError(errorType, errorMessage);
+    }
+
+    @Override
+    public Record addError(String errorType, ComponentLog logger, String errorMessage, Object[] os) {
+        logger.error(errorMessage, os);
+        return addError(errorType, errorMessage);
+    }
+
+    @Override
+    public Collection<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.record;
+
+/**
+ * The {@link Record} implementations a stream can build its records with.
+ */
+public enum RecordImplementation {
+
+    /**
+     * {@link StandardRecord}, fields kept in a sorted map
+     */
+    STANDARD {
+        @Override
+        public Record newRecord(String type) {
+            return new StandardRecord(type);
+        }
+    },
+
+    /**
+     * {@link CompactRecord}, fields kept in flat arrays with unboxed primitives
+     */
+    COMPACT {
+        @Override
+        public Record newRecord(String type) {
+            return new CompactRecord(type);
+        }
+    };
+
+    public abstract Record newRecord(String type);
+
+    public Record newRecord() {
+        return newRecord(StandardRecord.DEFAULT_RECORD_TYPE);
+    }
+
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @param name an implementation name, case insensitive
+     * @return the matching implementation, STANDARD when name is null or empty
+     */
+    public static RecordImplementation fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return STANDARD;
+        }
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -20,7 +20,11 @@ public final class RecordUtils {
 
 
     public static Record getKeyValueRecord(String key, String value) {
-        final Record record = new StandardRecord("kv_record");
+        return getKeyValueRecord(key, value, RecordImplementation.STANDARD);
+    }
+
+    public static Record getKeyValueRecord(String key, String value, RecordImplementation recordImplementation) {
+        final Record record = recordImplementation.newRecord("kv_record");
         record.setStringField(FieldDictionary.RECORD_KEY, key);
         record.setStringField(FieldDictionary.RECORD_VALUE, value);
         return record;
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.service.cache;
+
+/**
+ * A cache service able to expire its entries by itself, so that callers do not need to store and
+ * check an insertion time along with the values they cache.
+ */
+public interface ExpiringCacheService<K, V> extends CacheService<K, V> {
+
+    /**
+     * Save an element into the cache for a limited time
+     * @param k
+     * @param v
+     * @param ttlMillis the time in milliseconds after which the element is not returned anymore,
+     *                  0 or less meaning it never expires
+     */
+    public void set(K k, V v, long ttlMillis);
+}
@@ -182,6 +182,22 @@ public interface DatastoreClientService extends ControllerService {
      */
     Record get(String collectionName, Record record) throws DatastoreClientServiceException;
 
+    /**
+     * Get the specified Records of the given collection, keeping their field types.
+     * The datastores able to fetch them in a single request override this one by one implementation.
+     *
+     * @param collectionName
+     * @param records the records to get, as given to {@link #get(String, Record)}
+     * @return the record found for each given one, at the same index, or null if there is none
+     */
+    default List<Record> multiGet(String collectionName, List<Record> records) throws DatastoreClientServiceException {
+        final List<Record> results = new ArrayList<>(records.size());
+        for (Record record : records) {
+            results.add(get(collectionName, record));
+        }
+        return results;
+    }
+
     /**
      * Results of a given search query.
      */
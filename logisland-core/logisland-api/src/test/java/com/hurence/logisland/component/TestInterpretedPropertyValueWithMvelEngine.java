@@ -430,4 +430,26 @@ public class TestInterpretedPropertyValueWithMvelEngine {
         PropertyValue pv = ipv.evaluate(Collections.emptyMap());
         Assert.assertFalse(pv.asBoolean());
     }
-}
\ No newline at end of file
+    @Test
+    public void validate_MVEL_evaluations_do_not_share_variables() {
+
+        InterpreterEngineFactory.setInterpreter("mvel");
+
+        InterpretedPropertyValue assignment = new InterpretedPropertyValue("${discount = price * 2; discount}", null, null);
+        InterpretedPropertyValue lookup = new InterpretedPropertyValue("${isdef discount ? discount : 'none'}", null, null);
+
+        final Record inputRecord1 = new StandardRecord("es_multiget")
+                .setIntField("price", 89);
+        final Record inputRecord2 = new StandardRecord("es_multiget")
+                .setIntField("price", 31);
+
+        Assert.assertEquals(178, assignment.evaluate(inputRecord1).asInteger().intValue());
+        Assert.assertFalse(inputRecord1.hasField("discount"));
+        Assert.assertEquals("none", lookup.evaluate(inputRecord2).asString());
+
+        inputRecord2.setIntField("discount", 5);
+        Assert.assertEquals("5", lookup.evaluate(inputRecord2).asString());
+        Assert.assertEquals("none", lookup.evaluate((Record) null).asString());
+    }
+
+}
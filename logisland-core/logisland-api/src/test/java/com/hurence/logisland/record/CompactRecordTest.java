@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.record;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CompactRecordTest {
+
+    private static Record fill(Record record) {
+        return record.setField("timestamp", FieldType.LONG, 1546300800000L)
+                .setField("method", FieldType.STRING, "GET")
+                .setField("ip_source", FieldType.STRING, "123.34.45.123")
+                .setStringField("url_host", "origin-www.20minutes.fr")
+                .setField("url_port", FieldType.STRING, "80")
+                .setField("request_size", FieldType.INT, 1399)
+                .setField("ratio", FieldType.DOUBLE, 0.25d)
+                .setField("weight", FieldType.FLOAT, 1.5f)
+                .setField("is_outside_office_hours", FieldType.BOOLEAN, false)
+                .setField("tags", FieldType.ARRAY, new ArrayList<>(Arrays.asList("spam", "filter", "mail")));
+    }
+
+    @Test
+    public void validateRecordApi() {
+        String id = "firewall_record1";
+        String type = "cisco";
+        Record record = new CompactRecord(type).setId(id);
+
+        assertTrue(record.isEmpty());
+        assertEquals(0, record.size());
+        assertEquals(id, record.getId());
+        assertEquals(id, record.getField(FieldDictionary.RECORD_ID).asString());
+        assertEquals(record.getTime().getTime(), record.getField(FieldDictionary.RECORD_TIME).asLong().longValue());
+        assertEquals(type, record.getType());
+        assertEquals(type, record.getField(FieldDictionary.RECORD_TYPE).getRawValue());
+
+        fill(record);
+        assertEquals(10, record.size());
+        assertFalse(record.hasField("unkown_field"));
+        assertNull(record.getField("unkown_field"));
+        assertEquals("GET", record.getField("method").asString());
+        assertEquals(1399, record.getField("request_size").getRawValue());
+        assertEquals(0.25d, record.getField("ratio").asDouble(), 0d);
+        assertEquals(1.5f, record.getField("weight").asFloat(), 0f);
+        assertEquals(Boolean.FALSE, record.getField("is_outside_office_hours").getRawValue());
+        assertEquals(1546300800000L, record.getField("timestamp").asLong().longValue());
+
+        record.removeField("url_port");
+        assertEquals(9, record.size());
+        assertFalse(record.hasField("url_port"));
+        assertEquals("origin-www.20minutes.fr", record.getField("url_host").asString());
+
+        record.setField("is_outside_office_hours", FieldType.BOOLEAN, !record.getField("is_outside_office_hours").asBoolean());
+        assertTrue(record.getField("is_outside_office_hours").asBoolean());
+
+        assertNotNull(record.removeField(FieldDictionary.RECORD_TIME));
+        assertTrue(record.hasField(FieldDictionary.RECORD_TIME));
+        assertTrue(record.isValid());
+    }
+
+    @Test
+    public void validateRecordValidity() {
+        Record record = new CompactRecord();
+        record.setField("request_size", FieldType.INT, 1399);
+        assertTrue(record.isValid());
+        record.setField("request_size", FieldType.INT, "zer");
+        assertFalse(record.isValid());
+        record.setField("request_size", FieldType.INT, 45L);
+        assertFalse(record.isValid());
+        record.setField("request_size", FieldType.LONG, 45L);
+        assertTrue(record.isValid());
+        record.setField("request_size", FieldType.DOUBLE, 45L);
+        assertFalse(record.isValid());
+        record.setField("request_size", FieldType.STRING, 45L);
+        assertFalse(record.isValid());
+        record.setField("request_size", FieldType.INT, 45);
+        assertTrue(45.0d - record.getField("request_size").asDouble() == 0);
+    }
+
+    @Test
+    public void testEqualsStandardRecord() {
+        Record standard = fill(new StandardRecord("web").setId("id1")).setTime(10L);
+        Record compact = fill(new CompactRecord("web").setId("id1")).setTime(10L);
+
+        assertEquals(standard, compact);
+        assertEquals(compact, standard);
+        assertEquals(standard.hashCode(), compact.hashCode());
+        assertEquals(standard.sizeInBytes(), compact.sizeInBytes());
+        assertEquals(new ArrayList<>(standard.getAllFieldsSorted()), new ArrayList<>(compact.getAllFieldsSorted()));
+
+        compact.setField("method", FieldType.STRING, "POST");
+        assertNotEquals(standard, compact);
+
+        Record copy = new CompactRecord(standard);
+        assertEquals(standard, copy);
+    }
+
+    @Test
+    public void testInsertionOrderAndViews() {
+        Record record = fill(new CompactRecord());
+        List<String> names = new ArrayList<>(record.getAllFieldNames());
+        assertEquals(Arrays.asList(FieldDictionary.RECORD_TYPE, FieldDictionary.RECORD_TIME, FieldDictionary.RECORD_ID,
+                "timestamp", "method", "ip_source", "url_host", "url_port", "request_size", "ratio", "weight",
+                "is_outside_office_hours", "tags"), names);
+
+        for (Map.Entry<String, Field> entry : record.getFieldsEntrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().getName());
+            assertSame(entry.getValue(), record.getField(entry.getKey()));
+        }
+
+        Iterator<Field> fields = record.getAllFields().iterator();
+        while (fields.hasNext()) {
+            if (fields.next().getType() == FieldType.STRING) {
+                fields.remove();
+            }
+        }
+        assertFalse(record.hasField("method"));
+        assertFalse(record.hasField(FieldDictionary.RECORD_ID));
+        assertTrue(record.hasField("request_size"));
+        assertEquals(7, record.getAllFields().size());
+
+        assertTrue(record.getAllFieldNames().remove("tags"));
+        assertFalse(record.getAllFieldNames().contains("tags"));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testFailFastIteration() {
+        Record record = fill(new CompactRecord());
+        for (String name : record.getAllFieldNames()) {
+            record.setStringField(name + "_copy", name);
+        }
+    }
+
+    @Test
+    public void testManyFields() {
+        CompactRecord record = new CompactRecord();
+        for (int i = 0; i < 1000; i++) {
+            record.setIntValue("field_" + i, i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            record.removeField("field_" + i);
+        }
+        assertEquals(500, record.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 1, record.hasField("field_" + i));
+        }
+        assertEquals(999, record.getField("field_999").asInteger().intValue());
+    }
+
+    @Test
+    public void testPrimitiveAccessors() {
+        CompactRecord record = new CompactRecord();
+        record.setIntValue("int", 12)
+                .setLongValue("long", 1L << 40)
+                .setDoubleValue("double", 3.5d)
+                .setFloatValue("float", 2.5f)
+                .setBooleanValue("boolean", true)
+                .setStringField("string", "42");
+
+        assertEquals(12, record.getIntValue("int", -1));
+        assertEquals(1L << 40, record.getLongValue("long", -1L));
+        assertEquals(3.5d, record.getDoubleValue("double", -1d), 0d);
+        assertTrue(record.getBooleanValue("boolean", false));
+        assertEquals(42, record.getIntValue("string", -1));
+        assertEquals(-1, record.getIntValue("missing", -1));
+
+        assertEquals(new Field("long", FieldType.LONG, 1L << 40), record.getField("long"));
+        assertEquals(new Field("float", FieldType.FLOAT, 2.5f), record.getField("float"));
+        assertEquals(Integer.valueOf(12), record.getRawValue("int"));
+        assertTrue(record.isValid());
+    }
+
+    @Test
+    public void testSetFieldKeepsInstance() throws FieldTypeException {
+        Record record = new CompactRecord();
+        Field field = new CheckedField("size", FieldType.INT, 12);
+        record.setField(field);
+        assertSame(field, record.getField("size"));
+
+        record.setIntField("size", 13);
+        assertEquals(new Field("size", FieldType.INT, 13), record.getField("size"));
+    }
+
+    @Test
+    public void testJavaSerialization() throws IOException, ClassNotFoundException {
+        Record record = fill(new CompactRecord("web"));
+        record.getField("method");
+        record.addError("parsing", "bad url");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(record);
+        }
+        Record copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Record) in.readObject();
+        }
+
+        assertEquals(record, copy);
+        assertEquals("GET", copy.getField("method").asString());
+        assertEquals(record.getErrors(), copy.getErrors());
+        copy.setStringField("method", "PUT");
+        assertEquals("PUT", copy.getField("method").asString());
+    }
+}
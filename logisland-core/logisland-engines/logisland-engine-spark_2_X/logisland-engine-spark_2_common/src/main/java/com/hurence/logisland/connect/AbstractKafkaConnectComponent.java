@@ -119,8 +119,12 @@ public abstract class AbstractKafkaConnectComponent<T extends Connector, U exten
     }
 
     public void start() {
+        if (!startWatch.compareAndSet(false, true)) {
+            throw new IllegalStateException("Connector is already started");
+        }
         try {
             offsetBackingStore.start();
+            connector.start(connectorProperties);
             //create and start tasks
             createAndStartAllTasks();
         } catch (Exception e) {
@@ -137,16 +141,13 @@ public abstract class AbstractKafkaConnectComponent<T extends Connector, U exten
 
     /**
      * Create all the {@link Runnable} workers needed to host the source tasks.
+     * Called once the connector is started, then again on each task reconfiguration.
      *
      * @return
      * @throws IllegalAccessException if task instantiation fails.
      * @throws InstantiationException if task instantiation fails.
      */
     protected void createAndStartAllTasks() throws IllegalAccessException, InstantiationException, ClassNotFoundException {
-        if (!startWatch.compareAndSet(false, true)) {
-            throw new IllegalStateException("Connector is already started");
-        }
-        connector.start(connectorProperties);
         Class<U> taskClass = (Class<U>) connector.taskClass();
         List<Map<String, String>> configs = connector.taskConfigs(maxTasks);
         tasks.clear();
@@ -44,19 +44,28 @@ import org.apache.spark.unsafe.types.UTF8String;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.Option;
-import scala.Tuple2;
 import scala.collection.JavaConversions;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * Kafka connect to spark sql streaming bridge.
+ * <p>
+ * Every source task is polled by its own long-lived thread which converts the records to rows and appends them to
+ * a buffer bounded in bytes: once the buffer (including the records handed to spark but not committed yet) exceeds
+ * {@code maxBufferBytes}, the pollers wait for a commit before calling {@link SourceTask#poll()} again.
+ * Each record gets its own offset, so that a micro-batch never holds more than {@code maxBatchRows} records, and
+ * the rows of a batch are sliced in contiguous chunks over {@code partitions} RDD partitions.
+ * <p>
+ * When the connector reconfigures its tasks, the records already handed to spark are still committed through the
+ * offset writers of the tasks which polled them, flushed before the ones of the new tasks.
  *
  * @author amarziali
  */
@@ -93,15 +102,32 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
     });
     private final static Logger LOGGER = LoggerFactory.getLogger(KafkaConnectStreamSource.class);
 
+    /**
+     * Rough overhead of a buffered record on top of its key and value bytes.
+     */
+    private final static long RECORD_OVERHEAD_BYTES = 128;
+    private final static long POLL_ERROR_BACKOFF_MS = 1000;
+
     private final AtomicLong counter = new AtomicLong();
     private final AtomicInteger taskCounter = new AtomicInteger();
 
     private final Map<SourceTask, OffsetStorageWriter> offsetWriterMap = new IdentityHashMap<>();
-    private final SortedMap<Long, List<Tuple2<SourceTask, SourceRecord>>> bufferedRecords =
-            Collections.synchronizedSortedMap(new TreeMap<>());
-    private final SortedMap<Long, List<Tuple2<SourceTask, SourceRecord>>> uncommittedRecords =
-            Collections.synchronizedSortedMap(new TreeMap<>());
-    private final Map<SourceTask, Thread> busyTasks = Collections.synchronizedMap(new IdentityHashMap<>());
+    /**
+     * The offset writers of reconfigured tasks, kept until the records they polled are committed.
+     */
+    private final Map<SourceTask, OffsetStorageWriter> retiredOffsetWriters = new IdentityHashMap<>();
+    private final List<Thread> pollers = new ArrayList<>();
+    private volatile boolean polling;
+
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final Condition notFull = bufferLock.newCondition();
+    private final TreeMap<Long, BufferedRecord> bufferedRecords = new TreeMap<>();
+    private final TreeMap<Long, BufferedRecord> uncommittedRecords = new TreeMap<>();
+    private long bufferedBytes;
+
+    private final long maxBufferBytes;
+    private final int maxBatchRows;
+    private final int partitions;
 
     private final SparkPlatform sparkPlatform = StreamSupport.stream(
             Spliterators.spliteratorUnknownSize(ServiceLoader.load(SparkPlatform.class).iterator(), Spliterator.ORDERED),
@@ -120,6 +146,9 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
      * @param maxTasks            the maximum theoretical number of tasks this source should spawn.
      * @param connectorClass      the class of kafka connect source connector to wrap.
      * @param streamId            the id of the underlying stream
+     * @param maxBufferBytes      the size of the buffered and uncommitted records above which tasks are not polled.
+     * @param maxBatchRows        the maximum number of records of a micro-batch.
+     * @param partitions          the number of partitions of each micro-batch.
      */
     public KafkaConnectStreamSource(SQLContext sqlContext,
                                     Map<String, String> connectorProperties,
@@ -128,9 +157,14 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
                                     OffsetBackingStore offsetBackingStore,
                                     int maxTasks,
                                     String connectorClass,
-                                    String streamId) {
+                                    String streamId,
+                                    long maxBufferBytes,
+                                    int maxBatchRows,
+                                    int partitions) {
         super(sqlContext, connectorProperties, keyConverter, valueConverter, offsetBackingStore, maxTasks, connectorClass, streamId);
-
+        this.maxBufferBytes = maxBufferBytes;
+        this.maxBatchRows = maxBatchRows;
+        this.partitions = Math.max(1, partitions);
     }
 
 
@@ -140,8 +174,14 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
         ConnectorTaskId connectorTaskId = new ConnectorTaskId(StringUtils.join(new String[]{streamId, connectorName}, '#'), taskId);
         task.initialize(new WorkerSourceTaskContext(new OffsetStorageReaderImpl(offsetBackingStore, connectorTaskId.toString(),
                 createInternalConverter(true), createInternalConverter(false))));
-        offsetWriterMap.put(task, new OffsetStorageWriter(offsetBackingStore, connectorTaskId.toString(),
-                createInternalConverter(true), createInternalConverter(false)));
+        OffsetStorageWriter offsetWriter = new OffsetStorageWriter(offsetBackingStore, connectorTaskId.toString(),
+                createInternalConverter(true), createInternalConverter(false));
+        bufferLock.lock();
+        try {
+            offsetWriterMap.put(task, offsetWriter);
+        } finally {
+            bufferLock.unlock();
+        }
 
     }
 
@@ -153,78 +193,158 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
 
     @Override
     protected void createAndStartAllTasks() throws IllegalAccessException, InstantiationException, ClassNotFoundException {
-        counter.set(0);
         taskCounter.set(0);
-        busyTasks.clear();
-        bufferedRecords.clear();
-        offsetWriterMap.clear();
+        bufferLock.lock();
+        try {
+            bufferedRecords.clear();
+            bufferedBytes = uncommittedRecords.values().stream().mapToLong(BufferedRecord::getWeight).sum();
+            // records handed to spark are committed after their task is gone
+            uncommittedRecords.values().forEach(bufferedRecord -> {
+                OffsetStorageWriter offsetWriter = offsetWriterMap.get(bufferedRecord.getTask());
+                if (offsetWriter != null) {
+                    retiredOffsetWriters.put(bufferedRecord.getTask(), offsetWriter);
+                }
+            });
+            offsetWriterMap.clear();
+        } finally {
+            bufferLock.unlock();
+        }
         super.createAndStartAllTasks();
+        polling = true;
+        for (SourceTask task : tasks) {
+            Thread poller = new Thread(() -> poll(task), "kafka-connect-poller-" + streamId + "-" + pollers.size());
+            poller.setDaemon(true);
+            pollers.add(poller);
+            poller.start();
+        }
     }
 
     @Override
-    public synchronized Option<Offset> getOffset() {
-        if (!uncommittedRecords.isEmpty()) {
-            return Option.apply(SerializedOffset.apply(Long.toString(counter.incrementAndGet())));
+    protected void stopAllTasks() {
+        polling = false;
+        pollers.forEach(Thread::interrupt);
+        for (Thread poller : pollers) {
+            try {
+                poller.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
-        if (bufferedRecords.isEmpty()) {
-            tasks.forEach(t -> busyTasks.computeIfAbsent(t, sourceTask -> {
-                Thread thread = new Thread(() -> {
-                    try {
-                        List<Tuple2<SourceTask, SourceRecord>> tmp = sourceTask.poll().stream()
-                                .map(sourceRecord -> Tuple2.apply(sourceTask, sourceRecord))
-                                .collect(Collectors.toList());
-                        if (!tmp.isEmpty()) {
-                            bufferedRecords.put(counter.incrementAndGet(), tmp);
-                        }
-                    } catch (InterruptedException ie) {
-                        LOGGER.warn("Task {} interrupted while waiting.", sourceTask.getClass().getCanonicalName());
-                    } finally {
-                        busyTasks.remove(t);
+        pollers.clear();
+        super.stopAllTasks();
+    }
+
+    /**
+     * The loop of a poller thread: waits for room in the buffer, polls the task and buffers its records.
+     *
+     * @param sourceTask the task to poll.
+     */
+    private void poll(SourceTask sourceTask) {
+        while (polling) {
+            try {
+                bufferLock.lockInterruptibly();
+                try {
+                    while (polling && bufferedBytes >= maxBufferBytes) {
+                        notFull.await();
+                    }
+                } finally {
+                    bufferLock.unlock();
+                }
+                if (!polling) {
+                    break;
+                }
+                List<SourceRecord> records = sourceTask.poll();
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                List<BufferedRecord> converted = records.stream()
+                        .map(sourceRecord -> new BufferedRecord(sourceTask, sourceRecord, toRow(sourceRecord)))
+                        .collect(Collectors.toList());
+                bufferLock.lock();
+                try {
+                    for (BufferedRecord bufferedRecord : converted) {
+                        bufferedRecords.put(counter.incrementAndGet(), bufferedRecord);
+                        bufferedBytes += bufferedRecord.getWeight();
                     }
-                });
-                thread.start();
-                return thread;
-            }));
-        } else {
-            return Option.apply(SerializedOffset.apply(bufferedRecords.lastKey().toString()));
+                } finally {
+                    bufferLock.unlock();
+                }
+            } catch (InterruptedException ie) {
+                if (polling) {
+                    LOGGER.warn("Task {} interrupted while waiting.", sourceTask.getClass().getCanonicalName());
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                LOGGER.error("Unable to poll task " + sourceTask.getClass().getCanonicalName() + " of connector " + connectorName, e);
+                try {
+                    Thread.sleep(POLL_ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private InternalRow toRow(SourceRecord sourceRecord) {
+        byte[] key;
+        byte[] value;
+        // converters are shared by every poller and not required to be thread safe
+        synchronized (keyConverter) {
+            key = keyConverter.fromConnectData(sourceRecord.topic(), sourceRecord.keySchema(), sourceRecord.key());
+        }
+        synchronized (valueConverter) {
+            value = valueConverter.fromConnectData(sourceRecord.topic(), sourceRecord.valueSchema(), sourceRecord.value());
+        }
+        return InternalRow.fromSeq(JavaConversions.<Object>asScalaBuffer(Arrays.asList(
+                toUTFString(sourceRecord.topic()),
+                toUTFString(sourceRecord.sourcePartition()),
+                toUTFString(sourceRecord.sourceOffset()),
+                key,
+                value
+        )).toSeq());
+    }
 
+    @Override
+    public Option<Offset> getOffset() {
+        bufferLock.lock();
+        try {
+            if (bufferedRecords.isEmpty()) {
+                if (!uncommittedRecords.isEmpty()) {
+                    // spark only commits the previous batch when there is a new one
+                    return Option.apply(SerializedOffset.apply(Long.toString(counter.incrementAndGet())));
+                }
+                return Option.empty();
+            }
+            long end = Math.min(bufferedRecords.lastKey(), bufferedRecords.firstKey() + maxBatchRows - 1);
+            return Option.apply(SerializedOffset.apply(Long.toString(end)));
+        } finally {
+            bufferLock.unlock();
         }
-        return Option.empty();
     }
 
 
     @Override
     public Dataset<Row> getBatch(Option<Offset> start, Offset end) {
-        /*Long startOff = start.isDefined() ? Long.parseLong(start.get().json()) :
-                !bufferedRecords.isEmpty() ? bufferedRecords.firstKey() : 0L;*/
-
-
-        Long startOff = bufferedRecords.isEmpty() ? 0L :
-                start.isDefined() ? Long.parseLong(start.get().json()) : bufferedRecords.firstKey();
-
-        Long endOff = bufferedRecords.isEmpty() ? 0L : Long.parseLong(end.json()) + 1;
-
-
-        Map<Integer, List<InternalRow>> current =
-                new LinkedHashMap<>(bufferedRecords.subMap(startOff > endOff ? endOff : startOff, endOff))
-                        .keySet().stream()
-                        .flatMap(offset -> {
-                            List<Tuple2<SourceTask, SourceRecord>> srl = bufferedRecords.remove(offset);
-                            if (srl != null) {
-                                uncommittedRecords.put(offset, srl);
-                                return srl.stream();
-                            }
-                            return Stream.empty();
-                        })
-                        .map(Tuple2::_2)
-                        .map(sourceRecord -> InternalRow.fromSeq(JavaConversions.<Object>asScalaBuffer(Arrays.asList(
-                                toUTFString(sourceRecord.topic()),
-                                toUTFString(sourceRecord.sourcePartition()),
-                                toUTFString(sourceRecord.sourceOffset()),
-                                keyConverter.fromConnectData(sourceRecord.topic(), sourceRecord.keySchema(), sourceRecord.key()),
-                                valueConverter.fromConnectData(sourceRecord.topic(), sourceRecord.valueSchema(), sourceRecord.value())
-                        )).toSeq()))
-                        .collect(Collectors.groupingBy(row -> Objects.hashCode((row.getString(1)))));
+        long endOff = Long.parseLong(end.json());
+        List<InternalRow> rows = new ArrayList<>();
+        bufferLock.lock();
+        try {
+            Map<Long, BufferedRecord> batch = bufferedRecords.headMap(endOff, true);
+            batch.values().forEach(bufferedRecord -> rows.add(bufferedRecord.getRow()));
+            uncommittedRecords.putAll(batch);
+            batch.clear();
+        } finally {
+            bufferLock.unlock();
+        }
+
+        int partitionCount = Math.max(1, Math.min(partitions, rows.size()));
+        Map<Integer, List<InternalRow>> current = new LinkedHashMap<>();
+        for (int i = 0; i < partitionCount; i++) {
+            current.put(i, new ArrayList<>(rows.subList(i * rows.size() / partitionCount, (i + 1) * rows.size() / partitionCount)));
+        }
         return sparkPlatform.createStreamingDataFrame(sqlContext, new SimpleRDD(sqlContext.sparkContext(), current), DATA_SCHEMA);
 
 
@@ -239,24 +359,44 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
 
     @Override
     public void commit(Offset end) {
-        if (uncommittedRecords.isEmpty()) {
-            return;
-        }
         //first commit all offsets already given
-        List<Tuple2<SourceTask, SourceRecord>> recordsToCommit =
-                new LinkedHashMap<>(uncommittedRecords.subMap(uncommittedRecords.firstKey(), Long.parseLong(end.json()) + 1)).keySet().stream()
-                        .flatMap(key -> uncommittedRecords.remove(key).stream())
-                        .collect(Collectors.toList());
+        List<BufferedRecord> recordsToCommit;
+        // retired writers first, so that they never overwrite the newer offsets of the current ones
+        Map<SourceTask, OffsetStorageWriter> offsetWriters = new IdentityHashMap<>();
+        List<OffsetStorageWriter> flushOrder = new ArrayList<>();
+        bufferLock.lock();
+        try {
+            if (uncommittedRecords.isEmpty()) {
+                return;
+            }
+            Map<Long, BufferedRecord> committed = uncommittedRecords.headMap(Long.parseLong(end.json()), true);
+            recordsToCommit = new ArrayList<>(committed.values());
+            committed.clear();
+            bufferedBytes -= recordsToCommit.stream().mapToLong(BufferedRecord::getWeight).sum();
+            notFull.signalAll();
+            offsetWriters.putAll(retiredOffsetWriters);
+            flushOrder.addAll(retiredOffsetWriters.values());
+            offsetWriters.putAll(offsetWriterMap);
+            flushOrder.addAll(offsetWriterMap.values());
+            if (!retiredOffsetWriters.isEmpty()) {
+                Set<SourceTask> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+                uncommittedRecords.values().forEach(bufferedRecord -> pending.add(bufferedRecord.getTask()));
+                retiredOffsetWriters.keySet().retainAll(pending);
+            }
+        } finally {
+            bufferLock.unlock();
+        }
 
-        recordsToCommit.forEach(tuple -> {
+        recordsToCommit.forEach(bufferedRecord -> {
             try {
-                offsetWriterMap.get(tuple._1()).offset(tuple._2().sourcePartition(), tuple._2().sourceOffset());
-                tuple._1().commitRecord(tuple._2());
+                offsetWriters.get(bufferedRecord.getTask()).offset(bufferedRecord.getRecord().sourcePartition(),
+                        bufferedRecord.getRecord().sourceOffset());
+                bufferedRecord.getTask().commitRecord(bufferedRecord.getRecord());
             } catch (Exception e) {
-                LOGGER.warn("Unable to commit record " + tuple._2(), e);
+                LOGGER.warn("Unable to commit record " + bufferedRecord.getRecord(), e);
             }
         });
-        recordsToCommit.stream().map(Tuple2::_1).distinct().forEach(sourceTask -> {
+        recordsToCommit.stream().map(BufferedRecord::getTask).distinct().forEach(sourceTask -> {
             try {
                 sourceTask.commit();
             } catch (Exception e) {
@@ -264,7 +404,7 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
             }
         });
         //now flush offset writer
-        offsetWriterMap.values().forEach(offsetStorageWriter -> {
+        flushOrder.forEach(offsetStorageWriter -> {
             try {
                 if (offsetStorageWriter.beginFlush()) {
                     offsetStorageWriter.doFlush((error, result) -> {
@@ -288,6 +428,40 @@ public class KafkaConnectStreamSource extends AbstractKafkaConnectComponent<Sour
         super.stop();
     }
 
-}
+    /**
+     * A polled record along with its converted row and its approximate footprint.
+     */
+    private static final class BufferedRecord {
+        private final SourceTask task;
+        private final SourceRecord record;
+        private final InternalRow row;
+        private final long weight;
+
+        BufferedRecord(SourceTask task, SourceRecord record, InternalRow row) {
+            this.task = task;
+            this.record = record;
+            this.row = row;
+            byte[] key = (byte[]) row.get(3, DataTypes.BinaryType);
+            byte[] value = (byte[]) row.get(4, DataTypes.BinaryType);
+            this.weight = RECORD_OVERHEAD_BYTES + (key == null ? 0 : key.length) + (value == null ? 0 : value.length)
+                    + row.getUTF8String(1).numBytes() + row.getUTF8String(2).numBytes();
+        }
 
+        SourceTask getTask() {
+            return task;
+        }
 
+        SourceRecord getRecord() {
+            return record;
+        }
+
+        InternalRow getRow() {
+            return row;
+        }
+
+        long getWeight() {
+            return weight;
+        }
+    }
+
+}
@@ -56,7 +56,13 @@ public class KafkaConnectStreamSourceProvider implements StreamSourceProvider {
                     offsetBackingStore,
                     Integer.parseInt(parameters.get(StreamOptions.KAFKA_CONNECT_MAX_TASKS().getName()).get()),
                     parameters.get(StreamOptions.KAFKA_CONNECT_CONNECTOR_CLASS().getName()).get(),
-                    parameters.get("path").get());
+                    parameters.get("path").get(),
+                    Long.parseLong(getOrDefault(parameters, StreamOptions.KAFKA_CONNECT_SOURCE_BUFFER_MAX_BYTES().getName(),
+                            StreamOptions.KAFKA_CONNECT_SOURCE_BUFFER_MAX_BYTES().getDefaultValue())),
+                    Integer.parseInt(getOrDefault(parameters, StreamOptions.KAFKA_CONNECT_SOURCE_BATCH_MAX_ROWS().getName(),
+                            StreamOptions.KAFKA_CONNECT_SOURCE_BATCH_MAX_ROWS().getDefaultValue())),
+                    Integer.parseInt(getOrDefault(parameters, StreamOptions.KAFKA_CONNECT_MAX_PARTITIONS().getName(),
+                            Integer.toString(sqlContext.sparkContext().defaultParallelism()))));
             ret.start();
             return ret;
         } catch (Exception e) {
@@ -66,6 +72,11 @@ public class KafkaConnectStreamSourceProvider implements StreamSourceProvider {
 
     }
 
+    private static String getOrDefault(Map<String, String> parameters, String name, String defaultValue) {
+        Option<String> value = parameters.get(name);
+        return value.isDefined() ? value.get() : defaultValue;
+    }
+
     @Override
     public Tuple2<String, StructType> sourceSchema(SQLContext sqlContext, Option<StructType> schema, String providerName, Map<String, String> parameters) {
         return Tuple2.<String, StructType>apply(providerName, KafkaConnectStreamSource.DATA_SCHEMA);
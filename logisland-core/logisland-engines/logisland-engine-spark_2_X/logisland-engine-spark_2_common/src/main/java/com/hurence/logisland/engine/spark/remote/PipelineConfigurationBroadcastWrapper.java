@@ -31,13 +31,26 @@ import java.util.stream.Collectors;
 /**
  * A {@link Broadcast} wrapper for a Stream pipeline configuration.
  * This class allow to magically synchronize data modified from the spark driver to every executor.
+ * <p>
+ * Each refresh broadcasts a new version of the pipelines, swapped in at once : a stream reads them at the start of
+ * a micro batch and runs the whole batch with the version it got.
  *
  * @author amarziali
  */
 public class PipelineConfigurationBroadcastWrapper {
     private static final Logger logger = LoggerFactory.getLogger(PipelineConfigurationBroadcastWrapper.class);
 
-    private Broadcast<Map<String, Collection<ProcessContext>>> broadcastedPipelineMap;
+    private static class VersionedPipelines {
+        private final long version;
+        private final Broadcast<Map<String, Collection<ProcessContext>>> broadcastedPipelineMap;
+
+        private VersionedPipelines(long version, Broadcast<Map<String, Collection<ProcessContext>>> broadcastedPipelineMap) {
+            this.version = version;
+            this.broadcastedPipelineMap = broadcastedPipelineMap;
+        }
+    }
+
+    private volatile VersionedPipelines pipelines;
 
     private static PipelineConfigurationBroadcastWrapper obj = new PipelineConfigurationBroadcastWrapper();
 
@@ -56,25 +69,38 @@ public class PipelineConfigurationBroadcastWrapper {
     public void refresh(Map<String, Collection<ProcessContext>> pipelineMap, SparkContext sparkContext) {
         logger.info("Refreshing dataflow pipelines!");
 
-        if (broadcastedPipelineMap != null) {
-            broadcastedPipelineMap.unpersist();
-        }
-        broadcastedPipelineMap = getSparkContext(sparkContext).broadcast(pipelineMap);
+        swap(getSparkContext(sparkContext).broadcast(pipelineMap));
     }
 
     public void refresh(EngineContext engineContext, SparkContext sparkContext) {
         logger.info("Refreshing dataflow pipelines!");
 
-        if (broadcastedPipelineMap != null) {
-            broadcastedPipelineMap.unpersist();
-        }
-        broadcastedPipelineMap = getSparkContext(sparkContext).broadcast(engineContext.getStreamContexts().stream()
-                .collect(Collectors.toMap(StreamContext::getIdentifier, s -> s.getProcessContexts().stream().collect(Collectors.toList()))));
+        swap(getSparkContext(sparkContext).broadcast(engineContext.getStreamContexts().stream()
+                .collect(Collectors.toMap(StreamContext::getIdentifier, s -> s.getProcessContexts().stream().collect(Collectors.toList())))));
+    }
 
+    /**
+     * Replaces the broadcast pipelines, the previous ones are released once nobody reads them anymore.
+     */
+    private synchronized void swap(Broadcast<Map<String, Collection<ProcessContext>>> broadcastedPipelineMap) {
+        final VersionedPipelines previous = pipelines;
+        pipelines = new VersionedPipelines(previous == null ? 1 : previous.version + 1, broadcastedPipelineMap);
+        logger.info("pipelines version {} broadcast", pipelines.version);
+        if (previous != null) {
+            // the batches running on the previous version fetch it from the driver if needed
+            previous.broadcastedPipelineMap.unpersist(false);
+        }
     }
 
+    /**
+     * @return the version of the current pipelines, 0 before the first refresh
+     */
+    public long getVersion() {
+        final VersionedPipelines current = pipelines;
+        return current == null ? 0 : current.version;
+    }
 
     public Collection<ProcessContext> get(String streamName) {
-        return broadcastedPipelineMap.getValue().get(streamName);
+        return pipelines.broadcastedPipelineMap.getValue().get(streamName);
     }
-}
\ No newline at end of file
+}
@@ -35,8 +35,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -146,32 +149,44 @@ public class RemoteApiComponentFactory {
 
     /**
      * Updates the state of the engine if needed.
+     * <p>
+     * The engine is restarted only when a service or a stream changes. A change limited to pipelines is applied
+     * to the running streams, re-instantiating the changed processors only : the others keep their context, and
+     * the services their connections and caches. A dataflow which cannot be instantiated leaves the engine as is.
      *
      * @param sparkContext  the spark context
      * @param engineContext the engineContext
      * @param dataflow      the new dataflow (new state)
      * @param oldDataflow   latest dataflow dataflow.
+     * @return true if the engine now runs the new dataflow
      */
     public boolean updateEngineContext(SparkContext sparkContext, EngineContext engineContext, DataFlow dataflow, DataFlow oldDataflow) {
         boolean changed = false;
-        if (oldDataflow == null || oldDataflow.getLastModified().isBefore(dataflow.getLastModified())) {
+        if (oldDataflow == null ||
+                (oldDataflow.getLastModified().isBefore(dataflow.getLastModified()) && requiresRestart(oldDataflow, dataflow))) {
             logger.info("We have a new configuration. Resetting current engine");
             logger.info("Configuring dataflow. Last change at {} is {}", dataflow.getLastModified(), dataflow.getModificationReason());
 
+            final List<ControllerServiceConfiguration> css;
+            final List<StreamContext> sc;
+            try {
+                css = dataflow.getServices().stream()
+                        .map(this::getControllerServiceConfiguration)
+                        .collect(Collectors.toList());
 
-            List<ControllerServiceConfiguration> css = dataflow.getServices().stream()
-                    .map(this::getControllerServiceConfiguration)
-                    .collect(Collectors.toList());
+                sc = dataflow.getStreams().stream()
+                        .map(this::getStreamContext)
+                        .collect(Collectors.toList());
 
-            List<StreamContext> sc = dataflow.getStreams().stream()
-                    .map(this::getStreamContext)
-                    .collect(Collectors.toList());
-
-            sc.forEach(streamContext -> {
-                if (!streamContext.isValid()) {
-                    throw new IllegalArgumentException("Unable to validate steam " + streamContext.getIdentifier());
-                }
-            });
+                sc.forEach(streamContext -> {
+                    if (!streamContext.isValid()) {
+                        throw new IllegalArgumentException("Unable to validate steam " + streamContext.getIdentifier());
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.error("Unable to instantiate the dataflow, keeping the running one", e);
+                return false;
+            }
 
             logger.info("Restarting engine");
             engineContext.getEngine().reset(engineContext);
@@ -191,20 +206,28 @@ public class RemoteApiComponentFactory {
 
             Map<String, Stream> streamMap = dataflow.getStreams().stream().collect(Collectors.toMap(Stream::getName, Function.identity()));
 
+            boolean pipelinesChanged = false;
             List<Stream> mergedStreamList = new ArrayList<>();
             for (Stream oldStream : oldDataflow.getStreams()) {
                 Stream newStream = streamMap.get(oldStream.getName());
-                if (newStream != null && oldStream.getPipeline().getLastModified().isBefore(newStream.getPipeline().getLastModified())) {
-                    changed = true;
+                if (newStream != null && !sameProcessors(oldStream.getPipeline(), newStream.getPipeline())) {
+                    pipelinesChanged = true;
                     logger.info("Detected change for pipeline {}", newStream.getName());
                     mergedStreamList.add(newStream);
                 } else {
                     mergedStreamList.add(oldStream);
                 }
             }
-            if (changed) {
-                updatePipelines(sparkContext, engineContext, mergedStreamList);
+            if (pipelinesChanged) {
+                try {
+                    updatePipelines(sparkContext, engineContext, mergedStreamList, oldDataflow.getStreams());
+                } catch (RuntimeException e) {
+                    logger.error("Unable to instantiate the pipelines, keeping the running ones", e);
+                    return false;
+                }
             }
+            // a newer dataflow without any effective change is taken as is
+            changed = pipelinesChanged || oldDataflow.getLastModified().isBefore(dataflow.getLastModified());
 
         }
         return changed;
@@ -219,10 +242,29 @@ public class RemoteApiComponentFactory {
      * @param streams       the list of streams
      */
     public void updatePipelines(SparkContext sparkContext, EngineContext engineContext, Collection<Stream> streams) {
+        updatePipelines(sparkContext, engineContext, streams, Collections.emptyList());
+    }
+
+    /**
+     * Update pipelines, keeping the running processors which are unchanged.
+     * The new pipelines are broadcast as a whole, the streams switch to them at their next micro batch.
+     *
+     * @param sparkContext  the spark context
+     * @param engineContext the engine context.
+     * @param streams       the list of streams
+     * @param oldStreams    the list of the running streams
+     */
+    public void updatePipelines(SparkContext sparkContext, EngineContext engineContext, Collection<Stream> streams,
+                                Collection<Stream> oldStreams) {
+        final Map<String, Stream> oldStreamMap = oldStreams.stream()
+                .collect(Collectors.toMap(Stream::getName, Function.identity()));
+        final Map<String, StreamContext> streamContextMap = engineContext.getStreamContexts().stream()
+                .collect(Collectors.toMap(StreamContext::getIdentifier, Function.identity()));
+
+        // everything is instantiated before the running pipelines are touched
         Map<String, Collection<ProcessContext>> pipelineMap = streams.stream()
                 .collect(Collectors.toMap(Stream::getName,
-                        s -> s.getPipeline().getProcessors().stream().map(this::getProcessContext)
-                                .collect(Collectors.toList())));
+                        s -> getProcessContexts(s, oldStreamMap.get(s.getName()), streamContextMap.get(s.getName()))));
         engineContext.getStreamContexts().forEach(streamContext -> {
             streamContext.getProcessContexts().clear();
             streamContext.getProcessContexts().addAll(pipelineMap.get(streamContext.getIdentifier()));
@@ -231,6 +273,71 @@ public class RemoteApiComponentFactory {
         PipelineConfigurationBroadcastWrapper.getInstance().refresh(pipelineMap, sparkContext);
     }
 
+    /**
+     * The process contexts of a pipeline, the running ones when their processor has not changed.
+     */
+    private List<ProcessContext> getProcessContexts(Stream stream, Stream oldStream, StreamContext runningStream) {
+        final Map<String, Processor> oldProcessors = oldStream == null ? Collections.emptyMap() :
+                oldStream.getPipeline().getProcessors().stream()
+                        .collect(Collectors.toMap(Processor::getName, Function.identity(), (first, second) -> first));
+        final Map<String, ProcessContext> runningContexts = runningStream == null ? Collections.emptyMap() :
+                runningStream.getProcessContexts().stream()
+                        .collect(Collectors.toMap(ProcessContext::getIdentifier, Function.identity(), (first, second) -> first));
+
+        return stream.getPipeline().getProcessors().stream()
+                .map(processor -> {
+                    final ProcessContext running = runningContexts.get(processor.getName());
+                    if (running != null && sameDefinition(oldProcessors.get(processor.getName()), processor)) {
+                        logger.debug("keeping processor {}", processor.getName());
+                        return running;
+                    }
+                    return getProcessContext(processor);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return true if a service or a stream, apart from its pipeline, differs between the dataflows.
+     */
+    private boolean requiresRestart(DataFlow oldDataflow, DataFlow dataflow) {
+        return !sameDefinitions(oldDataflow.getServices(), dataflow.getServices()) ||
+                !sameDefinitions(oldDataflow.getStreams(), dataflow.getStreams());
+    }
+
+    private boolean sameProcessors(Pipeline oldPipeline, Pipeline pipeline) {
+        return sameDefinitions(oldPipeline.getProcessors(), pipeline.getProcessors());
+    }
+
+    private boolean sameDefinitions(List<? extends Component> oldComponents, List<? extends Component> components) {
+        if (oldComponents.size() != components.size()) {
+            return false;
+        }
+        for (int i = 0; i < components.size(); i++) {
+            if (!sameDefinition(oldComponents.get(i), components.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the name, class and configuration of two components, whatever the order of their properties.
+     */
+    private boolean sameDefinition(Component oldComponent, Component component) {
+        return oldComponent != null &&
+                Objects.equals(oldComponent.getName(), component.getName()) &&
+                Objects.equals(oldComponent.getComponent(), component.getComponent()) &&
+                Objects.equals(configMap(oldComponent), configMap(component));
+    }
+
+    private Map<String, String> configMap(Component component) {
+        final Map<String, String> config = new HashMap<>();
+        if (component.getConfig() != null) {
+            component.getConfig().forEach(property -> config.put(property.getKey(), property.getValue()));
+        }
+        return config;
+    }
+
     private Map<String, String> configureComponent(ConfigurableComponent component, Collection<Property> properties) {
         final Map<String, Property> propertyMap = properties.stream().collect(Collectors.toMap(Property::getKey, Function.identity()));
         return propertyMap.keySet().stream().map(component::getPropertyDescriptor)
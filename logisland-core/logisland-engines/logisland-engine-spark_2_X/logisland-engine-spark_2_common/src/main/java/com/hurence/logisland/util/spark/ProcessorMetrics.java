@@ -17,42 +17,61 @@ package com.hurence.logisland.util.spark;
 
 
 import com.hurence.logisland.metrics.Names;
-import com.hurence.logisland.record.FieldDictionary;
+import com.hurence.logisland.metrics.ProcessorMetricsAccumulator;
 import com.hurence.logisland.record.Record;
 import org.apache.spark.groupon.metrics.UserMetricsSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Created by tom on 09/09/16.
+ * <p>
+ * Tasks only add their batch to a lock-free {@link ProcessorMetricsAccumulator} per metric prefix; a single
+ * daemon thread publishes what was accumulated to the {@link UserMetricsSystem} gauges every 5 seconds, so the
+ * gauges describe that window rather than the last batch. The interval and the record size sampling rate can be
+ * changed with the {@code logisland.metrics.report.interval.ms} and {@code logisland.metrics.size.sampling.interval}
+ * system properties.
  */
 public class ProcessorMetrics {
     private static Logger logger = LoggerFactory.getLogger(ProcessorMetrics.class.getName());
 
-    public synchronized static void resetMetrics(final String metricPrefix) {
-        UserMetricsSystem.gauge(metricPrefix + Names.INCOMING_MESSAGES).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.INCOMING_RECORDS).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.OUTGOING_RECORDS).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.ERRORS).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_FIELD_AVERAGE).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_RECORD_AVERAGE).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.RECORDS_PER_SECOND_AVERAGE).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.PROCESSED_BYTES).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.PROCESSED_FIELDS).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.ERROR_PERCENTAGE).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.FIELDS_PER_RECORD_AVERAGE).set(0);
-        UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_SECOND_AVERAGE).set(0);
-        //UserMetricsSystem.gauge(metricPrefix + "processing_time_ms").set(0);
+    public static final String REPORT_INTERVAL_PROPERTY = "logisland.metrics.report.interval.ms";
+    public static final String SIZE_SAMPLING_PROPERTY = "logisland.metrics.size.sampling.interval";
+
+    private static final long REPORT_INTERVAL_MS = Long.getLong(REPORT_INTERVAL_PROPERTY, 5000L);
+    private static final int SIZE_SAMPLING_INTERVAL =
+            Integer.getInteger(SIZE_SAMPLING_PROPERTY, ProcessorMetricsAccumulator.DEFAULT_SIZE_SAMPLING_INTERVAL);
+
+    private static final String[] GAUGES = {
+            Names.INCOMING_MESSAGES, Names.INCOMING_RECORDS, Names.OUTGOING_RECORDS, Names.ERRORS,
+            Names.BYTES_PER_FIELD_AVERAGE, Names.BYTES_PER_RECORD_AVERAGE, Names.RECORDS_PER_SECOND_AVERAGE,
+            Names.PROCESSED_BYTES, Names.PROCESSED_FIELDS, Names.ERROR_PERCENTAGE, Names.FIELDS_PER_RECORD_AVERAGE,
+            Names.BYTES_PER_SECOND_AVERAGE, Names.PROCESSING_TIME_MEAN_MS, Names.PROCESSING_TIME_P50_MS,
+            Names.PROCESSING_TIME_P99_MS, Names.PROCESSING_TIME_MAX_MS
+    };
+
+    private static final Map<String, ProcessorMetricsAccumulator> accumulators = new ConcurrentHashMap<>();
+
+    private static volatile ScheduledExecutorService reporter;
+
+    public static void resetMetrics(final String metricPrefix) {
+        accumulators.remove(metricPrefix);
+        for (String gauge : GAUGES) {
+            UserMetricsSystem.gauge(metricPrefix + gauge).set(0);
+        }
     }
 
 
     /**
-     * publish
+     * accumulate the metrics of a processed batch, they are published by the reporter thread
      *
      * @param metricPrefix
      * @param incomingEvents
@@ -61,7 +80,7 @@ public class ProcessorMetrics {
      * @param untilOffset
      * @param processingDurationInMillis
      */
-    public synchronized static void computeMetrics(
+    public static void computeMetrics(
             final String metricPrefix,
             final Collection<Record> incomingEvents,
             final Collection<Record> outgoingEvents,
@@ -69,55 +88,39 @@ public class ProcessorMetrics {
             final long untilOffset,
             final long processingDurationInMillis) {
 
-
         if ((outgoingEvents != null) && (outgoingEvents.size() != 0)) {
+            accumulators.computeIfAbsent(metricPrefix, prefix -> new ProcessorMetricsAccumulator(SIZE_SAMPLING_INTERVAL))
+                    .record(incomingEvents, outgoingEvents, fromOffset, untilOffset, processingDurationInMillis);
+            if (reporter == null) {
+                startReporter();
+            }
+        }
+    }
 
-            UserMetricsSystem.gauge(metricPrefix + Names.INCOMING_MESSAGES).set(untilOffset - fromOffset);
-            UserMetricsSystem.gauge(metricPrefix + Names.INCOMING_RECORDS).set(incomingEvents.size());
-            UserMetricsSystem.gauge(metricPrefix + Names.OUTGOING_RECORDS).set(outgoingEvents.size());
-
-            long errorCount = outgoingEvents.stream().filter(r -> r != null && r.hasField(FieldDictionary.RECORD_ERRORS)).count();
-            UserMetricsSystem.gauge(metricPrefix + "errors").set(errorCount);
-            if (outgoingEvents.size() != 0) {
-                final List<Integer> recordSizesInBytes = new ArrayList<>();
-                final List<Integer> recordNumberOfFields = new ArrayList<>();
-
-                outgoingEvents.forEach(record -> {
-                    recordSizesInBytes.add(record.sizeInBytes());
-                    recordNumberOfFields.add(record.size());
-                });
-
-                final int numberOfProcessedBytes = recordSizesInBytes.stream().mapToInt(Integer::intValue).sum();
-                final int numberOfProcessedFields = recordNumberOfFields.stream().mapToInt(Integer::intValue).sum();
-
-                if (numberOfProcessedFields != 0) {
-                    UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_FIELD_AVERAGE).set(numberOfProcessedBytes / numberOfProcessedFields);
-                } else {
-                    UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_FIELD_AVERAGE).set(0);
-                }
-                if (processingDurationInMillis != 0) {
-                    UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_SECOND_AVERAGE).set(numberOfProcessedBytes * 1000 / processingDurationInMillis);
-                    UserMetricsSystem.gauge(metricPrefix + Names.RECORDS_PER_SECOND_AVERAGE).set(outgoingEvents.size() * 1000 / processingDurationInMillis);
-                } else {
-                    UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_SECOND_AVERAGE).set(0);
-                    UserMetricsSystem.gauge(metricPrefix + Names.RECORDS_PER_SECOND_AVERAGE).set(0);
-                }
-
-
-                UserMetricsSystem.gauge(metricPrefix + Names.PROCESSED_BYTES).set(numberOfProcessedBytes);
-                UserMetricsSystem.gauge(metricPrefix + Names.PROCESSED_FIELDS).set(numberOfProcessedFields);
-
-                UserMetricsSystem.gauge(metricPrefix + Names.ERROR_PERCENTAGE).set((long) (100.0f * errorCount / outgoingEvents.size()));
-                UserMetricsSystem.gauge(metricPrefix + Names.FIELDS_PER_RECORD_AVERAGE).set(numberOfProcessedFields / outgoingEvents.size());
-                UserMetricsSystem.gauge(metricPrefix + Names.BYTES_PER_RECORD_AVERAGE).set(numberOfProcessedBytes / outgoingEvents.size());
-            } else if (errorCount > 0)
-                UserMetricsSystem.gauge(metricPrefix + Names.ERROR_PERCENTAGE).set(100L);
-            else
-                UserMetricsSystem.gauge(metricPrefix + Names.ERROR_PERCENTAGE).set(0L);
-
-
-            //   UserMetricsSystem.gauge(metricPrefix + "processing_time_ms").set(processingDurationInMillis);
+    /**
+     * publish what was accumulated since the previous report
+     */
+    public static void report() {
+        accumulators.forEach((metricPrefix, accumulator) -> {
+            try {
+                accumulator.snapshotAndReset()
+                        .forEach((name, value) -> UserMetricsSystem.gauge(metricPrefix + name).set(value));
+            } catch (Exception e) {
+                logger.warn("unable to publish metrics {} : {}", metricPrefix, e.toString());
+            }
+        });
+    }
 
+    private static synchronized void startReporter() {
+        if (reporter != null) {
+            return;
         }
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "logisland-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(ProcessorMetrics::report, REPORT_INTERVAL_MS, REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        reporter = executor;
     }
 }
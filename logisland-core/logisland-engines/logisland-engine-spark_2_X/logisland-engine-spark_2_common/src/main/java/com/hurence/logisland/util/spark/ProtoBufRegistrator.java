@@ -17,6 +17,8 @@ package com.hurence.logisland.util.spark;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.hurence.logisland.record.CompactRecord;
+import com.hurence.logisland.serializer.CompactRecordSerializer;
 import org.apache.spark.serializer.KryoRegistrator;
 import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
 
@@ -25,6 +27,8 @@ public class ProtoBufRegistrator implements KryoRegistrator {
     @Override
     public void registerClasses(Kryo kryo) {
         kryo.register(KuraPayloadProto.KuraPayload.class, new FieldSerializer<Object>(kryo, KuraPayloadProto.KuraPayload.class));
+        // compact records keep their flat arrays through shuffles and kryo encoded datasets
+        kryo.register(CompactRecord.class, new CompactRecordSerializer());
     }
 }
 
@@ -135,16 +135,23 @@ class RemoteApiStreamProcessingEngine extends KafkaStreamProcessingEngine {
                         val dataflow = remoteApiClient.fetchDataflow(appName, state)
                         if (dataflow.isPresent) {
                             changed = true
-                            if (remoteApiComponentFactory.updateEngineContext(getCurrentSparkContext(), engineContext, dataflow.get, currentDataflow)) {
-                                currentDataflow = dataflow.get()
+                            // an invalid dataflow is rejected before touching the engine, which keeps running
+                            try {
+                                if (remoteApiComponentFactory.updateEngineContext(getCurrentSparkContext(), engineContext, dataflow.get, currentDataflow)) {
+                                    currentDataflow = dataflow.get()
+                                }
+                            } catch {
+                                case default: Throwable => {
+                                    // the engine may be half configured
+                                    currentDataflow = null
+                                    logger.warn("Unexpected exception while trying to apply new dataflow configuration", default)
+                                    reset(engineContext)
+                                }
                             }
                         }
                     } catch {
-                        case default: Throwable => {
-                            currentDataflow = null
+                        case default: Throwable =>
                             logger.warn("Unexpected exception while trying to poll for new dataflow configuration", default)
-                            reset(engineContext)
-                        }
                     } finally {
                         if (changed) {
                             try {
@@ -38,7 +38,7 @@ import java.util.Collections
 import com.hurence.logisland.component.PropertyDescriptor
 import com.hurence.logisland.engine.EngineContext
 import com.hurence.logisland.engine.spark.remote.PipelineConfigurationBroadcastWrapper
-import com.hurence.logisland.record.Record
+import com.hurence.logisland.record.{Record, RecordImplementation}
 import com.hurence.logisland.serializer._
 import com.hurence.logisland.stream.StreamProperties._
 import com.hurence.logisland.stream.{AbstractRecordStream, StreamContext}
@@ -88,6 +88,7 @@ abstract class AbstractKafkaRecordStream extends AbstractRecordStream with Spark
     descriptors.add(INPUT_SERIALIZER)
     descriptors.add(OUTPUT_SERIALIZER)
     descriptors.add(ERROR_SERIALIZER)
+    descriptors.add(RECORD_IMPLEMENTATION)
     descriptors.add(KAFKA_TOPIC_AUTOCREATE)
     descriptors.add(KAFKA_TOPIC_DEFAULT_PARTITIONS)
     descriptors.add(KAFKA_TOPIC_DEFAULT_REPLICATION_FACTOR)
@@ -285,10 +286,11 @@ abstract class AbstractKafkaRecordStream extends AbstractRecordStream with Spark
     *
     * @param inSerializerClass the serializer type
     * @param schemaContent     an Avro schema
-    * @return the serializer
+    * @return the serializer, deserializing to the record implementation configured for this stream
     */
   def getSerializer(inSerializerClass: String, schemaContent: String): RecordSerializer = {
-    SerializerProvider.getSerializer(inSerializerClass, schemaContent)
+    SerializerProvider.getSerializer(inSerializerClass, schemaContent,
+      RecordImplementation.fromName(streamContext.getPropertyValue(RECORD_IMPLEMENTATION).asString))
   }
 
   /**
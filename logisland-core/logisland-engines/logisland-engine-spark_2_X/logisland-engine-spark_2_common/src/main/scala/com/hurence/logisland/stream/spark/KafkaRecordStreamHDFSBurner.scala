@@ -50,13 +50,15 @@ import java.util
 import java.util.Collections
 
 import com.hurence.logisland.component.PropertyDescriptor
-import com.hurence.logisland.record.{FieldDictionary, FieldType}
+import com.hurence.logisland.record.{FieldDictionary, FieldType, Record}
 import com.hurence.logisland.stream.StreamProperties._
-import com.hurence.logisland.util.spark.SparkUtils
+import com.hurence.logisland.util.spark.{RecordFileWriter, SparkUtils}
+import org.apache.avro.Schema
 import org.apache.kafka.clients.consumer.ConsumerRecord
 import org.apache.spark.rdd.RDD
+import org.apache.spark.storage.StorageLevel
 import org.apache.spark.sql.types._
-import org.apache.spark.sql.{DataFrame, Row, SaveMode, SparkSession}
+import org.apache.spark.sql.{DataFrame, Row, SparkSession}
 import org.apache.spark.streaming.kafka010.{HasOffsetRanges, OffsetRange}
 import org.slf4j.LoggerFactory
 
@@ -66,6 +68,10 @@ class KafkaRecordStreamHDFSBurner extends AbstractKafkaRecordStream {
 
     private val logger = LoggerFactory.getLogger(classOf[KafkaRecordStreamHDFSBurner])
 
+    private val SCHEMA_SAMPLE_SIZE = 1000
+
+    @transient private var writer: RecordFileWriter = _
+
 
     override def getSupportedPropertyDescriptors: util.List[PropertyDescriptor] = {
         val descriptors: util.List[PropertyDescriptor] = new util.ArrayList[PropertyDescriptor]
@@ -79,6 +85,8 @@ class KafkaRecordStreamHDFSBurner extends AbstractKafkaRecordStream {
         descriptors.add(EXCLUDE_ERRORS)
         descriptors.add(DATE_FORMAT)
         descriptors.add(INPUT_FORMAT)
+        descriptors.add(ROLLING_FILE_TARGET_SIZE)
+        descriptors.add(ROLLING_FILE_MAX_AGE_MS)
         Collections.unmodifiableList(descriptors)
     }
 
@@ -99,130 +107,113 @@ class KafkaRecordStreamHDFSBurner extends AbstractKafkaRecordStream {
     }
 
     override def process(rdd: RDD[ConsumerRecord[Array[Byte], Array[Byte]]]): Option[Array[OffsetRange]] = {
-        if (!rdd.isEmpty()) {
-            // Cast the rdd to an interface that lets us get an array of OffsetRange
-            val offsetRanges = rdd.asInstanceOf[HasOffsetRanges].offsetRanges
-
-            // Get the singleton instance of SQLContext
-            val sqlContext = SparkSession
-                .builder()
-                .appName(appName)
-                .config(ssc.sparkContext.getConf)
-                .getOrCreate()
-
-
-            // this is used to implicitly convert an RDD to a DataFrame.
+        // Cast the rdd to an interface that lets us get an array of OffsetRange
+        val offsetRanges = rdd.asInstanceOf[HasOffsetRanges].offsetRanges
+
+        // Get the singleton instance of SQLContext
+        val sqlContext = SparkSession
+            .builder()
+            .appName(appName)
+            .config(ssc.sparkContext.getConf)
+            .getOrCreate()
+
+        if (writer == null) {
+            writer = new RecordFileWriter(
+                streamContext.getPropertyValue(OUTPUT_FOLDER_PATH).asString(),
+                streamContext.getPropertyValue(OUTPUT_FORMAT).asString(),
+                streamContext.getPropertyValue(NUM_PARTITIONS).asInteger(),
+                if (streamContext.getPropertyValue(ROLLING_FILE_TARGET_SIZE).isSet)
+                    streamContext.getPropertyValue(ROLLING_FILE_TARGET_SIZE).asLong()
+                else 0,
+                streamContext.getPropertyValue(ROLLING_FILE_MAX_AGE_MS).asLong())
+        }
 
+        val committableOffsetRanges = if (rdd.isEmpty()) {
+            writer.expire(toDataFrame(sqlContext))
+        } else {
             val deserializer = getSerializer(
                 streamContext.getPropertyValue(INPUT_SERIALIZER).asString,
                 streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).asString)
-
+            val sdf = new SimpleDateFormat(streamContext.getPropertyValue(DATE_FORMAT).asString)
+            val recordType = streamContext.getPropertyValue(RECORD_TYPE).asString()
 
             val records = rdd.mapPartitions(p => deserializeRecords(p, deserializer).iterator)
+                .filter(r =>
+                    r.hasField(FieldDictionary.RECORD_TYPE) &&
+                        r.getField(FieldDictionary.RECORD_TYPE).asString() == recordType)
+                .map(r => {
+                    try {
+                        if (r.hasField(FieldDictionary.RECORD_DAYTIME))
+                            r
+                        else
+                            r.setField(FieldDictionary.RECORD_DAYTIME, FieldType.STRING, sdf.format(r.getTime))
+                    }
+                    catch {
+                        case ex: Throwable => r
+                    }
+                })
+                .persist(StorageLevel.MEMORY_AND_DISK)
 
+            // the only pass over the kafka messages, the next ones read the persisted records
+            val (count, bytes) = records.aggregate((0L, 0L))(
+                (stats, r) => (stats._1 + 1, stats._2 + r.sizeInBytes),
+                (left, right) => (left._1 + right._1, left._2 + right._2))
 
-            if (!records.isEmpty()) {
-
-
-                val sdf = new SimpleDateFormat(streamContext.getPropertyValue(DATE_FORMAT).asString)
-
-
-                val numPartitions = streamContext.getPropertyValue(NUM_PARTITIONS).asInteger()
-                val outputFormat = streamContext.getPropertyValue(OUTPUT_FORMAT).asString()
-                val doExcludeErrors = streamContext.getPropertyValue(EXCLUDE_ERRORS).asBoolean()
-                val recordType = streamContext.getPropertyValue(RECORD_TYPE).asString()
-                val outPath = streamContext.getPropertyValue(OUTPUT_FOLDER_PATH).asString()
-
-                val records = rdd.mapPartitions(p => deserializeRecords(p, deserializer).iterator)
-                    .filter(r =>
-                        r.hasField(FieldDictionary.RECORD_TYPE) &&
-                            r.getField(FieldDictionary.RECORD_TYPE).asString() == recordType)
-                    .map(r => {
-                        try {
-                            if (r.hasField(FieldDictionary.RECORD_DAYTIME))
-                                r
-                            else
-                                r.setField(FieldDictionary.RECORD_DAYTIME, FieldType.STRING, sdf.format(r.getTime))
-                        }
-                        catch {
-                            case ex: Throwable => r
-                        }
-                    })
-
-
-                if (!records.isEmpty()) {
-                    var df: DataFrame = null;
-                    val inputFormat = streamContext.getPropertyValue(INPUT_FORMAT).asString()
-                    if (inputFormat.isEmpty) {
-
-                        val schema = SparkUtils.convertFieldsNameToSchema(records.take(1)(0))
-                        val rows = if (doExcludeErrors) {
-                            records
-                                .filter(r => !r.hasField(FieldDictionary.RECORD_ERRORS))
-                                .map(r => SparkUtils.convertToRow(r, schema))
-                        } else {
-                            records.map(r => SparkUtils.convertToRow(r, schema))
-                        }
-
-
-                        logger.info(schema.toString())
-                        df = sqlContext.createDataFrame(rows, schema)
-                    } else {
-                        if ("json".equals(inputFormat)) {
-                            import sqlContext.implicits._
-                            val rdf = records.map(record => (record.getType, record.getField(FieldDictionary.RECORD_DAYTIME).asString))
-                                .toDF(FieldDictionary.RECORD_TYPE, FieldDictionary.RECORD_DAYTIME)
-                            val json = sqlContext.read.json(records.map(record => record.getField(FieldDictionary.RECORD_VALUE).asString()))
-                            val merged = rdf.rdd.zip(json.rdd)
-                                .map {
-                                    case (rowLeft, rowRight) => Row.fromSeq(rowLeft.toSeq ++ rowRight.toSeq)
-                                }
-                            df = sqlContext.createDataFrame(merged, StructType(rdf.schema.fields ++ sanitizeSchema(json.schema).asInstanceOf[StructType].fields))
-                        } else {
-                            throw new IllegalArgumentException(s"Input format $inputFormat is not supported")
-                        }
-                    }
+            writer.add(records, count, bytes, offsetRanges, toDataFrame(sqlContext))
+        }
 
-                    outputFormat match {
-                        case FILE_FORMAT_PARQUET =>
-                            df.repartition(numPartitions)
-                                .write
-                                .partitionBy(FieldDictionary.RECORD_DAYTIME, FieldDictionary.RECORD_TYPE)
-                                .mode(SaveMode.Append)
-                                .parquet(outPath)
-                        case FILE_FORMAT_JSON =>
-                            df.repartition(numPartitions)
-                                .write
-                                .partitionBy(FieldDictionary.RECORD_DAYTIME, FieldDictionary.RECORD_TYPE)
-                                .mode(SaveMode.Append)
-                                .json(outPath)
-                        case FILE_FORMAT_ORC =>
-                            df.repartition(numPartitions)
-                                .write
-                                .partitionBy(FieldDictionary.RECORD_DAYTIME, FieldDictionary.RECORD_TYPE)
-                                .mode(SaveMode.Append)
-                                .orc(outPath)
-                        case FILE_FORMAT_TXT =>
-                            df.repartition(numPartitions)
-                                .write
-                                .partitionBy(FieldDictionary.RECORD_DAYTIME, FieldDictionary.RECORD_TYPE)
-                                .mode(SaveMode.Append)
-                                .text(outPath)
-                        case _ =>
-                            throw new IllegalArgumentException(s"$outputFormat not supported yet")
-                    }
+        if (committableOffsetRanges.isEmpty) None else Some(committableOffsetRanges)
+    }
 
-                    /**
-                      * save latest offset to Zookeeper
-                      */
-                    //    offsetRanges.foreach(offsetRange => zkSink.value.saveOffsetRangesToZookeeper(appName, offsetRange))
-                }
+    private def toDataFrame(sqlContext: SparkSession)(records: RDD[Record]): DataFrame = {
+        val doExcludeErrors = streamContext.getPropertyValue(EXCLUDE_ERRORS).asBoolean()
+        val inputFormat = streamContext.getPropertyValue(INPUT_FORMAT).asString()
+        if (inputFormat.isEmpty) {
+
+            val schema = recordSchema(records)
+            val rows = if (doExcludeErrors) {
+                records
+                    .filter(r => !r.hasField(FieldDictionary.RECORD_ERRORS))
+                    .map(r => SparkUtils.convertToRow(r, schema))
+            } else {
+                records.map(r => SparkUtils.convertToRow(r, schema))
+            }
 
+
+            logger.info(schema.toString())
+            sqlContext.createDataFrame(rows, schema)
+        } else {
+            if ("json".equals(inputFormat)) {
+                import sqlContext.implicits._
+                val rdf = records.map(record => (record.getType, record.getField(FieldDictionary.RECORD_DAYTIME).asString))
+                    .toDF(FieldDictionary.RECORD_TYPE, FieldDictionary.RECORD_DAYTIME)
+                val json = sqlContext.read.json(records.map(record => record.getField(FieldDictionary.RECORD_VALUE).asString()))
+                val merged = rdf.rdd.zip(json.rdd)
+                    .map {
+                        case (rowLeft, rowRight) => Row.fromSeq(rowLeft.toSeq ++ rowRight.toSeq)
+                    }
+                sqlContext.createDataFrame(merged, StructType(rdf.schema.fields ++ sanitizeSchema(json.schema).asInstanceOf[StructType].fields))
+            } else {
+                throw new IllegalArgumentException(s"Input format $inputFormat is not supported")
             }
+        }
+    }
 
-            return Some(offsetRanges)
+    /**
+      * The declared Avro schema if any, or the fields of a sample of the records.
+      */
+    private def recordSchema(records: RDD[Record]): StructType = {
+        if (streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).isSet) {
+            val schema = SparkUtils.convertAvroSchemaToDataframeSchema(
+                new Schema.Parser().parse(streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).asString))
+            // the partition columns are not always declared
+            val partitionFields = Seq(FieldDictionary.RECORD_DAYTIME, FieldDictionary.RECORD_TYPE)
+                .filterNot(schema.fieldNames.contains)
+                .map(name => StructField(name, DataTypes.StringType, nullable = true))
+            StructType(schema.fields ++ partitionFields)
+        } else {
+            SparkUtils.convertFieldsNameToSchema(records.take(SCHEMA_SAMPLE_SIZE).toSeq)
         }
-        None
     }
 }
 
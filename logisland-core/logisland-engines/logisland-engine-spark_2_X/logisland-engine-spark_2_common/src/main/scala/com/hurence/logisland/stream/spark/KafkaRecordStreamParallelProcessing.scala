@@ -35,6 +35,7 @@ import java.util.Collections
 
 import com.hurence.logisland.component.PropertyDescriptor
 import com.hurence.logisland.record.{FieldDictionary, Record, RecordUtils}
+import com.hurence.logisland.util.processor.ParallelChunkProcessing
 import com.hurence.logisland.util.record.RecordSchemaUtil
 import com.hurence.logisland.util.spark.ProcessorMetrics
 import org.apache.avro.Schema
@@ -57,6 +58,8 @@ class KafkaRecordStreamParallelProcessing extends AbstractKafkaRecordStream {
         val descriptors: util.List[PropertyDescriptor] = new util.ArrayList[PropertyDescriptor]
 
         descriptors.addAll(super.getSupportedPropertyDescriptors())
+        descriptors.add(PROCESSING_PARALLELISM)
+        descriptors.add(PROCESSING_MIN_CHUNK_SIZE)
         Collections.unmodifiableList(descriptors)
     }
 
@@ -103,6 +106,9 @@ class KafkaRecordStreamParallelProcessing extends AbstractKafkaRecordStream {
                           * process events by chaining output records
                           */
                         var firstPass = true
+                        val chunkProcessing = new ParallelChunkProcessing(
+                            streamContext.getPropertyValue(PROCESSING_PARALLELISM).asInteger(),
+                            streamContext.getPropertyValue(PROCESSING_MIN_CHUNK_SIZE).asInteger())
                         var incomingEvents: util.Collection[Record] = Collections.emptyList()
                         var outgoingEvents: util.Collection[Record] = Collections.emptyList()
 
@@ -148,7 +154,7 @@ class KafkaRecordStreamParallelProcessing extends AbstractKafkaRecordStream {
                                 processor.init(processorContext)
                             }
 
-                            outgoingEvents = processor.process(processorContext, incomingEvents)
+                            outgoingEvents = chunkProcessing.process(processorContext, incomingEvents)
 
                             /**
                               * compute metrics
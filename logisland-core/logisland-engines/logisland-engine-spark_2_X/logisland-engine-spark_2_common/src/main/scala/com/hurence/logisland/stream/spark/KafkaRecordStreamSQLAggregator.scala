@@ -36,7 +36,7 @@ import java.util.Collections
 import com.hurence.logisland.annotation.documentation.{CapabilityDescription, Tags}
 import com.hurence.logisland.component.PropertyDescriptor
 import com.hurence.logisland.record.{FieldDictionary, Record}
-import com.hurence.logisland.util.spark.{ProcessorMetrics, SparkUtils}
+import com.hurence.logisland.util.spark.{AggregateFunction, IncrementalAggregation, ProcessorMetrics, SparkUtils}
 import com.hurence.logisland.validator.StandardValidators
 import org.apache.avro.Schema
 import org.apache.kafka.clients.consumer.ConsumerRecord
@@ -50,11 +50,14 @@ import com.hurence.logisland.stream.StreamProperties._
 
 
 @Tags(Array("stream", "SQL", "query", "record"))
-@CapabilityDescription("This is a stream capable of SQL query interpretations.")
+@CapabilityDescription("This is a stream capable of SQL query interpretations, or of incremental aggregations " +
+    "of the records into event time windows.")
 class KafkaRecordStreamSQLAggregator extends AbstractKafkaRecordStream {
 
     private val logger = LoggerFactory.getLogger(classOf[KafkaRecordStreamSQLAggregator])
 
+    @transient private var aggregation: IncrementalAggregation = _
+
 
     override def getSupportedPropertyDescriptors: util.List[PropertyDescriptor] = {
         val descriptors: util.List[PropertyDescriptor] = new util.ArrayList[PropertyDescriptor]
@@ -62,13 +65,19 @@ class KafkaRecordStreamSQLAggregator extends AbstractKafkaRecordStream {
         descriptors.add(MAX_RESULTS_COUNT)
         descriptors.add(SQL_QUERY)
         descriptors.add(OUTPUT_RECORD_TYPE)
+        descriptors.add(AGGREGATION_MODE)
+        descriptors.add(AGGREGATION_GROUP_BY)
+        descriptors.add(AGGREGATION_FUNCTIONS)
+        descriptors.add(AGGREGATION_WINDOW_DURATION)
+        descriptors.add(AGGREGATION_WATERMARK_DELAY)
+        descriptors.add(AGGREGATION_STATE_DIRECTORY)
         Collections.unmodifiableList(descriptors)
     }
 
     override def process(rdd: RDD[ConsumerRecord[Array[Byte], Array[Byte]]]): Option[Array[OffsetRange]] = {
         if (!rdd.isEmpty()) {
             // Cast the rdd to an interface that lets us get an array of OffsetRange
-            // val offsetRanges = rdd.asInstanceOf[HasOffsetRanges].offsetRanges
+            val offsetRanges = rdd.asInstanceOf[HasOffsetRanges].offsetRanges
 
             val sqlContext = SparkSession
                 .builder()
@@ -82,79 +91,100 @@ class KafkaRecordStreamSQLAggregator extends AbstractKafkaRecordStream {
                 streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).asString)
 
             val inputTopics = streamContext.getPropertyValue(INPUT_TOPICS).asString
+            val outputRecordType = streamContext.getPropertyValue(OUTPUT_RECORD_TYPE).asString()
 
             //here how to handle elements that are not successfully deserialized ???
             //currently we lose them !
             //I think we should create an ErrorRecord containing key, value.
-            val records: RDD[Record] = rdd.mapPartitions(p => deserializeRecords(p, deserializer).iterator)
-
-            /**
-              * get a Dataframe schema (either from an Avro schema or from the first record)
-              */
-            val schema = try {
-                val parser = new Schema.Parser
-                val schema = parser.parse(streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).asString)
-                SparkUtils.convertAvroSchemaToDataframeSchema(schema)
+            if (streamContext.getPropertyValue(AGGREGATION_MODE).asString == INCREMENTAL_AGGREGATION.getValue) {
+
+                if (aggregation == null) {
+                    aggregation = new IncrementalAggregation(
+                        if (streamContext.getPropertyValue(AGGREGATION_GROUP_BY).isSet)
+                            streamContext.getPropertyValue(AGGREGATION_GROUP_BY).asString.split(",").map(_.trim).filter(_.nonEmpty).toSeq
+                        else
+                            Seq.empty,
+                        AggregateFunction.parse(streamContext.getPropertyValue(AGGREGATION_FUNCTIONS).asString),
+                        streamContext.getPropertyValue(AGGREGATION_WINDOW_DURATION).asLong(),
+                        streamContext.getPropertyValue(AGGREGATION_WATERMARK_DELAY).asLong(),
+                        rdd.getNumPartitions,
+                        Some(if (streamContext.getPropertyValue(AGGREGATION_STATE_DIRECTORY).isSet)
+                            streamContext.getPropertyValue(AGGREGATION_STATE_DIRECTORY).asString
+                        else
+                            "checkpoints/" + streamContext.getIdentifier + "/aggregation"))
+                    aggregation.restore(rdd.sparkContext)
+                }
+                // the records of a batch replayed after a restart may already be in the restored state
+                val positions = aggregation.getPositions
+                val records: RDD[Record] = rdd
+                    .filter(r => positions.get((r.topic, r.partition)).forall(r.offset >= _))
+                    .mapPartitions(p => deserializeRecords(p, deserializer).iterator)
+                aggregation.update(records, offsetRanges, outputRecordType, produce)
+
+            } else {
+
+                val records: RDD[Record] = rdd.mapPartitions(p => deserializeRecords(p, deserializer).iterator)
+
+                /**
+                  * get a Dataframe schema (either from an Avro schema or from the first record)
+                  */
+                val schema = try {
+                    val parser = new Schema.Parser
+                    val schema = parser.parse(streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).asString)
+                    SparkUtils.convertAvroSchemaToDataframeSchema(schema)
+                }
+                catch {
+                    case e: Exception =>
+                        logger.error("unable to add schema :{}", e.getMessage)
+                        SparkUtils.convertFieldsNameToSchema(records.take(1)(0))
+                }
+
+                if (!records.isEmpty()) {
+
+                    val rows = records.filter(r => !r.hasField(FieldDictionary.RECORD_ERRORS))
+                        .map(r => SparkUtils.convertToRow(r, schema))
+
+
+                    sqlContext.createDataFrame(rows, schema).createOrReplaceTempView(inputTopics)
+
+
+                    val query = streamContext.getPropertyValue(SQL_QUERY).asString()
+
+                    produce(sqlContext.sql(query).rdd.map(row => SparkUtils.convertToRecord(row, outputRecordType)))
+                }
             }
-            catch {
-                case e: Exception =>
-                    logger.error("unable to add schema :{}", e.getMessage)
-                    SparkUtils.convertFieldsNameToSchema(records.take(1)(0))
-            }
-
-            if (!records.isEmpty()) {
-
-                val rows = records.filter(r => !r.hasField(FieldDictionary.RECORD_ERRORS))
-                    .map(r => SparkUtils.convertToRow(r, schema))
-
-
-                sqlContext.createDataFrame(rows, schema).createOrReplaceTempView(inputTopics)
-
-
-
-
-                val query = streamContext.getPropertyValue(SQL_QUERY).asString()
-                val outputRecordType = streamContext.getPropertyValue(OUTPUT_RECORD_TYPE).asString()
-
-                sqlContext.sql(query).rdd
-                    .foreachPartition(rows => {
-                        val outgoingEvents = rows.map(row => SparkUtils.convertToRecord(row, outputRecordType)).toList
-                        /**
-                          * create serializers
-                          */
-                        val serializer = getSerializer(
-                            streamContext.getPropertyValue(OUTPUT_SERIALIZER).asString,
-                            streamContext.getPropertyValue(AVRO_OUTPUT_SCHEMA).asString)
-                        val errorSerializer = getSerializer(
-                            streamContext.getPropertyValue(ERROR_SERIALIZER).asString,
-                            streamContext.getPropertyValue(AVRO_OUTPUT_SCHEMA).asString)
-
-
-
-
-                        /**
-                          * push outgoing events and errors to Kafka
-                          */
-                        kafkaSink.value.produce(
-                            streamContext.getPropertyValue(OUTPUT_TOPICS).asString,
-                            outgoingEvents,
-                            serializer
-                        )
-
-                        kafkaSink.value.produce(
-                            streamContext.getPropertyValue(ERROR_TOPICS).asString,
-                            outgoingEvents.filter(r => r.hasField(FieldDictionary.RECORD_ERRORS)),
-                            errorSerializer
-                        )
-
-                    })
-
-
-            }
-            return None //Some(offsetRanges)
+            return Some(offsetRanges)
         }
         None
     }
-}
-
 
+    /**
+      * push outgoing events and errors to Kafka
+      */
+    private def produce(records: RDD[Record]): Unit = {
+        records.foreachPartition(partition => {
+            val outgoingEvents = partition.toList
+            /**
+              * create serializers
+              */
+            val serializer = getSerializer(
+                streamContext.getPropertyValue(OUTPUT_SERIALIZER).asString,
+                streamContext.getPropertyValue(AVRO_OUTPUT_SCHEMA).asString)
+            val errorSerializer = getSerializer(
+                streamContext.getPropertyValue(ERROR_SERIALIZER).asString,
+                streamContext.getPropertyValue(AVRO_OUTPUT_SCHEMA).asString)
+
+            kafkaSink.value.produce(
+                streamContext.getPropertyValue(OUTPUT_TOPICS).asString,
+                outgoingEvents,
+                serializer
+            )
+
+            kafkaSink.value.produce(
+                streamContext.getPropertyValue(ERROR_TOPICS).asString,
+                outgoingEvents.filter(r => r.hasField(FieldDictionary.RECORD_ERRORS)),
+                errorSerializer
+            )
+        })
+    }
+}
@@ -31,6 +31,7 @@
 package com.hurence.logisland.stream
 
 import com.hurence.logisland.component.{AllowableValue, PropertyDescriptor}
+import com.hurence.logisland.record.RecordImplementation
 import com.hurence.logisland.serializer._
 import com.hurence.logisland.stream.spark.structured.provider.StructuredStreamProviderService
 import com.hurence.logisland.validator.StandardValidators
@@ -158,6 +159,19 @@ object StreamProperties {
     .allowableValues(KRYO_SERIALIZER, JSON_SERIALIZER, EXTENDED_JSON_SERIALIZER, AVRO_SERIALIZER, BYTESARRAY_SERIALIZER, STRING_SERIALIZER, NO_SERIALIZER)
     .build
 
+  val STANDARD_RECORD = new AllowableValue(RecordImplementation.STANDARD.getName,
+    "standard records", "records backed by a sorted map of fields")
+  val COMPACT_RECORD = new AllowableValue(RecordImplementation.COMPACT.getName,
+    "compact records", "records backed by flat insertion-ordered arrays, storing numbers and booleans unboxed and building Field objects only when they are asked for")
+
+  val RECORD_IMPLEMENTATION: PropertyDescriptor = new PropertyDescriptor.Builder()
+    .name("record.implementation")
+    .description("The kind of records the input topics are deserialized to. Compact records allocate much less per field, but iterate in insertion order instead of field name order.")
+    .required(false)
+    .allowableValues(STANDARD_RECORD, COMPACT_RECORD)
+    .defaultValue(STANDARD_RECORD.getValue)
+    .build
+
 
   val KAFKA_TOPIC_AUTOCREATE: PropertyDescriptor = new PropertyDescriptor.Builder()
     .name("kafka.topic.autoCreate")
@@ -309,6 +323,39 @@ object StreamProperties {
     .defaultValue("100")
     .build
 
+  val PROCESSING_PARALLELISM: PropertyDescriptor = new PropertyDescriptor.Builder()
+    .name("processing.parallelism")
+    .description("the number of chunks of a partition processed at the same time by the processors annotated with " +
+      "@ThreadSafe, the other processors being given the whole partition. 1 processes the partition in a single thread")
+    .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+    .required(false)
+    .defaultValue("1")
+    .build
+
+  val PROCESSING_MIN_CHUNK_SIZE: PropertyDescriptor = new PropertyDescriptor.Builder()
+    .name("processing.min.chunk.size")
+    .description("the minimum number of records of a chunk processed in parallel, smaller partitions being split in less chunks")
+    .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+    .required(false)
+    .defaultValue("1000")
+    .build
+
+  val KRYO_ENCODING = new AllowableValue("kryo", "kryo encoding",
+    "records are kept as kryo serialized blobs between the stages of the stream")
+  val COLUMNAR_ENCODING = new AllowableValue("columnar", "columnar encoding",
+    "records are shuffled by the groupby field as rows with one column per field declared in avro.input.schema, the other " +
+      "fields, and the ones holding a null value or a value of another type, being stored in a map of serialized fields. " +
+      "The providers and the sinks still exchange kryo serialized records")
+
+  val RECORD_ENCODING: PropertyDescriptor = new PropertyDescriptor.Builder()
+    .name("record.encoding")
+    .description("How records are encoded when they are grouped by key. The columnar encoding lets spark filter and shuffle records " +
+      "on typed columns instead of opaque blobs; it requires avro.input.schema and a groupby field declared in it, otherwise kryo is used.")
+    .required(false)
+    .allowableValues(KRYO_ENCODING, COLUMNAR_ENCODING)
+    .defaultValue(KRYO_ENCODING.getValue)
+    .build
+
 
 
 
@@ -550,6 +597,23 @@ val KAFKA_STARTING_OFFSETS:  PropertyDescriptor = new PropertyDescriptor.Builder
     .defaultValue("4")
     .build
 
+  val ROLLING_FILE_TARGET_SIZE = new PropertyDescriptor.Builder()
+    .name("rolling.file.target.size")
+    .description("when set, the micro batches are buffered until they hold this number of bytes (estimated before " +
+      "compression) and then written together, each partition directory receiving files of about this size. " +
+      "The offsets of the buffered batches are committed once they are written")
+    .required(false)
+    .addValidator(StandardValidators.LONG_VALIDATOR)
+    .build
+
+  val ROLLING_FILE_MAX_AGE_MS = new PropertyDescriptor.Builder()
+    .name("rolling.file.max.age.ms")
+    .description("the maximum time in ms a micro batch is buffered before being written, whatever the buffered size")
+    .required(false)
+    .addValidator(StandardValidators.LONG_VALIDATOR)
+    .defaultValue("600000")
+    .build
+
   val EXCLUDE_ERRORS = new PropertyDescriptor.Builder()
     .name("exclude.errors")
     .description("do we include records with errors ?")
@@ -594,6 +658,62 @@ val KAFKA_STARTING_OFFSETS:  PropertyDescriptor = new PropertyDescriptor.Builder
     .defaultValue("aggregation")
     .build
 
+  val QUERY_AGGREGATION = new AllowableValue("query", "query aggregation",
+    "runs sql.query over each micro batch")
+  val INCREMENTAL_AGGREGATION = new AllowableValue("incremental", "incremental aggregation",
+    "keeps the partial aggregates of the event time windows between micro batches and outputs the updated ones")
+
+  val AGGREGATION_MODE = new PropertyDescriptor.Builder()
+    .name("aggregation.mode")
+    .description("how the records are aggregated, sql.query is ignored by the incremental mode")
+    .required(false)
+    .allowableValues(QUERY_AGGREGATION, INCREMENTAL_AGGREGATION)
+    .defaultValue(QUERY_AGGREGATION.getValue)
+    .build
+
+  val AGGREGATION_GROUP_BY = new PropertyDescriptor.Builder()
+    .name("aggregation.group.by")
+    .description("a comma separated list of the fields the records are grouped by, in incremental mode")
+    .required(false)
+    .addValidator(StandardValidators.COMMA_SEPARATED_LIST_VALIDATOR)
+    .build
+
+  val AGGREGATION_FUNCTIONS = new PropertyDescriptor.Builder()
+    .name("aggregation.functions")
+    .description("a comma separated list of the aggregates computed in incremental mode, among count(), " +
+      "count(field), sum(field), min(field), max(field), avg(field), approx_distinct(field) and " +
+      "percentile(field, quantile). They are output as count, count_field, sum_field, ..., percentile_95_field")
+    .required(false)
+    .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+    .defaultValue("count()")
+    .build
+
+  val AGGREGATION_WINDOW_DURATION = new PropertyDescriptor.Builder()
+    .name("aggregation.window.duration")
+    .description("the length in ms of the tumbling event time windows (on record_time) of the incremental mode")
+    .required(false)
+    .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+    .defaultValue("60000")
+    .build
+
+  val AGGREGATION_WATERMARK_DELAY = new PropertyDescriptor.Builder()
+    .name("aggregation.watermark.delay")
+    .description("how late in ms a record can be, behind the latest record time seen, in incremental mode. " +
+      "The windows ending before the watermark are final : they are dropped from the state and their late records ignored")
+    .required(false)
+    .addValidator(StandardValidators.LONG_VALIDATOR)
+    .defaultValue("60000")
+    .build
+
+  val AGGREGATION_STATE_DIRECTORY = new PropertyDescriptor.Builder()
+    .name("aggregation.state.directory")
+    .description("the directory (any hadoop file system) where the incremental mode saves its state every batch, " +
+      "along with the offsets it accounts for, to resume from it after a restart. Defaults to " +
+      "checkpoints/<stream id>/aggregation")
+    .required(false)
+    .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+    .build
+
 
   //////////////////////////////////////
   // Security options
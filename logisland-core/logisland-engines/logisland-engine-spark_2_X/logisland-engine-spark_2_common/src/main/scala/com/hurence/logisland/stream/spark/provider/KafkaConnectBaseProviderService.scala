@@ -40,6 +40,8 @@ class KafkaConnectBaseProviderService extends AbstractControllerService with Str
     var delegateConnectorClass = ""
     var offsetBackingStore = ""
     var offsetBackingStoreProperties = ""
+    var bufferMaxBytes = 67108864L
+    var batchMaxRows = 100000
 
     @OnEnabled
     @throws[InitializationException]
@@ -56,6 +58,8 @@ class KafkaConnectBaseProviderService extends AbstractControllerService with Str
                 maxConfigurations = (context getPropertyValue StreamOptions.KAFKA_CONNECT_MAX_TASKS).asInteger()
                 offsetBackingStore = (context getPropertyValue StreamOptions.KAFKA_CONNECT_OFFSET_BACKING_STORE).asString()
                 offsetBackingStoreProperties = context.getPropertyValue(StreamOptions.KAFKA_CONNECT_OFFSET_BACKING_STORE_PROPERTIES).asString()
+                bufferMaxBytes = context.getPropertyValue(StreamOptions.KAFKA_CONNECT_SOURCE_BUFFER_MAX_BYTES).asLong()
+                batchMaxRows = context.getPropertyValue(StreamOptions.KAFKA_CONNECT_SOURCE_BATCH_MAX_ROWS).asInteger()
             } catch {
                 case e: Exception =>
                     throw new InitializationException(e)
@@ -82,6 +86,8 @@ class KafkaConnectBaseProviderService extends AbstractControllerService with Str
         descriptors.add(StreamOptions.KAFKA_CONNECT_MAX_PARTITIONS)
         descriptors.add(StreamOptions.KAFKA_CONNECT_OFFSET_BACKING_STORE)
         descriptors.add(StreamOptions.KAFKA_CONNECT_OFFSET_BACKING_STORE_PROPERTIES)
+        descriptors.add(StreamOptions.KAFKA_CONNECT_SOURCE_BUFFER_MAX_BYTES)
+        descriptors.add(StreamOptions.KAFKA_CONNECT_SOURCE_BATCH_MAX_ROWS)
         Collections.unmodifiableList(descriptors)
     }
 
@@ -69,6 +69,9 @@ class KafkaConnectStructuredSourceProviderService extends KafkaConnectBaseProvid
             .option(StreamOptions.KAFKA_CONNECT_CONNECTOR_CLASS.getName, delegateConnectorClass)
             .option(StreamOptions.KAFKA_CONNECT_OFFSET_BACKING_STORE.getName, offsetBackingStore)
             .option(StreamOptions.KAFKA_CONNECT_OFFSET_BACKING_STORE_PROPERTIES.getName, offsetBackingStoreProperties)
+            .option(StreamOptions.KAFKA_CONNECT_SOURCE_BUFFER_MAX_BYTES.getName, bufferMaxBytes)
+            .option(StreamOptions.KAFKA_CONNECT_SOURCE_BATCH_MAX_ROWS.getName, batchMaxRows)
+            .option(StreamOptions.KAFKA_CONNECT_MAX_PARTITIONS.getName, maxPartitions)
             .load(streamContext.getIdentifier)
             //Topic, Partition, Key, Value
             .as[(String, String, String, Array[Byte], Array[Byte])]
@@ -73,6 +73,23 @@ object StreamOptions {
         .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
         .build
 
+    val KAFKA_CONNECT_SOURCE_BUFFER_MAX_BYTES = new PropertyDescriptor.Builder()
+        .name("kc.source.buffer.max.bytes")
+        .description("Max number of bytes of polled records buffered on the driver, waiting to be processed or committed. " +
+            "The source tasks stop being polled until the buffer drains below this size.")
+        .required(false)
+        .defaultValue("67108864")
+        .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+        .build
+
+    val KAFKA_CONNECT_SOURCE_BATCH_MAX_ROWS = new PropertyDescriptor.Builder()
+        .name("kc.source.batch.max.rows")
+        .description("Max number of records handed to a single micro-batch.")
+        .required(false)
+        .defaultValue("100000")
+        .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+        .build
+
     val KAFKA_CONNECT_KEY_CONVERTER = new PropertyDescriptor.Builder()
         .name("kc.data.key.converter")
         .description("Key converter class")
@@ -91,6 +91,10 @@ class StructuredStream extends AbstractRecordStream with SparkRecordStream {
     descriptors.add(GROUPBY)
     descriptors.add(STATE_TIMEOUT_MS)
     descriptors.add(CHUNK_SIZE)
+    descriptors.add(AVRO_INPUT_SCHEMA)
+    descriptors.add(RECORD_ENCODING)
+    descriptors.add(PROCESSING_PARALLELISM)
+    descriptors.add(PROCESSING_MIN_CHUNK_SIZE)
 
     Collections.unmodifiableList(descriptors)
   }
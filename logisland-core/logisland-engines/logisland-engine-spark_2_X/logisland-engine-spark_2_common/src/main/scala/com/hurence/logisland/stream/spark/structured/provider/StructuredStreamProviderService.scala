@@ -39,12 +39,14 @@ import com.hurence.logisland.record._
 import com.hurence.logisland.serializer.{JsonSerializer, NoopSerializer, RecordSerializer, SerializerProvider}
 import com.hurence.logisland.stream.StreamContext
 import com.hurence.logisland.stream.StreamProperties._
-import com.hurence.logisland.util.spark.{ControllerServiceLookupSink, ProcessorMetrics}
+import com.hurence.logisland.util.processor.ParallelChunkProcessing
+import com.hurence.logisland.util.spark.{ControllerServiceLookupSink, ProcessorMetrics, RecordRowEncoding}
 import org.apache.spark.broadcast.Broadcast
 import org.apache.spark.groupon.metrics.UserMetricsSystem
 import org.apache.spark.sql.streaming._
 import org.apache.spark.sql.Encoders
-import org.apache.spark.sql.{Dataset, SparkSession}
+import org.apache.spark.sql.functions.col
+import org.apache.spark.sql.{Dataset, Row, SparkSession}
 import org.slf4j.LoggerFactory
 
 import scala.collection.JavaConversions._
@@ -115,12 +117,27 @@ trait StructuredStreamProviderService extends ControllerService {
       val stateTimeoutDuration = streamContext.getPropertyValue(STATE_TIMEOUT_MS).asLong()
       val chunkSize = streamContext.getPropertyValue(CHUNK_SIZE).asInteger()
 
-      processingRecords
-        .filter(_.hasField(keys))
-        .groupByKey(_.getField(keys).asString())
-        .flatMapGroupsWithState(outputMode = OutputMode.Append, timeoutConf = GroupStateTimeout.ProcessingTimeTimeout())(
-          mappingFunction(controllerServiceLookupSink, streamContext, chunkSize, stateTimeoutDuration)
-        )
+      columnarEncoding(streamContext, keys) match {
+        case Some(encoding) =>
+          // shuffle typed rows rather than kryo blobs, records are rebuilt right before the pipeline
+          processingRecords
+            .map(encoding.toRow)(encoding.encoder)
+            // as hasField, a null valued field being kept in the extra fields
+            .filter(col(keys).isNotNull || col(RecordRowEncoding.EXTRA_FIELDS).getItem(keys).isNotNull)
+            .groupByKey(row => encoding.getString(row, keys))(Encoders.STRING)
+            .flatMapGroupsWithState(outputMode = OutputMode.Append, timeoutConf = GroupStateTimeout.ProcessingTimeTimeout())(
+              (key: String, rows: Iterator[Row], state: GroupState[Record]) =>
+                mappingFunction(controllerServiceLookupSink, streamContext, chunkSize, stateTimeoutDuration)(key, rows.map(encoding.toRecord), state)
+            )
+
+        case None =>
+          processingRecords
+            .filter(_.hasField(keys))
+            .groupByKey(_.getField(keys).asString())
+            .flatMapGroupsWithState(outputMode = OutputMode.Append, timeoutConf = GroupStateTimeout.ProcessingTimeTimeout())(
+              mappingFunction(controllerServiceLookupSink, streamContext, chunkSize, stateTimeoutDuration)
+            )
+      }
 
     } else {
       processingRecords.mapPartitions(iterator => {
@@ -131,6 +148,28 @@ trait StructuredStreamProviderService extends ControllerService {
 
   }
 
+  /**
+    * the columnar encoding of the stream records, if it has been asked for and the avro input schema
+    * declares the group by field
+    */
+  private def columnarEncoding(streamContext: StreamContext, keys: String): Option[RecordRowEncoding] = {
+    val avroSchema = streamContext.getPropertyValue(AVRO_INPUT_SCHEMA).asString
+    if (streamContext.getPropertyValue(RECORD_ENCODING).asString != COLUMNAR_ENCODING.getValue)
+      return None
+
+    if (avroSchema == null) {
+      logger.warn(s"${RECORD_ENCODING.getName} is ${COLUMNAR_ENCODING.getValue} but ${AVRO_INPUT_SCHEMA.getName} is not set, using kryo encoding")
+      return None
+    }
+
+    val encoding = RecordRowEncoding.fromAvroSchema(avroSchema)
+    if (!encoding.isColumn(keys)) {
+      logger.warn(s"group by field $keys is not a primitive field of ${AVRO_INPUT_SCHEMA.getName}, using kryo encoding")
+      return None
+    }
+    Some(encoding)
+  }
+
   val ALL_RECORDS = "all_records"
   val CHUNK_CREATION_TS = "chunk_creation_ts"
 
@@ -214,6 +253,9 @@ trait StructuredStreamProviderService extends ControllerService {
 
     // convert to logisland records
     var processingRecords: util.Collection[Record] = iterator.toList
+    val chunkProcessing = new ParallelChunkProcessing(
+      streamContext.getPropertyValue(PROCESSING_PARALLELISM).asInteger(),
+      streamContext.getPropertyValue(PROCESSING_MIN_CHUNK_SIZE).asInteger())
 
     val pipelineMetricPrefix = streamContext.getIdentifier + "."
     // loop over processor chain
@@ -234,7 +276,7 @@ trait StructuredStreamProviderService extends ControllerService {
         processor.init(processorContext)
 
       // do the actual processing
-      processingRecords = processor.process(processorContext, processingRecords)
+      processingRecords = chunkProcessing.process(processorContext, processingRecords)
 
       // compute metrics
       ProcessorMetrics.computeMetrics(
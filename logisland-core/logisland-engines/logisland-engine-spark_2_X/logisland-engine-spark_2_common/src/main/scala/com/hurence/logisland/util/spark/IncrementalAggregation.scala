@@ -0,0 +1,595 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark
+
+import java.nio.ByteBuffer
+import java.util.Properties
+
+import com.clearspring.analytics.stream.cardinality.HyperLogLogPlus
+import com.clearspring.analytics.stream.quantile.TDigest
+import com.hurence.logisland.record.{FieldDictionary, FieldType, Record, StandardRecord}
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.spark.rdd.RDD
+import org.apache.spark.storage.StorageLevel
+import org.apache.spark.streaming.kafka010.OffsetRange
+import org.apache.spark.{HashPartitioner, SerializableWritable, SparkContext, SparkEnv, TaskContext}
+import org.slf4j.LoggerFactory
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+/**
+  * An aggregate of a field : count, sum, min, max, avg, approx_distinct or percentile.
+  *
+  * @param function the aggregate function
+  * @param field    the aggregated field, empty to count the records
+  * @param quantile the quantile of a percentile
+  */
+case class AggregateFunction(function: String, field: String, quantile: Double = 0.0) {
+
+    def outputField: String = {
+        val name = if (function == AggregateFunction.PERCENTILE)
+            s"${function}_${BigDecimal(quantile * 100).bigDecimal.stripTrailingZeros.toPlainString.replace('.', '_')}"
+        else
+            function
+        if (field.isEmpty) name else s"${name}_$field"
+    }
+
+    def newBuffer: AggregateBuffer = function match {
+        case AggregateFunction.COUNT => new CountBuffer(field)
+        case AggregateFunction.SUM => new SumBuffer(field)
+        case AggregateFunction.MIN => new MinBuffer(field)
+        case AggregateFunction.MAX => new MaxBuffer(field)
+        case AggregateFunction.AVG => new AvgBuffer(field)
+        case AggregateFunction.APPROX_DISTINCT => new ApproxDistinctBuffer(field)
+        case AggregateFunction.PERCENTILE => new PercentileBuffer(field, quantile)
+    }
+}
+
+object AggregateFunction {
+
+    val COUNT = "count"
+    val SUM = "sum"
+    val MIN = "min"
+    val MAX = "max"
+    val AVG = "avg"
+    val APPROX_DISTINCT = "approx_distinct"
+    val PERCENTILE = "percentile"
+
+    private val FUNCTIONS = Set(COUNT, SUM, MIN, MAX, AVG, APPROX_DISTINCT, PERCENTILE)
+
+    private val FUNCTION_PATTERN = """(\w+)\s*\(\s*([^,()\s]*)\s*(?:,\s*([0-9.]+)\s*)?\)""".r
+
+    /**
+      * parses a list of aggregates like "count(), sum(bytes_out), percentile(latency, 0.95)"
+      */
+    def parse(functions: String): Seq[AggregateFunction] = {
+        val parsed = FUNCTION_PATTERN.findAllMatchIn(functions).map(m => {
+            val function = m.group(1).toLowerCase
+            val field = m.group(2)
+            if (!FUNCTIONS.contains(function))
+                throw new IllegalArgumentException(s"Aggregate function $function is not supported")
+            if (field.isEmpty && function != COUNT)
+                throw new IllegalArgumentException(s"Aggregate function $function needs a field")
+            if (function == PERCENTILE) {
+                val quantile = Option(m.group(3)).map(_.toDouble).getOrElse(0.5)
+                if (quantile < 0 || quantile > 1)
+                    throw new IllegalArgumentException(s"Quantile $quantile is not in [0, 1]")
+                AggregateFunction(function, field, quantile)
+            } else {
+                AggregateFunction(function, field)
+            }
+        }).toList
+        if (parsed.isEmpty)
+            throw new IllegalArgumentException(s"No aggregate function found in $functions")
+        parsed
+    }
+}
+
+/**
+  * The partial aggregate of a field, updated record by record in a partition then merged across partitions and
+  * micro batches. The sketches are kept as bytes outside of a partition so that any spark serializer moves them.
+  */
+sealed trait AggregateBuffer extends Serializable {
+
+    def add(record: Record): Unit
+
+    /**
+      * merges other into this buffer, both being compacted
+      */
+    def merge(other: AggregateBuffer): Unit
+
+    /**
+      * prepares the buffer to leave the partition
+      */
+    def compact(): Unit = {}
+
+    def fieldType: FieldType
+
+    def result: Any
+}
+
+abstract class NumericBuffer(field: String) extends AggregateBuffer {
+
+    def add(record: Record): Unit = {
+        val value = record.getField(field)
+        if (value != null && value.getRawValue != null) {
+            try {
+                add(value.asDouble().doubleValue())
+            } catch {
+                case _: NumberFormatException =>
+            }
+        }
+    }
+
+    def add(value: Double): Unit
+}
+
+class CountBuffer(field: String) extends AggregateBuffer {
+    var count = 0L
+
+    def add(record: Record): Unit = if (field.isEmpty || record.hasField(field)) count += 1
+
+    def merge(other: AggregateBuffer): Unit = count += other.asInstanceOf[CountBuffer].count
+
+    def fieldType: FieldType = FieldType.LONG
+
+    def result: Any = count
+}
+
+class SumBuffer(field: String) extends NumericBuffer(field) {
+    var sum = 0.0
+
+    def add(value: Double): Unit = sum += value
+
+    def merge(other: AggregateBuffer): Unit = sum += other.asInstanceOf[SumBuffer].sum
+
+    def fieldType: FieldType = FieldType.DOUBLE
+
+    def result: Any = sum
+}
+
+class MinBuffer(field: String) extends NumericBuffer(field) {
+    var min = Double.NaN
+
+    def add(value: Double): Unit = if (min.isNaN || value < min) min = value
+
+    def merge(other: AggregateBuffer): Unit = {
+        val otherMin = other.asInstanceOf[MinBuffer].min
+        if (!otherMin.isNaN) add(otherMin)
+    }
+
+    def fieldType: FieldType = FieldType.DOUBLE
+
+    def result: Any = if (min.isNaN) null else min
+}
+
+class MaxBuffer(field: String) extends NumericBuffer(field) {
+    var max = Double.NaN
+
+    def add(value: Double): Unit = if (max.isNaN || value > max) max = value
+
+    def merge(other: AggregateBuffer): Unit = {
+        val otherMax = other.asInstanceOf[MaxBuffer].max
+        if (!otherMax.isNaN) add(otherMax)
+    }
+
+    def fieldType: FieldType = FieldType.DOUBLE
+
+    def result: Any = if (max.isNaN) null else max
+}
+
+class AvgBuffer(field: String) extends NumericBuffer(field) {
+    var sum = 0.0
+    var count = 0L
+
+    def add(value: Double): Unit = {
+        sum += value
+        count += 1
+    }
+
+    def merge(other: AggregateBuffer): Unit = {
+        sum += other.asInstanceOf[AvgBuffer].sum
+        count += other.asInstanceOf[AvgBuffer].count
+    }
+
+    def fieldType: FieldType = FieldType.DOUBLE
+
+    def result: Any = if (count == 0) null else sum / count
+}
+
+class ApproxDistinctBuffer(field: String) extends AggregateBuffer {
+    var bytes: Array[Byte] = _
+    @transient private var hll: HyperLogLogPlus = _
+
+    private def sketch: HyperLogLogPlus = {
+        if (hll == null)
+            hll = if (bytes == null) new HyperLogLogPlus(ApproxDistinctBuffer.PRECISION)
+            else HyperLogLogPlus.Builder.build(bytes)
+        hll
+    }
+
+    def add(record: Record): Unit = {
+        val value = record.getField(field)
+        if (value != null && value.getRawValue != null)
+            sketch.offer(value.asString())
+    }
+
+    def merge(other: AggregateBuffer): Unit = {
+        sketch.addAll(other.asInstanceOf[ApproxDistinctBuffer].sketch)
+        compact()
+    }
+
+    override def compact(): Unit = if (hll != null) bytes = hll.getBytes
+
+    def fieldType: FieldType = FieldType.LONG
+
+    def result: Any = sketch.cardinality()
+}
+
+object ApproxDistinctBuffer {
+    /** about 1.6% of standard error */
+    val PRECISION = 12
+}
+
+class PercentileBuffer(field: String, quantile: Double) extends NumericBuffer(field) {
+    var bytes: Array[Byte] = _
+    @transient private var tdigest: TDigest = _
+
+    private def digest: TDigest = {
+        if (tdigest == null)
+            tdigest = if (bytes == null) new TDigest(PercentileBuffer.COMPRESSION)
+            else TDigest.fromBytes(ByteBuffer.wrap(bytes))
+        tdigest
+    }
+
+    def add(value: Double): Unit = digest.add(value)
+
+    def merge(other: AggregateBuffer): Unit = {
+        digest.add(other.asInstanceOf[PercentileBuffer].digest)
+        compact()
+    }
+
+    override def compact(): Unit = if (tdigest != null) {
+        val buffer = ByteBuffer.allocate(tdigest.smallByteSize())
+        tdigest.asSmallBytes(buffer)
+        bytes = buffer.array()
+    }
+
+    def fieldType: FieldType = FieldType.DOUBLE
+
+    def result: Any = if (digest.size() == 0) null else digest.quantile(quantile)
+}
+
+object PercentileBuffer {
+    val COMPRESSION = 100.0
+}
+
+/**
+  * A tumbling event time window of a group.
+  */
+case class WindowKey(start: Long, group: List[String])
+
+/**
+  * The aggregates of a window, with the latest record time they have seen.
+  */
+class WindowAggregates(val buffers: Array[AggregateBuffer], var maxTime: Long) extends Serializable {
+
+    def add(record: Record): Unit = {
+        buffers.foreach(_.add(record))
+        maxTime = math.max(maxTime, record.getTime.getTime)
+    }
+
+    def merge(other: WindowAggregates): WindowAggregates = {
+        buffers.zip(other.buffers).foreach { case (buffer, otherBuffer) => buffer.merge(otherBuffer) }
+        maxTime = math.max(maxTime, other.maxTime)
+        this
+    }
+
+    def compact(): WindowAggregates = {
+        buffers.foreach(_.compact())
+        this
+    }
+}
+
+/**
+  * Aggregates the records of a stream into tumbling event time windows, incrementally.
+  *
+  * The partial aggregates of the open windows are kept between the micro batches in a state rdd, hash partitioned
+  * so that each batch is merged into it without shuffling it. A batch outputs the windows it has updated only.
+  * The watermark follows the latest record time seen minus watermarkDelay : the windows ending before it are
+  * dropped from the state and the records falling into them are ignored.
+  *
+  * The state is checkpointed to the spark checkpoint directory when there is one, else locally, to truncate its
+  * lineage. When a stateDirectory is given, each batch also saves a snapshot of the state there, along with the
+  * watermark and the kafka offsets the state accounts for. A restarted job resumes from the last snapshot and
+  * skips the replayed records it already holds (see getPositions), so that the re-emitted windows are
+  * complete. A batch failing on a lost state partition drops the state, which the next batch restores.
+  */
+class IncrementalAggregation(groupBy: Seq[String],
+                             functions: Seq[AggregateFunction],
+                             windowDuration: Long,
+                             watermarkDelay: Long,
+                             numPartitions: Int,
+                             stateDirectory: Option[String]) {
+
+    private val logger = LoggerFactory.getLogger(classOf[IncrementalAggregation])
+
+    private val partitioner = new HashPartitioner(numPartitions)
+
+    private var state: RDD[(WindowKey, WindowAggregates)] = _
+
+    private var watermark = Long.MinValue
+
+    /** the next offset to aggregate, by topic and partition */
+    private var positions = Map[(String, Int), Long]()
+
+    private var version = 0L
+
+    def getWatermark: Long = watermark
+
+    /**
+      * The next offset to aggregate of each kafka partition (topic and partition), as saved with the state. A batch
+      * replayed after a restart, because its offsets were not committed, holds records below them which the state
+      * already accounts for.
+      */
+    def getPositions: Map[(String, Int), Long] = positions
+
+    /**
+      * Merges the records of a micro batch into the state.
+      *
+      * @param records          the records of the batch
+      * @param outputRecordType the type of the output records
+      * @param output           called with the updated windows, as records, before the state is replaced
+      */
+    def update(records: RDD[Record], outputRecordType: String, output: RDD[Record] => Unit): Unit =
+        update(records, Array.empty[OffsetRange], outputRecordType, output)
+
+    /**
+      * Merges the records of a micro batch into the state.
+      *
+      * @param records          the records of the batch
+      * @param offsetRanges     the kafka offsets of the batch, saved with the state
+      * @param outputRecordType the type of the output records
+      * @param output           called with the updated windows, as records, before the state is replaced
+      */
+    def update(records: RDD[Record],
+               offsetRanges: Array[OffsetRange],
+               outputRecordType: String,
+               output: RDD[Record] => Unit): Unit = {
+        if (state == null)
+            restore(records.sparkContext)
+
+        try {
+            merge(records, offsetRanges, outputRecordType, output)
+        } catch {
+            case e: Exception =>
+                logger.error("unable to update the aggregation state, it will be restored from its last snapshot", e)
+                state.unpersist(blocking = false)
+                state = null
+                throw e
+        }
+    }
+
+    private def merge(records: RDD[Record],
+                      offsetRanges: Array[OffsetRange],
+                      outputRecordType: String,
+                      output: RDD[Record] => Unit): Unit = {
+        val groupBy = this.groupBy
+        val functions = this.functions
+        val windowDuration = this.windowDuration
+        val currentWatermark = this.watermark
+
+        val partials = records
+            .mapPartitions(p => IncrementalAggregation.combine(p, groupBy, functions, windowDuration, currentWatermark))
+            .reduceByKey(partitioner, (left: WindowAggregates, right: WindowAggregates) => left.merge(right))
+            .persist(StorageLevel.MEMORY_AND_DISK)
+
+        val batchMaxTime = partials.values.map(_.maxTime).fold(Long.MinValue)(math.max)
+
+        // both are partitioned alike, the state stays where it is
+        val merged = state.cogroup(partials)
+            .mapValues { case (previous, updates) =>
+                // the previous aggregates are cached, a recomputed partition must find them unchanged
+                val aggregates = (previous ++ updates).foldLeft(IncrementalAggregation.empty(functions))(
+                    (left, right) => left.merge(right))
+                (aggregates.compact(), updates.nonEmpty)
+            }
+            .persist(StorageLevel.MEMORY_AND_DISK)
+
+        output(merged
+            .filter(_._2._2)
+            .map { case (key, (aggregates, _)) =>
+                IncrementalAggregation.toRecord(key, aggregates, groupBy, functions, windowDuration, outputRecordType)
+            })
+
+        if (batchMaxTime != Long.MinValue)
+            watermark = math.max(watermark, batchMaxTime - watermarkDelay)
+        val newWatermark = watermark
+        val nextState = merged
+            .filter { case (key, _) => key.start + windowDuration > newWatermark }
+            .mapValues(_._1)
+        nextState.persist(StorageLevel.MEMORY_AND_DISK)
+        if (records.sparkContext.getCheckpointDir.isDefined) {
+            nextState.checkpoint()
+        } else {
+            nextState.localCheckpoint()
+        }
+        positions = positions ++ offsetRanges.map(range => (range.topic, range.partition) -> range.untilOffset)
+        save(records.sparkContext, nextState)
+        val windows = nextState.count()
+        logger.debug(s"$windows open windows, watermark at $newWatermark")
+
+        state.unpersist(blocking = false)
+        merged.unpersist(blocking = false)
+        partials.unpersist(blocking = false)
+        state = nextState
+    }
+
+    /**
+      * Loads the last snapshot of the state directory, if any, else starts from an empty state. The first update
+      * does it, unless the positions are needed before.
+      */
+    def restore(sc: SparkContext): Unit = {
+        val snapshot = stateDirectory.flatMap(directory => {
+            val path = new Path(directory)
+            val fs = path.getFileSystem(sc.hadoopConfiguration)
+            // the previous snapshot is deleted just before the new one is renamed
+            Seq(IncrementalAggregation.SNAPSHOT, IncrementalAggregation.SNAPSHOT + ".tmp")
+                .map(new Path(path, _))
+                .find(fs.exists)
+                .map(file => {
+                    val properties = new Properties()
+                    val in = fs.open(file)
+                    try properties.load(in) finally in.close()
+                    (path, properties)
+                })
+        })
+
+        state = snapshot match {
+            case Some((path, properties)) =>
+                version = properties.getProperty("version").toLong
+                watermark = properties.getProperty("watermark").toLong
+                positions = properties.stringPropertyNames.asScala
+                    .filter(_.startsWith("offset."))
+                    .map(name => {
+                        val Array(partition, topic) = name.stripPrefix("offset.").split("\\.", 2)
+                        (topic, partition.toInt) -> properties.getProperty(name).toLong
+                    }).toMap
+                logger.info(s"restoring the aggregation state $version from $path, watermark at $watermark")
+                val statePath = new Path(path, s"state-$version")
+                val files = statePath.getFileSystem(sc.hadoopConfiguration).listStatus(statePath)
+                    .map(_.getPath)
+                    .filter(_.getName.startsWith("part-"))
+                    .map(_.toString)
+                val configuration = sc.broadcast(new SerializableWritable(sc.hadoopConfiguration))
+                sc.parallelize(files, math.max(files.length, 1))
+                    .flatMap(file => IncrementalAggregation.readPartition(new Path(file), configuration.value.value))
+                    .partitionBy(partitioner)
+                    .persist(StorageLevel.MEMORY_AND_DISK)
+            case None =>
+                sc.emptyRDD[(WindowKey, WindowAggregates)].partitionBy(partitioner)
+        }
+    }
+
+    /**
+      * Saves the state then replaces the snapshot file pointing to it, which is written last.
+      */
+    private def save(sc: SparkContext, nextState: RDD[(WindowKey, WindowAggregates)]): Unit =
+        stateDirectory.foreach(directory => {
+            val path = new Path(directory)
+            val fs = path.getFileSystem(sc.hadoopConfiguration)
+            val nextVersion = version + 1
+            val statePath = new Path(path, s"state-$nextVersion")
+            // left over by a job stopped while saving
+            fs.delete(statePath, true)
+            fs.mkdirs(statePath)
+            val target = statePath.toString
+            val configuration = sc.broadcast(new SerializableWritable(sc.hadoopConfiguration))
+            nextState.foreachPartition(partition => IncrementalAggregation.writePartition(
+                new Path(target, "part-%05d".format(TaskContext.getPartitionId())), configuration.value.value, partition))
+
+            val properties = new Properties()
+            properties.setProperty("version", nextVersion.toString)
+            properties.setProperty("watermark", watermark.toString)
+            positions.foreach { case ((topic, partition), offset) =>
+                properties.setProperty(s"offset.$partition.$topic", offset.toString)
+            }
+            val snapshot = new Path(path, IncrementalAggregation.SNAPSHOT)
+            val tmp = new Path(path, IncrementalAggregation.SNAPSHOT + ".tmp")
+            val out = fs.create(tmp, true)
+            try properties.store(out, "incremental aggregation state") finally out.close()
+            fs.delete(snapshot, false)
+            fs.rename(tmp, snapshot)
+
+            fs.delete(new Path(path, s"state-$version"), true)
+            version = nextVersion
+        })
+}
+
+object IncrementalAggregation {
+
+    val WINDOW_START = "window_start"
+    val WINDOW_END = "window_end"
+
+    private val SNAPSHOT = "snapshot.properties"
+
+    private def empty(functions: Seq[AggregateFunction]): WindowAggregates =
+        new WindowAggregates(functions.map(_.newBuffer).toArray, Long.MinValue)
+
+    /**
+      * The state files are written with the spark serializer through the hadoop filesystem rather than with
+      * saveAsObjectFile, as reading them back with a hadoop input format fails on clusters whose guava is newer
+      * than hadoop's.
+      */
+    private def writePartition(file: Path,
+                               configuration: Configuration,
+                               aggregates: Iterator[(WindowKey, WindowAggregates)]): Unit = {
+        val stream = SparkEnv.get.serializer.newInstance()
+            .serializeStream(file.getFileSystem(configuration).create(file, true))
+        try stream.writeAll(aggregates) finally stream.close()
+    }
+
+    private def readPartition(file: Path, configuration: Configuration): Seq[(WindowKey, WindowAggregates)] = {
+        val stream = SparkEnv.get.serializer.newInstance()
+            .deserializeStream(file.getFileSystem(configuration).open(file))
+        try stream.asIterator.map(_.asInstanceOf[(WindowKey, WindowAggregates)]).toVector finally stream.close()
+    }
+
+    private def combine(records: Iterator[Record],
+                        groupBy: Seq[String],
+                        functions: Seq[AggregateFunction],
+                        windowDuration: Long,
+                        watermark: Long): Iterator[(WindowKey, WindowAggregates)] = {
+        val windows = mutable.HashMap[WindowKey, WindowAggregates]()
+        records
+            .filter(r => !r.hasField(FieldDictionary.RECORD_ERRORS))
+            .foreach(record => {
+                val time = record.getTime.getTime
+                val start = time - Math.floorMod(time, windowDuration)
+                if (start + windowDuration > watermark) {
+                    val group = groupBy.map(name => {
+                        val field = record.getField(name)
+                        if (field == null || field.getRawValue == null) null else field.asString()
+                    }).toList
+                    windows.getOrElseUpdate(WindowKey(start, group), empty(functions)).add(record)
+                }
+            })
+        windows.iterator.map { case (key, aggregates) => (key, aggregates.compact()) }
+    }
+
+    private def toRecord(key: WindowKey,
+                         aggregates: WindowAggregates,
+                         groupBy: Seq[String],
+                         functions: Seq[AggregateFunction],
+                         windowDuration: Long,
+                         outputRecordType: String): Record = {
+        val record = new StandardRecord(outputRecordType)
+            .setId((key.start.toString :: key.group.map(String.valueOf)).mkString("_"))
+            .setTime(key.start)
+            .setField(WINDOW_START, FieldType.LONG, key.start)
+            .setField(WINDOW_END, FieldType.LONG, key.start + windowDuration)
+        groupBy.zip(key.group).foreach { case (name, value) =>
+            if (value != null) record.setStringField(name, value)
+        }
+        functions.zip(aggregates.buffers).foreach { case (function, buffer) =>
+            val result = buffer.result
+            if (result != null) record.setField(function.outputField, buffer.fieldType, result)
+        }
+        record
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark
+
+import com.hurence.logisland.record.{FieldDictionary, Record}
+import com.hurence.logisland.stream.StreamProperties._
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.functions.col
+import org.apache.spark.sql.{DataFrame, SaveMode}
+import org.apache.spark.streaming.kafka010.OffsetRange
+import org.slf4j.LoggerFactory
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Writes the records of the micro batches of a stream into files partitioned by record_daytime and record_type.
+  *
+  * Without a target file size each batch is written as soon as it is added, into numPartitions files per partition
+  * directory. With a target file size the batches are kept, persisted by the caller, until they hold targetFileSize
+  * bytes or the oldest one is older than maxAge ms : they are then written together, each partition directory
+  * receiving files of about targetFileSize bytes. The offsets of a buffered batch are given back only once it has
+  * been written, so that they are committed after the files.
+  *
+  * The writer lives in the driver.
+  */
+class RecordFileWriter(outPath: String,
+                       outputFormat: String,
+                       numPartitions: Int,
+                       targetFileSize: Long = 0,
+                       maxAge: Long = Long.MaxValue) {
+
+    private val logger = LoggerFactory.getLogger(classOf[RecordFileWriter])
+
+    private case class Batch(records: RDD[Record], count: Long, bytes: Long, offsetRanges: Array[OffsetRange], time: Long)
+
+    private val pending = ArrayBuffer[Batch]()
+
+    def isRolling: Boolean = targetFileSize > 0
+
+    /**
+      * Adds the records of a micro batch, writing them now or with the next batches.
+      *
+      * @param records      the records of the batch, persisted so that they are read once
+      * @param count        the number of records
+      * @param bytes        the estimated size of the records
+      * @param offsetRanges the offsets of the batch
+      * @param toDataFrame  converts the records into the dataframe to write
+      * @return the offsets which can be committed, the ones of the batches written by this call
+      */
+    def add(records: RDD[Record], count: Long, bytes: Long, offsetRanges: Array[OffsetRange],
+            toDataFrame: RDD[Record] => DataFrame): Array[OffsetRange] = {
+        if (!isRolling) {
+            try {
+                if (count > 0)
+                    write(toDataFrame(records).repartition(numPartitions), 0)
+            } finally {
+                records.unpersist(blocking = false)
+            }
+            offsetRanges
+        } else {
+            pending += Batch(records, count, bytes, offsetRanges, System.currentTimeMillis())
+            if (pending.map(_.bytes).sum >= targetFileSize)
+                flush(toDataFrame)
+            else
+                expire(toDataFrame)
+        }
+    }
+
+    /**
+      * Writes the buffered batches if the oldest one is too old.
+      *
+      * @return the offsets which can be committed
+      */
+    def expire(toDataFrame: RDD[Record] => DataFrame): Array[OffsetRange] = {
+        if (pending.nonEmpty && System.currentTimeMillis() - pending.head.time >= maxAge)
+            flush(toDataFrame)
+        else
+            Array.empty
+    }
+
+    /**
+      * Writes the buffered batches.
+      *
+      * @return the offsets which can be committed
+      */
+    def flush(toDataFrame: RDD[Record] => DataFrame): Array[OffsetRange] = {
+        val batches = pending.filter(_.count > 0)
+        if (batches.nonEmpty) {
+            val records = if (batches.size == 1) batches.head.records
+            else batches.head.records.sparkContext.union(batches.map(_.records))
+            val count = batches.map(_.count).sum
+            val bytes = batches.map(_.bytes).sum
+
+            // a partition directory is written by a single task, which splits it into files of the target size
+            val tasks = math.max(1, math.ceil(bytes.toDouble / targetFileSize).toInt)
+            val recordsPerFile = math.max(1L, (count.toDouble * targetFileSize / math.max(1L, bytes)).toLong)
+            logger.info(s"writing $count records ($bytes bytes) of ${batches.size} batches")
+            write(toDataFrame(records)
+                .repartition(tasks, col(FieldDictionary.RECORD_DAYTIME), col(FieldDictionary.RECORD_TYPE)),
+                recordsPerFile)
+        }
+
+        // a failed write keeps the batches, whose offsets are not committed
+        pending.foreach(_.records.unpersist(blocking = false))
+        val offsetRanges = pending.flatMap(_.offsetRanges).toArray
+        pending.clear()
+        offsetRanges
+    }
+
+    private def write(df: DataFrame, maxRecordsPerFile: Long): Unit = {
+        val writer = df.write
+            .partitionBy(FieldDictionary.RECORD_DAYTIME, FieldDictionary.RECORD_TYPE)
+            .mode(SaveMode.Append)
+        if (maxRecordsPerFile > 0)
+            writer.option("maxRecordsPerFile", maxRecordsPerFile)
+
+        outputFormat match {
+            case FILE_FORMAT_PARQUET => writer.parquet(outPath)
+            case FILE_FORMAT_JSON => writer.json(outPath)
+            case FILE_FORMAT_ORC => writer.orc(outPath)
+            case FILE_FORMAT_TXT => writer.text(outPath)
+            case _ => throw new IllegalArgumentException(s"$outputFormat not supported yet")
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+  * Copyright (C) 2016 Hurence (support@hurence.com)
+  *
+  * Licensed under the Apache License, Version 2.0 (the "License");
+  * you may not use this file except in compliance with the License.
+  * You may obtain a copy of the License at
+  *
+  * http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+package com.hurence.logisland.util.spark
+
+import java.io._
+import java.nio.charset.StandardCharsets
+
+import com.hurence.logisland.record._
+import org.apache.avro.Schema
+import org.apache.avro.Schema.Type
+import org.apache.spark.sql.catalyst.encoders.{ExpressionEncoder, RowEncoder}
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.types._
+import org.apache.spark.sql.Row
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+/**
+  * Maps records to Spark SQL rows laid out after a declared schema, so that structured streams can
+  * shuffle, filter and keep state on columns instead of opaque kryo blobs.
+  *
+  * Every row starts with the record_id, record_type and record_time columns, followed by the declared
+  * columns. Fields that are not declared, whose type differs from the declared column type or whose
+  * value is null, are kept serialized in the trailing record_extra_fields map column so that no data
+  * is lost on the way back to a record. A null column thus means that the field is either absent or
+  * in the extra fields : a record has a field if its column is not null or the extra fields hold it.
+  *
+  * @param declaredSchema         the columns declared for the records
+  * @param recordImplementation the kind of records rebuilt from the rows
+  */
+class RecordRowEncoding(declaredSchema: StructType,
+                        recordImplementation: RecordImplementation = RecordImplementation.STANDARD) extends Serializable {
+
+  import RecordRowEncoding._
+
+  val schema: StructType = {
+    val technical = Seq(
+      StructField(FieldDictionary.RECORD_ID, DataTypes.StringType, nullable = true),
+      StructField(FieldDictionary.RECORD_TYPE, DataTypes.StringType, nullable = true),
+      StructField(FieldDictionary.RECORD_TIME, DataTypes.LongType, nullable = true))
+    val declared = declaredSchema.fields
+      .filterNot(f => f.name == EXTRA_FIELDS || technical.exists(_.name == f.name))
+      .map(f => f.copy(nullable = true))
+    StructType(technical ++ declared :+
+      StructField(EXTRA_FIELDS, DataTypes.createMapType(DataTypes.StringType, DataTypes.BinaryType), nullable = true))
+  }
+
+  private val columns: Array[StructField] = schema.fields.dropRight(1)
+
+  private val columnIndex: Map[String, Int] = columns.map(_.name).zipWithIndex.toMap
+
+  /**
+    * @return the encoder of the rows built by this encoding
+    */
+  def encoder: ExpressionEncoder[Row] = RowEncoder(schema)
+
+  /**
+    * @return true if the given field is stored in its own column
+    */
+  def isColumn(name: String): Boolean = columnIndex.contains(name)
+
+  /**
+    * @return the value of a field of a row as a string, wherever it is stored
+    */
+  def getString(row: Row, name: String): String = {
+    columnIndex.get(name) match {
+      case Some(i) if !row.isNullAt(i) => String.valueOf(row.get(i))
+      case _ =>
+        if (row.isNullAt(columns.length))
+          null
+        else
+          row.getMap[String, Array[Byte]](columns.length).get(name)
+            .map(bytes => deserializeField(bytes).asString())
+            .orNull
+    }
+  }
+
+  def toRow(record: Record): Row = {
+    val values = new Array[Any](schema.length)
+    var extraFields: mutable.Map[String, Array[Byte]] = null
+
+    record.getAllFields.foreach(field => {
+      val converted = columnIndex.get(field.getName).exists(i => toColumnValue(field, columns(i).dataType) match {
+        case Some(value) =>
+          values(i) = value
+          true
+        case None => false
+      })
+      if (!converted) {
+        if (extraFields == null)
+          extraFields = mutable.HashMap.empty
+        extraFields.put(field.getName, serializeField(field))
+      }
+    })
+
+    if (extraFields != null)
+      values(columns.length) = extraFields.toMap
+    new GenericRowWithSchema(values, schema)
+  }
+
+  def toRecord(row: Row): Record = {
+    val record = recordImplementation.newRecord()
+
+    var i = 0
+    while (i < columns.length) {
+      if (!row.isNullAt(i)) {
+        val column = columns(i)
+        column.dataType match {
+          case DataTypes.StringType => record.setField(column.name, FieldType.STRING, row.getString(i))
+          case DataTypes.IntegerType => record.setField(column.name, FieldType.INT, row.getInt(i))
+          case DataTypes.LongType => record.setField(column.name, FieldType.LONG, row.getLong(i))
+          case DataTypes.FloatType => record.setField(column.name, FieldType.FLOAT, row.getFloat(i))
+          case DataTypes.DoubleType => record.setField(column.name, FieldType.DOUBLE, row.getDouble(i))
+          case DataTypes.BooleanType => record.setField(column.name, FieldType.BOOLEAN, row.getBoolean(i))
+          case DataTypes.BinaryType => record.setField(column.name, FieldType.BYTES, row.getAs[Array[Byte]](i))
+        }
+      }
+      i += 1
+    }
+
+    if (!row.isNullAt(columns.length)) {
+      row.getMap[String, Array[Byte]](columns.length).foreach {
+        case (_, bytes) => record.setField(deserializeField(bytes))
+      }
+    }
+    record
+  }
+
+  /**
+    * only fields whose type matches the column type exactly are stored in it, so that a record
+    * always comes back with the very same field types. Null values are not, as a null column
+    * stands for an absent field.
+    */
+  private def toColumnValue(field: Field, dataType: DataType): Option[Any] = {
+    val value = field.getRawValue
+    if (value == null)
+      return None
+
+    (field.getType, dataType, value) match {
+      case (FieldType.STRING, DataTypes.StringType, v: String) => Some(v)
+      case (FieldType.INT, DataTypes.IntegerType, v: java.lang.Integer) => Some(v.intValue())
+      case (FieldType.LONG, DataTypes.LongType, v: java.lang.Long) => Some(v.longValue())
+      case (FieldType.FLOAT, DataTypes.FloatType, v: java.lang.Float) => Some(v.floatValue())
+      case (FieldType.DOUBLE, DataTypes.DoubleType, v: java.lang.Double) => Some(v.doubleValue())
+      case (FieldType.BOOLEAN, DataTypes.BooleanType, v: java.lang.Boolean) => Some(v.booleanValue())
+      case (FieldType.BYTES, DataTypes.BinaryType, v: Array[Byte]) => Some(v)
+      case _ => None
+    }
+  }
+}
+
+object RecordRowEncoding {
+
+  /**
+    * the name of the column holding the fields that have no column of their own
+    */
+  val EXTRA_FIELDS = "record_extra_fields"
+
+  /**
+    * Builds an encoding whose columns are the primitive fields of an avro record schema.
+    * Fields of any other avro type are not declared and end up in the extra fields column.
+    */
+  def fromAvroSchema(avroSchema: String,
+                     recordImplementation: RecordImplementation = RecordImplementation.STANDARD): RecordRowEncoding = {
+    val schema = new Schema.Parser().parse(avroSchema)
+    val fields = schema.getFields.flatMap(field => toDataType(field.schema()).map(StructField(field.name(), _, nullable = true)))
+    new RecordRowEncoding(StructType(fields), recordImplementation)
+  }
+
+  private def toDataType(schema: Schema): Option[DataType] = schema.getType match {
+    case Type.UNION =>
+      schema.getTypes.filter(_.getType != Type.NULL) match {
+        case Seq(single) => toDataType(single)
+        case _ => None
+      }
+    case Type.STRING | Type.ENUM => Some(DataTypes.StringType)
+    case Type.INT => Some(DataTypes.IntegerType)
+    case Type.LONG => Some(DataTypes.LongType)
+    case Type.FLOAT => Some(DataTypes.FloatType)
+    case Type.DOUBLE => Some(DataTypes.DoubleType)
+    case Type.BOOLEAN => Some(DataTypes.BooleanType)
+    case Type.BYTES => Some(DataTypes.BinaryType)
+    case _ => None
+  }
+
+  /**
+    * scalar fields are written as their type followed by their value, anything else is java serialized
+    */
+  private def serializeField(field: Field): Array[Byte] = {
+    val baos = new ByteArrayOutputStream(32)
+    val out = new DataOutputStream(baos)
+    writeString(out, field.getName)
+    out.writeByte(field.getType.ordinal())
+    (field.getType, field.getRawValue) match {
+      case (FieldType.STRING, v: String) => out.writeByte(STRING_VALUE); writeString(out, v)
+      case (FieldType.INT, v: java.lang.Integer) => out.writeByte(INT_VALUE); out.writeInt(v)
+      case (FieldType.LONG, v: java.lang.Long) => out.writeByte(LONG_VALUE); out.writeLong(v)
+      case (FieldType.FLOAT, v: java.lang.Float) => out.writeByte(FLOAT_VALUE); out.writeFloat(v)
+      case (FieldType.DOUBLE, v: java.lang.Double) => out.writeByte(DOUBLE_VALUE); out.writeDouble(v)
+      case (FieldType.BOOLEAN, v: java.lang.Boolean) => out.writeByte(BOOLEAN_VALUE); out.writeBoolean(v)
+      case (_, null) => out.writeByte(NULL_VALUE)
+      case (_, v) =>
+        out.writeByte(OBJECT_VALUE)
+        val oos = new ObjectOutputStream(out)
+        oos.writeObject(v)
+        oos.flush()
+    }
+    out.close()
+    baos.toByteArray
+  }
+
+  private def deserializeField(bytes: Array[Byte]): Field = {
+    val in = new DataInputStream(new ByteArrayInputStream(bytes))
+    try {
+      val name = readString(in)
+      val fieldType = FieldType.values()(in.readByte())
+      val value: Any = in.readByte().toInt match {
+        case STRING_VALUE => readString(in)
+        case INT_VALUE => in.readInt()
+        case LONG_VALUE => in.readLong()
+        case FLOAT_VALUE => in.readFloat()
+        case DOUBLE_VALUE => in.readDouble()
+        case BOOLEAN_VALUE => in.readBoolean()
+        case NULL_VALUE => null
+        case OBJECT_VALUE => new ObjectInputStream(in).readObject()
+      }
+      new Field(name, fieldType, value.asInstanceOf[AnyRef])
+    } finally {
+      in.close()
+    }
+  }
+
+  private def writeString(out: DataOutputStream, value: String): Unit = {
+    val bytes = value.getBytes(StandardCharsets.UTF_8)
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readString(in: DataInputStream): String = {
+    val bytes = new Array[Byte](in.readInt())
+    in.readFully(bytes)
+    new String(bytes, StandardCharsets.UTF_8)
+  }
+
+  private final val NULL_VALUE = 0
+  private final val STRING_VALUE = 1
+  private final val INT_VALUE = 2
+  private final val LONG_VALUE = 3
+  private final val FLOAT_VALUE = 4
+  private final val DOUBLE_VALUE = 5
+  private final val BOOLEAN_VALUE = 6
+  private final val OBJECT_VALUE = 7
+}
@@ -239,6 +239,25 @@ object SparkUtils extends LazyLogging {
         )
     }
 
+    /**
+      * create a dataframe schema from several Records, made of all their fields.
+      * A field having different types in the records is typed as a string.
+      *
+      * @param records the Records to infer schema
+      * @return th schema
+      */
+    def convertFieldsNameToSchema(records: Seq[Record]): StructType = {
+        val fields = new util.TreeMap[String, StructField]()
+        records.map(convertFieldsNameToSchema).foreach(schema => schema.fields.foreach(field => {
+            val previous = fields.get(field.name)
+            if (previous == null)
+                fields.put(field.name, field)
+            else if (previous.dataType != field.dataType)
+                fields.put(field.name, StructField(field.name, DataTypes.StringType, nullable = true))
+        }))
+        StructType(fields.values().toArray(Array[StructField]()))
+    }
+
     /**
       * create a dataframe schema from an Avro one
       *
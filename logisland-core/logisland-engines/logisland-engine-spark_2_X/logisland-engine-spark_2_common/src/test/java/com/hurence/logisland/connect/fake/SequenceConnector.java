@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.connect.fake;
+
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.connect.connector.Task;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.source.SourceConnector;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.apache.kafka.connect.source.SourceTask;
+
+import java.util.*;
+
+/**
+ * A single task connector numbering its records, which can be asked to reconfigure its task.
+ */
+public class SequenceConnector extends SourceConnector {
+
+    public static final Map<String, Object> PARTITION = Collections.singletonMap("source", "sequence");
+    public static final String POSITION = "position";
+
+    private static volatile SequenceConnector instance;
+
+    public static class SequenceTask extends SourceTask {
+
+        private long position;
+
+        @Override
+        public void start(Map<String, String> props) {
+            Map<String, Object> offset = context.offsetStorageReader().offset(PARTITION);
+            position = offset == null ? 0 : ((Number) offset.get(POSITION)).longValue();
+        }
+
+        @Override
+        public List<SourceRecord> poll() throws InterruptedException {
+            Thread.sleep(10);
+            List<SourceRecord> records = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                position++;
+                records.add(new SourceRecord(PARTITION, Collections.singletonMap(POSITION, position), "",
+                        Schema.STRING_SCHEMA, "record" + position));
+            }
+            return records;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String version() {
+            return "1.0";
+        }
+    }
+
+    /**
+     * asks the last started connector to reconfigure its task
+     */
+    public static void requestTaskReconfiguration() {
+        instance.context.requestTaskReconfiguration();
+    }
+
+    @Override
+    public String version() {
+        return "1.0";
+    }
+
+    @Override
+    public void start(Map<String, String> props) {
+        instance = this;
+    }
+
+    @Override
+    public Class<? extends Task> taskClass() {
+        return SequenceTask.class;
+    }
+
+    @Override
+    public List<Map<String, String>> taskConfigs(int maxTasks) {
+        return Collections.singletonList(Collections.emptyMap());
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public ConfigDef config() {
+        return new ConfigDef();
+    }
+}
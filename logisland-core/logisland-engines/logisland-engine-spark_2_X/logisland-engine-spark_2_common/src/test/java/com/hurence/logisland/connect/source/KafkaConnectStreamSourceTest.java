@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.connect.source;
+
+import com.hurence.logisland.connect.fake.SequenceConnector;
+import org.apache.kafka.connect.json.JsonConverter;
+import org.apache.kafka.connect.storage.*;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.execution.streaming.Offset;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.Option;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class KafkaConnectStreamSourceTest {
+
+    private static final String STREAM_ID = "kafka_connect_source_test";
+
+    private static SparkSession spark;
+
+    @BeforeClass
+    public static void setUp() {
+        spark = SparkSession.builder()
+                .master("local[1]")
+                .appName("KafkaConnectStreamSourceTest")
+                .config("spark.ui.enabled", "false")
+                .getOrCreate();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        spark.stop();
+    }
+
+    private static Converter jsonConverter(boolean isKey) {
+        JsonConverter converter = new JsonConverter();
+        converter.configure(Collections.singletonMap("schemas.enable", "false"), isKey);
+        return converter;
+    }
+
+    private static Offset nextOffset(KafkaConnectStreamSource source) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        Option<Offset> offset;
+        while ((offset = source.getOffset()).isEmpty()) {
+            Assert.assertTrue("no record was polled", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        return offset.get();
+    }
+
+    private static long committedPosition(OffsetBackingStore store) {
+        OffsetStorageReader reader = new OffsetStorageReaderImpl(store,
+                STREAM_ID + "#" + SequenceConnector.class.getName() + "-1", jsonConverter(true), jsonConverter(false));
+        Map<String, Object> offset = reader.offset(SequenceConnector.PARTITION);
+        return offset == null ? 0 : ((Number) offset.get(SequenceConnector.POSITION)).longValue();
+    }
+
+    @Test
+    public void recordsPolledBeforeAReconfigurationAreCommitted() throws Exception {
+        final OffsetBackingStore store = new MemoryOffsetBackingStore();
+        final KafkaConnectStreamSource source = new KafkaConnectStreamSource(spark.sqlContext(), Collections.emptyMap(),
+                new StringConverter(), new StringConverter(), store, 1, SequenceConnector.class.getName(), STREAM_ID,
+                1024 * 1024, 25, 1);
+        source.start();
+        try {
+            final Offset end = nextOffset(source);
+            source.getBatch(Option.empty(), end);
+            final long batchEnd = Long.parseLong(end.json());
+
+            SequenceConnector.requestTaskReconfiguration();
+            source.commit(end);
+            Assert.assertEquals(batchEnd, committedPosition(store));
+
+            // the new task restarted from the offsets committed before the reconfiguration, then commits its own
+            final long deadline = System.currentTimeMillis() + 10000;
+            Offset last = end;
+            while (committedPosition(store) <= batchEnd) {
+                Assert.assertTrue("the new task did not commit", System.currentTimeMillis() < deadline);
+                final Offset next = nextOffset(source);
+                source.getBatch(Option.apply(last), next);
+                source.commit(next);
+                last = next;
+            }
+        } finally {
+            source.stop();
+        }
+    }
+}
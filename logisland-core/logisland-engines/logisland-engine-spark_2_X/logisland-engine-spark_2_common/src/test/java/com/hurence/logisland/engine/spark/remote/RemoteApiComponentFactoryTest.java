@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.engine.spark.remote;
+
+import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.engine.AbstractProcessingEngine;
+import com.hurence.logisland.engine.EngineContext;
+import com.hurence.logisland.engine.StandardEngineContext;
+import com.hurence.logisland.engine.spark.remote.mock.MockProcessor;
+import com.hurence.logisland.engine.spark.remote.mock.MockServiceController;
+import com.hurence.logisland.engine.spark.remote.mock.MockStream;
+import com.hurence.logisland.engine.spark.remote.model.*;
+import com.hurence.logisland.processor.ProcessContext;
+import org.apache.spark.SparkConf;
+import org.apache.spark.SparkContext;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RemoteApiComponentFactoryTest {
+
+    private static SparkContext sparkContext;
+
+    private RemoteApiComponentFactory factory;
+    private MockEngine engine;
+    private EngineContext engineContext;
+
+    private static class MockEngine extends AbstractProcessingEngine {
+        int starts = 0;
+        int resets = 0;
+
+        @Override
+        public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void start(EngineContext engineContext) {
+            starts++;
+        }
+
+        @Override
+        public void shutdown(EngineContext engineContext) {
+        }
+
+        @Override
+        public void awaitTermination(EngineContext engineContext) {
+        }
+
+        @Override
+        public void reset(EngineContext engineContext) {
+            resets++;
+            engineContext.getStreamContexts().clear();
+            engineContext.getControllerServiceConfigurations().clear();
+        }
+    }
+
+    @BeforeClass
+    public static void setUpSpark() {
+        sparkContext = new SparkContext(new SparkConf()
+                .setMaster("local[1]")
+                .setAppName("RemoteApiComponentFactoryTest")
+                .set("spark.ui.enabled", "false"));
+    }
+
+    @AfterClass
+    public static void tearDownSpark() {
+        sparkContext.stop();
+    }
+
+    @Before
+    public void setUp() {
+        factory = new RemoteApiComponentFactory();
+        engine = new MockEngine();
+        engineContext = new StandardEngineContext(engine, "engine");
+    }
+
+    private static Processor processor(String name, String value) {
+        Processor processor = new Processor();
+        processor.name(name).component(MockProcessor.class.getName())
+                .addConfigItem(new Property().key("mock.property").value(value));
+        return processor;
+    }
+
+    private static DataFlow dataflow(OffsetDateTime lastModified, String serviceValue, Processor... processors) {
+        Service service = new Service();
+        service.name("service").component(MockServiceController.class.getName())
+                .addConfigItem(new Property().key("mock.property").value(serviceValue));
+        Stream stream = new Stream();
+        stream.name("stream").component(MockStream.class.getName());
+        Pipeline pipeline = new Pipeline().processors(new ArrayList<>(Arrays.asList(processors)));
+        pipeline.lastModified(lastModified);
+        stream.setPipeline(pipeline);
+        DataFlow dataflow = new DataFlow();
+        dataflow.setServices(new ArrayList<>(Collections.singletonList(service)));
+        dataflow.setStreams(new ArrayList<>(Collections.singletonList(stream)));
+        dataflow.lastModified(lastModified);
+        return dataflow;
+    }
+
+    private List<ProcessContext> runningProcessContexts() {
+        return new ArrayList<>(engineContext.getStreamContexts().iterator().next().getProcessContexts());
+    }
+
+    @Test
+    public void testPipelineChangeKeepsUnchangedProcessors() {
+        final OffsetDateTime t0 = OffsetDateTime.now();
+        final DataFlow initial = dataflow(t0, "a", processor("p1", "a"), processor("p2", "a"));
+        Assert.assertTrue(factory.updateEngineContext(sparkContext, engineContext, initial, null));
+        Assert.assertEquals(1, engine.starts);
+        final List<ProcessContext> before = runningProcessContexts();
+        final long version = PipelineConfigurationBroadcastWrapper.getInstance().getVersion();
+
+        final DataFlow updated = dataflow(t0.plusMinutes(1), "a", processor("p1", "a"), processor("p2", "b"));
+        Assert.assertTrue(factory.updateEngineContext(sparkContext, engineContext, updated, initial));
+
+        // no restart, p1 is kept as is, p2 is a new one
+        Assert.assertEquals(1, engine.starts);
+        Assert.assertEquals(1, engine.resets);
+        final List<ProcessContext> after = runningProcessContexts();
+        Assert.assertSame(before.get(0), after.get(0));
+        Assert.assertNotSame(before.get(1), after.get(1));
+        Assert.assertEquals(version + 1, PipelineConfigurationBroadcastWrapper.getInstance().getVersion());
+        Assert.assertEquals(after, new ArrayList<>(PipelineConfigurationBroadcastWrapper.getInstance().get("stream")));
+    }
+
+    @Test
+    public void testServiceChangeRestarts() {
+        final OffsetDateTime t0 = OffsetDateTime.now();
+        final DataFlow initial = dataflow(t0, "a", processor("p1", "a"));
+        Assert.assertTrue(factory.updateEngineContext(sparkContext, engineContext, initial, null));
+
+        final DataFlow updated = dataflow(t0.plusMinutes(1), "b", processor("p1", "a"));
+        Assert.assertTrue(factory.updateEngineContext(sparkContext, engineContext, updated, initial));
+        Assert.assertEquals(2, engine.starts);
+        Assert.assertEquals(2, engine.resets);
+    }
+
+    @Test
+    public void testInvalidDataflowKeepsRunningOne() {
+        final OffsetDateTime t0 = OffsetDateTime.now();
+        final DataFlow initial = dataflow(t0, "a", processor("p1", "a"));
+        Assert.assertTrue(factory.updateEngineContext(sparkContext, engineContext, initial, null));
+        final List<ProcessContext> before = runningProcessContexts();
+
+        final Processor unknown = processor("p1", "a");
+        unknown.component("com.hurence.logisland.processor.DoesNotExist");
+        final DataFlow updated = dataflow(t0.plusMinutes(1), "a", unknown);
+        Assert.assertFalse(factory.updateEngineContext(sparkContext, engineContext, updated, initial));
+        Assert.assertEquals(1, engine.starts);
+        Assert.assertEquals(before, runningProcessContexts());
+
+        final DataFlow restart = dataflow(t0.plusMinutes(2), "b", unknown);
+        Assert.assertFalse(factory.updateEngineContext(sparkContext, engineContext, restart, initial));
+        Assert.assertEquals(1, engine.resets);
+    }
+}
@@ -19,15 +19,25 @@ import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.processor.AbstractProcessor;
 import com.hurence.logisland.processor.ProcessContext;
 import com.hurence.logisland.record.Record;
+import com.hurence.logisland.validator.StandardValidators;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 public class MockProcessor extends AbstractProcessor {
+    public static final PropertyDescriptor MOCK_PROPERTY = new PropertyDescriptor.Builder()
+            .name("mock.property")
+            .description("a property without any effect")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return new ArrayList<>();
+        final List<PropertyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(MOCK_PROPERTY);
+        return descriptors;
     }
 
     @Override
@@ -17,13 +17,23 @@ package com.hurence.logisland.engine.spark.remote.mock;
 
 import com.hurence.logisland.component.PropertyDescriptor;
 import com.hurence.logisland.controller.AbstractControllerService;
+import com.hurence.logisland.validator.StandardValidators;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class MockServiceController extends AbstractControllerService {
+    public static final PropertyDescriptor MOCK_PROPERTY = new PropertyDescriptor.Builder()
+            .name("mock.property")
+            .description("a property without any effect")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
     @Override
     public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return new ArrayList<>();
+        final List<PropertyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(MOCK_PROPERTY);
+        return descriptors;
     }
 }
\ No newline at end of file
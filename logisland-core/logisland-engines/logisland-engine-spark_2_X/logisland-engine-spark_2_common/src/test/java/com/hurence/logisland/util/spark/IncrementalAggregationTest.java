@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark;
+
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.apache.commons.io.FileUtils;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.streaming.kafka010.OffsetRange;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.Option;
+import scala.Tuple2;
+import scala.collection.JavaConversions;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.BoxedUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+public class IncrementalAggregationTest {
+
+    private static SparkSession spark;
+    private static JavaSparkContext sc;
+
+    @BeforeClass
+    public static void setUp() {
+        spark = SparkSession.builder()
+                .master("local[2]")
+                .appName("IncrementalAggregationTest")
+                .config("spark.ui.enabled", "false")
+                .config("spark.serializer", "org.apache.spark.serializer.KryoSerializer")
+                .getOrCreate();
+        sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        spark.stop();
+    }
+
+    /**
+     * collects the records output by a batch, keyed by id
+     */
+    private static class Output extends AbstractFunction1<RDD<Record>, BoxedUnit> {
+
+        final Map<String, Record> records = new HashMap<>();
+
+        @Override
+        public BoxedUnit apply(RDD<Record> output) {
+            records.clear();
+            for (Record record : output.toJavaRDD().collect()) {
+                records.put(record.getId(), record);
+            }
+            return BoxedUnit.UNIT;
+        }
+    }
+
+    private static Record record(long time, String host, long bytes) {
+        return new StandardRecord("apache_log")
+                .setTime(time)
+                .setStringField("host", host)
+                .setLongField("bytes_out", bytes);
+    }
+
+    private static IncrementalAggregation aggregation(String functions, long windowDuration, long watermarkDelay) {
+        return aggregation(functions, windowDuration, watermarkDelay, Option.<String>empty());
+    }
+
+    private static IncrementalAggregation aggregation(String functions, long windowDuration, long watermarkDelay,
+                                                      Option<String> stateDirectory) {
+        return new IncrementalAggregation(
+                JavaConversions.asScalaBuffer(Collections.singletonList("host")),
+                AggregateFunction.parse(functions),
+                windowDuration, watermarkDelay, 2, stateDirectory);
+    }
+
+    private static void update(IncrementalAggregation aggregation, Output output, Record... records) {
+        aggregation.update(sc.parallelize(Arrays.asList(records), 2).rdd(), "host_stats", output);
+    }
+
+    @Test
+    public void testParse() {
+        final List<AggregateFunction> functions = JavaConversions.seqAsJavaList(AggregateFunction.parse(
+                "count(), count(host), sum(bytes_out), avg(bytes_out), approx_distinct(host), percentile(bytes_out, 0.95)"));
+        Assert.assertEquals(6, functions.size());
+        Assert.assertEquals("count", functions.get(0).outputField());
+        Assert.assertEquals("count_host", functions.get(1).outputField());
+        Assert.assertEquals("sum_bytes_out", functions.get(2).outputField());
+        Assert.assertEquals("avg_bytes_out", functions.get(3).outputField());
+        Assert.assertEquals("approx_distinct_host", functions.get(4).outputField());
+        Assert.assertEquals("percentile_95_bytes_out", functions.get(5).outputField());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFunction() {
+        AggregateFunction.parse("count(), median(bytes_out)");
+    }
+
+    @Test
+    public void testUpdatedWindowsOnly() {
+        final IncrementalAggregation aggregation =
+                aggregation("count(), sum(bytes_out), min(bytes_out), max(bytes_out), avg(bytes_out)", 60000, 60000);
+        final Output output = new Output();
+
+        update(aggregation, output,
+                record(1000, "a", 10), record(2000, "a", 20), record(3000, "a", 30), record(4000, "b", 5));
+        Assert.assertEquals(2, output.records.size());
+        Assert.assertEquals(3L, output.records.get("0_a").getField("count").asLong().longValue());
+        Assert.assertEquals(1L, output.records.get("0_b").getField("count").asLong().longValue());
+
+        // the second batch only touches the window of a, which goes on from the first batch
+        update(aggregation, output, record(5000, "a", 40), record(6000, "a", 50));
+        Assert.assertEquals(1, output.records.size());
+        final Record a = output.records.get("0_a");
+        Assert.assertEquals(5L, a.getField("count").asLong().longValue());
+        Assert.assertEquals(150.0, a.getField("sum_bytes_out").asDouble(), 0.0);
+        Assert.assertEquals(10.0, a.getField("min_bytes_out").asDouble(), 0.0);
+        Assert.assertEquals(50.0, a.getField("max_bytes_out").asDouble(), 0.0);
+        Assert.assertEquals(30.0, a.getField("avg_bytes_out").asDouble(), 0.0);
+        Assert.assertEquals("a", a.getField("host").asString());
+        Assert.assertEquals(0L, a.getField(IncrementalAggregation.WINDOW_START()).asLong().longValue());
+        Assert.assertEquals(60000L, a.getField(IncrementalAggregation.WINDOW_END()).asLong().longValue());
+    }
+
+    @Test
+    public void testWatermark() {
+        final IncrementalAggregation aggregation = aggregation("count()", 1000, 0);
+        final Output output = new Output();
+
+        update(aggregation, output, record(5500, "a", 1));
+        Assert.assertEquals(5500L, aggregation.getWatermark());
+        Assert.assertEquals(1, output.records.size());
+
+        // 1500 is behind the watermark, 7100 opens a window and closes the one of 5500
+        update(aggregation, output, record(1500, "a", 1), record(7100, "a", 1));
+        Assert.assertEquals(1, output.records.size());
+        Assert.assertTrue(output.records.containsKey("7000_a"));
+
+        update(aggregation, output, record(5900, "a", 1), record(7200, "a", 1));
+        Assert.assertEquals(1, output.records.size());
+        Assert.assertEquals(2L, output.records.get("7000_a").getField("count").asLong().longValue());
+    }
+
+    @Test
+    public void testSketches() {
+        final IncrementalAggregation aggregation =
+                aggregation("approx_distinct(bytes_out), percentile(bytes_out, 0.5), percentile(bytes_out, 0.99)", 60000, 60000);
+        final Output output = new Output();
+
+        for (int batch = 0; batch < 2; batch++) {
+            final Record[] records = new Record[500];
+            for (int i = 0; i < records.length; i++) {
+                final int value = batch * 500 + i;
+                records[i] = record(value, "a", value % 200);
+            }
+            update(aggregation, output, records);
+        }
+        final Record a = output.records.get("0_a");
+        Assert.assertEquals(200.0, a.getField("approx_distinct_bytes_out").asLong(), 200 * 0.05);
+        Assert.assertEquals(100.0, a.getField("percentile_50_bytes_out").asDouble(), 5.0);
+        Assert.assertEquals(198.0, a.getField("percentile_99_bytes_out").asDouble(), 3.0);
+    }
+
+    @Test
+    public void testRestart() throws IOException {
+        final File directory = Files.createTempDirectory("aggregation").toFile();
+        try {
+            final Option<String> stateDirectory = Option.apply(directory.getAbsolutePath());
+            final Output output = new Output();
+
+            final IncrementalAggregation aggregation =
+                    aggregation("count(), sum(bytes_out), approx_distinct(bytes_out)", 60000, 1000, stateDirectory);
+            aggregation.update(sc.parallelize(Arrays.asList(record(1000, "a", 10), record(2000, "a", 20)), 2).rdd(),
+                    new OffsetRange[]{OffsetRange.create("logs", 0, 0, 2)}, "host_stats", output);
+            aggregation.update(sc.parallelize(Arrays.asList(record(3000, "a", 30)), 2).rdd(),
+                    new OffsetRange[]{OffsetRange.create("logs", 0, 2, 3)}, "host_stats", output);
+
+            // a restarted job resumes from the saved state, with the watermark and offsets it accounts for
+            final IncrementalAggregation restarted =
+                    aggregation("count(), sum(bytes_out), approx_distinct(bytes_out)", 60000, 1000, stateDirectory);
+            restarted.restore(sc.sc());
+            Assert.assertEquals(2000L, restarted.getWatermark());
+            Assert.assertEquals(3L, (long) restarted.getPositions().apply(new Tuple2<>("logs", 0)));
+
+            restarted.update(sc.parallelize(Arrays.asList(record(4000, "a", 40)), 2).rdd(),
+                    new OffsetRange[]{OffsetRange.create("logs", 0, 3, 4)}, "host_stats", output);
+            final Record a = output.records.get("0_a");
+            Assert.assertEquals(4L, a.getField("count").asLong().longValue());
+            Assert.assertEquals(100.0, a.getField("sum_bytes_out").asDouble(), 0.0);
+            Assert.assertEquals(4L, a.getField("approx_distinct_bytes_out").asLong().longValue());
+            Assert.assertEquals(4L, (long) restarted.getPositions().apply(new Tuple2<>("logs", 0)));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark;
+
+import com.hurence.logisland.component.InitializationException;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.RecordImplementation;
+import com.hurence.logisland.stream.spark.structured.provider.RateStructuredStreamProviderService;
+import com.hurence.logisland.util.runner.MockControllerServiceInitializationContext;
+import com.hurence.logisland.util.runner.MockControllerServiceLookup;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.SparkSession;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second of a stream reading 200k apache logs from the rate provider and grouping them by host, either
+ * as kryo blobs or as the typed rows of a {@link RecordRowEncoding}. The columnar encoding only applies to the group
+ * by stage: the provider hands kryo encoded records over in both cases.
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RateProviderEncodingBenchmark {
+
+    private static final int RECORDS = 200000;
+
+    // the rate provider reads every csv column as a string
+    private static final String AVRO_SCHEMA = "{ \"type\": \"record\", \"name\": \"apache_log\", \"fields\": [" +
+            "{ \"name\": \"host\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"request\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"status\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"bytes_out\", \"type\": [\"null\", \"string\"] }" +
+            "] }";
+
+    @Param({"kryo", "columnar"})
+    public String encoding;
+
+    private File csv;
+    private SparkSession spark;
+    private Dataset<Record> dataset;
+    private RecordRowEncoding rowEncoding;
+
+    @Setup
+    public void setup() throws IOException, InitializationException {
+        csv = File.createTempFile("apache_logs", ".csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv.toPath(), StandardCharsets.UTF_8))) {
+            out.println("host,request,status,bytes_out");
+            for (int i = 0; i < RECORDS; i++) {
+                out.println("host" + (i % 10) + ",GET /page" + i + " HTTP/1.1,200," + 1024L * i);
+            }
+        }
+
+        final RateStructuredStreamProviderService provider = new RateStructuredStreamProviderService();
+        final MockControllerServiceInitializationContext context =
+                new MockControllerServiceInitializationContext(provider, "rate_provider", new MockControllerServiceLookup());
+        context.setProperty(provider.LOCAL_FILE_INPUT_PATH().getName(), csv.getAbsolutePath());
+        provider.init(context);
+
+        spark = SparkSession.builder()
+                .master("local[2]")
+                .appName("RateProviderEncodingBenchmark")
+                .config("spark.ui.enabled", "false")
+                .config("spark.sql.shuffle.partitions", "4")
+                .getOrCreate();
+        dataset = provider.read(spark, null);
+        rowEncoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.STANDARD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        spark.stop();
+        csv.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<String> groupByHost() {
+        return "kryo".equals(encoding) ?
+                RecordRowEncodingBenchmark.groupByHostWithKryo(dataset) :
+                RecordRowEncodingBenchmark.groupByHostColumnar(dataset, rowEncoding);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RateProviderEncodingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark;
+
+import com.hurence.logisland.record.FieldDictionary;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.apache.commons.io.FileUtils;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.streaming.kafka010.OffsetRange;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.runtime.AbstractFunction1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 20 micro batches of 1000 records written to the local filesystem by a {@link RecordFileWriter}, either one
+ * write per batch or rolled into files of a target size. The number of files written is logged after each
+ * iteration.
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordFileWriterBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordFileWriterBenchmark.class);
+
+    private static final int BATCHES = 20;
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 0 writes each batch as it comes.
+     */
+    @Param({"0", "1048576"})
+    public long targetFileSize;
+
+    private SparkSession spark;
+    private List<List<Record>> batches;
+    private File outDir;
+
+    private static class ToDataFrame extends AbstractFunction1<RDD<Record>, Dataset<Row>> implements Serializable {
+
+        private final SparkSession spark;
+
+        ToDataFrame(SparkSession spark) {
+            this.spark = spark;
+        }
+
+        @Override
+        public Dataset<Row> apply(RDD<Record> records) {
+            final StructType schema = SparkUtils.convertFieldsNameToSchema(records.toJavaRDD().first());
+            return spark.createDataFrame(records.toJavaRDD().map(r -> SparkUtils.convertToRow(r, schema)), schema);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        spark = SparkSession.builder()
+                .master("local[2]")
+                .appName("RecordFileWriterBenchmark")
+                .config("spark.ui.enabled", "false")
+                .config("spark.sql.shuffle.partitions", "4")
+                .getOrCreate();
+        batches = new ArrayList<>();
+        for (int b = 0; b < BATCHES; b++) {
+            final List<Record> batch = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add(new StandardRecord("apache_log")
+                        .setId("id" + b + "_" + i)
+                        .setStringField(FieldDictionary.RECORD_DAYTIME, "2019.01.0" + (1 + i % 2))
+                        .setStringField("host", "host" + (i % 10))
+                        .setStringField("request", "GET /shuttle/missions/sts-" + i + "/mission.html HTTP/1.0")
+                        .setIntField("status", 200)
+                        .setLongField("bytes_out", 1000L + i));
+            }
+            batches.add(batch);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        spark.stop();
+    }
+
+    @Setup(Level.Iteration)
+    public void createOutDir() throws IOException {
+        outDir = Files.createTempDirectory("records").toFile();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutDir() throws IOException {
+        logger.info("{} files written with a target size of {} bytes",
+                FileUtils.listFiles(outDir, new String[]{"parquet"}, true).size(), targetFileSize);
+        FileUtils.deleteDirectory(outDir);
+    }
+
+    @Benchmark
+    public void writeBatches() {
+        final JavaSparkContext sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+        final ToDataFrame toDataFrame = new ToDataFrame(spark);
+        final RecordFileWriter writer = new RecordFileWriter(
+                new File(outDir, "out").getAbsolutePath(), "parquet", 4, targetFileSize, Long.MAX_VALUE);
+        for (List<Record> batch : batches) {
+            final RDD<Record> records = sc.parallelize(batch, 2).rdd().persist(StorageLevel.MEMORY_AND_DISK());
+            long bytes = 0;
+            for (Record record : batch) {
+                bytes += record.sizeInBytes();
+            }
+            writer.add(records, batch.size(), bytes, new OffsetRange[0], toDataFrame);
+        }
+        writer.flush(toDataFrame);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecordFileWriterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark;
+
+import com.google.common.collect.Iterators;
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.RecordImplementation;
+import com.hurence.logisland.record.StandardRecord;
+import org.apache.spark.api.java.function.FilterFunction;
+import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.api.java.function.MapGroupsFunction;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.spark.sql.functions.col;
+
+/**
+ * 200k records grouped by host through a local spark shuffle, either as kryo blobs or as the typed rows of a
+ * {@link RecordRowEncoding}, the way a structured stream groups its records by key.
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordRowEncodingBenchmark {
+
+    private static final int RECORDS = 200000;
+
+    private static final String AVRO_SCHEMA = "{ \"type\": \"record\", \"name\": \"apache_log\", \"fields\": [" +
+            "{ \"name\": \"host\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"request\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"status\", \"type\": [\"null\", \"int\"] }," +
+            "{ \"name\": \"bytes_out\", \"type\": [\"null\", \"long\"] }," +
+            "{ \"name\": \"latency\", \"type\": [\"null\", \"double\"] }," +
+            "{ \"name\": \"secure\", \"type\": [\"null\", \"boolean\"] }" +
+            "] }";
+
+    @Param({"kryo", "columnar"})
+    public String encoding;
+
+    private SparkSession spark;
+    private Dataset<Record> dataset;
+    private RecordRowEncoding rowEncoding;
+
+    @Setup
+    public void setup() {
+        spark = SparkSession.builder()
+                .master("local[2]")
+                .appName("RecordRowEncodingBenchmark")
+                .config("spark.ui.enabled", "false")
+                .config("spark.sql.shuffle.partitions", "4")
+                .getOrCreate();
+        // records are built within the job, as a provider deserializes them
+        dataset = spark.range(RECORDS)
+                .map((MapFunction<Long, Record>) i -> apacheLog(i.intValue()), Encoders.kryo(Record.class));
+        rowEncoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.STANDARD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        spark.stop();
+    }
+
+    @Benchmark
+    public List<String> groupByHost() {
+        return "kryo".equals(encoding) ? groupByHostWithKryo(dataset) : groupByHostColumnar(dataset, rowEncoding);
+    }
+
+    private static Record apacheLog(int i) {
+        return new StandardRecord("apache_log")
+                .setId("id" + i)
+                .setTime(1000L + i)
+                .setStringField("host", "host" + (i % 10))
+                .setStringField("request", "GET /page" + i + " HTTP/1.1")
+                .setIntField("status", 200)
+                .setLongField("bytes_out", 1024L * i)
+                .setField("latency", FieldType.DOUBLE, 0.5 * i)
+                .setField("secure", FieldType.BOOLEAN, i % 2 == 0)
+                .setStringField("user_agent", "agent" + (i % 3));
+    }
+
+    /**
+     * the whole records go through the shuffle, as they do when a structured stream is grouped by key
+     */
+    static List<String> groupByHostWithKryo(Dataset<Record> dataset) {
+        return dataset
+                .filter((FilterFunction<Record>) r -> r.hasField("host"))
+                .groupByKey((MapFunction<Record, String>) r -> r.getField("host").asString(), Encoders.STRING())
+                .mapGroups((MapGroupsFunction<String, Record, String>) (host, group) -> host + ":" + totalBytes(group), Encoders.STRING())
+                .orderBy("value")
+                .collectAsList();
+    }
+
+    static List<String> groupByHostColumnar(Dataset<Record> dataset, RecordRowEncoding encoding) {
+        return dataset
+                .map((MapFunction<Record, Row>) encoding::toRow, encoding.encoder())
+                .filter(col("host").isNotNull().or(col(RecordRowEncoding.EXTRA_FIELDS()).getItem("host").isNotNull()))
+                .groupByKey((MapFunction<Row, String>) r -> encoding.getString(r, "host"), Encoders.STRING())
+                .mapGroups((MapGroupsFunction<String, Row, String>) (host, group) ->
+                        host + ":" + totalBytes(Iterators.transform(group, encoding::toRecord)), Encoders.STRING())
+                .orderBy("value")
+                .collectAsList();
+    }
+
+    static long totalBytes(Iterator<Record> records) {
+        long total = 0;
+        while (records.hasNext()) {
+            total += records.next().getField("bytes_out").asLong();
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecordRowEncodingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
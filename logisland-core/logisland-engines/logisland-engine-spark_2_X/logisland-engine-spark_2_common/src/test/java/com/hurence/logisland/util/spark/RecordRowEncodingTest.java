@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.spark;
+
+import com.google.common.collect.Iterators;
+import com.hurence.logisland.record.*;
+import org.apache.spark.api.java.function.FilterFunction;
+import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.api.java.function.MapGroupsFunction;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.apache.spark.sql.functions.col;
+
+public class RecordRowEncodingTest {
+
+    private static final String AVRO_SCHEMA = "{ \"type\": \"record\", \"name\": \"apache_log\", \"fields\": [" +
+            "{ \"name\": \"host\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"request\", \"type\": [\"null\", \"string\"] }," +
+            "{ \"name\": \"status\", \"type\": [\"null\", \"int\"] }," +
+            "{ \"name\": \"bytes_out\", \"type\": [\"null\", \"long\"] }," +
+            "{ \"name\": \"latency\", \"type\": [\"null\", \"double\"] }," +
+            "{ \"name\": \"secure\", \"type\": [\"null\", \"boolean\"] }," +
+            "{ \"name\": \"tags\", \"type\": [\"null\", { \"type\": \"array\", \"items\": \"string\" }] }" +
+            "] }";
+
+    private static SparkSession spark;
+
+    @BeforeClass
+    public static void setUp() {
+        spark = SparkSession.builder()
+                .master("local[2]")
+                .appName("RecordRowEncodingTest")
+                .config("spark.ui.enabled", "false")
+                .config("spark.sql.shuffle.partitions", "4")
+                .getOrCreate();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        spark.stop();
+    }
+
+    private static Record apacheLog(int i) {
+        return new StandardRecord("apache_log")
+                .setId("id" + i)
+                .setTime(1000L + i)
+                .setStringField("host", "host" + (i % 10))
+                .setStringField("request", "GET /page" + i + " HTTP/1.1")
+                .setIntField("status", 200)
+                .setLongField("bytes_out", 1024L * i)
+                .setField("latency", FieldType.DOUBLE, 0.5 * i)
+                .setField("secure", FieldType.BOOLEAN, i % 2 == 0)
+                .setStringField("user_agent", "agent" + (i % 3));
+    }
+
+    @Test
+    public void declaredFieldsAreColumns() {
+        RecordRowEncoding encoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.STANDARD);
+
+        Assert.assertTrue(encoding.isColumn(FieldDictionary.RECORD_ID));
+        Assert.assertTrue(encoding.isColumn(FieldDictionary.RECORD_TIME));
+        Assert.assertTrue(encoding.isColumn("host"));
+        Assert.assertTrue(encoding.isColumn("secure"));
+        Assert.assertFalse(encoding.isColumn("tags"));
+        Assert.assertFalse(encoding.isColumn("user_agent"));
+        Assert.assertEquals(RecordRowEncoding.EXTRA_FIELDS(), encoding.schema().fields()[encoding.schema().length() - 1].name());
+
+        Row row = encoding.toRow(apacheLog(7));
+        Assert.assertEquals("host7", row.getAs("host"));
+        Assert.assertEquals(Integer.valueOf(200), row.getAs("status"));
+        Assert.assertEquals(Long.valueOf(7168L), row.getAs("bytes_out"));
+        Assert.assertEquals(Long.valueOf(1007L), row.getAs(FieldDictionary.RECORD_TIME));
+        Assert.assertEquals("agent1", encoding.getString(row, "user_agent"));
+        Assert.assertNull(encoding.getString(row, "unknown"));
+    }
+
+    @Test
+    public void roundTripKeepsEveryField() {
+        RecordRowEncoding encoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.STANDARD);
+
+        Record record = apacheLog(3);
+        record.setField("tags", FieldType.ARRAY, new ArrayList<>(Arrays.asList("a", "b")));
+        // declared as an int column, kept aside to come back as a string
+        record.setStringField("status", "404");
+
+        Record decoded = encoding.toRecord(encoding.toRow(record));
+        Assert.assertEquals(record, decoded);
+        Assert.assertEquals(FieldType.STRING, decoded.getField("status").getType());
+        Assert.assertEquals(Arrays.asList("a", "b"), decoded.getField("tags").getRawValue());
+        Assert.assertEquals("404", encoding.getString(encoding.toRow(record), "status"));
+    }
+
+    @Test
+    public void nullValuedFieldsArePresent() {
+        RecordRowEncoding encoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.STANDARD);
+
+        Record record = apacheLog(4);
+        record.setField("host", FieldType.STRING, null);
+        record.setField("user_agent", FieldType.STRING, null);
+        record.removeField("latency");
+
+        Row row = encoding.toRow(record);
+        Assert.assertTrue(row.isNullAt(row.fieldIndex("host")));
+        Assert.assertTrue(row.isNullAt(row.fieldIndex("latency")));
+        Assert.assertTrue(row.getJavaMap(row.fieldIndex(RecordRowEncoding.EXTRA_FIELDS())).containsKey("host"));
+        Assert.assertFalse(row.getJavaMap(row.fieldIndex(RecordRowEncoding.EXTRA_FIELDS())).containsKey("latency"));
+        Assert.assertNull(encoding.getString(row, "host"));
+
+        Record decoded = encoding.toRecord(row);
+        Assert.assertEquals(record, decoded);
+        Assert.assertTrue(decoded.hasField("host"));
+        Assert.assertEquals(FieldType.STRING, decoded.getField("host").getType());
+        Assert.assertNull(decoded.getField("host").getRawValue());
+        Assert.assertTrue(decoded.hasField("user_agent"));
+        Assert.assertFalse(decoded.hasField("latency"));
+    }
+
+    @Test
+    public void recordImplementationIsHonored() {
+        RecordRowEncoding encoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.COMPACT);
+
+        Record decoded = encoding.toRecord(encoding.toRow(apacheLog(5)));
+        Assert.assertTrue(decoded instanceof CompactRecord);
+        Assert.assertEquals(apacheLog(5), decoded);
+    }
+
+    @Test
+    public void groupByKeyMatchesKryoEncoding() {
+        RecordRowEncoding encoding = RecordRowEncoding.fromAvroSchema(AVRO_SCHEMA, RecordImplementation.STANDARD);
+
+        // records are built within the job, as a provider deserializes them, some without any host
+        Dataset<Record> dataset = spark.range(1000)
+                .map((MapFunction<Long, Record>) i -> {
+                    Record record = apacheLog(i.intValue());
+                    if (i % 7 == 0) {
+                        record.removeField("host");
+                    }
+                    return record;
+                }, Encoders.kryo(Record.class));
+
+        List<String> columnarHosts = groupByHostColumnar(dataset, encoding);
+        Assert.assertEquals(10, columnarHosts.size());
+        Assert.assertEquals(groupByHostWithKryo(dataset), columnarHosts);
+    }
+
+    /**
+     * the whole records go through the shuffle, as they do when a structured stream is grouped by key
+     */
+    private static List<String> groupByHostWithKryo(Dataset<Record> dataset) {
+        return dataset
+                .filter((FilterFunction<Record>) r -> r.hasField("host"))
+                .groupByKey((MapFunction<Record, String>) r -> r.getField("host").asString(), Encoders.STRING())
+                .mapGroups((MapGroupsFunction<String, Record, String>) (host, group) -> host + ":" + totalBytes(group), Encoders.STRING())
+                .orderBy("value")
+                .collectAsList();
+    }
+
+    private static List<String> groupByHostColumnar(Dataset<Record> dataset, RecordRowEncoding encoding) {
+        return dataset
+                .map((MapFunction<Record, Row>) encoding::toRow, encoding.encoder())
+                .filter(col("host").isNotNull().or(col(RecordRowEncoding.EXTRA_FIELDS()).getItem("host").isNotNull()))
+                .groupByKey((MapFunction<Row, String>) r -> encoding.getString(r, "host"), Encoders.STRING())
+                .mapGroups((MapGroupsFunction<String, Row, String>) (host, group) ->
+                        host + ":" + totalBytes(Iterators.transform(group, encoding::toRecord)), Encoders.STRING())
+                .orderBy("value")
+                .collectAsList();
+    }
+
+    private static long totalBytes(Iterator<Record> records) {
+        long total = 0;
+        while (records.hasNext()) {
+            total += records.next().getField("bytes_out").asLong();
+        }
+        return total;
+    }
+}
@@ -29,6 +29,7 @@ import com.hurence.logisland.serializer.RecordSerializer;
 import com.hurence.logisland.serializer.SerializerProvider;
 import com.hurence.logisland.stream.AbstractRecordStream;
 import com.hurence.logisland.stream.StreamContext;
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.net.PemKeyCertOptions;
 import io.vertx.core.net.PemTrustOptions;
@@ -43,10 +44,31 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AmqpClientPipelineStream extends AbstractRecordStream {
 
+    /**
+     * A delivery waiting in the worker queue, along with the vert.x context owning its link.
+     */
+    private static final class PendingDelivery {
+        private final ProtonDelivery delivery;
+        private final Message message;
+        private final Context context;
+
+        private PendingDelivery(ProtonDelivery delivery, Message message, Context context) {
+            this.delivery = delivery;
+            this.message = message;
+            this.context = context;
+        }
+    }
+
     private ProtonConnection protonConnection;
     private ProtonSender sender;
     private ProtonReceiver receiver;
@@ -58,6 +80,12 @@ public class AmqpClientPipelineStream extends AbstractRecordStream {
     private ConnectionControl connectionControl;
     private Vertx vertx;
     private ProtonClient protonClient;
+    private volatile Context connectionContext;
+
+    private int workerThreads;
+    private int workerBatchSize;
+    private BlockingQueue<PendingDelivery> workQueue;
+    private ExecutorService workers;
 
     private byte[] extractBodyContent(Section body) {
         if (body instanceof AmqpValue) {
@@ -91,7 +119,10 @@ public class AmqpClientPipelineStream extends AbstractRecordStream {
                 StreamOptions.WRITE_TOPIC_CONTENT_TYPE,
                 StreamOptions.CONNECTION_RECONNECT_BACKOFF,
                 StreamOptions.CONNECTION_RECONNECT_INITIAL_DELAY,
-                StreamOptions.CONNECTION_RECONNECT_MAX_DELAY
+                StreamOptions.CONNECTION_RECONNECT_MAX_DELAY,
+                StreamOptions.WORKER_THREADS,
+                StreamOptions.WORKER_QUEUE_SIZE,
+                StreamOptions.WORKER_BATCH_SIZE
         );
     }
 
@@ -102,6 +133,18 @@ public class AmqpClientPipelineStream extends AbstractRecordStream {
                 streamContext.getPropertyValue(StreamOptions.CONNECTION_RECONNECT_INITIAL_DELAY).asLong(),
                 streamContext.getPropertyValue(StreamOptions.CONNECTION_RECONNECT_BACKOFF).asDouble());
 
+        if (workerThreads > 0) {
+            final AtomicInteger threadCounter = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(workerThreads, r -> {
+                Thread t = new Thread(r, "amqp-pipeline-worker-" + streamContext.getStream().getIdentifier() + "-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            for (int i = 0; i < workerThreads; i++) {
+                workers.submit(this::runWorker);
+            }
+        }
+
         try {
             setupConnection();
         } catch (Throwable t) {
@@ -167,47 +210,40 @@ public class AmqpClientPipelineStream extends AbstractRecordStream {
 
                         //setup the input path
                         receiver = protonConnection.createReceiver(streamContext.getPropertyValue(StreamOptions.READ_TOPIC).asString());
-                        receiver.setPrefetch(credits);
-                        receiver.handler((delivery, message) -> {
-                            try {
-                                Record record;
-                                if (deserializer == null) {
-                                    record = RecordUtils.getKeyValueRecord(StringUtils.defaultIfEmpty(message.getSubject(), ""), new String(extractBodyContent(message.getBody())));
-                                } else {
-                                    record = deserializer.deserialize(new ByteArrayInputStream(extractBodyContent(message.getBody())));
-                                    if (!record.hasField(FieldDictionary.RECORD_KEY)) {
-                                        record.setField(FieldDictionary.RECORD_KEY, FieldType.STRING, message.getSubject());
-                                    }
+                        if (workerThreads > 0) {
+                            //credits are granted by hand, for each free slot of the worker queue
+                            connectionContext = Vertx.currentContext();
+                            receiver.setPrefetch(0);
+                            receiver.setAutoAccept(false);
+                            receiver.handler((delivery, message) -> {
+                                if (!workQueue.offer(new PendingDelivery(delivery, message, Vertx.currentContext()))) {
+                                    //should never happen since we never give more credits than free slots
+                                    delivery.disposition(Released.getInstance(), true);
+                                    getLogger().warn("Worker queue is full. Releasing message");
                                 }
-
-
-                                Collection<Record> r = Collections.singleton(record);
-                                for (ProcessContext processContext : streamContext.getProcessContexts()) {
-                                    r = processContext.getProcessor().process(processContext, r);
-                                }
-                                List<Message> toAdd = new ArrayList<>();
-                                for (Record out : r) {
-                                    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-                                    serializer.serialize(byteOutputStream, out);
-                                    Message mo = ProtonHelper.message();
-                                    if (out.hasField(FieldDictionary.RECORD_KEY)) {
-                                        mo.setSubject(out.getField(FieldDictionary.RECORD_KEY).asString());
+                            }).open();
+                            receiver.flow(workQueue.remainingCapacity());
+                        } else {
+                            receiver.setPrefetch(credits);
+                            receiver.handler((delivery, message) -> {
+                                try {
+                                    Collection<Record> r = Collections.singleton(toRecord(deserializer, message));
+                                    for (ProcessContext processContext : streamContext.getProcessContexts()) {
+                                        r = processContext.getProcessor().process(processContext, r);
                                     }
-                                    if (StringUtils.isNotBlank(contentType)) {
-                                        mo.setContentType(contentType);
+                                    List<Message> toAdd = new ArrayList<>();
+                                    for (Record out : r) {
+                                        toAdd.add(toMessage(serializer, out));
                                     }
-                                    mo.setMessageId(out.getId());
-                                    mo.setBody(new Data(Binary.create(ByteBuffer.wrap(byteOutputStream.toByteArray()))));
-                                    toAdd.add(mo);
+                                    toAdd.forEach(sender::send);
+                                    delivery.disposition(Accepted.getInstance(), true);
+                                } catch (Exception e) {
+                                    Rejected rejected = new Rejected();
+                                    delivery.disposition(rejected, true);
+                                    getLogger().warn("Unable to process message : " + e.getMessage());
                                 }
-                                toAdd.forEach(sender::send);
-                                delivery.disposition(Accepted.getInstance(), true);
-                            } catch (Exception e) {
-                                Rejected rejected = new Rejected();
-                                delivery.disposition(rejected, true);
-                                getLogger().warn("Unable to process message : " + e.getMessage());
-                            }
-                        }).open();
+                            }).open();
+                        }
 
                     }).open();
 
@@ -215,11 +251,139 @@ public class AmqpClientPipelineStream extends AbstractRecordStream {
         return completableFuture;
     }
 
+    /**
+     * Converts an incoming AMQP message into a record.
+     */
+    private Record toRecord(RecordSerializer deserializer, Message message) {
+        Record record;
+        if (deserializer == null) {
+            record = RecordUtils.getKeyValueRecord(StringUtils.defaultIfEmpty(message.getSubject(), ""), new String(extractBodyContent(message.getBody())));
+        } else {
+            record = deserializer.deserialize(new ByteArrayInputStream(extractBodyContent(message.getBody())));
+            if (!record.hasField(FieldDictionary.RECORD_KEY)) {
+                record.setField(FieldDictionary.RECORD_KEY, FieldType.STRING, message.getSubject());
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Converts an outgoing record into an AMQP message.
+     */
+    private Message toMessage(RecordSerializer serializer, Record out) {
+        ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+        serializer.serialize(byteOutputStream, out);
+        Message mo = ProtonHelper.message();
+        if (out.hasField(FieldDictionary.RECORD_KEY)) {
+            mo.setSubject(out.getField(FieldDictionary.RECORD_KEY).asString());
+        }
+        if (StringUtils.isNotBlank(contentType)) {
+            mo.setContentType(contentType);
+        }
+        mo.setMessageId(out.getId());
+        mo.setBody(new Data(Binary.create(ByteBuffer.wrap(byteOutputStream.toByteArray()))));
+        return mo;
+    }
+
+    /**
+     * Worker loop: takes micro-batches of deliveries from the queue and runs them through the pipeline.
+     * Each worker owns its serializers since they are not all thread safe.
+     */
+    private void runWorker() {
+        final RecordSerializer workerSerializer = buildSerializer(streamContext.getPropertyValue(StreamOptions.WRITE_TOPIC_SERIALIZER).asString(),
+                streamContext.getPropertyValue(StreamOptions.AVRO_OUTPUT_SCHEMA).asString());
+        final RecordSerializer workerDeserializer = deserializer == null ? null :
+                buildSerializer(streamContext.getPropertyValue(StreamOptions.READ_TOPIC_SERIALIZER).asString(),
+                        streamContext.getPropertyValue(StreamOptions.AVRO_INPUT_SCHEMA).asString());
+        while (!Thread.currentThread().isInterrupted()) {
+            final List<PendingDelivery> batch = new ArrayList<>(workerBatchSize);
+            try {
+                batch.add(workQueue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            workQueue.drainTo(batch, workerBatchSize - 1);
+            processBatch(batch, workerSerializer, workerDeserializer);
+        }
+    }
+
+    private void processBatch(List<PendingDelivery> batch, RecordSerializer workerSerializer, RecordSerializer workerDeserializer) {
+        final boolean[] accepted = new boolean[batch.size()];
+        final List<Message> toAdd = new ArrayList<>();
+        Collection<Record> r = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                r.add(toRecord(workerDeserializer, batch.get(i).message));
+                accepted[i] = true;
+            } catch (Exception e) {
+                getLogger().warn("Unable to deserialize message : " + e.getMessage());
+            }
+        }
+        try {
+            for (ProcessContext processContext : streamContext.getProcessContexts()) {
+                r = processContext.getProcessor().process(processContext, r);
+            }
+            for (Record out : r) {
+                toAdd.add(toMessage(workerSerializer, out));
+            }
+        } catch (Exception e) {
+            getLogger().warn("Unable to process batch of " + batch.size() + " messages : " + e.getMessage());
+            toAdd.clear();
+            Arrays.fill(accepted, false);
+        }
+
+        //proton objects are not thread safe: hand the results back to the event loop(s)
+        final Context current = connectionContext;
+        if (current != null) {
+            current.runOnContext(v -> {
+                if (sender != null && sender.isOpen()) {
+                    toAdd.forEach(sender::send);
+                }
+            });
+        }
+        int from = 0;
+        while (from < batch.size()) {
+            final Context context = batch.get(from).context;
+            int to = from;
+            while (to < batch.size() && batch.get(to).context == context) {
+                to++;
+            }
+            final int start = from;
+            final int end = to;
+            context.runOnContext(v -> {
+                for (int i = start; i < end; i++) {
+                    batch.get(i).delivery.disposition(accepted[i] ? Accepted.getInstance() : new Rejected(), true);
+                }
+            });
+            from = to;
+        }
+        //the queue has been drained: give the credits back on the current link
+        if (current != null) {
+            current.runOnContext(v -> {
+                if (receiver != null && receiver.isOpen()) {
+                    receiver.flow(batch.size());
+                }
+            });
+        }
+    }
+
     @Override
     public void stop() {
         if (connectionControl != null) {
             connectionControl.setRunning(false);
         }
+        if (workers != null) {
+            //unsettled deliveries left in the queue will be redelivered by the broker
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            workers = null;
+            workQueue.clear();
+        }
         try {
             if (receiver != null) {
                 receiver.close();
@@ -267,6 +431,10 @@ public class AmqpClientPipelineStream extends AbstractRecordStream {
 
             contentType = streamContext.getPropertyValue(StreamOptions.WRITE_TOPIC_CONTENT_TYPE).asString();
 
+            workerThreads = streamContext.getPropertyValue(StreamOptions.WORKER_THREADS).asInteger();
+            workerBatchSize = streamContext.getPropertyValue(StreamOptions.WORKER_BATCH_SIZE).asInteger();
+            workQueue = new ArrayBlockingQueue<>(streamContext.getPropertyValue(StreamOptions.WORKER_QUEUE_SIZE).asInteger());
+
             ControllerServiceLookup controllerServiceLookup = streamContext.getControllerServiceLookup();
             for (ProcessContext processContext : streamContext.getProcessContexts()) {
                 if (processContext.getProcessor().hasControllerService()) {
@@ -113,6 +113,34 @@ public interface StreamOptions {
             .description("Flow control. How many credits for this links. Higher means higher prefetch (prebuffered number of messages")
             .build();
 
+    PropertyDescriptor WORKER_THREADS = new PropertyDescriptor.Builder()
+            .name("worker.threads")
+            .required(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .defaultValue("0")
+            .description("Number of pipeline worker threads. When 0 (default) messages are processed one at a time on the " +
+                    "connection event loop. Otherwise deliveries are handed to the workers through a bounded queue and " +
+                    "processed in micro-batches (processors must then be thread safe).")
+            .build();
+
+    PropertyDescriptor WORKER_QUEUE_SIZE = new PropertyDescriptor.Builder()
+            .name("worker.queue.size")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("4096")
+            .description("Capacity of the queue feeding the pipeline workers. Link credits are only granted for free " +
+                    "slots of this queue, thus applying back-pressure to the broker. Ignored when worker.threads is 0.")
+            .build();
+
+    PropertyDescriptor WORKER_BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("worker.batch.size")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("256")
+            .description("Maximum number of messages a worker takes from the queue and pushes through the pipeline at once. " +
+                    "Ignored when worker.threads is 0.")
+            .build();
+
 
 
     AllowableValue AVRO_SERIALIZER = new AllowableValue(AvroSerializer.class.getName(),
@@ -49,7 +49,10 @@ public class KafkaStreamsPipelineStream extends AbstractRecordStream {
                 StreamProperties.KAFKA_MANUAL_OFFSET_RESET,
                 StreamProperties.READ_TOPICS_SERIALIZER,
                 StreamProperties.WRITE_TOPICS,
-                StreamProperties.WRITE_TOPICS_SERIALIZER
+                StreamProperties.WRITE_TOPICS_SERIALIZER,
+                StreamProperties.BATCH_MAX_RECORDS,
+                StreamProperties.BATCH_MAX_LINGER_MS,
+                StreamProperties.RECORD_IMPLEMENTATION
         );
     }
 
@@ -88,6 +91,11 @@ public class KafkaStreamsPipelineStream extends AbstractRecordStream {
                 properties.put(propertyDescriptor.getName(), s);
             }
         });
+        if (streamContext.getPropertyValue(StreamProperties.BATCH_MAX_RECORDS).asInteger() > 1) {
+            //a time based commit would also cover the records waiting in a partial batch:
+            //offsets are committed by the pipeline processor once its batches have been forwarded
+            properties.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, Long.MAX_VALUE);
+        }
         topology
                 .addSource(Topology.AutoOffsetReset.valueOf(StringUtils.upperCase(streamContext.getPropertyValue(StreamProperties.KAFKA_MANUAL_OFFSET_RESET).asString())),
                         sourceId, streamContext.getPropertyValue(StreamProperties.READ_TOPICS).asString().split(","))
@@ -20,19 +20,23 @@ import com.hurence.logisland.controller.ControllerServiceLookup;
 import com.hurence.logisland.processor.ProcessContext;
 import com.hurence.logisland.record.FieldDictionary;
 import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.RecordImplementation;
 import com.hurence.logisland.record.RecordUtils;
 import com.hurence.logisland.serializer.RecordSerializer;
 import com.hurence.logisland.serializer.SerializerProvider;
 import com.hurence.logisland.stream.StreamContext;
 import org.apache.kafka.streams.processor.AbstractProcessor;
 import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 
 public class LogislandPipelineProcessor extends AbstractProcessor<byte[], byte[]> {
 
@@ -40,11 +44,25 @@ public class LogislandPipelineProcessor extends AbstractProcessor<byte[], byte[]
 
     private RecordSerializer serializer;
     private RecordSerializer deserializer;
+    private RecordImplementation recordImplementation = RecordImplementation.STANDARD;
 
 
     private final StreamContext streamContext;
     private ProcessorContext kafkaProcessContext;
 
+    /**
+     * micro-batching state (one processor instance per stream task)
+     */
+    private int batchMaxRecords;
+    private long batchMaxLingerMs;
+    private List<Record> batch;
+    private long batchStartedAt;
+    /**
+     * true once a commit has been requested by the punctuator and until kafka streams performs it,
+     * right after the next call to {@link #process(byte[], byte[])}
+     */
+    private boolean commitRequested;
+
     public LogislandPipelineProcessor(StreamContext streamContext) {
         this.streamContext = streamContext;
     }
@@ -57,7 +75,7 @@ public class LogislandPipelineProcessor extends AbstractProcessor<byte[], byte[]
      * @return the serializer
      */
     private RecordSerializer buildSerializer(String inSerializerClass, String schemaContent) {
-        return SerializerProvider.getSerializer(inSerializerClass, schemaContent);
+        return SerializerProvider.getSerializer(inSerializerClass, schemaContent, recordImplementation);
     }
 
 
@@ -74,6 +92,8 @@ public class LogislandPipelineProcessor extends AbstractProcessor<byte[], byte[]
                 processContext.getProcessor().init(processContext);
             }
             //now init serializers
+            recordImplementation = RecordImplementation.fromName(
+                    streamContext.getPropertyValue(StreamProperties.RECORD_IMPLEMENTATION).asString());
             if (streamContext.getPropertyValue(StreamProperties.READ_TOPICS_SERIALIZER).asString().equals(StreamProperties.NO_SERIALIZER.getValue())) {
                 deserializer = null;
             } else {
@@ -83,6 +103,13 @@ public class LogislandPipelineProcessor extends AbstractProcessor<byte[], byte[]
             serializer = buildSerializer(streamContext.getPropertyValue(StreamProperties.WRITE_TOPICS_SERIALIZER).asString(),
                     streamContext.getPropertyValue(StreamProperties.AVRO_OUTPUT_SCHEMA).asString());
 
+            //and the micro-batching mode
+            batchMaxRecords = streamContext.getPropertyValue(StreamProperties.BATCH_MAX_RECORDS).asInteger();
+            batchMaxLingerMs = streamContext.getPropertyValue(StreamProperties.BATCH_MAX_LINGER_MS).asLong();
+            batch = new ArrayList<>(batchMaxRecords);
+            if (batchMaxRecords > 1) {
+                context.schedule(Duration.ofMillis(batchMaxLingerMs), PunctuationType.WALL_CLOCK_TIME, this::punctuate);
+            }
 
         } catch (InitializationException ie) {
             throw new IllegalStateException("Unable to initialize processor pipeline", ie);
@@ -104,29 +131,79 @@ public class LogislandPipelineProcessor extends AbstractProcessor<byte[], byte[]
         } else {
             String ks = key != null ? new String(key) : "";
             String vs = value != null ? new String(value) : "";
-            record = RecordUtils.getKeyValueRecord(ks, vs);
+            record = RecordUtils.getKeyValueRecord(ks, vs, recordImplementation);
         }
 
         if (record != null) {
-            try {
-                Collection<Record> r = Collections.singleton(record);
-                for (ProcessContext processContext : streamContext.getProcessContexts()) {
-                    r = processContext.getProcessor().process(processContext, r);
+            if (batch.isEmpty()) {
+                batchStartedAt = System.currentTimeMillis();
+            }
+            batch.add(record);
+            if (batch.size() >= batchMaxRecords || commitRequested) {
+                flush();
+                if (batchMaxRecords > 1) {
+                    //the offsets consumed so far have all been forwarded, they can safely be committed
+                    kafkaProcessContext.commit();
                 }
-                for (Record out : r) {
-                    byte[] k = null;
-
-                    if (out.hasField(FieldDictionary.RECORD_KEY)) {
-                        k = out.getField(FieldDictionary.RECORD_KEY).asString().getBytes();
-                    }
-                    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-                    serializer.serialize(byteOutputStream, out);
-                    kafkaProcessContext.forward(k, byteOutputStream.toByteArray());
+            }
+        }
+        commitRequested = false;
+    }
+
+    /**
+     * Flushes the pending batch once it has been lingering for more than batch.max.linger.ms.
+     * <p>
+     * Time based commits are disabled when micro-batching (see {@link KafkaStreamsPipelineStream}) so offsets
+     * are only committed on our request, once the records they cover have been forwarded. Kafka streams may
+     * perform a commit requested here only after having processed one more record, which is thus flushed right away.
+     *
+     * @param timestamp the wall clock time of the punctuation
+     */
+    private void punctuate(long timestamp) {
+        if (!batch.isEmpty() && timestamp - batchStartedAt >= batchMaxLingerMs) {
+            flush();
+            kafkaProcessContext.commit();
+            commitRequested = true;
+        }
+    }
+
+    /**
+     * Flushes the pending batch when the task is closed (shutdown or rebalance). Kafka streams closes the
+     * topology before committing the task, so the forwarded records are committed with their offsets.
+     */
+    @Override
+    public void close() {
+        if (batch != null) {
+            flush();
+        }
+    }
+
+    /**
+     * Pushes the pending batch through the whole processor chain and forwards the outgoing records.
+     */
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Collection<Record> r = batch;
+        batch = new ArrayList<>(batchMaxRecords);
+        try {
+            for (ProcessContext processContext : streamContext.getProcessContexts()) {
+                r = processContext.getProcessor().process(processContext, r);
+            }
+            for (Record out : r) {
+                byte[] k = null;
+
+                if (out.hasField(FieldDictionary.RECORD_KEY)) {
+                    k = out.getField(FieldDictionary.RECORD_KEY).asString().getBytes();
                 }
-            } catch (Exception e) {
-                logger.error("Unhandled error occurred while executing pipeline {}: {}",
-                        streamContext.getStream().getIdentifier(), e.getMessage());
+                ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+                serializer.serialize(byteOutputStream, out);
+                kafkaProcessContext.forward(k, byteOutputStream.toByteArray());
             }
+        } catch (Exception e) {
+            logger.error("Unhandled error occurred while executing pipeline {}",
+                    streamContext.getStream().getIdentifier(), e);
         }
     }
 }
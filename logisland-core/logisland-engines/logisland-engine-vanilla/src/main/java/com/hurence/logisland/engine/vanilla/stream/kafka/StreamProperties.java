@@ -17,6 +17,7 @@ package com.hurence.logisland.engine.vanilla.stream.kafka;
 
 import com.hurence.logisland.component.AllowableValue;
 import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.record.RecordImplementation;
 import com.hurence.logisland.serializer.*;
 import com.hurence.logisland.validator.StandardValidators;
 
@@ -120,4 +121,40 @@ public interface StreamProperties {
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    PropertyDescriptor BATCH_MAX_RECORDS = new PropertyDescriptor.Builder()
+            .name("batch.max.records")
+            .description("The maximum number of records accumulated per stream task before the whole batch is " +
+                    "pushed through the processor chain. Defaults to 1 (no micro-batching: every kafka message " +
+                    "is processed on its own).")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("1")
+            .build();
+
+    PropertyDescriptor BATCH_MAX_LINGER_MS = new PropertyDescriptor.Builder()
+            .name("batch.max.linger.ms")
+            .description("The maximum time (in milliseconds) a record may wait in a partial batch before the batch is " +
+                    "flushed anyway. Only relevant when batch.max.records is greater than 1. Kafka streams time based " +
+                    "commits (commit.interval.ms) are then disabled: offsets are committed once the batch holding their " +
+                    "records has been forwarded.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .defaultValue("100")
+            .build();
+
+    AllowableValue STANDARD_RECORD = new AllowableValue(RecordImplementation.STANDARD.getName(),
+            "standard records", "records backed by a sorted map of fields");
+    AllowableValue COMPACT_RECORD = new AllowableValue(RecordImplementation.COMPACT.getName(),
+            "compact records", "records backed by flat insertion-ordered arrays, storing numbers and booleans unboxed " +
+            "and building Field objects only when they are asked for");
+
+    PropertyDescriptor RECORD_IMPLEMENTATION = new PropertyDescriptor.Builder()
+            .name("record.implementation")
+            .description("The kind of records the input messages are deserialized to. Compact records allocate much " +
+                    "less per field, but iterate in insertion order instead of field name order.")
+            .required(false)
+            .allowableValues(STANDARD_RECORD, COMPACT_RECORD)
+            .defaultValue(STANDARD_RECORD.getValue())
+            .build();
+
 }
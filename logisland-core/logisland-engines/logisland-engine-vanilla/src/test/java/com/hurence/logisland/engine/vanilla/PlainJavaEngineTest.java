@@ -145,5 +145,46 @@ public class PlainJavaEngineTest {
         engineContext.getEngine().awaitTermination(engineContext);
     }
 
+    @Test
+    public void testCompletePipelineWithMicroBatching() {
+        EngineConfiguration engineConfiguration = engineConfiguration();
+        Map<String, String> props = new HashMap<>();
+        props.put(StreamProperties.READ_TOPICS_SERIALIZER.getName(), StreamProperties.STRING_SERIALIZER.getValue());
+        props.put(StreamProperties.WRITE_TOPICS_SERIALIZER.getName(), StreamProperties.JSON_SERIALIZER.getValue());
+        props.put(StreamProperties.BATCH_MAX_RECORDS.getName(), "30");
+        props.put(StreamProperties.BATCH_MAX_LINGER_MS.getName(), "50");
+        StreamConfiguration streamConfiguration = emptyKafkaStream(() -> {
+            Map<String, String> conf = defaultPropertySupplier(props).get();
+            conf.put("application.id", "test-batch");
+            conf.put(StreamProperties.READ_TOPICS.getName(), "topic.batch.in");
+            conf.put(StreamProperties.WRITE_TOPICS.getName(), "topic.batch.out");
+            return conf;
+        });
+        streamConfiguration.addProcessorConfiguration(processorConfiguration(Collections.emptyMap()));
+        engineConfiguration.addPipelineConfigurations(streamConfiguration);
+        EngineContext engineContext = ComponentFactory.getEngineContext(engineConfiguration).get();
+        Assert.assertTrue(engineContext.isValid());
+        sharedKafkaTestResource.getKafkaTestUtils().createTopic("topic.batch.in", 1, (short) 1);
+        sharedKafkaTestResource.getKafkaTestUtils().createTopic("topic.batch.out", 1, (short) 1);
+        engineContext.getEngine().start(engineContext);
+
+        //100 is not a multiple of the batch size: the last partial batch must be flushed by the punctuator
+        List<ProducedKafkaRecord<byte[], byte[]>> inRecords = sharedKafkaTestResource.getKafkaTestUtils().produceRecords(100, "topic.batch.in", 0);
+        List<ConsumerRecord<byte[], byte[]>> outRecords = Collections.emptyList();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (outRecords.size() < inRecords.size() && System.currentTimeMillis() < deadline) {
+            outRecords = sharedKafkaTestResource.getKafkaTestUtils().consumeAllRecordsFromTopic("topic.batch.out");
+        }
+        Assert.assertEquals(inRecords.size(), outRecords.size());
+        RecordSerializer recordSerializer = SerializerProvider.getSerializer(StreamProperties.JSON_SERIALIZER.getValue(), null);
+        for (int i = 0; i < outRecords.size(); i++) {
+            ConsumerRecord<byte[], byte[]> cr = outRecords.get(i);
+            ProducedKafkaRecord<byte[], byte[]> ir = inRecords.get(i);
+            Record tmp = recordSerializer.deserialize(new ByteArrayInputStream(cr.value()));
+            Assert.assertEquals(new String(ir.getValue()), tmp.getField(FieldDictionary.RECORD_VALUE).asString());
+        }
+        engineContext.getEngine().shutdown(engineContext);
+        engineContext.getEngine().awaitTermination(engineContext);
+    }
 
 }
\ No newline at end of file
@@ -294,7 +294,55 @@ public class AmqpClientPipelineStreamTest {
 
     }
 
+    @Test
+    public void testWorkerPool() {
+        final Vertx vertx = Vertx.vertx();
+        final int count = 10240;
+
+        EngineConfiguration engineConfiguration = engineConfiguration();
+        Map<String, String> props = new HashMap<>();
+        props.put(StreamOptions.WRITE_TOPIC_CONTENT_TYPE.getName(), "record/bson");
+        props.put(StreamOptions.WORKER_THREADS.getName(), "4");
+        props.put(StreamOptions.WORKER_QUEUE_SIZE.getName(), "512");
+        props.put(StreamOptions.WORKER_BATCH_SIZE.getName(), "64");
+        StreamConfiguration streamConfiguration = emptyStream(defaultPropertySupplier(props));
+        streamConfiguration.addProcessorConfiguration(modifyKeyProcessor("i_m_the_new_key"));
+        engineConfiguration.addPipelineConfigurations(streamConfiguration);
+        EngineContext context = ComponentFactory.getEngineContext(engineConfiguration).get();
+        Assert.assertTrue(context.isValid());
+        context.getEngine().start(context);
+        vertx.runOnContext(v -> {
+            for (int i = 0; i < count; i++) {
+                inQueue.add(createMessage("test", "I'm a test message " + i));
+            }
+        });
+
+        final long deadline = System.currentTimeMillis() + 60_000;
+        vertx.setPeriodic(500, id -> {
+            logger.info("Still {} messages waiting, {} received", inQueue.size(), outQueue.size());
+            if (outQueue.size() >= count || System.currentTimeMillis() > deadline) {
+                vertx.cancelTimer(id);
+                context.getEngine().shutdown(context);
+            }
+        });
 
+        context.getEngine().awaitTermination(context);
+        vertx.close();
+        Assert.assertEquals(count, outQueue.size());
+        //workers run concurrently: ordering is only guaranteed within a batch
+        final BsonSerializer bsonSerializer = new BsonSerializer();
+        final Set<String> values = new HashSet<>();
+        while (!outQueue.isEmpty()) {
+            Message m = outQueue.remove();
+            Assert.assertEquals("i_m_the_new_key", m.getSubject());
+            Assert.assertEquals("record/bson", m.getContentType());
+            Record r = bsonSerializer.deserialize(new ByteArrayInputStream(((Data) m.getBody()).getValue().getArray()));
+            values.add(r.getField(FieldDictionary.RECORD_VALUE).asString());
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertTrue(values.contains("I'm a test message " + i));
+        }
+    }
 
 }
 
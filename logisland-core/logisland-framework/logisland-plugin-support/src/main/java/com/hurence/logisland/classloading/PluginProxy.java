@@ -23,8 +23,13 @@ import net.sf.cglib.proxy.InvocationHandler;
 import org.apache.commons.lang3.SerializationUtils;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A cglib autoproxy creator.
@@ -35,15 +40,53 @@ public class PluginProxy {
 
     /**
      * A method handler for our proxies.
+     * <p>
+     * The delegate method of each proxied method is resolved once into a {@link MethodHandle} taking the arguments
+     * array, so that a call costs a map lookup and a direct invocation instead of a reflective lookup.
      *
      * @author amarziali
      */
     private static class CglibProxyHandler implements InvocationHandler, Serializable {
 
+        private static final MethodType INVOKER_TYPE = MethodType.genericMethodType(0, true);
+        private static final Object[] NO_ARGS = new Object[0];
+
         private transient final Object delegate;
+        private transient final ClassLoader delegateClassLoader;
+        private transient final Map<Method, MethodHandle> handles = new ConcurrentHashMap<>();
 
         public CglibProxyHandler(Object delegate) {
             this.delegate = delegate;
+            this.delegateClassLoader = delegate.getClass().getClassLoader();
+        }
+
+        /**
+         * Resolves the delegate methods of the given proxied methods ahead of the first call.
+         */
+        void resolve(Method[] methods) {
+            for (Method method : methods) {
+                try {
+                    handleOf(method);
+                } catch (NoSuchMethodException | IllegalAccessException e) {
+                    // not implemented by the delegate (e.g. writeReplace), reported if ever called
+                }
+            }
+        }
+
+        private MethodHandle handleOf(Method method) throws NoSuchMethodException, IllegalAccessException {
+            MethodHandle handle = handles.get(method);
+            if (handle == null) {
+                Method delegateMethod = delegate.getClass().getMethod(method.getName(), method.getParameterTypes());
+                if (!Modifier.isPublic(delegateMethod.getDeclaringClass().getModifiers())) {
+                    delegateMethod.setAccessible(true);
+                }
+                handle = MethodHandles.lookup().unreflect(delegateMethod)
+                        .bindTo(delegate)
+                        .asSpreader(Object[].class, delegateMethod.getParameterCount())
+                        .asType(INVOKER_TYPE);
+                handles.put(method, handle);
+            }
+            return handle;
         }
 
         @Override
@@ -56,16 +99,20 @@ public class PluginProxy {
             if ("resolveDelegate".equals(method.getName())) {
                 return delegate;
             }
-            Method delegateMethod = delegate.getClass().getMethod(method.getName(), method.getParameterTypes());
+            final MethodHandle handle = handleOf(method);
+            final Object[] arguments = args == null ? NO_ARGS : args;
 
-            ClassLoader cl = Thread.currentThread().getContextClassLoader();
-            ClassLoader toSet = delegate != null ? delegate.getClass().getClassLoader() : Thread.currentThread().getContextClassLoader();
+            final Thread thread = Thread.currentThread();
+            final ClassLoader cl = thread.getContextClassLoader();
+            if (cl == delegateClassLoader || delegateClassLoader == null) {
+                return (Object) handle.invokeExact(arguments);
+            }
             try {
-                Thread.currentThread().setContextClassLoader(toSet);
-                return delegateMethod.invoke(delegate, args);
+                thread.setContextClassLoader(delegateClassLoader);
+                return (Object) handle.invokeExact(arguments);
             } finally {
-                if (toSet.equals(Thread.currentThread().getContextClassLoader())) {
-                    Thread.currentThread().setContextClassLoader(cl);
+                if (delegateClassLoader.equals(thread.getContextClassLoader())) {
+                    thread.setContextClassLoader(cl);
                 }
             }
         }
@@ -77,7 +124,8 @@ public class PluginProxy {
         Enhancer enhancer = new Enhancer();
 
 
-        if (superClass != null && !AbstractConfigurableComponent.class.isAssignableFrom(superClass)) {
+        final boolean proxySuperClass = superClass != null && !AbstractConfigurableComponent.class.isAssignableFrom(superClass);
+        if (proxySuperClass) {
             enhancer.setSuperclass(superClass);
         }
 
@@ -101,7 +149,14 @@ public class PluginProxy {
 
         enhancer.setClassLoader(cl == null ? Thread.currentThread().getContextClassLoader() : cl);
 
-        return enhancer.create();
+        Object proxy = enhancer.create();
+        for (Class<?> i : il) {
+            handler.resolve(i.getMethods());
+        }
+        if (proxySuperClass) {
+            handler.resolve(superClass.getMethods());
+        }
+        return proxy;
     }
 
     /**
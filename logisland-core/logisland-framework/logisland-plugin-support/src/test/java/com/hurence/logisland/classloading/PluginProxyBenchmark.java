@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.classloading;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls a small cache like service directly and through a {@link PluginProxy}, which is how processors reach the
+ * controller services once per record.
+ * <p>
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PluginProxyBenchmark {
+
+    public interface Cache {
+        String get(String key);
+
+        void set(String key, String value);
+    }
+
+    public static class MapCache implements Cache {
+
+        private final Map<String, String> map = new HashMap<>();
+
+        @Override
+        public String get(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void set(String key, String value) {
+            map.put(key, value);
+        }
+    }
+
+    private Cache direct;
+    private Cache proxied;
+
+    @Setup
+    public void setup() {
+        direct = new MapCache();
+        direct.set("key", "value");
+        proxied = PluginProxy.create(direct);
+    }
+
+    @Benchmark
+    public String directGet() {
+        return direct.get("key");
+    }
+
+    @Benchmark
+    public String proxiedGet() {
+        return proxied.get("key");
+    }
+
+    @Benchmark
+    public void proxiedSet() {
+        proxied.set("key", "value");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PluginProxyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
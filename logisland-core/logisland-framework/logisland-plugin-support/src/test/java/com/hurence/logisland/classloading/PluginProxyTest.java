@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.classloading;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class PluginProxyTest {
+
+    public interface Calculator {
+        int add(int a, int b);
+
+        long sum(long... values);
+
+        String describe(Object value);
+
+        void fail() throws IOException;
+
+        ClassLoader contextClassLoader();
+    }
+
+    public static class SimpleCalculator implements Calculator {
+
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public long sum(long... values) {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public String describe(Object value) {
+            return String.valueOf(value);
+        }
+
+        @Override
+        public void fail() throws IOException {
+            throw new IOException("failed");
+        }
+
+        @Override
+        public ClassLoader contextClassLoader() {
+            return Thread.currentThread().getContextClassLoader();
+        }
+    }
+
+    @Test
+    public void testDispatch() {
+        Calculator proxy = PluginProxy.create(new SimpleCalculator());
+
+        Assert.assertNotSame(SimpleCalculator.class, proxy.getClass());
+        Assert.assertEquals(5, proxy.add(2, 3));
+        Assert.assertEquals(6L, proxy.sum(1L, 2L, 3L));
+        Assert.assertEquals("null", proxy.describe(null));
+        Assert.assertTrue(PluginProxy.unwrap(proxy) instanceof SimpleCalculator);
+    }
+
+    @Test
+    public void testExceptionsAreNotWrapped() {
+        Calculator proxy = PluginProxy.create(new SimpleCalculator());
+        try {
+            proxy.fail();
+            Assert.fail("an IOException should have been thrown");
+        } catch (IOException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testContextClassLoader() {
+        Calculator proxy = PluginProxy.create(new SimpleCalculator());
+        final Thread thread = Thread.currentThread();
+        final ClassLoader original = thread.getContextClassLoader();
+        final ClassLoader other = new URLClassLoader(new URL[0], original);
+        try {
+            thread.setContextClassLoader(other);
+            // the call runs with the classloader of the delegate, then the caller's one is restored
+            Assert.assertSame(SimpleCalculator.class.getClassLoader(), proxy.contextClassLoader());
+            Assert.assertSame(other, thread.getContextClassLoader());
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+}
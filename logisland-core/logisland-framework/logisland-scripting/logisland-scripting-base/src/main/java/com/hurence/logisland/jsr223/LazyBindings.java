@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.jsr223;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.script.Bindings;
+
+/**
+ * Bindings that look their values up in an underlying source only when a script asks for them,
+ * rather than having every value copied in before each evaluation.
+ * <p>
+ * Lookups of names that are not strings, which some interpreters do, find nothing instead of failing.
+ * Values put by scripts go to a local map that shadows the source, and removed names are hidden
+ * from it, so the source itself is never modified. Call {@link #reset()} before reusing the same
+ * instance with another source.
+ */
+public abstract class LazyBindings extends AbstractMap<String, Object> implements Bindings {
+
+	private Map<String, Object> locals;
+	private Set<String> hidden;
+
+	/**
+	 * @return true if the source has a value, possibly null, for that name
+	 */
+	protected abstract boolean isResolvable(String name);
+
+	/**
+	 * @return the value of the source for that name
+	 */
+	protected abstract Object resolve(String name);
+
+	/**
+	 * @return all the names the source has a value for
+	 */
+	protected abstract Set<String> resolvableNames();
+
+	/**
+	 * Forgets the values put or removed by scripts.
+	 */
+	public void reset() {
+		if (locals != null) {
+			locals.clear();
+		}
+		if (hidden != null) {
+			hidden.clear();
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof String)) {
+			return false;
+		}
+		String name = (String) key;
+		if (locals != null && locals.containsKey(name)) {
+			return true;
+		}
+		return !isHidden(name) && isResolvable(name);
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		String name = (String) key;
+		if (locals != null && locals.containsKey(name)) {
+			return locals.get(name);
+		}
+		if (isHidden(name)) {
+			return null;
+		}
+		return resolve(name);
+	}
+
+	@Override
+	public Object put(String name, Object value) {
+		checkKey(name);
+		Object previous = get(name);
+		if (locals == null) {
+			locals = new HashMap<>();
+		}
+		locals.put(name, value);
+		return previous;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		String name = checkKey(key);
+		Object previous = get(name);
+		if (locals != null) {
+			locals.remove(name);
+		}
+		if (isResolvable(name)) {
+			if (hidden == null) {
+				hidden = new HashSet<>();
+			}
+			hidden.add(name);
+		}
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		if (locals != null) {
+			locals.clear();
+		}
+		Set<String> names = resolvableNames();
+		if (!names.isEmpty()) {
+			if (hidden == null) {
+				hidden = new HashSet<>();
+			}
+			hidden.addAll(names);
+		}
+	}
+
+	/**
+	 * The entries are a snapshot of the visible values, taken when iterating; removing an entry
+	 * through the iterator removes it from these bindings.
+	 */
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<Entry<String, Object>>() {
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				final Iterator<Entry<String, Object>> snapshot = snapshot().entrySet().iterator();
+				return new Iterator<Entry<String, Object>>() {
+					private Entry<String, Object> current;
+
+					@Override
+					public boolean hasNext() {
+						return snapshot.hasNext();
+					}
+
+					@Override
+					public Entry<String, Object> next() {
+						current = snapshot.next();
+						return current;
+					}
+
+					@Override
+					public void remove() {
+						if (current == null) {
+							throw new IllegalStateException();
+						}
+						LazyBindings.this.remove(current.getKey());
+						current = null;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return LazyBindings.this.size();
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		int size = locals == null ? 0 : locals.size();
+		for (String name : resolvableNames()) {
+			if (!isHidden(name) && (locals == null || !locals.containsKey(name))) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		for (String name : resolvableNames()) {
+			if (!isHidden(name)) {
+				snapshot.put(name, resolve(name));
+			}
+		}
+		if (locals != null) {
+			snapshot.putAll(locals);
+		}
+		return snapshot;
+	}
+
+	private boolean isHidden(String name) {
+		return hidden != null && hidden.contains(name);
+	}
+
+	private static String checkKey(Object key) {
+		if (key == null) {
+			throw new NullPointerException("key can not be null");
+		}
+		if (!(key instanceof String)) {
+			throw new ClassCastException("key should be a String");
+		}
+		if (((String) key).isEmpty()) {
+			throw new IllegalArgumentException("key can not be empty");
+		}
+		return (String) key;
+	}
+
+}
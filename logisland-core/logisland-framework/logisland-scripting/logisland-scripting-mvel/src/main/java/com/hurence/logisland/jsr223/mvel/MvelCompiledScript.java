@@ -18,6 +18,7 @@ package com.hurence.logisland.jsr223.mvel;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.script.Bindings;
@@ -28,7 +29,7 @@ import javax.script.ScriptException;
 
 import org.mvel2.MVEL;
 import org.mvel2.compiler.ExpressionCompiler;
-import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.VariableResolver;
 import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 public class MvelCompiledScript extends CompiledScript {
@@ -52,8 +53,9 @@ public class MvelCompiledScript extends CompiledScript {
 	@Override
 	public Object eval(ScriptContext context) throws ScriptException {
 		try {
-			Bindings map = context.getBindings(ScriptContext.ENGINE_SCOPE);
-			return MVEL.executeExpression(compiledExpression, Collections.unmodifiableMap(new HashMap<>(map)));
+			// variables are looked up in the bindings as the expression needs them, nothing is copied
+			Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+			return MVEL.executeExpression(compiledExpression, new LocalVariableResolverFactory(bindings));
 		}
 		catch (Throwable t) {
 			return null;
@@ -65,4 +67,36 @@ public class MvelCompiledScript extends CompiledScript {
 		return scriptEngine;
 	}
 
+	/**
+	 * Resolves the variables from the bindings but keeps the assignments of the expression to itself,
+	 * the bindings of the caller are never modified.
+	 */
+	private static class LocalVariableResolverFactory extends MapVariableResolverFactory {
+
+		LocalVariableResolverFactory(Map<String, Object> bindings) {
+			super(new HashMap<>(), new MapVariableResolverFactory(Collections.unmodifiableMap(bindings)));
+		}
+
+		@Override
+		public VariableResolver createVariable(String name, Object value) {
+			declareLocally(name);
+			return super.createVariable(name, value);
+		}
+
+		@Override
+		public VariableResolver createVariable(String name, Object value, Class<?> type) {
+			declareLocally(name);
+			return super.createVariable(name, value, type);
+		}
+
+		/**
+		 * shadows a variable of the bindings so that it is assigned here
+		 */
+		private void declareLocally(String name) {
+			if (!variables.containsKey(name)) {
+				variables.put(name, null);
+			}
+		}
+	}
+
 }
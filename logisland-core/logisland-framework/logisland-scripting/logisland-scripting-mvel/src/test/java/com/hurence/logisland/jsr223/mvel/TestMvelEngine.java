@@ -16,16 +16,23 @@
 package com.hurence.logisland.jsr223.mvel;
 
 import com.hurence.logisland.jsr223.BindingsImpl;
+import com.hurence.logisland.jsr223.LazyBindings;
 import org.junit.Test;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class TestMvelEngine {
@@ -58,5 +65,62 @@ public class TestMvelEngine {
 
     }
 
+    @Test
+    public void testLazyBindings() throws Exception {
+        ScriptEngineManager sem = new ScriptEngineManager();
+        ScriptEngine se = sem.getEngineByName("mvel");
+        Map<String, Object> model = new HashMap<>();
+        model.put("price", 89);
+        model.put("currency", "EUR");
+        Set<String> resolved = new HashSet<>();
+        LazyBindings bindings = new LazyBindings() {
+            @Override
+            protected boolean isResolvable(String name) {
+                return model.containsKey(name);
+            }
+
+            @Override
+            protected Object resolve(String name) {
+                resolved.add(name);
+                return model.get(name);
+            }
+
+            @Override
+            protected Set<String> resolvableNames() {
+                return model.keySet();
+            }
+        };
+
+        assertEquals(178, ((CompiledScript) ((Compilable) se).compile("total = price * 2; total")).eval(bindings));
+        assertTrue(resolved.contains("price"));
+        assertFalse(resolved.contains("currency"));
+        assertFalse(bindings.containsKey("total"));
+        assertFalse(model.containsKey("total"));
+
+        bindings.remove("price");
+        assertFalse(bindings.containsKey("price"));
+        assertEquals(1, bindings.size());
+        assertEquals(89, model.get("price"));
+
+        bindings.reset();
+        assertEquals(model, new HashMap<>(bindings));
+    }
+
+    @Test
+    public void testAssignmentsStayLocal() throws Exception {
+        ScriptEngineManager sem = new ScriptEngineManager();
+        ScriptEngine se = sem.getEngineByName("mvel");
+        Map<String, Object> model = new HashMap<>();
+        model.put("price", 89);
+        BindingsImpl bindings = new BindingsImpl(model);
+        CompiledScript script = ((Compilable) se).compile("price = price + 1; discount = 10; price - discount");
+
+        assertEquals(80, script.eval(bindings));
+        // the script sees the bindings unchanged every time
+        assertEquals(80, script.eval(bindings));
+        assertEquals(89, bindings.get("price"));
+        assertFalse(bindings.containsKey("discount"));
+        assertEquals(Collections.singletonMap("price", 89), model);
+    }
 
 }
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non negative values with a bounded relative error, laid out like an HdrHistogram:
+ * values are bucketed by power of two and then linearly within each power of two, so that any value is
+ * reported within 1/{@value #HALF_SUB_BUCKETS} of what was recorded while the whole long range fits in
+ * about a thousand counters.
+ * <p>
+ * Recording is a couple of shifts and one atomic increment, so it can be called from every task thread.
+ * {@link #snapshotAndReset()} is meant for a single reporter which drains the histogram periodically.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int LENGTH = (64 - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long value) {
+        final long v = Math.max(0L, value);
+        counts.incrementAndGet(indexOf(v));
+        sum.add(v);
+    }
+
+    /**
+     * Copies the counters into an immutable snapshot and zeroes them. Values recorded concurrently end up
+     * either in this snapshot or in the next one, never lost.
+     */
+    public Snapshot snapshotAndReset() {
+        final long[] copy = new long[LENGTH];
+        long count = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            if (counts.get(i) != 0) {
+                copy[i] = counts.getAndSet(i, 0);
+                count += copy[i];
+            }
+        }
+        return new Snapshot(copy, count, sum.sumThenReset());
+    }
+
+    static int indexOf(long value) {
+        final int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value that falls into the same bucket as the given index
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / HALF_SUB_BUCKETS - 1;
+        final long subBucket = index - shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestEquivalentValue(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestEquivalentValue(i);
+                }
+            }
+            return getMax();
+        }
+    }
+}
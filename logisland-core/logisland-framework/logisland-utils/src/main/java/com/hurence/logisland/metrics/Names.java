@@ -30,6 +30,10 @@ public interface Names {
     String FIELDS_PER_RECORD_AVERAGE = "fields_per_record_average";
     String BYTES_PER_SECOND_AVERAGE = "bytes_per_second_average";
     String PROCESSING_TIME_MS = "processing_time_ms";
+    String PROCESSING_TIME_MEAN_MS = "processing_time_mean_ms";
+    String PROCESSING_TIME_P50_MS = "processing_time_p50_ms";
+    String PROCESSING_TIME_P99_MS = "processing_time_p99_ms";
+    String PROCESSING_TIME_MAX_MS = "processing_time_max_ms";
 
 
 }
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.metrics;
+
+import com.hurence.logisland.record.FieldDictionary;
+import com.hurence.logisland.record.Record;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the metrics of one processor (or pipeline) across all the tasks running in this JVM.
+ * <p>
+ * Every counter is a {@link LongAdder} so that concurrent tasks never contend on a lock, and the record sizes
+ * are estimated from one record out of {@code sizeSamplingInterval} because {@link Record#sizeInBytes()} walks
+ * every field. The processing times go to a {@link LatencyHistogram}.
+ * <p>
+ * {@link #snapshotAndReset()} turns what was accumulated since the previous call into the gauge values named
+ * in {@link Names}; the counters are drained one after the other, so a batch recorded meanwhile may be split
+ * across two consecutive reports, which only matters for the averages of that window.
+ */
+public class ProcessorMetricsAccumulator {
+
+    public static final int DEFAULT_SIZE_SAMPLING_INTERVAL = 16;
+
+    private final int sizeSamplingInterval;
+
+    private final LongAdder incomingMessages = new LongAdder();
+    private final LongAdder incomingRecords = new LongAdder();
+    private final LongAdder outgoingRecords = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder processedFields = new LongAdder();
+    private final LongAdder sampledRecords = new LongAdder();
+    private final LongAdder sampledBytes = new LongAdder();
+    private final LongAdder processingTimeMs = new LongAdder();
+    private final LatencyHistogram processingTimes = new LatencyHistogram();
+
+    public ProcessorMetricsAccumulator() {
+        this(DEFAULT_SIZE_SAMPLING_INTERVAL);
+    }
+
+    /**
+     * @param sizeSamplingInterval measure the size of one outgoing record out of this many, 1 measures them all
+     */
+    public ProcessorMetricsAccumulator(int sizeSamplingInterval) {
+        if (sizeSamplingInterval < 1) {
+            throw new IllegalArgumentException("size sampling interval must be at least 1, got " + sizeSamplingInterval);
+        }
+        this.sizeSamplingInterval = sizeSamplingInterval;
+    }
+
+    public void record(final Collection<Record> incomingEvents,
+                       final Collection<Record> outgoingEvents,
+                       final long fromOffset,
+                       final long untilOffset,
+                       final long processingDurationInMillis) {
+
+        long errorCount = 0;
+        long fieldCount = 0;
+        long sampleCount = 0;
+        long sampleBytes = 0;
+        int i = 0;
+        for (Record record : outgoingEvents) {
+            if (record == null) {
+                continue;
+            }
+            if (record.hasField(FieldDictionary.RECORD_ERRORS)) {
+                errorCount++;
+            }
+            fieldCount += record.size();
+            if (i++ % sizeSamplingInterval == 0) {
+                sampleCount++;
+                sampleBytes += record.sizeInBytes();
+            }
+        }
+
+        incomingMessages.add(untilOffset - fromOffset);
+        incomingRecords.add(incomingEvents == null ? 0 : incomingEvents.size());
+        outgoingRecords.add(outgoingEvents.size());
+        errors.add(errorCount);
+        processedFields.add(fieldCount);
+        sampledRecords.add(sampleCount);
+        sampledBytes.add(sampleBytes);
+        processingTimeMs.add(processingDurationInMillis);
+        processingTimes.record(processingDurationInMillis);
+    }
+
+    /**
+     * @return the gauge values accumulated since the previous call, by metric name, or an empty map if no
+     * outgoing record was seen in the meantime
+     */
+    public Map<String, Long> snapshotAndReset() {
+        final long messages = incomingMessages.sumThenReset();
+        final long incoming = incomingRecords.sumThenReset();
+        final long outgoing = outgoingRecords.sumThenReset();
+        final long errorCount = errors.sumThenReset();
+        final long fields = processedFields.sumThenReset();
+        final long samples = sampledRecords.sumThenReset();
+        final long sampleBytes = sampledBytes.sumThenReset();
+        final long durationMs = processingTimeMs.sumThenReset();
+        final LatencyHistogram.Snapshot times = processingTimes.snapshotAndReset();
+
+        final Map<String, Long> gauges = new LinkedHashMap<>();
+        if (outgoing == 0) {
+            return gauges;
+        }
+        final long bytes = samples == 0 ? 0 : sampleBytes * outgoing / samples;
+
+        gauges.put(Names.INCOMING_MESSAGES, messages);
+        gauges.put(Names.INCOMING_RECORDS, incoming);
+        gauges.put(Names.OUTGOING_RECORDS, outgoing);
+        gauges.put(Names.ERRORS, errorCount);
+        gauges.put(Names.BYTES_PER_FIELD_AVERAGE, fields == 0 ? 0 : bytes / fields);
+        gauges.put(Names.BYTES_PER_SECOND_AVERAGE, durationMs == 0 ? 0 : bytes * 1000 / durationMs);
+        gauges.put(Names.RECORDS_PER_SECOND_AVERAGE, durationMs == 0 ? 0 : outgoing * 1000 / durationMs);
+        gauges.put(Names.PROCESSED_BYTES, bytes);
+        gauges.put(Names.PROCESSED_FIELDS, fields);
+        gauges.put(Names.ERROR_PERCENTAGE, (long) (100.0f * errorCount / outgoing));
+        gauges.put(Names.FIELDS_PER_RECORD_AVERAGE, fields / outgoing);
+        gauges.put(Names.BYTES_PER_RECORD_AVERAGE, bytes / outgoing);
+        gauges.put(Names.PROCESSING_TIME_MEAN_MS, times.getMean());
+        gauges.put(Names.PROCESSING_TIME_P50_MS, times.getValueAtPercentile(50.0));
+        gauges.put(Names.PROCESSING_TIME_P99_MS, times.getValueAtPercentile(99.0));
+        gauges.put(Names.PROCESSING_TIME_MAX_MS, times.getMax());
+        return gauges;
+    }
+}
@@ -54,10 +54,30 @@ public class AvroSerializer implements RecordSerializer {
     private final Schema schema;
     private Logger logger = LoggerFactory.getLogger(AvroSerializer.class);
 
+    /**
+     * Generic datum readers and writers are thread safe and costly to build (schema resolution),
+     * encoders and decoders are not thread safe but can be reused once per thread.
+     */
+    private transient volatile DatumWriter<GenericRecord> datumWriter;
+    private transient volatile DatumReader<GenericRecord> datumReader;
+    private static final ThreadLocal<BinaryEncoder> encoders = new ThreadLocal<>();
+    private static final ThreadLocal<BinaryDecoder> decoders = new ThreadLocal<>();
+
+    private RecordImplementation recordImplementation = RecordImplementation.STANDARD;
+
     public AvroSerializer(final Schema schema) {
         this.schema = schema;
     }
 
+    /**
+     * @param schema               the Avro schema
+     * @param recordImplementation the kind of records built by {@link #deserialize(InputStream)}
+     */
+    public AvroSerializer(final Schema schema, final RecordImplementation recordImplementation) {
+        this.schema = schema;
+        this.recordImplementation = recordImplementation;
+    }
+
     public AvroSerializer(final String strSchema) {
         final Schema.Parser parser = new Schema.Parser();
         try {
@@ -77,6 +97,20 @@ public class AvroSerializer implements RecordSerializer {
         }
     }
 
+    private DatumWriter<GenericRecord> datumWriter() {
+        if (datumWriter == null) {
+            datumWriter = new GenericDatumWriter<>(schema);
+        }
+        return datumWriter;
+    }
+
+    private DatumReader<GenericRecord> datumReader() {
+        if (datumReader == null) {
+            datumReader = new GenericDatumReader<>(schema);
+        }
+        return datumReader;
+    }
+
     protected static final byte MAGIC_BYTE = 0x0;
     protected static final int idSize = 4;
 
@@ -101,9 +135,9 @@ public class AvroSerializer implements RecordSerializer {
             /**
              *
              */
-            DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(schema);
-            Encoder encoder = EncoderFactory.get().binaryEncoder(out, null);
-            datumWriter.write(eventRecord, encoder);
+            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, encoders.get());
+            encoders.set(encoder);
+            datumWriter().write(eventRecord, encoder);
             encoder.flush();
 
             out.flush();
@@ -128,11 +162,11 @@ public class AvroSerializer implements RecordSerializer {
 
     public Record deserialize(final InputStream in) throws RecordSerializationException {
         try {
-            Decoder decoder = DecoderFactory.get().binaryDecoder(in, null);
-            DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(schema);
-            GenericRecord genericRecord = datumReader.read(null, decoder);
+            BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(in, decoders.get());
+            decoders.set(decoder);
+            GenericRecord genericRecord = datumReader().read(null, decoder);
 
-            Record record = new StandardRecord(genericRecord.get(FieldDictionary.RECORD_TYPE).toString());
+            Record record = recordImplementation.newRecord(genericRecord.get(FieldDictionary.RECORD_TYPE).toString());
             this.readAvro(record, genericRecord);
 
             return record;
@@ -183,7 +217,7 @@ public class AvroSerializer implements RecordSerializer {
      */
     private Record readAvro(final GenericData.Record avroRecord)
     {
-        return readAvro(new StandardRecord(avroRecord.getSchema().getName()),
+        return readAvro(recordImplementation.newRecord(avroRecord.getSchema().getName()),
                         new AvroRecord()
                         {
                             @Override
@@ -40,6 +40,19 @@ import java.io.OutputStream;
 
 public class BytesArraySerializer implements RecordSerializer {
 
+    private final RecordImplementation recordImplementation;
+
+    public BytesArraySerializer() {
+        this(RecordImplementation.STANDARD);
+    }
+
+    /**
+     * @param recordImplementation the kind of records built by {@link #deserialize(InputStream)}
+     */
+    public BytesArraySerializer(RecordImplementation recordImplementation) {
+        this.recordImplementation = recordImplementation;
+    }
+
     public void serialize(OutputStream objectDataOutput, Record record) {
         Field f =  record.getField(FieldDictionary.RECORD_VALUE);
         if (f != null && f.isSet() && f.getType().equals(FieldType.BYTES)) {
@@ -53,7 +66,7 @@ public class BytesArraySerializer implements RecordSerializer {
 
     public Record deserialize(InputStream objectDataInput) {
         try {
-            Record record = new StandardRecord();
+            Record record = recordImplementation.newRecord();
             byte[] bytes = IOUtils.toByteArray(objectDataInput);
             record.setField(FieldDictionary.RECORD_VALUE, FieldType.BYTES, bytes);
             return record;
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.hurence.logisland.record.CompactRecord;
+import com.hurence.logisland.record.FieldDictionary;
+import com.hurence.logisland.record.FieldType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Kryo serializer writing the flat arrays of a {@link CompactRecord}: its errors, then each field as its name, a tag
+ * and either the unboxed primitive or the field type and value. Reading it back fills the arrays directly, without
+ * any intermediate {@link com.hurence.logisland.record.Field} nor boxed value.
+ * <p>
+ * This is not the wire format of the {@link KryoSerializer} topics, which stays the one of a
+ * {@link com.hurence.logisland.record.StandardRecord}, but the one of the records kryo serializes within a job.
+ */
+public class CompactRecordSerializer extends Serializer<CompactRecord> {
+
+    private static final byte REFERENCE = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+
+    private static final FieldType[] TYPES = FieldType.values();
+
+    @Override
+    public void write(final Kryo kryo, final Output output, final CompactRecord record) {
+        final Collection<String> errors = record.getErrors();
+        output.writeInt(errors.size(), true);
+        for (String error : errors) {
+            output.writeString(error);
+        }
+        output.writeInt(record.getAllFields().size(), true);
+        record.visitValues(new CompactRecord.ValueVisitor() {
+            @Override
+            public void visit(String name, FieldType type, Object value) {
+                output.writeString(name);
+                output.writeByte(REFERENCE);
+                output.writeInt(type == null ? 0 : type.ordinal() + 1, true);
+                kryo.writeClassAndObject(output, value);
+            }
+
+            @Override
+            public void visitInt(String name, int value) {
+                output.writeString(name);
+                output.writeByte(INT);
+                output.writeInt(value);
+            }
+
+            @Override
+            public void visitLong(String name, long value) {
+                output.writeString(name);
+                output.writeByte(LONG);
+                output.writeLong(value);
+            }
+
+            @Override
+            public void visitFloat(String name, float value) {
+                output.writeString(name);
+                output.writeByte(FLOAT);
+                output.writeFloat(value);
+            }
+
+            @Override
+            public void visitDouble(String name, double value) {
+                output.writeString(name);
+                output.writeByte(DOUBLE);
+                output.writeDouble(value);
+            }
+
+            @Override
+            public void visitBoolean(String name, boolean value) {
+                output.writeString(name);
+                output.writeByte(BOOLEAN);
+                output.writeBoolean(value);
+            }
+        });
+    }
+
+    @Override
+    public CompactRecord read(Kryo kryo, Input input, Class<CompactRecord> type) {
+        final int errorCount = input.readInt(true);
+        final List<String> errors = new ArrayList<>(errorCount);
+        for (int i = 0; i < errorCount; i++) {
+            errors.add(input.readString());
+        }
+        final int fields = input.readInt(true);
+        final CompactRecord record = CompactRecord.restore(fields, errors);
+        kryo.reference(record);
+        for (int i = 0; i < fields; i++) {
+            final String name = input.readString();
+            switch (input.readByte()) {
+                case INT:
+                    record.setIntValue(name, input.readInt());
+                    break;
+                case LONG:
+                    record.setLongValue(name, input.readLong());
+                    break;
+                case FLOAT:
+                    record.setFloatValue(name, input.readFloat());
+                    break;
+                case DOUBLE:
+                    record.setDoubleValue(name, input.readDouble());
+                    break;
+                case BOOLEAN:
+                    record.setBooleanValue(name, input.readBoolean());
+                    break;
+                default:
+                    final int ordinal = input.readInt(true);
+                    Object value = kryo.readClassAndObject(input);
+                    // the errors field holds the errors list itself, so that later errors show up in it
+                    if (FieldDictionary.RECORD_ERRORS.equals(name) && errors.equals(value)) {
+                        value = errors;
+                    }
+                    record.setField(name, ordinal == 0 ? null : TYPES[ordinal - 1], value);
+                    break;
+            }
+        }
+        return record;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.hurence.logisland.serializer;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hurence.logisland.record.*;
 import com.hurence.logisland.util.time.DateUtil;
@@ -48,16 +49,22 @@ public class ExtendedJsonSerializer implements RecordSerializer {
 
     private static Logger logger = LoggerFactory.getLogger(com.hurence.logisland.serializer.JsonSerializer.class);
 
-    private final Schema schema;
+    /**
+     * A configured ObjectMapper is thread safe: share it instead of creating one per serializer.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JavaType MAP_TYPE = MAPPER.getTypeFactory().constructMapType(LinkedHashMap.class, String.class, Object.class);
 
-    private transient volatile ObjectMapper mapper;
+    private final Schema schema;
+    private final RecordImplementation recordImplementation;
 
     public ExtendedJsonSerializer(Schema schema) {
         this.schema = schema;
+        this.recordImplementation = RecordImplementation.STANDARD;
     }
 
     public ExtendedJsonSerializer() {
-        this.schema = null;
+        this((Schema) null);
     }
 
     public void doFilter(Map<String, Object> map, String name, Object value, Schema schema) {
@@ -144,6 +151,15 @@ public class ExtendedJsonSerializer implements RecordSerializer {
     }
 
     public ExtendedJsonSerializer(String schemaString) {
+        this(schemaString, RecordImplementation.STANDARD);
+    }
+
+    /**
+     * @param schemaString         an optional Avro schema used to filter and convert fields
+     * @param recordImplementation the kind of records built by {@link #deserialize(InputStream)}
+     */
+    public ExtendedJsonSerializer(String schemaString, RecordImplementation recordImplementation) {
+        this.recordImplementation = recordImplementation;
         if (schemaString != null) {
             final Schema.Parser parser = new Schema.Parser().setValidate(false);
             try {
@@ -221,8 +237,8 @@ public class ExtendedJsonSerializer implements RecordSerializer {
     public Record deserialize(InputStream in) throws RecordSerializationException {
         final ObjectMapper mapper = mapper();
         try {
-            Map<String, Object> map = mapper.readValue(in, mapper.getTypeFactory().constructMapType(LinkedHashMap.class, String.class, Object.class));
-            Record record = new StandardRecord();
+            Map<String, Object> map = mapper.readValue(in, MAP_TYPE);
+            Record record = recordImplementation.newRecord();
             if (map.containsKey("type")) {
                 record.setType((String) map.get("type"));
                 map.remove("type");
@@ -262,10 +278,7 @@ public class ExtendedJsonSerializer implements RecordSerializer {
 
     }
 
-    protected synchronized ObjectMapper mapper() {
-        if (mapper == null) {
-            mapper = new ObjectMapper();
-        }
-        return mapper;
+    protected ObjectMapper mapper() {
+        return MAPPER;
     }
 }
@@ -34,6 +34,8 @@ package com.hurence.logisland.serializer;
 import com.fasterxml.jackson.core.*;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
@@ -53,7 +55,52 @@ public class JsonSerializer implements RecordSerializer {
 
     private static Logger logger = LoggerFactory.getLogger(JsonSerializer.class);
 
-    class EventSerializer extends StdSerializer<Record> {
+    /**
+     * Jackson readers and writers are immutable and thread safe once configured:
+     * they are built once and shared by every serializer instance.
+     */
+    private static final ObjectWriter WRITER;
+    private static final ObjectReader READER;
+
+    static {
+        ObjectMapper mapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Record.class, new EventSerializer());
+        module.addDeserializer(Record.class, new EventDeserializer());
+        mapper.registerModule(module);
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
+        WRITER = mapper.writer();
+        READER = mapper.readerFor(Record.class);
+    }
+
+    private final RecordImplementation recordImplementation;
+    private transient volatile ObjectReader reader;
+
+    public JsonSerializer() {
+        this(RecordImplementation.STANDARD);
+    }
+
+    /**
+     * @param recordImplementation the kind of records built by {@link #deserialize(InputStream)}
+     */
+    public JsonSerializer(RecordImplementation recordImplementation) {
+        this.recordImplementation = recordImplementation;
+    }
+
+    private ObjectReader reader() {
+        if (recordImplementation == RecordImplementation.STANDARD) {
+            return READER;
+        }
+        ObjectReader r = reader;
+        if (r == null) {
+            r = READER.withAttribute(RecordImplementation.class, recordImplementation);
+            reader = r;
+        }
+        return r;
+    }
+
+    static class EventSerializer extends StdSerializer<Record> {
 
         public EventSerializer() {
             this(null);
@@ -131,19 +178,8 @@ public class JsonSerializer implements RecordSerializer {
     @Override
     public void serialize(OutputStream out, Record record) throws RecordSerializationException {
 
-        ObjectMapper mapper = new ObjectMapper();
-        SimpleModule module = new SimpleModule();
-        module.addSerializer(StandardRecord.class, new EventSerializer());
-        mapper.registerModule(module);
-
-        //map json to student
-
         try {
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            mapper.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
-            String jsonString = mapper.writeValueAsString(record);
-
-            out.write(jsonString.getBytes());
+            out.write(WRITER.writeValueAsBytes(record));
             out.flush();
         } catch (IOException e) {
             logger.debug(e.toString());
@@ -152,7 +188,7 @@ public class JsonSerializer implements RecordSerializer {
     }
 
     // @TODO implements ARray deserialization
-    class EventDeserializer extends StdDeserializer<Record> {
+    static class EventDeserializer extends StdDeserializer<Record> {
 
         protected EventDeserializer() {
             this(null);
@@ -264,7 +300,9 @@ public class JsonSerializer implements RecordSerializer {
                 }
             }
 
-            Record record = new StandardRecord();
+            Object implementation = ctxt.getAttribute(RecordImplementation.class);
+            Record record = implementation instanceof RecordImplementation ?
+                    ((RecordImplementation) implementation).newRecord() : new StandardRecord();
             if (id != null) {
                 record.setId(id);
             }
@@ -286,12 +324,8 @@ public class JsonSerializer implements RecordSerializer {
     @Override
     public Record deserialize(InputStream in) throws RecordSerializationException {
 
-        ObjectMapper mapper = new ObjectMapper();
-        SimpleModule module = new SimpleModule();
-        module.addDeserializer(Record.class, new EventDeserializer());
-        mapper.registerModule(module);
         try {
-            return mapper.readValue(in, Record.class);
+            return reader().readValue(in);
         } catch (IOException e) {
             logger.error(e.toString());
             throw new RecordSerializationException("unable to deserialize record");
@@ -35,7 +35,9 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.RecordImplementation;
 import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.record.CompactRecord;
 import com.hurence.logisland.record.Field;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,8 +49,15 @@ import java.io.OutputStream;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
+/**
+ * Kryo serialization of records. The wire format is always the one of a {@link StandardRecord}, which is what the
+ * consumers of the topics read whatever their record implementation: other record implementations are written
+ * through a {@link StandardRecord} copy and read back as the configured implementation. {@link CompactRecord}s
+ * nested in fields, like the records serialized within a job, are written by a {@link CompactRecordSerializer}.
+ */
 public class KryoSerializer implements RecordSerializer {
     private final boolean compress;
+    private final RecordImplementation recordImplementation;
     private Logger logger = LoggerFactory.getLogger(KryoSerializer.class);
 
     private static final ThreadLocal<Kryo> kryoThreadLocal
@@ -59,17 +68,28 @@ public class KryoSerializer implements RecordSerializer {
             Kryo kryo = new Kryo();
             kryo.register(StandardRecord.class);
             kryo.register(Field.class);
+            kryo.register(CompactRecord.class, new CompactRecordSerializer());
             return kryo;
         }
     };
 
     public KryoSerializer(boolean compress) {
+        this(compress, RecordImplementation.STANDARD);
+    }
+
+    /**
+     * @param compress             deflate the serialized records
+     * @param recordImplementation the kind of records built by {@link #deserialize(InputStream)}
+     */
+    public KryoSerializer(boolean compress, RecordImplementation recordImplementation) {
         this.compress = compress;
+        this.recordImplementation = recordImplementation;
     }
 
-    public void serialize(OutputStream objectDataOutput, Record record) {
+    public void serialize(OutputStream objectDataOutput, Record inputRecord) {
         try {
             Kryo kryo = kryoThreadLocal.get();
+            Record record = inputRecord.getClass() == StandardRecord.class ? inputRecord : new StandardRecord(inputRecord);
 
             if (compress) {
                 Output output = null;
@@ -115,7 +135,8 @@ public class KryoSerializer implements RecordSerializer {
             Input input = new Input(in);
             Kryo kryo = kryoThreadLocal.get();
 
-            return kryo.readObject(input, StandardRecord.class);
+            StandardRecord record = kryo.readObject(input, StandardRecord.class);
+            return recordImplementation == RecordImplementation.COMPACT ? new CompactRecord(record) : record;
         } catch (Throwable t) {
             logger.error("error while deserializing", t);
             throw new RecordSerializationException(t.getMessage(), t.getCause());
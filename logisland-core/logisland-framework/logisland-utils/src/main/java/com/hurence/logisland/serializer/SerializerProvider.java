@@ -18,8 +18,13 @@ package com.hurence.logisland.serializer;
 import com.hurence.logisland.logging.ComponentLog;
 import com.hurence.logisland.logging.LogLevel;
 import com.hurence.logisland.logging.StandardComponentLogger;
+import com.hurence.logisland.record.RecordImplementation;
+import com.hurence.logisland.util.record.RecordSchemaUtil;
 import org.apache.avro.Schema;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class SerializerProvider {
 
 
@@ -37,31 +42,79 @@ public class SerializerProvider {
     private static String KURA_PROTOBUF_SERIALIZER = KuraProtobufSerializer.class.getName();
 
     /**
-     * build a serializer
+     * serializers are thread safe: one shared instance per (type, schema)
+     */
+    private static final Map<String, RecordSerializer> serializers = new ConcurrentHashMap<>();
+
+    /**
+     * get a serializer. Instances are cached and shared, so that calling this method for every partition
+     * of every micro-batch does not re-parse schemas nor rebuild the underlying readers/writers.
      *
      * @param inSerializerClass the serializer type
      * @param schemaContent     an optional Avro schema
      * @return the serializer
      */
     public static RecordSerializer getSerializer(final String inSerializerClass, final String schemaContent) {
+        return getSerializer(inSerializerClass, schemaContent, RecordImplementation.STANDARD);
+    }
+
+    /**
+     * get a serializer whose deserialized records are of the given implementation
+     * (serializers which always deserialize to the same record class ignore it).
+     *
+     * @param inSerializerClass    the serializer type
+     * @param schemaContent        an optional Avro schema
+     * @param recordImplementation the kind of records to deserialize to
+     * @return the serializer
+     */
+    public static RecordSerializer getSerializer(final String inSerializerClass,
+                                                 final String schemaContent,
+                                                 final RecordImplementation recordImplementation) {
+        String key = schemaContent == null ? inSerializerClass : inSerializerClass + '\u0000' + schemaContent;
+        if (recordImplementation != RecordImplementation.STANDARD) {
+            key = recordImplementation.getName() + '\u0000' + key;
+        }
+        RecordSerializer serializer = serializers.get(key);
+        if (serializer == null) {
+            serializer = buildSerializer(inSerializerClass, schemaContent, recordImplementation);
+            if (!(serializer instanceof NoopSerializer) || inSerializerClass.equals(NOOP_SERIALIZER)) {
+                RecordSerializer previous = serializers.putIfAbsent(key, serializer);
+                if (previous != null) {
+                    serializer = previous;
+                }
+            }
+        }
+        return serializer;
+    }
+
+    /**
+     * build a serializer
+     *
+     * @param inSerializerClass the serializer type
+     * @param schemaContent        an optional Avro schema
+     * @param recordImplementation the kind of records to deserialize to
+     * @return the serializer
+     */
+    private static RecordSerializer buildSerializer(final String inSerializerClass,
+                                                    final String schemaContent,
+                                                    final RecordImplementation recordImplementation) {
 
         try {
             if (inSerializerClass.equals(AVRO_SERIALIZER)) {
-                Schema.Parser parser = new Schema.Parser();
-                Schema schema = parser.parse(schemaContent);
-                return new AvroSerializer(schema);
+                Schema schema = RecordSchemaUtil.compileSchema(schemaContent);
+                return new AvroSerializer(schema, recordImplementation);
             } else if (inSerializerClass.equals(JSON_SERIALIZER)) {
-                return new JsonSerializer();
+                return new JsonSerializer(recordImplementation);
             } else if (inSerializerClass.equals(EXTENDED_JSON_SERIALIZER)) {
-                return new ExtendedJsonSerializer(schemaContent);
+                return new ExtendedJsonSerializer(schemaContent, recordImplementation);
             } else if (inSerializerClass.equals(KRYO_SERIALIZER)) {
-                return new KryoSerializer(true);
+                return new KryoSerializer(true, recordImplementation);
             } else if (inSerializerClass.equals(BYTES_ARRAY_SERIALIZER)) {
-                return new BytesArraySerializer();
+                return new BytesArraySerializer(recordImplementation);
             } else if (inSerializerClass.equals(KURA_PROTOBUF_SERIALIZER)) {
                 return new KuraProtobufSerializer();
             } else if (inSerializerClass.equals(STRING_SERIALIZER)) {
-                return new StringSerializer();
+                return new StringSerializer(recordImplementation);
             } else {
                 return new NoopSerializer();
             }
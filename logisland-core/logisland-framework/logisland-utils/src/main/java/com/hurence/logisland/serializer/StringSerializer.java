@@ -34,7 +34,7 @@ package com.hurence.logisland.serializer;
 import com.hurence.logisland.record.FieldDictionary;
 import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
-import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.record.RecordImplementation;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
@@ -48,6 +48,19 @@ public class StringSerializer implements RecordSerializer {
 
     private Logger logger = LoggerFactory.getLogger(StringSerializer.class);
 
+    private final RecordImplementation recordImplementation;
+
+    public StringSerializer() {
+        this(RecordImplementation.STANDARD);
+    }
+
+    /**
+     * @param recordImplementation the kind of records built by {@link #deserialize(InputStream)}
+     */
+    public StringSerializer(RecordImplementation recordImplementation) {
+        this.recordImplementation = recordImplementation;
+    }
+
     @Override
     public void serialize(OutputStream out, Record record) throws RecordSerializationException {
 
@@ -64,7 +77,7 @@ public class StringSerializer implements RecordSerializer {
     @Override
     public Record deserialize(InputStream in) throws RecordSerializationException {
         try {
-            return new StandardRecord().setField(FieldDictionary.RECORD_VALUE, FieldType.STRING, IOUtils.toString(in));
+            return recordImplementation.newRecord().setField(FieldDictionary.RECORD_VALUE, FieldType.STRING, IOUtils.toString(in));
         } catch (IOException ioe) {
             throw new RecordSerializationException(ioe.getMessage(), ioe);
         }
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.processor;
+
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
+import com.hurence.logisland.classloading.PluginProxy;
+import com.hurence.logisland.processor.ProcessContext;
+import com.hurence.logisland.processor.Processor;
+import com.hurence.logisland.record.Record;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs a processor on the records of a partition split into chunks processed concurrently.
+ *
+ * Only the processors annotated with {@link ThreadSafe} are split, the other ones receiving all the records
+ * in a single call. The outputs of the chunks are concatenated in the order of the chunks, so the output
+ * keeps the order of the input. The chunks of all the partitions processed in a JVM share the same fork join
+ * pool of the given parallelism, so that the executor cores are not oversubscribed.
+ */
+public class ParallelChunkProcessing {
+
+    private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    private final int parallelism;
+    private final int minChunkSize;
+
+    /**
+     * @param parallelism  the number of chunks processed at the same time, 1 to process the records in the caller thread
+     * @param minChunkSize the minimum number of records of a chunk, smaller partitions being split in less chunks
+     */
+    public ParallelChunkProcessing(int parallelism, int minChunkSize) {
+        this.parallelism = parallelism;
+        this.minChunkSize = Math.max(1, minChunkSize);
+    }
+
+    /**
+     * @param processor a processor, possibly a plugin proxy (which does not carry the annotations of its delegate)
+     * @return true if the class of the processor is annotated with {@link ThreadSafe}
+     */
+    public static boolean isThreadSafe(Processor processor) {
+        return PluginProxy.unwrap(processor).getClass().isAnnotationPresent(ThreadSafe.class);
+    }
+
+    public Collection<Record> process(ProcessContext context, Collection<Record> records) {
+        final Processor processor = context.getProcessor();
+        final int chunks = Math.min(parallelism, records.size() / minChunkSize);
+        if (chunks < 2 || !isThreadSafe(processor)) {
+            return processor.process(context, records);
+        }
+
+        final List<Record> input = records instanceof List ? (List<Record>) records : new ArrayList<>(records);
+        final ForkJoinPool pool = pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+        final List<ForkJoinTask<Collection<Record>>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            // spreads the remainder over the first chunks
+            final List<Record> chunk = new ArrayList<>(input.subList(
+                    (int) ((long) input.size() * i / chunks),
+                    (int) ((long) input.size() * (i + 1) / chunks)));
+            tasks.add(pool.submit(() -> processor.process(context, chunk)));
+        }
+
+        final List<Record> output = new ArrayList<>(input.size());
+        for (ForkJoinTask<Collection<Record>> task : tasks) {
+            try {
+                output.addAll(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return output;
+    }
+}
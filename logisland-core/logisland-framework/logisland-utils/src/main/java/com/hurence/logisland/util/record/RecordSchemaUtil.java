@@ -19,14 +19,23 @@ import com.hurence.logisland.processor.ProcessError;
 import com.hurence.logisland.record.*;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.SchemaNormalization;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static org.apache.avro.Schema.Type.INT;
 
 public class RecordSchemaUtil {
 
+    /**
+     * compiled schemas by definition, and canonical instances by parsing fingerprint
+     * (so that equivalent definitions differing only by formatting share the same schema)
+     */
+    private static final Map<String, Schema> schemasByDefinition = new ConcurrentHashMap<>();
+    private static final Map<Long, Schema> schemasByFingerprint = new ConcurrentHashMap<>();
 
     public static Schema generateSchema(Record inputRecord) {
 
@@ -113,8 +122,21 @@ public class RecordSchemaUtil {
         return builder.toString();
     }
 
+    /**
+     * Compiles an Avro schema definition. Compiled schemas are cached so that calling this
+     * method for every partition of every micro-batch does not re-parse the definition.
+     *
+     * @param schema the Avro schema definition
+     * @return the compiled (shared) schema
+     */
     public static Schema compileSchema(String schema) {
-        return new Schema.Parser().parse(schema);
+        Schema compiled = schemasByDefinition.get(schema);
+        if (compiled == null) {
+            Schema parsed = new Schema.Parser().parse(schema);
+            compiled = schemasByFingerprint.computeIfAbsent(SchemaNormalization.parsingFingerprint64(parsed), k -> parsed);
+            schemasByDefinition.putIfAbsent(schema, compiled);
+        }
+        return compiled;
     }
 
     public static synchronized Record convertToValidRecord(final Record inputRecord, final Schema schema) {
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.component;
+
+import com.hurence.logisland.expressionlanguage.InterpreterEngineFactory;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of mvel expression language properties against a 50 fields record, as FilterRecords or
+ * AddFields do for every record they process.
+ * <p>
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpressionLanguageBenchmark {
+
+    private static final int FIELDS = 50;
+
+    private Record record;
+    private PropertyValue fieldValue;
+    private PropertyValue condition;
+
+    @Setup
+    public void setup() {
+        InterpreterEngineFactory.setInterpreter("mvel");
+        record = new StandardRecord("web_event");
+        for (int i = 0; i < FIELDS; i++) {
+            record.setStringField("field_" + i, "value_" + i);
+        }
+        record.setIntField("status", 404);
+        fieldValue = new InterpretedPropertyValue("${field_7}", null, null);
+        condition = new InterpretedPropertyValue("${status >= 400 && field_3 == 'value_3'}", null, null);
+    }
+
+    @Benchmark
+    public String fieldValue() {
+        return fieldValue.evaluate(record).asString();
+    }
+
+    @Benchmark
+    public Boolean condition() {
+        return condition.evaluate(record).asBoolean();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExpressionLanguageBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguousAndBounded() {
+        long previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long highest = LatencyHistogram.highestEquivalentValue(index);
+            Assert.assertTrue(highest >= value);
+            Assert.assertTrue("relative error too large for " + value, highest - value <= value / 16);
+            Assert.assertTrue(index >= previous);
+            previous = index;
+        }
+        Assert.assertTrue(LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(Long.MAX_VALUE)) >= Long.MAX_VALUE - 1);
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(500, snapshot.getMean());
+        Assert.assertEquals(500, snapshot.getValueAtPercentile(50.0), 500 / 16);
+        Assert.assertEquals(990, snapshot.getValueAtPercentile(99.0), 990 / 16);
+        Assert.assertEquals(1000, snapshot.getMax(), 1000 / 16);
+
+        final LatencyHistogram.Snapshot empty = histogram.snapshotAndReset();
+        Assert.assertEquals(0, empty.getCount());
+        Assert.assertEquals(0, empty.getMax());
+        Assert.assertEquals(0, empty.getValueAtPercentile(99.0));
+    }
+
+    @Test
+    public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>();
+        final Thread[] writers = IntStream.range(0, 4)
+                .mapToObj(t -> new Thread(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.record(i % 200);
+                    }
+                }))
+                .toArray(Thread[]::new);
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                snapshots.add(histogram.snapshotAndReset());
+                writer.join(1);
+            }
+        }
+        snapshots.add(histogram.snapshotAndReset());
+
+        Assert.assertEquals(400_000, snapshots.stream().mapToLong(LatencyHistogram.Snapshot::getCount).sum());
+    }
+}
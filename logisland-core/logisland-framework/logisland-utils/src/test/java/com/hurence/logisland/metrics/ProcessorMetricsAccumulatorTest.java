@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.metrics;
+
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ProcessorMetricsAccumulatorTest {
+
+    private static List<Record> records(int count, int errors) {
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final Record record = new StandardRecord("event")
+                    .setId("id" + i)
+                    .setStringField("message", "some message of a fixed size");
+            if (i < errors) {
+                record.addError("processing_error", "failed");
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void testAccumulatesUntilSnapshot() {
+        final ProcessorMetricsAccumulator accumulator = new ProcessorMetricsAccumulator(1);
+        final List<Record> batch = records(100, 10);
+        accumulator.record(batch, batch, 0, 100, 50);
+        accumulator.record(batch, batch, 100, 200, 150);
+
+        final int recordSize = batch.get(50).sizeInBytes();
+        final long fields = batch.stream().mapToLong(Record::size).sum() * 2;
+        final Map<String, Long> gauges = accumulator.snapshotAndReset();
+
+        Assert.assertEquals(200L, (long) gauges.get(Names.INCOMING_MESSAGES));
+        Assert.assertEquals(200L, (long) gauges.get(Names.OUTGOING_RECORDS));
+        Assert.assertEquals(20L, (long) gauges.get(Names.ERRORS));
+        Assert.assertEquals(10L, (long) gauges.get(Names.ERROR_PERCENTAGE));
+        Assert.assertEquals(fields, (long) gauges.get(Names.PROCESSED_FIELDS));
+        Assert.assertEquals(1000L, (long) gauges.get(Names.RECORDS_PER_SECOND_AVERAGE));
+        Assert.assertEquals(100L, (long) gauges.get(Names.PROCESSING_TIME_MEAN_MS));
+        Assert.assertEquals(150L, gauges.get(Names.PROCESSING_TIME_MAX_MS), 150 / 16);
+        Assert.assertTrue(gauges.get(Names.BYTES_PER_RECORD_AVERAGE) >= recordSize - 20);
+
+        Assert.assertTrue(accumulator.snapshotAndReset().isEmpty());
+    }
+
+    @Test
+    public void testSampledSizeIsExtrapolated() {
+        final List<Record> batch = records(1000, 0);
+        final ProcessorMetricsAccumulator exact = new ProcessorMetricsAccumulator(1);
+        final ProcessorMetricsAccumulator sampled = new ProcessorMetricsAccumulator(16);
+        exact.record(batch, batch, 0, 1000, 10);
+        sampled.record(batch, batch, 0, 1000, 10);
+
+        final long exactBytes = exact.snapshotAndReset().get(Names.PROCESSED_BYTES);
+        final long sampledBytes = sampled.snapshotAndReset().get(Names.PROCESSED_BYTES);
+        Assert.assertEquals(exactBytes, sampledBytes, exactBytes / 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSamplingInterval() {
+        new ProcessorMetricsAccumulator(0);
+    }
+}
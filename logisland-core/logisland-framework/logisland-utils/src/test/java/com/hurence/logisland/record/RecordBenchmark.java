@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.record;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.hurence.logisland.serializer.CompactRecordSerializer;
+import com.hurence.logisland.serializer.JsonSerializer;
+import com.hurence.logisland.serializer.RecordSerializer;
+import com.hurence.logisland.serializer.SerializerProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StandardRecord} versus {@link CompactRecord} on a 40 fields web event: building it, reading every field,
+ * iterating over it, a json round trip and a kryo round trip, as spark runs within a job.
+ * <p>
+ * Run with {@code -prof gc} to compare the allocation rates, which is what the compact records are about.
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordBenchmark {
+
+    private static final int FIELDS_PER_TYPE = 10;
+
+    @Param({"standard", "compact"})
+    public String implementation;
+
+    private RecordImplementation recordImplementation;
+    private RecordSerializer serializer;
+    private String[] stringNames;
+    private String[] intNames;
+    private String[] longNames;
+    private String[] booleanNames;
+    private String[] values;
+    private Record record;
+    private byte[] bytes;
+    private Kryo kryo;
+    private byte[] kryoBytes;
+
+    @Setup
+    public void setup() {
+        recordImplementation = RecordImplementation.fromName(implementation);
+        serializer = SerializerProvider.getSerializer(JsonSerializer.class.getName(), null, recordImplementation);
+        stringNames = new String[FIELDS_PER_TYPE];
+        intNames = new String[FIELDS_PER_TYPE];
+        longNames = new String[FIELDS_PER_TYPE];
+        booleanNames = new String[FIELDS_PER_TYPE];
+        values = new String[FIELDS_PER_TYPE];
+        for (int i = 0; i < FIELDS_PER_TYPE; i++) {
+            stringNames[i] = "string_field_" + i;
+            intNames[i] = "int_field_" + i;
+            longNames[i] = "long_field_" + i;
+            booleanNames[i] = "boolean_field_" + i;
+            values[i] = "/page/" + i + "/index.html";
+        }
+        record = set();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        serializer.serialize(out, record);
+        bytes = out.toByteArray();
+        kryo = new Kryo();
+        kryo.register(CompactRecord.class, new CompactRecordSerializer());
+        kryoBytes = kryoSerialize();
+    }
+
+    @Benchmark
+    public Record set() {
+        Record event = recordImplementation.newRecord("web_event");
+        for (int i = 0; i < FIELDS_PER_TYPE; i++) {
+            event.setStringField(stringNames[i], values[i]);
+            event.setIntField(intNames[i], i);
+            event.setLongField(longNames[i], 1546300800000L + i);
+            event.setBooleanField(booleanNames[i], (i & 1) == 0);
+        }
+        return event;
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < FIELDS_PER_TYPE; i++) {
+            sum += record.getField(stringNames[i]).asString().length();
+            sum += record.getField(intNames[i]).asInteger();
+            sum += record.getField(longNames[i]).asLong();
+            sum += record.getField(booleanNames[i]).asBoolean() ? 1 : 0;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Field field : record.getAllFields()) {
+            blackhole.consume(field.getRawValue());
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        serializer.serialize(out, record);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Record deserialize() {
+        return serializer.deserialize(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public byte[] kryoSerialize() {
+        Output output = new Output(4096, -1);
+        kryo.writeObject(output, record);
+        return output.toBytes();
+    }
+
+    @Benchmark
+    public Record kryoDeserialize() {
+        return kryo.readObject(new Input(kryoBytes), record.getClass());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecordBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.hurence.logisland.record.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CompactRecordSerializerTest {
+
+    private static Kryo kryo() {
+        Kryo kryo = new Kryo();
+        kryo.register(CompactRecord.class, new CompactRecordSerializer());
+        return kryo;
+    }
+
+    private static <T> T roundTrip(Kryo kryo, Object object, Class<T> type) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output output = new Output(bytes);
+        kryo.writeObject(output, object);
+        output.close();
+        return kryo.readObject(new Input(new ByteArrayInputStream(bytes.toByteArray())), type);
+    }
+
+    private static CompactRecord netflowEvent() {
+        CompactRecord record = new CompactRecord("netflowevent");
+        record.setId("flow1");
+        record.setStringField("src_ip4", "192.168.1.26");
+        record.setIntValue("dst_port", 443);
+        record.setLongValue("dOctets", 5_000_000_000L);
+        record.setFloatValue("ratio", 0.25f);
+        record.setDoubleValue("score", 0.125);
+        record.setBooleanValue("tcp_syn", true);
+        record.setField("boxed_port", FieldType.INT, "8080");
+        record.setStringField("empty", null);
+        record.setArrayField("tags", new ArrayList<>(Arrays.asList("spam", "filter")));
+        return record;
+    }
+
+    @Test
+    public void fieldsAndTypesAreKept() {
+        CompactRecord record = netflowEvent();
+        record.setRecordField("nested", new CompactRecord("nested").setIntValue("depth", 1));
+
+        CompactRecord deserialized = roundTrip(kryo(), record, CompactRecord.class);
+
+        assertEquals(record, deserialized);
+        assertEquals(record.getTime(), deserialized.getTime());
+        assertEquals("netflowevent", deserialized.getType());
+        assertEquals(443, deserialized.getIntValue("dst_port", 0));
+        assertEquals(5_000_000_000L, deserialized.getLongValue("dOctets", 0L));
+        assertEquals(0.25f, deserialized.getField("ratio").asFloat(), 0f);
+        assertEquals(0.125, deserialized.getDoubleValue("score", 0), 0);
+        assertTrue(deserialized.getBooleanValue("tcp_syn", false));
+        // a value which does not match its type stays as it was given
+        assertEquals(FieldType.INT, deserialized.getField("boxed_port").getType());
+        assertEquals("8080", deserialized.getField("boxed_port").getRawValue());
+        assertTrue(deserialized.hasField("empty"));
+        assertNull(deserialized.getField("empty").getRawValue());
+        // insertion order is kept
+        assertEquals(new ArrayList<>(record.getAllFieldNames()), new ArrayList<>(deserialized.getAllFieldNames()));
+
+        Record nested = deserialized.getField("nested").asRecord();
+        assertEquals(CompactRecord.class, nested.getClass());
+        assertEquals(1, ((CompactRecord) nested).getIntValue("depth", 0));
+    }
+
+    @Test
+    public void errorsAreKept() {
+        CompactRecord record = netflowEvent();
+        record.addError("some_error", "with a message");
+
+        CompactRecord deserialized = roundTrip(kryo(), record, CompactRecord.class);
+        assertEquals(record.getErrors(), deserialized.getErrors());
+
+        // later errors still show up in the errors field
+        deserialized.addError("another_error", "with another message");
+        assertEquals(deserialized.getErrors(), deserialized.getField(FieldDictionary.RECORD_ERRORS).getRawValue());
+    }
+
+    @Test
+    public void compactRecordsNestedInStandardRecordsAreKept() {
+        StandardRecord record = new StandardRecord("batch");
+        record.setRecordField("flow", netflowEvent());
+
+        final KryoSerializer serializer = new KryoSerializer(false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serializer.serialize(bytes, record);
+        Record deserialized = serializer.deserialize(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(record, deserialized);
+        assertEquals(CompactRecord.class, deserialized.getField("flow").asRecord().getClass());
+    }
+}
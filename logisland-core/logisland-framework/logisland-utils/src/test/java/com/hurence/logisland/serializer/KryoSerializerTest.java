@@ -19,8 +19,10 @@
  */
 package com.hurence.logisland.serializer;
 
+import com.hurence.logisland.record.CompactRecord;
 import com.hurence.logisland.record.FieldType;
 import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.RecordImplementation;
 import com.hurence.logisland.record.StandardRecord;
 import org.junit.Test;
 
@@ -72,6 +74,38 @@ public class KryoSerializerTest {
 
 	}
 
+	@Test
+	public void kryoCompactRecordSerde() throws IOException {
+		CompactRecord record = new CompactRecord("netflowevent");
+		record.setId("flow1");
+		record.setStringField("src_ip4", "192.168.1.26");
+		record.setIntValue("dst_port", 443);
+		record.setLongValue("dOctets", 5_000_000_000L);
+		record.setBooleanValue("tcp_syn", true);
+		record.addError("some_error", "with a message");
+
+		for (RecordImplementation implementation : RecordImplementation.values()) {
+			final KryoSerializer serializer = new KryoSerializer(true, implementation);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			serializer.serialize(baos, record);
+			Record deserializedRecord = serializer.deserialize(new ByteArrayInputStream(baos.toByteArray()));
+
+			assertEquals(implementation == RecordImplementation.COMPACT ? CompactRecord.class : StandardRecord.class,
+					deserializedRecord.getClass());
+			assertEquals("flow1", deserializedRecord.getId());
+			assertEquals("netflowevent", deserializedRecord.getType());
+			assertEquals(record.getTime(), deserializedRecord.getTime());
+			assertEquals("192.168.1.26", deserializedRecord.getField("src_ip4").asString());
+			assertEquals(FieldType.INT, deserializedRecord.getField("dst_port").getType());
+			assertEquals(443, deserializedRecord.getField("dst_port").asInteger().intValue());
+			assertEquals(FieldType.LONG, deserializedRecord.getField("dOctets").getType());
+			assertEquals(5_000_000_000L, deserializedRecord.getField("dOctets").asLong().longValue());
+			assertEquals(true, deserializedRecord.getField("tcp_syn").asBoolean());
+			assertEquals(1, deserializedRecord.getErrors().size());
+			assertTrue(deserializedRecord.equals(record));
+		}
+	}
+
 	@Test
 	public void kryoSerialisationBigEventTest() throws IOException {
 
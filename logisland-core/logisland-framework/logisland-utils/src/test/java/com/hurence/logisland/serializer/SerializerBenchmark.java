@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.serializer;
+
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records/sec of every serializer handed out by the {@link SerializerProvider}.
+ * <p>
+ * The *WithFreshSerializer variants build a new serializer instance for each record (re-parsing the
+ * avro schema), which is what a provider lookup used to cost before serializers and schemas were cached.
+ * <p>
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"avro", "json", "extended_json", "kryo"})
+    public String serializerType;
+
+    private String serializerClass;
+    private String schema;
+    private RecordSerializer serializer;
+    private Record record;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (serializerType) {
+            case "avro":
+                serializerClass = AvroSerializer.class.getName();
+                schema = IOUtils.toString(SerializerBenchmark.class.getResourceAsStream("/schemas/event.avsc"), StandardCharsets.UTF_8);
+                break;
+            case "json":
+                serializerClass = JsonSerializer.class.getName();
+                break;
+            case "extended_json":
+                serializerClass = ExtendedJsonSerializer.class.getName();
+                break;
+            default:
+                serializerClass = KryoSerializer.class.getName();
+                break;
+        }
+        serializer = SerializerProvider.getSerializer(serializerClass, schema);
+
+        record = new StandardRecord("cisco");
+        record.setId("firewall_record1");
+        record.setField("method", FieldType.STRING, "GET");
+        record.setField("ip_source", FieldType.STRING, "123.34.45.123");
+        record.setField("ip_target", FieldType.STRING, "255.255.255.255");
+        record.setField("url_scheme", FieldType.STRING, "http");
+        record.setField("url_host", FieldType.STRING, "origin-www.20minutes.fr");
+        record.setField("url_port", FieldType.STRING, "80");
+        record.setField("url_path", FieldType.STRING, "/r15lgc-100KB.js");
+        record.setField("request_size", FieldType.INT, 1399);
+        record.setField("response_size", FieldType.INT, 452);
+        record.setField("is_outside_office_hours", FieldType.BOOLEAN, false);
+        record.setField("is_host_blacklisted", FieldType.BOOLEAN, false);
+        record.setField("tags", FieldType.ARRAY, new ArrayList<>(Arrays.asList("spam", "filter", "mail")));
+        bytes = serialize(serializer);
+    }
+
+    private byte[] serialize(RecordSerializer serializer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        serializer.serialize(out, record);
+        return out.toByteArray();
+    }
+
+    private RecordSerializer freshSerializer() {
+        switch (serializerType) {
+            case "avro":
+                return new AvroSerializer(schema);
+            case "json":
+                return new JsonSerializer();
+            case "extended_json":
+                return new ExtendedJsonSerializer();
+            default:
+                return new KryoSerializer(true);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serialize(SerializerProvider.getSerializer(serializerClass, schema));
+    }
+
+    @Benchmark
+    public Record deserialize() {
+        return SerializerProvider.getSerializer(serializerClass, schema).deserialize(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public byte[] serializeWithFreshSerializer() {
+        return serialize(freshSerializer());
+    }
+
+    @Benchmark
+    public Record deserializeWithFreshSerializer() {
+        return freshSerializer().deserialize(new ByteArrayInputStream(bytes));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.serializer;
+
+import com.hurence.logisland.record.CompactRecord;
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.RecordImplementation;
+import com.hurence.logisland.record.StandardRecord;
+import com.hurence.logisland.util.record.RecordSchemaUtil;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SerializerProviderTest {
+
+    private static String eventSchema() throws Exception {
+        return IOUtils.toString(SerializerProviderTest.class.getResourceAsStream("/schemas/event.avsc"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void serializersAreCached() throws Exception {
+        String schema = eventSchema();
+        RecordSerializer avro = SerializerProvider.getSerializer(AvroSerializer.class.getName(), schema);
+        assertTrue(avro instanceof AvroSerializer);
+        assertSame(avro, SerializerProvider.getSerializer(AvroSerializer.class.getName(), schema));
+        assertSame(SerializerProvider.getSerializer(JsonSerializer.class.getName(), null),
+                SerializerProvider.getSerializer(JsonSerializer.class.getName(), null));
+        assertNotSame(SerializerProvider.getSerializer(ExtendedJsonSerializer.class.getName(), null),
+                SerializerProvider.getSerializer(ExtendedJsonSerializer.class.getName(), schema));
+    }
+
+    @Test
+    public void recordImplementationIsHonored() throws Exception {
+        String schema = eventSchema();
+        Record record = new StandardRecord("cisco");
+        record.setId("firewall_record1");
+        record.setField("method", FieldType.STRING, "GET");
+        record.setField("ip_source", FieldType.STRING, "123.34.45.123");
+        record.setField("ip_target", FieldType.STRING, "255.255.255.255");
+        record.setField("url_scheme", FieldType.STRING, "http");
+        record.setField("url_host", FieldType.STRING, "origin-www.20minutes.fr");
+        record.setField("url_port", FieldType.STRING, "80");
+        record.setField("url_path", FieldType.STRING, "/r15lgc-100KB.js");
+        record.setField("request_size", FieldType.INT, 1399);
+        record.setField("response_size", FieldType.INT, 452);
+        record.setField("is_outside_office_hours", FieldType.BOOLEAN, false);
+        record.setField("is_host_blacklisted", FieldType.BOOLEAN, false);
+        record.setField("tags", FieldType.ARRAY, new ArrayList<>());
+        for (String type : new String[]{AvroSerializer.class.getName(), JsonSerializer.class.getName(),
+                ExtendedJsonSerializer.class.getName(), KryoSerializer.class.getName()}) {
+            RecordSerializer standard = SerializerProvider.getSerializer(type, schema);
+            RecordSerializer compact = SerializerProvider.getSerializer(type, schema, RecordImplementation.COMPACT);
+            assertNotSame(standard, compact);
+            assertSame(compact, SerializerProvider.getSerializer(type, schema, RecordImplementation.COMPACT));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            compact.serialize(out, record);
+            Record deserialized = compact.deserialize(new ByteArrayInputStream(out.toByteArray()));
+            assertTrue(type, deserialized instanceof CompactRecord);
+            assertEquals(type, "GET", deserialized.getField("method").asString());
+            assertEquals(type, 1399, deserialized.getField("request_size").asInteger().intValue());
+            assertEquals(type, standard.deserialize(new ByteArrayInputStream(out.toByteArray())).getAllFieldsSorted().size(),
+                    deserialized.getAllFieldsSorted().size());
+        }
+    }
+
+    @Test
+    public void invalidSchemaIsNotCached() {
+        assertTrue(SerializerProvider.getSerializer(AvroSerializer.class.getName(), "not a schema") instanceof NoopSerializer);
+    }
+
+    @Test
+    public void schemasAreCachedByFingerprint() throws Exception {
+        String schema = eventSchema();
+        assertSame(RecordSchemaUtil.compileSchema(schema), RecordSchemaUtil.compileSchema(schema));
+        // same schema, different formatting
+        assertSame(RecordSchemaUtil.compileSchema(schema), RecordSchemaUtil.compileSchema(schema.replace("\n", " ")));
+    }
+
+    @Test
+    public void sharedSerializersAreThreadSafe() throws Exception {
+        final String schema = eventSchema();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (String type : new String[]{AvroSerializer.class.getName(), JsonSerializer.class.getName(),
+                    ExtendedJsonSerializer.class.getName(), KryoSerializer.class.getName()}) {
+                for (int t = 0; t < 8; t++) {
+                    final int thread = t;
+                    results.add(executor.submit(() -> {
+                        RecordSerializer serializer = SerializerProvider.getSerializer(type, schema);
+                        for (int i = 0; i < 500; i++) {
+                            Record record = new StandardRecord("cisco");
+                            record.setId("id_" + thread + "_" + i);
+                            record.setField("method", FieldType.STRING, "GET");
+                            record.setField("ip_source", FieldType.STRING, "123.34.45.123");
+                            record.setField("ip_target", FieldType.STRING, "255.255.255.255");
+                            record.setField("url_scheme", FieldType.STRING, "http");
+                            record.setField("url_host", FieldType.STRING, "origin-www.20minutes.fr");
+                            record.setField("url_port", FieldType.STRING, "80");
+                            record.setField("url_path", FieldType.STRING, "/" + i);
+                            record.setField("request_size", FieldType.INT, i);
+                            record.setField("response_size", FieldType.INT, thread);
+                            record.setField("is_outside_office_hours", FieldType.BOOLEAN, false);
+                            record.setField("is_host_blacklisted", FieldType.BOOLEAN, false);
+                            record.setField("tags", FieldType.ARRAY, new ArrayList<>());
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            serializer.serialize(out, record);
+                            Record deserialized = serializer.deserialize(new ByteArrayInputStream(out.toByteArray()));
+                            if (!("/" + i).equals(deserialized.getField("url_path").asString())
+                                    || deserialized.getField("request_size").asInteger() != i) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }));
+                }
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
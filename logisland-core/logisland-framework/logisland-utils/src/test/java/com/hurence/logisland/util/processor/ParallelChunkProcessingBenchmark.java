@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.processor;
+
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
+import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.processor.AbstractProcessor;
+import com.hurence.logisland.processor.ProcessContext;
+import com.hurence.logisland.processor.StandardProcessContext;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A partition of 10000 apache log lines parsed by a regular expression, processed as a whole or split into
+ * chunks by {@link ParallelChunkProcessing}. The speed-up is bounded by the number of cores of the machine.
+ * Build with {@code mvn clean test-compile -Pbenchmarks} then run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelChunkProcessingBenchmark {
+
+    @ThreadSafe
+    public static class ParseApacheLog extends AbstractProcessor {
+
+        private static final Pattern LOG_PATTERN = Pattern.compile(
+                "(\\S+)\\s+(\\S+)\\s+(\\S+)\\s+\\[([\\w:/]+\\s[+\\-]\\d{4})\\]\\s+\"(\\S+)\\s+(\\S+)\\s*(\\S*)\"\\s+(\\S+)\\s+(\\S+)");
+        private static final String[] FIELDS = {"src_ip", "identd", "user", "http_date", "http_method",
+                "http_query", "http_version", "http_status", "bytes_out"};
+
+        @Override
+        public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<Record> process(ProcessContext context, Collection<Record> records) {
+            final List<Record> output = new ArrayList<>(records.size());
+            for (Record record : records) {
+                final Matcher matcher = LOG_PATTERN.matcher(record.getField("record_value").asString());
+                final Record parsed = new StandardRecord("apache_log");
+                if (matcher.matches()) {
+                    for (int i = 0; i < FIELDS.length; i++) {
+                        parsed.setStringField(FIELDS[i], matcher.group(i + 1));
+                    }
+                }
+                output.add(parsed);
+            }
+            return output;
+        }
+    }
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    private ProcessContext context;
+    private ParallelChunkProcessing processing;
+    private List<Record> partition;
+
+    @Setup
+    public void setup() {
+        context = new StandardProcessContext(new ParseApacheLog(), "parser");
+        processing = new ParallelChunkProcessing(parallelism, 500);
+        partition = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            partition.add(new StandardRecord("raw").setStringField("record_value",
+                    "10.3.10." + (i % 256) + " - user" + i + " [01/Jul/1995:00:00:" + String.format("%02d", i % 60) +
+                            " -0400] \"GET /shuttle/missions/sts-" + i + "/mission.html HTTP/1.0\" 200 " + (1000 + i)));
+        }
+    }
+
+    @Benchmark
+    public Collection<Record> processPartition() {
+        return processing.process(context, partition);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ParallelChunkProcessingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
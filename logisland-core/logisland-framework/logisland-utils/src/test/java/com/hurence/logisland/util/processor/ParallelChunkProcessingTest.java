@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016 Hurence (support@hurence.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hurence.logisland.util.processor;
+
+import com.hurence.logisland.annotation.behavior.ThreadSafe;
+import com.hurence.logisland.classloading.PluginProxy;
+import com.hurence.logisland.component.PropertyDescriptor;
+import com.hurence.logisland.processor.AbstractProcessor;
+import com.hurence.logisland.processor.ProcessContext;
+import com.hurence.logisland.processor.Processor;
+import com.hurence.logisland.processor.StandardProcessContext;
+import com.hurence.logisland.record.FieldType;
+import com.hurence.logisland.record.Record;
+import com.hurence.logisland.record.StandardRecord;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelChunkProcessingTest {
+
+    /**
+     * Drops the odd records and counts its calls.
+     */
+    private static class FilterOdd extends AbstractProcessor {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<Record> process(ProcessContext context, Collection<Record> records) {
+            calls.incrementAndGet();
+            final List<Record> output = new ArrayList<>();
+            for (Record record : records) {
+                if (record.getField("index").asInteger() % 2 == 0) {
+                    output.add(record);
+                }
+            }
+            return output;
+        }
+    }
+
+    @ThreadSafe
+    private static class ThreadSafeFilterOdd extends FilterOdd {
+    }
+
+    private static List<Record> records(int count) {
+        final List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new StandardRecord("test").setField("index", FieldType.INT, i));
+        }
+        return records;
+    }
+
+    private static List<Integer> indexes(Collection<Record> records) {
+        final List<Integer> indexes = new ArrayList<>();
+        for (Record record : records) {
+            indexes.add(record.getField("index").asInteger());
+        }
+        return indexes;
+    }
+
+    @Test
+    public void testOrderIsKept() {
+        final ThreadSafeFilterOdd processor = new ThreadSafeFilterOdd();
+        final ProcessContext context = new StandardProcessContext(processor, "filter");
+
+        final Collection<Record> output = new ParallelChunkProcessing(4, 10).process(context, records(1003));
+
+        assertEquals(4, processor.calls.get());
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1003; i += 2) {
+            expected.add(i);
+        }
+        assertEquals(expected, indexes(output));
+    }
+
+    @Test
+    public void testSmallPartitionsAreNotSplit() {
+        final ThreadSafeFilterOdd processor = new ThreadSafeFilterOdd();
+        final ProcessContext context = new StandardProcessContext(processor, "filter");
+
+        new ParallelChunkProcessing(4, 100).process(context, records(250));
+        assertEquals(2, processor.calls.get());
+
+        new ParallelChunkProcessing(4, 100).process(context, records(99));
+        assertEquals(3, processor.calls.get());
+    }
+
+    @Test
+    public void testProcessorsNotThreadSafeAreNotSplit() {
+        final FilterOdd processor = new FilterOdd();
+        final ProcessContext context = new StandardProcessContext(processor, "filter");
+
+        final Collection<Record> output = new ParallelChunkProcessing(4, 10).process(context, records(1000));
+
+        assertEquals(1, processor.calls.get());
+        assertEquals(500, output.size());
+    }
+
+    @Test
+    public void testProxiedProcessorsAreSplit() {
+        final ThreadSafeFilterOdd processor = new ThreadSafeFilterOdd();
+        // the way ComponentFactory hands processors over
+        final Processor proxy = PluginProxy.create(processor);
+        assertNotSame(ThreadSafeFilterOdd.class, proxy.getClass());
+        assertFalse(proxy.getClass().isAnnotationPresent(ThreadSafe.class));
+        assertTrue(ParallelChunkProcessing.isThreadSafe(proxy));
+        assertFalse(ParallelChunkProcessing.isThreadSafe(PluginProxy.create(new FilterOdd())));
+
+        final ProcessContext context = new StandardProcessContext(proxy, "filter");
+        final Collection<Record> output = new ParallelChunkProcessing(4, 10).process(context, records(1000));
+
+        assertEquals(4, processor.calls.get());
+        assertEquals(500, output.size());
+    }
+}